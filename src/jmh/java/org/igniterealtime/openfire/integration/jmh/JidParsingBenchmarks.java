@@ -0,0 +1,56 @@
+package org.igniterealtime.openfire.integration.jmh;
+
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Measures the cost of parsing the JIDs that are used by the integration tests and load scenarios.
+ *
+ * jxmpp caches parsed JIDs, so repeatedly parsing the same JID is much cheaper than parsing a JID that has not been
+ * seen before. Both cases are measured: the first is representative of a small, fixed set of users, the second of a
+ * large (synthetic) population of users.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JidParsingBenchmarks {
+
+    private static final String BARE_JID = USER_3 + "@" + XMPP2_DOMAIN;
+    private static final String FULL_JID = BARE_JID + "/bench-3";
+
+    private long sequence;
+
+    @Benchmark
+    public EntityBareJid entityBareCached() throws XmppStringprepException {
+        return JidCreate.entityBareFrom(BARE_JID);
+    }
+
+    @Benchmark
+    public EntityFullJid entityFullCached() throws XmppStringprepException {
+        return JidCreate.entityFullFrom(FULL_JID);
+    }
+
+    @Benchmark
+    public EntityBareJid entityBareUncached() throws XmppStringprepException {
+        // Unique local parts defeat the JID cache.
+        return JidCreate.entityBareFrom("synth" + sequence++ + "@" + XMPP2_DOMAIN);
+    }
+}
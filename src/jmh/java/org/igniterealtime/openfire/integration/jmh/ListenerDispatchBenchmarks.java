@@ -0,0 +1,110 @@
+package org.igniterealtime.openfire.integration.jmh;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaFactory;
+import org.jivesoftware.smack.packet.id.StandardStanzaIdSource;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the stanza listeners that the integration tests and load scenarios register, for every stanza
+ * that a connection receives.
+ *
+ * Listeners are invoked in the same way that Smack invokes them (each filter is evaluated, and the listener is
+ * notified if it accepts the stanza), but on the benchmark thread. The cost of handing a stanza over to Smack's
+ * listener executors is not included. Logging is replaced by consuming the logged value, so that the cost of
+ * serializing stanzas for the log is measured without that of the log output itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmarks {
+
+    @Param({"CHAT", "STAMPED", "LARGE"})
+    private MessageShape shape;
+
+    private Stanza received;
+    private final List<Registration> debugListeners = new ArrayList<>();
+    private final List<Registration> receiverListeners = new ArrayList<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private Blackhole blackhole;
+
+    private record Registration(StanzaListener listener, StanzaFilter filter) {
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        final StanzaFactory factory = new StanzaFactory(new StandardStanzaIdSource());
+        final String xml = shape.build(factory, 0).toXML().toString()
+                .replaceFirst("<message ", "<message from='user1@xmpp1.localhost.example/bench-3' ");
+        received = PacketParserUtils.parseStanza(xml);
+
+        // The listeners of FederatedChatIT: two that log every stanza, and one that logs and collects chat messages.
+        debugListeners.add(new Registration(stanza -> blackhole.consume(stanza.toXML().toString()), stanza -> true));
+        debugListeners.add(new Registration(stanza -> blackhole.consume(stanza.toXML().toString()), stanza -> true));
+        debugListeners.add(new Registration(stanza -> {
+            blackhole.consume(stanza.toXML().toString());
+            if (stanza instanceof Message message && message.getType() == Message.Type.chat) {
+                blackhole.consume(message);
+            }
+        }, stanza -> stanza instanceof Message));
+
+        // The listener of the receivers of FederatedMessageThroughputBenchmark, which correlates stamped messages.
+        receiverListeners.add(new Registration(stanza -> {
+            final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+            if (stamp != null) {
+                latency.recordNanos(Math.max(0, stamp.elapsedNanos()));
+            }
+        }, StanzaTypeFilter.MESSAGE));
+    }
+
+    /**
+     * Dispatch to the debug listeners that the functional integration tests register.
+     */
+    @Benchmark
+    public void debugListeners(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+        dispatch(debugListeners);
+    }
+
+    /**
+     * Dispatch to the correlating listener that the load scenarios register.
+     */
+    @Benchmark
+    public void receiverListener(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+        dispatch(receiverListeners);
+    }
+
+    private void dispatch(List<Registration> registrations) throws Exception {
+        for (Registration registration : registrations) {
+            if (registration.filter().accept(received)) {
+                registration.listener().processStanza(received);
+            }
+        }
+    }
+}
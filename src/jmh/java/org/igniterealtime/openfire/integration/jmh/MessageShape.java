@@ -0,0 +1,81 @@
+package org.igniterealtime.openfire.integration.jmh;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.MessageBuilder;
+import org.jivesoftware.smack.packet.StanzaFactory;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * The shapes of the message stanzas that are sent by the integration tests and load scenarios, built in the same way
+ * that those tests build them.
+ */
+public enum MessageShape {
+
+    /**
+     * A plain chat message, as sent by {@code FederatedChatIT}.
+     */
+    CHAT {
+        @Override
+        Message build(StanzaFactory factory, long sequence) {
+            return chat(factory).setBody("Hello from federated server!").build();
+        }
+    },
+
+    /**
+     * A chat message that carries a benchmark stamp, as sent by {@code FederatedMessageThroughputBenchmark}.
+     */
+    STAMPED {
+        @Override
+        Message build(StanzaFactory factory, long sequence) {
+            return chat(factory)
+                    .setBody("Benchmark message " + sequence + " of pair 3")
+                    .addExtension(BenchmarkStamp.now(1, 3, sequence).toExtensionElement())
+                    .build();
+        }
+    },
+
+    /**
+     * A stamped chat message with a 4 KiB body, representative of the larger payloads used in load scenarios.
+     */
+    LARGE {
+        private final String body = "x".repeat(4096);
+
+        @Override
+        Message build(StanzaFactory factory, long sequence) {
+            return chat(factory)
+                    .setBody(body)
+                    .addExtension(BenchmarkStamp.now(1, 3, sequence).toExtensionElement())
+                    .build();
+        }
+    };
+
+    private static final EntityFullJid RECIPIENT;
+
+    static {
+        try {
+            RECIPIENT = JidCreate.entityFullFrom(USER_3 + "@" + XMPP2_DOMAIN + "/bench-3");
+        } catch (XmppStringprepException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MessageBuilder chat(StanzaFactory factory) {
+        return factory.buildMessageStanza()
+                .to(RECIPIENT)
+                .ofType(Message.Type.chat);
+    }
+
+    /**
+     * Builds a message of this shape.
+     *
+     * @param factory  the factory used to build the stanza
+     * @param sequence the sequence number of the message
+     * @return a new message
+     */
+    abstract Message build(StanzaFactory factory, long sequence);
+}
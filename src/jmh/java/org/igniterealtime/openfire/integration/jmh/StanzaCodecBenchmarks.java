@@ -0,0 +1,83 @@
+package org.igniterealtime.openfire.integration.jmh;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StanzaFactory;
+import org.jivesoftware.smack.packet.id.StandardStanzaIdSource;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client-side cost of constructing, serializing and parsing the message stanzas that are exchanged by the
+ * integration tests and load scenarios.
+ *
+ * Together with {@link JidParsingBenchmarks} and {@link ListenerDispatchBenchmarks}, this gives an upper bound of the
+ * per-stanza overhead that the test harness adds to the latencies that are measured by the federated benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StanzaCodecBenchmarks {
+
+    @Param({"CHAT", "STAMPED", "LARGE"})
+    private MessageShape shape;
+
+    private final StanzaFactory factory = new StanzaFactory(new StandardStanzaIdSource());
+
+    private long sequence;
+    private Message message;
+    private String xml;
+
+    @Setup
+    public void setup() {
+        message = shape.build(factory, 0);
+        xml = message.toXML().toString();
+    }
+
+    /**
+     * Building a message, as is done by the sender for every message that is sent.
+     */
+    @Benchmark
+    public Message build() {
+        return shape.build(factory, sequence++);
+    }
+
+    /**
+     * Serializing a message to XML, as is done by Smack for every stanza that is sent, and by the debug listeners of
+     * the integration tests for every stanza that is received.
+     */
+    @Benchmark
+    public String toXml() {
+        return message.toXML().toString();
+    }
+
+    /**
+     * Building a message and serializing it, which is the full client-side cost of a message that is sent.
+     */
+    @Benchmark
+    public String buildAndSerialize() {
+        return shape.build(factory, sequence++).toXML().toString();
+    }
+
+    /**
+     * Parsing a message from XML, as is done by Smack for every stanza that is received.
+     */
+    @Benchmark
+    public Message parse() throws Exception {
+        return PacketParserUtils.parseStanza(xml);
+    }
+}
@@ -0,0 +1,65 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for executors used by benchmarks to run large numbers of concurrent, mostly blocking, tasks.
+ */
+public final class BenchmarkExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkExecutors.class);
+
+    private BenchmarkExecutors() {
+    }
+
+    /**
+     * Returns an executor that runs every task in its own thread.
+     *
+     * When the runtime supports virtual threads (Java 21 or later), each task runs in a virtual thread, which allows
+     * many thousands of blocking tasks to run concurrently at little cost. The project targets Java 17, so virtual
+     * threads are obtained reflectively. On older runtimes, a platform thread is created for every task.
+     *
+     * @param name prefix for the names of threads created by the executor
+     * @return a new executor, which should be shut down after use
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            final Class<?> virtualBuilderType = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = virtualBuilderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            final Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Virtual threads are not available; falling back to platform threads", e);
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns whether {@link #newThreadPerTaskExecutor(String)} uses virtual threads on this runtime.
+     *
+     * @return {@code true} if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual").invoke(null);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
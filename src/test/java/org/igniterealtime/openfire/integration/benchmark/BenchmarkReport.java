@@ -0,0 +1,81 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.igniterealtime.openfire.integration.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the results of a single benchmark run and writes them to a JSON file.
+ *
+ * Reports are written to {@code target/benchmark-reports/<name>.json} (the directory can be changed with the
+ * {@code benchmark.reportDirectory} setting), next to the reports that are generated by the Maven Failsafe plugin.
+ */
+public class BenchmarkReport {
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkReport.class);
+
+    private final String name;
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    public BenchmarkReport(String name) {
+        this.name = name;
+        values.put("benchmark", name);
+        values.put("timestamp", Instant.now().toString());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a value to the report. Values can be nested maps and lists.
+     *
+     * @param key   the key under which the value is reported
+     * @param value the value to report
+     * @return this report
+     */
+    public BenchmarkReport put(String key, Object value) {
+        values.put(key, value);
+        return this;
+    }
+
+    /**
+     * Returns the values that have been added to this report.
+     *
+     * @return the report values, in insertion order
+     */
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the directory in which benchmark reports are written.
+     *
+     * @return the report directory
+     */
+    public static Path getReportDirectory() {
+        return Path.of(BenchmarkSettings.getString("benchmark.reportDirectory", "target/benchmark-reports"));
+    }
+
+    /**
+     * Writes the report to disk, and logs its content.
+     *
+     * @return the path of the file that was written
+     * @throws IOException if the report could not be written
+     */
+    public Path write() throws IOException {
+        final String json = Json.write(values);
+        final Path directory = getReportDirectory();
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(name + ".json");
+        Files.writeString(file, json);
+        logger.info("Benchmark report for {} written to {}:\n{}", name, file, json);
+        return file;
+    }
+}
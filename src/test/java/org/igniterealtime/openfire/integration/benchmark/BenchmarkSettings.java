@@ -0,0 +1,111 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves tunable benchmark parameters.
+ *
+ * A setting named {@code benchmark.pairs} is first looked up as a Java system property (for example
+ * {@code -Dbenchmark.pairs=8} on the Maven command line). If no such property is set, the environment variable
+ * {@code BENCHMARK_PAIRS} is used. If neither is set, the provided default value is returned.
+ */
+public final class BenchmarkSettings {
+
+    private BenchmarkSettings() {
+    }
+
+    /**
+     * Returns the raw value of a setting.
+     *
+     * @param name         the name of the setting, as a dot-separated system property name
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured value, or the default value
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv(name.toUpperCase().replace('.', '_').replace('-', '_'));
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Returns an integer setting.
+     *
+     * @param name         the name of the setting
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured value, or the default value
+     */
+    public static int getInt(String name, int defaultValue) {
+        return Integer.parseInt(getString(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns a long integer setting.
+     *
+     * @param name         the name of the setting
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured value, or the default value
+     */
+    public static long getLong(String name, long defaultValue) {
+        return Long.parseLong(getString(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns a decimal setting.
+     *
+     * @param name         the name of the setting
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured value, or the default value
+     */
+    public static double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(getString(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns a boolean setting.
+     *
+     * @param name         the name of the setting
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured value, or the default value
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns a duration setting. The configured value is interpreted as a number of seconds.
+     *
+     * @param name         the name of the setting
+     * @param defaultValue the value to return if the setting is not configured
+     * @return the configured duration, or the default value
+     */
+    public static Duration getDuration(String name, Duration defaultValue) {
+        final String value = getString(name, null);
+        return value == null ? defaultValue : Duration.ofMillis(Math.round(Double.parseDouble(value) * 1000));
+    }
+
+    /**
+     * Returns a comma-separated list of numbers.
+     *
+     * @param name          the name of the setting
+     * @param defaultValues the values to return if the setting is not configured
+     * @return the configured values, or the default values
+     */
+    public static List<Double> getDoubleList(String name, Double... defaultValues) {
+        final String value = getString(name, null);
+        if (value == null) {
+            return List.of(defaultValues);
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(Double::valueOf)
+                .toList();
+    }
+}
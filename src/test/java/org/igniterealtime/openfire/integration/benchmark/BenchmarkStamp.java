@@ -0,0 +1,82 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.StandardExtensionElement;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * Correlation data that is attached to stanzas sent by benchmarks, as a custom extension element:
+ *
+ * <pre>{@code <bench xmlns='urn:xmpp:openfire-integration-tests:benchmark:0' run='1' stream='3' seq='17' sent='812763489123'/>}</pre>
+ *
+ * The 'sent' value is a {@link System#nanoTime()} reading. As both the sending and receiving connections of a
+ * benchmark live in the same JVM, it can be used to compute end-to-end latency on receipt of the stanza.
+ *
+ * @param run      identifier of the benchmark run (or step) in which the stanza was sent
+ * @param stream   identifier of the sequence of stanzas (typically a sender/receiver pair) that the stanza belongs to
+ * @param sequence sequence number of the stanza within its stream, starting at zero
+ * @param sentNanos the {@link System#nanoTime()} value at the moment the stanza was sent
+ */
+public record BenchmarkStamp(long run, int stream, long sequence, long sentNanos) {
+
+    public static final String ELEMENT = "bench";
+    public static final String NAMESPACE = "urn:xmpp:openfire-integration-tests:benchmark:0";
+
+    /**
+     * Creates a stamp for a stanza that is about to be sent, using the current time as the time of sending.
+     *
+     * @param run      identifier of the benchmark run
+     * @param stream   identifier of the stream of stanzas
+     * @param sequence sequence number of the stanza within its stream
+     * @return a new stamp
+     */
+    public static BenchmarkStamp now(long run, int stream, long sequence) {
+        return new BenchmarkStamp(run, stream, sequence, System.nanoTime());
+    }
+
+    /**
+     * Returns the nanoseconds that have elapsed between the moment that this stamp was created and now.
+     *
+     * @return the elapsed time, in nanoseconds
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - sentNanos;
+    }
+
+    /**
+     * Converts this stamp to an extension element that can be added to a stanza.
+     *
+     * @return an extension element representing this stamp
+     */
+    public ExtensionElement toExtensionElement() {
+        return StandardExtensionElement.builder(ELEMENT, NAMESPACE)
+                .addAttribute("run", Long.toString(run))
+                .addAttribute("stream", Integer.toString(stream))
+                .addAttribute("seq", Long.toString(sequence))
+                .addAttribute("sent", Long.toString(sentNanos))
+                .build();
+    }
+
+    /**
+     * Extracts a stamp from a received stanza.
+     *
+     * @param stanza the stanza from which to extract the stamp
+     * @return the stamp, or {@code null} if the stanza does not contain a (valid) benchmark stamp
+     */
+    public static BenchmarkStamp from(Stanza stanza) {
+        final ExtensionElement extension = stanza.getExtensionElement(ELEMENT, NAMESPACE);
+        if (!(extension instanceof StandardExtensionElement element)) {
+            return null;
+        }
+        try {
+            return new BenchmarkStamp(
+                    Long.parseLong(element.getAttributeValue("run")),
+                    Integer.parseInt(element.getAttributeValue("stream")),
+                    Long.parseLong(element.getAttributeValue("seq")),
+                    Long.parseLong(element.getAttributeValue("sent"))
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The trend of a metric over the course of a long run, used to tell sustained growth (such as a leak) apart from noise
+ * and from the saw-tooth pattern of garbage collection.
+ *
+ * Two views of the trend are computed. A least-squares line gives the rate of growth, and how well a straight line
+ * describes the values (its coefficient of determination). To decide whether growth is sustained, the values are
+ * split into four consecutive quarters, and the median of every quarter is taken: growth is sustained when every
+ * quarter's median is higher than that of the quarter before, and the last quarter's median exceeds the first by more
+ * than a limit. Medians are insensitive to occasional spikes, and requiring every quarter to grow rejects a metric
+ * that rises during warm-up and levels off, or that goes up and down again.
+ *
+ * @param points         the number of values
+ * @param slopePerHour   the slope of the least-squares line, in units per hour
+ * @param rSquared       the coefficient of determination of the least-squares line, or {@code null} if the values
+ *                       are all equal
+ * @param quarterMedians the medians of the four consecutive quarters of the values
+ * @param growth         the median of the last quarter minus the median of the first quarter
+ * @param relativeGrowth the growth relative to the median of the first quarter, or {@code null} if that is not
+ *                       positive
+ * @param increasing     whether the median of every quarter is higher than that of the quarter before
+ */
+public record GrowthTrend(int points, double slopePerHour, Double rSquared, List<Double> quarterMedians, double growth,
+                          Double relativeGrowth, boolean increasing) {
+
+    /**
+     * The minimum number of values from which sustained growth can be decided.
+     */
+    public static final int MIN_POINTS = 8;
+
+    /**
+     * Fits the trend of a metric.
+     *
+     * @param hours  the times of the values, in hours since an arbitrary origin
+     * @param values the values, in the same order as their times
+     * @return the trend
+     * @throws IllegalArgumentException if there are fewer than four values, or the lists differ in size
+     */
+    public static GrowthTrend fit(List<Double> hours, List<Double> values) {
+        if (hours.size() != values.size() || values.size() < 4) {
+            throw new IllegalArgumentException("A trend needs at least four values, and a time for every value");
+        }
+        final int n = values.size();
+        final double meanX = hours.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        final double meanY = values.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double sxx = 0;
+        double sxy = 0;
+        double syy = 0;
+        for (int i = 0; i < n; i++) {
+            final double dx = hours.get(i) - meanX;
+            final double dy = values.get(i) - meanY;
+            sxx += dx * dx;
+            sxy += dx * dy;
+            syy += dy * dy;
+        }
+        final double slope = sxx == 0 ? 0 : sxy / sxx;
+        final Double rSquared = sxx == 0 || syy == 0 ? null : (sxy * sxy) / (sxx * syy);
+
+        final double[] medians = new double[4];
+        for (int quarter = 0; quarter < 4; quarter++) {
+            medians[quarter] = median(values.subList(quarter * n / 4, (quarter + 1) * n / 4));
+        }
+        boolean increasing = true;
+        for (int quarter = 1; quarter < 4; quarter++) {
+            increasing &= medians[quarter] > medians[quarter - 1];
+        }
+        final double growth = medians[3] - medians[0];
+        return new GrowthTrend(n, slope, rSquared, Arrays.stream(medians).boxed().toList(), growth, medians[0] > 0 ? growth / medians[0] : null, increasing);
+    }
+
+    /**
+     * Returns whether the metric grows in a sustained way, by more than a limit.
+     *
+     * @param limit    the growth that is tolerated
+     * @param relative whether the limit is relative to the median of the first quarter, rather than absolute
+     * @return {@code true} if there are enough values to decide, every quarter grows, and the growth exceeds the limit
+     */
+    public boolean isSustained(double limit, boolean relative) {
+        if (points < MIN_POINTS || !increasing) {
+            return false;
+        }
+        if (relative) {
+            return relativeGrowth != null && relativeGrowth > limit;
+        }
+        return growth > limit;
+    }
+
+    /**
+     * Returns the trend, suitable for inclusion in a benchmark report.
+     *
+     * @return the fields of the trend
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("points", points);
+        map.put("slopePerHour", slopePerHour);
+        map.put("rSquared", rSquared);
+        map.put("quarterMedians", quarterMedians);
+        map.put("growth", growth);
+        map.put("relativeGrowth", relativeGrowth);
+        map.put("increasing", increasing);
+        return map;
+    }
+
+    private static double median(List<Double> values) {
+        final double[] sorted = values.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        return sorted.length % 2 == 1 ? sorted[sorted.length / 2] : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+    }
+}
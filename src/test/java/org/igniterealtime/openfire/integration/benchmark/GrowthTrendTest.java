@@ -0,0 +1,93 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Unit tests for {@link GrowthTrend}.
+ */
+public class GrowthTrendTest {
+
+    @Test
+    void monotonicGrowthIsSustained() {
+        final GrowthTrend trend = fit(16, i -> 100 + 10 * i);
+
+        Assertions.assertEquals(16, trend.points());
+        Assertions.assertEquals(10, trend.slopePerHour(), 1e-9);
+        Assertions.assertEquals(1, trend.rSquared(), 1e-9);
+        Assertions.assertEquals(List.of(115.0, 155.0, 195.0, 235.0), trend.quarterMedians());
+        Assertions.assertEquals(120, trend.growth(), 1e-9);
+        Assertions.assertEquals(120 / 115.0, trend.relativeGrowth(), 1e-9);
+        Assertions.assertTrue(trend.increasing());
+        Assertions.assertTrue(trend.isSustained(1.0, true));
+        Assertions.assertFalse(trend.isSustained(1.1, true));
+        Assertions.assertTrue(trend.isSustained(100, false));
+        Assertions.assertFalse(trend.isSustained(150, false));
+    }
+
+    @Test
+    void sawToothIsNotSustained() {
+        // Heap occupancy that is collected back to the same level every four samples
+        final GrowthTrend trend = fit(16, i -> 100 + 50 * (i % 4));
+
+        Assertions.assertEquals(List.of(175.0, 175.0, 175.0, 175.0), trend.quarterMedians());
+        Assertions.assertFalse(trend.increasing());
+        Assertions.assertFalse(trend.isSustained(0, false));
+    }
+
+    @Test
+    void sawToothOnARisingFloorIsSustained() {
+        // Like a leak, that garbage collection cannot reclaim
+        final GrowthTrend trend = fit(32, i -> 100 + 5 * i + 50 * (i % 4));
+
+        Assertions.assertTrue(trend.increasing());
+        Assertions.assertTrue(trend.slopePerHour() > 0);
+        Assertions.assertTrue(trend.rSquared() < 1);
+        Assertions.assertTrue(trend.isSustained(0.5, true));
+    }
+
+    @Test
+    void riseThenPlateauIsNotSustained() {
+        // Caches that fill during warm-up, and then stay full
+        final GrowthTrend trend = fit(16, i -> Math.min(100 + 100 * i, 500));
+
+        Assertions.assertTrue(trend.slopePerHour() > 0);
+        Assertions.assertTrue(trend.growth() > 0);
+        Assertions.assertFalse(trend.increasing());
+        Assertions.assertFalse(trend.isSustained(0, false));
+    }
+
+    @Test
+    void tooFewPointsAreNotSustained() {
+        final GrowthTrend trend = fit(GrowthTrend.MIN_POINTS - 1, i -> 100 + 10 * i);
+
+        Assertions.assertTrue(trend.increasing());
+        Assertions.assertFalse(trend.isSustained(0, false));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> fit(3, i -> i));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GrowthTrend.fit(List.of(0.0, 1.0, 2.0, 3.0), List.of(1.0, 2.0, 3.0)));
+    }
+
+    @Test
+    void constantValuesHaveNoCoefficientOfDetermination() {
+        final GrowthTrend trend = fit(8, i -> 0);
+
+        Assertions.assertEquals(0, trend.slopePerHour());
+        Assertions.assertNull(trend.rSquared());
+        Assertions.assertNull(trend.relativeGrowth());
+        Assertions.assertFalse(trend.isSustained(0, true));
+    }
+
+    private static GrowthTrend fit(int points, IntToDoubleFunction value) {
+        final List<Double> hours = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            hours.add((double) i);
+            values.add(value.applyAsDouble(i));
+        }
+        return GrowthTrend.fit(hours, values);
+    }
+}
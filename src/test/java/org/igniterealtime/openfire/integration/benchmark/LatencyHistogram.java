@@ -0,0 +1,166 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, fixed-memory latency histogram with log-linear buckets.
+ *
+ * Values are recorded with microsecond resolution. Values below 1024µs are recorded exactly; larger values are
+ * recorded into buckets that are at most 0.2% wide relative to their value, which is more than sufficient to report
+ * high percentiles (p99, p99.9) of network latencies. Values larger than roughly 12 days are clamped.
+ *
+ * Recording is lock-free, so a single instance can be shared by many sender and receiver threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 10;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency expressed in nanoseconds.
+     *
+     * @param nanos the latency, in nanoseconds. Negative values are recorded as zero.
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1_000);
+    }
+
+    /**
+     * Records a latency expressed in microseconds.
+     *
+     * @param micros the latency, in microseconds. Negative values are recorded as zero.
+     */
+    public void recordMicros(long micros) {
+        final long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalMicros.add(value);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of values recorded in this histogram.
+     *
+     * @return the total count of recorded values
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the largest value recorded in this histogram.
+     *
+     * @return the maximum recorded value, in microseconds, or zero if no values have been recorded
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of all values recorded in this histogram.
+     *
+     * @return the mean value, in microseconds, or zero if no values have been recorded
+     */
+    public double getMeanMicros() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) totalMicros.sum() / count;
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of recorded values fall.
+     *
+     * The reported value is the highest value that is equivalent (falls in the same bucket) to the value at the
+     * requested percentile, capped at the maximum recorded value.
+     *
+     * @param percentile the percentile to compute, between 0 and 100 (inclusive)
+     * @return the value at the requested percentile, in microseconds, or zero if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final double clamped = Math.min(Math.max(0, percentile), 100);
+        final long target = Math.max(1, (long) Math.ceil(clamped / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Adds all values recorded in another histogram to this histogram.
+     *
+     * @param other the histogram whose values are to be added
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.add(other.totalCount.sum());
+        totalMicros.add(other.totalMicros.sum());
+        maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+    }
+
+    /**
+     * Returns a summary of this histogram, suitable for inclusion in a benchmark report.
+     *
+     * All latency values in the summary are expressed in milliseconds.
+     *
+     * @return an ordered map of summary statistics
+     */
+    public Map<String, Object> summary() {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("meanMs", toMillis(getMeanMicros()));
+        summary.put("p50Ms", toMillis(getValueAtPercentile(50)));
+        summary.put("p90Ms", toMillis(getValueAtPercentile(90)));
+        summary.put("p99Ms", toMillis(getValueAtPercentile(99)));
+        summary.put("p999Ms", toMillis(getValueAtPercentile(99.9)));
+        summary.put("maxMs", toMillis(getMaxMicros()));
+        return summary;
+    }
+
+    private static double toMillis(double micros) {
+        return Math.round(micros) / 1_000.0;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        final int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int offset = index - SUB_BUCKET_COUNT;
+        final int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        final long subBucket = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,142 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    void valuesBelowSubBucketCountAreExact() {
+        for (long value = 0; value < 1024; value++) {
+            Assertions.assertEquals(value, LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(value)));
+        }
+    }
+
+    @Test
+    void bucketsContainTheirValuesWithinRelativeError() {
+        long value = 1024;
+        while (value < (1L << 40)) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long highest = LatencyHistogram.highestEquivalentValue(index);
+            Assertions.assertTrue(highest >= value, "Bucket of " + value + " ends below it, at " + highest);
+            Assertions.assertTrue((highest - value) / (double) value <= 0.002,
+                    "Bucket of " + value + " is too wide: it ends at " + highest);
+            Assertions.assertEquals(index, LatencyHistogram.indexOf(highest), "Highest equivalent value of " + value + " is in another bucket");
+            Assertions.assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1), "Buckets of " + value + " and its successor are not adjacent");
+            value = value * 3 / 2 + 7;
+        }
+    }
+
+    @Test
+    void emptyHistogramReportsZeroes() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Assertions.assertEquals(0, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getMaxMicros());
+        Assertions.assertEquals(0, histogram.getMeanMicros());
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+        final Map<String, Object> summary = histogram.summary();
+        Assertions.assertEquals(0L, summary.get("count"));
+        Assertions.assertEquals(0.0, summary.get("p50Ms"));
+        Assertions.assertEquals(0.0, summary.get("maxMs"));
+    }
+
+    @Test
+    void percentilesOfUniformValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        Assertions.assertEquals(100_000, histogram.getCount());
+        Assertions.assertEquals(50_000.5, histogram.getMeanMicros(), 1e-9);
+        assertWithinRelativeError(50_000, histogram.getValueAtPercentile(50));
+        assertWithinRelativeError(99_000, histogram.getValueAtPercentile(99));
+        assertWithinRelativeError(99_900, histogram.getValueAtPercentile(99.9));
+        Assertions.assertEquals(100_000, histogram.getValueAtPercentile(100));
+        Assertions.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    void percentileIsCappedAtMaximum() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(1_000_001);
+
+        Assertions.assertEquals(1_000_001, histogram.getValueAtPercentile(50));
+        Assertions.assertEquals(1_000_001, histogram.getMaxMicros());
+    }
+
+    @Test
+    void nanosAreTruncatedToMicros() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1_999);
+
+        Assertions.assertEquals(1, histogram.getMaxMicros());
+    }
+
+    @Test
+    void negativeAndHugeValuesAreClamped() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+
+        Assertions.assertEquals(2, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assertions.assertEquals((1L << 40) - 1, histogram.getMaxMicros());
+    }
+
+    @Test
+    void mergingAddsCountsTotalsAndMaximum() {
+        final LatencyHistogram low = new LatencyHistogram();
+        final LatencyHistogram high = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            low.recordMicros(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            high.recordMicros(50_000);
+        }
+
+        final LatencyHistogram merged = new LatencyHistogram();
+        merged.add(low);
+        merged.add(high);
+
+        Assertions.assertEquals(100, merged.getCount());
+        Assertions.assertEquals((90 * 100 + 10 * 50_000) / 100.0, merged.getMeanMicros(), 1e-9);
+        Assertions.assertEquals(50_000, merged.getMaxMicros());
+        Assertions.assertEquals(100, merged.getValueAtPercentile(90));
+        assertWithinRelativeError(50_000, merged.getValueAtPercentile(91));
+        Assertions.assertEquals(90, low.getCount(), "Merging must not change the histogram that is added");
+    }
+
+    @Test
+    void mergingAnEmptyHistogramChangesNothing() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(2_500);
+        histogram.add(new LatencyHistogram());
+
+        Assertions.assertEquals(1, histogram.getCount());
+        Assertions.assertEquals(2_500, histogram.getMaxMicros());
+    }
+
+    @Test
+    void summaryIsInMilliseconds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(1_500);
+
+        final Map<String, Object> summary = histogram.summary();
+        Assertions.assertEquals(1L, summary.get("count"));
+        Assertions.assertEquals(1.5, summary.get("meanMs"));
+        Assertions.assertEquals(1.5, summary.get("p50Ms"));
+        Assertions.assertEquals(1.5, summary.get("maxMs"));
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && (actual - expected) / (double) expected <= 0.002,
+                "Expected " + expected + " within 0.2%, but was " + actual);
+    }
+}
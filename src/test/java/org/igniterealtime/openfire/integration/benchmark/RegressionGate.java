@@ -0,0 +1,387 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.igniterealtime.openfire.integration.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compares the performance of two Openfire image tags, and fails when the candidate tag regresses.
+ *
+ * The benchmark suite (see the {@code benchmark} Maven profile) is run repeatedly against a baseline tag and a
+ * candidate tag. Every run is a separate Maven invocation, with a freshly started federated environment, so that
+ * startup time is measured in every run too. Runs of both tags are interleaved, so that drift in the performance of the
+ * host affects both tags alike. The benchmark reports of every run are written to a directory of their own.
+ *
+ * Every numeric value in the benchmark reports is a metric. For every metric, the mean and its 95% confidence interval
+ * are computed per tag, as well as the 95% confidence interval of the difference between the means (Welch's
+ * t-interval). Metrics are gated based on their name: names ending in {@code Ms} (latency percentiles, startup and
+ * federation times) and names of counts or rates of things that went wrong (such as {@code lost}, {@code sendFailures}
+ * or {@code timeoutRate}) are better when lower, while other names ending in {@code Rate} or {@code PerSecond}
+ * (throughput) are better when higher. A metric regresses when its mean changes for the worse by more
+ * than the threshold, and the confidence interval of the difference shows the change to be significant. Other metrics
+ * are reported, but not gated. With a single run per tag, no confidence intervals can be computed, and the threshold
+ * alone decides.
+ *
+ * The comparison is written as {@code comparison.json} and {@code comparison.html} to the output directory. The
+ * process exits with status 1 if any metric regressed, and with status 2 if any run failed.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code compare.baseline} - the Openfire image tag to compare against (required)</li>
+ *     <li>{@code compare.candidate} - the Openfire image tag to compare (required)</li>
+ *     <li>{@code compare.runs} - number of runs per tag (default: 5)</li>
+ *     <li>{@code compare.threshold} - relative change of a metric for the worse that is tolerated (default: 0.1)</li>
+ *     <li>{@code compare.exclude} - regular expression of metrics that are left out of the comparison</li>
+ *     <li>{@code compare.arguments} - additional arguments for every Maven run, such as {@code -Dit.test=...}</li>
+ *     <li>{@code compare.directory} - directory to which reports are written (default: target/comparison)</li>
+ * </ul>
+ */
+public final class RegressionGate {
+    private static final Logger logger = LoggerFactory.getLogger(RegressionGate.class);
+
+    // Metrics that are too noisy or that are inputs rather than outputs of a benchmark
+    private static final String DEFAULT_EXCLUDE = "^s2s-events:|^database-statements:|configuration\\.|linkProfile\\.|scheduleLag\\.|dispatchLag\\.|(maxMs|p999Ms|sentRate|targetRate|issuedRate)$";
+
+    // Counts and rates of stanzas or operations that went wrong, such as 'lost', 'sendFailures' or 'timeoutRate'
+    private static final Pattern LOWER_IS_BETTER = Pattern.compile("(?i)fail|timeout|lost|loss|reject|duplicate|reorder|incomplete");
+
+    // Two-sided 95% quantiles of Student's t-distribution, for 1 to 30 degrees of freedom
+    private static final double[] T_975 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    /**
+     * Whether a metric is better when it is higher or lower.
+     */
+    public enum Direction {
+        HIGHER_IS_BETTER, LOWER_IS_BETTER, UNKNOWN
+    }
+
+    /**
+     * The samples of a metric for a single tag.
+     *
+     * @param samples the values of the metric, one per run
+     * @param mean    the mean of the samples
+     * @param ciLow   lower bound of the 95% confidence interval of the mean, or {@code null} if there are too few samples
+     * @param ciHigh  upper bound of the 95% confidence interval of the mean, or {@code null} if there are too few samples
+     */
+    public record Summary(List<Double> samples, double mean, Double ciLow, Double ciHigh) {
+    }
+
+    /**
+     * The comparison of a metric between the baseline and the candidate tag.
+     *
+     * @param metric     the name of the metric, formatted as {@code report:path}
+     * @param direction  whether the metric is better when higher or lower
+     * @param baseline   the samples of the baseline tag
+     * @param candidate  the samples of the candidate tag
+     * @param change     relative change of the mean of the candidate, or {@code null} if the baseline mean is zero
+     * @param diffLow    lower bound of the 95% confidence interval of the difference of the means, or {@code null}
+     * @param diffHigh   upper bound of the 95% confidence interval of the difference of the means, or {@code null}
+     * @param regressed  whether the candidate regressed
+     */
+    public record Comparison(String metric, Direction direction, Summary baseline, Summary candidate, Double change,
+                             Double diffLow, Double diffHigh, boolean regressed) {
+    }
+
+    private final String baseline;
+    private final String candidate;
+    private final int runs;
+    private final double threshold;
+    private final Pattern exclude;
+    private final List<String> arguments;
+    private final Path directory;
+
+    private RegressionGate() {
+        baseline = BenchmarkSettings.getString("compare.baseline", null);
+        candidate = BenchmarkSettings.getString("compare.candidate", null);
+        if (baseline == null || candidate == null) {
+            throw new IllegalArgumentException("Both compare.baseline and compare.candidate must be set");
+        }
+        if (baseline.equals(candidate)) {
+            throw new IllegalArgumentException("compare.baseline and compare.candidate must differ, got " + baseline);
+        }
+        runs = BenchmarkSettings.getInt("compare.runs", 5);
+        if (runs < 1) {
+            throw new IllegalArgumentException("compare.runs must be at least 1, got " + runs);
+        }
+        threshold = BenchmarkSettings.getDouble("compare.threshold", 0.1);
+        exclude = Pattern.compile(BenchmarkSettings.getString("compare.exclude", DEFAULT_EXCLUDE));
+        arguments = Arrays.stream(BenchmarkSettings.getString("compare.arguments", "").split("\\s+"))
+                .filter(argument -> !argument.isEmpty())
+                .toList();
+        directory = Path.of(BenchmarkSettings.getString("compare.directory", "target/comparison"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new RegressionGate().execute());
+    }
+
+    private int execute() throws IOException, InterruptedException {
+        logger.info("Comparing Openfire {} (candidate) against {} (baseline), {} runs each", candidate, baseline, runs);
+        for (int run = 1; run <= runs; run++) {
+            // Alternate the order of the tags, so that neither consistently runs on a host that has just warmed up.
+            for (String tag : run % 2 == 1 ? List.of(baseline, candidate) : List.of(candidate, baseline)) {
+                if (!run(tag, run)) {
+                    logger.error("Run {} of Openfire {} failed, see the Maven output above", run, tag);
+                    return 2;
+                }
+            }
+        }
+
+        final Map<String, List<Double>> baselineSamples = collect(baseline);
+        final Map<String, List<Double>> candidateSamples = collect(candidate);
+        final List<Comparison> comparisons = new ArrayList<>();
+        for (Map.Entry<String, List<Double>> entry : baselineSamples.entrySet()) {
+            final List<Double> samples = candidateSamples.get(entry.getKey());
+            if (samples != null) {
+                comparisons.add(compare(entry.getKey(), entry.getValue(), samples, threshold));
+            }
+        }
+        write(comparisons);
+
+        final List<Comparison> regressions = comparisons.stream().filter(Comparison::regressed).toList();
+        for (Comparison regression : regressions) {
+            logger.error("Regression in {}: {} -> {} ({})", regression.metric(), format(regression.baseline().mean()),
+                    format(regression.candidate().mean()), formatChange(regression.change()));
+        }
+        if (!regressions.isEmpty()) {
+            logger.error("Openfire {} regressed in {} of {} metrics compared to {}", candidate, regressions.size(), comparisons.size(), baseline);
+            return 1;
+        }
+        logger.info("Openfire {} did not regress in any of {} metrics compared to {}", candidate, comparisons.size(), baseline);
+        return 0;
+    }
+
+    /**
+     * Runs the benchmark suite against a tag, in a separate Maven invocation.
+     */
+    private boolean run(String tag, int run) throws IOException, InterruptedException {
+        final Path reports = directory.resolve(tag).resolve("run-" + run);
+        if (Files.isDirectory(reports)) {
+            try (Stream<Path> files = Files.list(reports)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.createDirectories(reports);
+
+        final List<String> command = new ArrayList<>();
+        command.add(System.getProperty("os.name").startsWith("Windows") ? "mvnw.cmd" : "./mvnw");
+        command.addAll(List.of("-B", "verify", "-Pbenchmark", "-Dbenchmark.reportDirectory=" + reports.toAbsolutePath()));
+        command.addAll(arguments);
+        logger.info("Run {} of {} against Openfire {}: {}", run, runs, tag, String.join(" ", command));
+
+        final ProcessBuilder processBuilder = new ProcessBuilder(command).inheritIO();
+        processBuilder.environment().put("OPENFIRE_TAG", tag);
+        // Every run starts its own environment, so that startup time can be compared too.
+        processBuilder.environment().put("OPENFIRE_KEEP_WARM", "false");
+        return processBuilder.start().waitFor() == 0;
+    }
+
+    /**
+     * Collects the numeric values of the reports of all runs of a tag, keyed by metric.
+     */
+    private Map<String, List<Double>> collect(String tag) throws IOException {
+        final Map<String, List<Double>> samples = new TreeMap<>();
+        for (int run = 1; run <= runs; run++) {
+            final Path reports = directory.resolve(tag).resolve("run-" + run);
+            try (Stream<Path> files = Files.list(reports)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(".json")).sorted().toList()) {
+                    final String report = file.getFileName().toString().replaceFirst("\\.json$", "");
+                    flatten(report + ":", Json.parse(Files.readString(file)), samples);
+                }
+            }
+        }
+        return samples;
+    }
+
+    private void flatten(String path, Object value, Map<String, List<Double>> samples) {
+        if (value instanceof Map<?, ?> map) {
+            final boolean root = path.endsWith(":");
+            map.forEach((key, child) -> flatten(path + (root ? "" : ".") + key, child, samples));
+        } else if (value instanceof List<?> list) {
+            for (int i = 0; i < list.size(); i++) {
+                flatten(path + "[" + i + "]", list.get(i), samples);
+            }
+        } else if (value instanceof Number number && !exclude.matcher(path).find()) {
+            samples.computeIfAbsent(path, p -> new ArrayList<>()).add(number.doubleValue());
+        }
+    }
+
+    static Comparison compare(String metric, List<Double> baselineSamples, List<Double> candidateSamples, double threshold) {
+        final Direction direction = direction(metric);
+        final Summary base = summarize(baselineSamples);
+        final Summary cand = summarize(candidateSamples);
+        final double difference = cand.mean() - base.mean();
+        final Double change = base.mean() == 0 ? null : difference / Math.abs(base.mean());
+
+        Double diffLow = null;
+        Double diffHigh = null;
+        final int n1 = baselineSamples.size();
+        final int n2 = candidateSamples.size();
+        if (n1 >= 2 && n2 >= 2) {
+            // Welch's t-interval, with the Welch-Satterthwaite approximation of the degrees of freedom
+            final double v1 = variance(baselineSamples, base.mean()) / n1;
+            final double v2 = variance(candidateSamples, cand.mean()) / n2;
+            final double standardError = Math.sqrt(v1 + v2);
+            final double degrees = standardError == 0 ? n1 + n2 - 2 : Math.pow(v1 + v2, 2) / (v1 * v1 / (n1 - 1) + v2 * v2 / (n2 - 1));
+            final double margin = t975((int) Math.floor(degrees)) * standardError;
+            diffLow = difference - margin;
+            diffHigh = difference + margin;
+        }
+
+        boolean regressed = false;
+        if (direction != Direction.UNKNOWN) {
+            final boolean worse = direction == Direction.LOWER_IS_BETTER ? difference > 0 : difference < 0;
+            final boolean significant = diffLow == null || (direction == Direction.LOWER_IS_BETTER ? diffLow > 0 : diffHigh < 0);
+            final boolean beyondThreshold = change == null || Math.abs(change) > threshold;
+            regressed = worse && significant && beyondThreshold;
+        }
+        return new Comparison(metric, direction, base, cand, change, diffLow, diffHigh, regressed);
+    }
+
+    static Direction direction(String metric) {
+        final String name = metric.substring(Math.max(metric.lastIndexOf('.'), metric.lastIndexOf(':')) + 1);
+        // Checked first, as a failure or timeout rate is better when lower, unlike other rates.
+        if (name.endsWith("Ms") || LOWER_IS_BETTER.matcher(name).find()) {
+            return Direction.LOWER_IS_BETTER;
+        }
+        if (name.endsWith("Rate") || name.endsWith("PerSecond")) {
+            return Direction.HIGHER_IS_BETTER;
+        }
+        return Direction.UNKNOWN;
+    }
+
+    static Summary summarize(List<Double> samples) {
+        final double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        if (samples.size() < 2) {
+            return new Summary(samples, mean, null, null);
+        }
+        final double margin = t975(samples.size() - 1) * Math.sqrt(variance(samples, mean) / samples.size());
+        return new Summary(samples, mean, mean - margin, mean + margin);
+    }
+
+    private static double variance(List<Double> samples, double mean) {
+        return samples.stream().mapToDouble(sample -> (sample - mean) * (sample - mean)).sum() / (samples.size() - 1);
+    }
+
+    private static double t975(int degrees) {
+        if (degrees < 1) {
+            return T_975[0];
+        }
+        if (degrees <= T_975.length) {
+            return T_975[degrees - 1];
+        }
+        return degrees <= 60 ? 2.000 : degrees <= 120 ? 1.980 : 1.960;
+    }
+
+    private void write(List<Comparison> comparisons) throws IOException {
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("baseline", baseline);
+        configuration.put("candidate", candidate);
+        configuration.put("runs", runs);
+        configuration.put("threshold", threshold);
+        configuration.put("exclude", exclude.pattern());
+        configuration.put("arguments", String.join(" ", arguments));
+
+        final List<Object> metrics = new ArrayList<>();
+        for (Comparison comparison : comparisons) {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("metric", comparison.metric());
+            values.put("direction", comparison.direction().name());
+            values.put("baseline", summary(comparison.baseline()));
+            values.put("candidate", summary(comparison.candidate()));
+            values.put("change", comparison.change());
+            values.put("differenceCiLow", comparison.diffLow());
+            values.put("differenceCiHigh", comparison.diffHigh());
+            values.put("regressed", comparison.regressed());
+            metrics.add(values);
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("configuration", configuration);
+        report.put("regressions", comparisons.stream().filter(Comparison::regressed).count());
+        report.put("metrics", metrics);
+
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("comparison.json"), Json.write(report));
+        Files.writeString(directory.resolve("comparison.html"), html(comparisons));
+        logger.info("Comparison written to {}", directory.resolve("comparison.html"));
+    }
+
+    private static Map<String, Object> summary(Summary summary) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("mean", summary.mean());
+        values.put("ciLow", summary.ciLow());
+        values.put("ciHigh", summary.ciHigh());
+        values.put("samples", summary.samples());
+        return values;
+    }
+
+    private String html(List<Comparison> comparisons) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n")
+                .append("<title>Openfire ").append(escape(candidate)).append(" compared to ").append(escape(baseline)).append("</title>\n")
+                .append("<style>body{font-family:sans-serif}table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:2px 6px;text-align:right}")
+                .append("td:first-child{text-align:left}.regressed{background:#fdd}.improved{background:#dfd}</style>\n</head>\n<body>\n")
+                .append("<h1>Openfire ").append(escape(candidate)).append(" compared to ").append(escape(baseline)).append("</h1>\n")
+                .append("<p>").append(runs).append(" runs per tag. Threshold: ").append(format(threshold * 100)).append("%. ")
+                .append("Intervals are 95% confidence intervals.</p>\n")
+                .append("<table>\n<tr><th>Metric</th><th>Better</th><th>Baseline</th><th>Candidate</th><th>Change</th><th>Difference</th></tr>\n");
+        final List<Comparison> sorted = new ArrayList<>(comparisons);
+        sorted.sort(Comparator.comparing((Comparison comparison) -> !comparison.regressed()).thenComparing(Comparison::metric));
+        for (Comparison comparison : sorted) {
+            final boolean improved = !comparison.regressed() && comparison.direction() != Direction.UNKNOWN
+                    && comparison.diffLow() != null
+                    && (comparison.direction() == Direction.LOWER_IS_BETTER ? comparison.diffHigh() < 0 : comparison.diffLow() > 0);
+            sb.append("<tr").append(comparison.regressed() ? " class=\"regressed\"" : improved ? " class=\"improved\"" : "").append('>')
+                    .append("<td>").append(escape(comparison.metric())).append("</td>")
+                    .append("<td>").append(switch (comparison.direction()) {
+                        case HIGHER_IS_BETTER -> "higher";
+                        case LOWER_IS_BETTER -> "lower";
+                        case UNKNOWN -> "";
+                    }).append("</td>")
+                    .append("<td>").append(format(comparison.baseline())).append("</td>")
+                    .append("<td>").append(format(comparison.candidate())).append("</td>")
+                    .append("<td>").append(formatChange(comparison.change())).append("</td>")
+                    .append("<td>").append(comparison.diffLow() == null ? "" : "[" + format(comparison.diffLow()) + ", " + format(comparison.diffHigh()) + "]").append("</td>")
+                    .append("</tr>\n");
+        }
+        return sb.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    private static String format(Summary summary) {
+        return summary.ciLow() == null
+                ? format(summary.mean())
+                : format(summary.mean()) + " [" + format(summary.ciLow()) + ", " + format(summary.ciHigh()) + "]";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value).replaceFirst("\\.?0+$", "");
+    }
+
+    private static String formatChange(Double change) {
+        return change == null ? "" : String.format(Locale.ROOT, "%+.1f%%", change * 100);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
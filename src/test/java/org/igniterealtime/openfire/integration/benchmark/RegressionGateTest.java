@@ -0,0 +1,100 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link RegressionGate}.
+ */
+public class RegressionGateTest {
+
+    @Test
+    void latenciesAndFailuresAreBetterWhenLower() {
+        for (String metric : List.of("message-throughput:latency.p99Ms", "startup:federationMs", "roster-push:lost",
+                "message-throughput:sendFailures", "login-storm:failureRate", "login-storm:timeoutRate",
+                "muc-fanout:duplicates", "soak:maxConsecutiveFailures", "workload:rejected")) {
+            Assertions.assertEquals(RegressionGate.Direction.LOWER_IS_BETTER, RegressionGate.direction(metric), metric);
+        }
+    }
+
+    @Test
+    void throughputIsBetterWhenHigher() {
+        for (String metric : List.of("message-throughput:messagesPerSecond", "workload:completedRate",
+                "muc-fanout:deliveredRate", "login-storm:sessionsPerSecond")) {
+            Assertions.assertEquals(RegressionGate.Direction.HIGHER_IS_BETTER, RegressionGate.direction(metric), metric);
+        }
+    }
+
+    @Test
+    void otherMetricsAreNotGated() {
+        for (String metric : List.of("login-storm:sessions", "message-throughput:latency.count", "soak:heapBytes")) {
+            Assertions.assertEquals(RegressionGate.Direction.UNKNOWN, RegressionGate.direction(metric), metric);
+        }
+    }
+
+    @Test
+    void summaryHasConfidenceIntervalOfTheMean() {
+        final RegressionGate.Summary summary = RegressionGate.summarize(List.of(1.0, 2.0, 3.0, 4.0, 5.0));
+
+        Assertions.assertEquals(3.0, summary.mean(), 1e-9);
+        // t(0.975, 4) * sqrt(2.5 / 5)
+        Assertions.assertEquals(3.0 - 1.96293, summary.ciLow(), 1e-5);
+        Assertions.assertEquals(3.0 + 1.96293, summary.ciHigh(), 1e-5);
+    }
+
+    @Test
+    void summaryOfSingleSampleHasNoConfidenceInterval() {
+        final RegressionGate.Summary summary = RegressionGate.summarize(List.of(7.0));
+
+        Assertions.assertEquals(7.0, summary.mean());
+        Assertions.assertNull(summary.ciLow());
+        Assertions.assertNull(summary.ciHigh());
+    }
+
+    @Test
+    void differenceHasWelchConfidenceInterval() {
+        // Variances 4 and 10, so 5.88 degrees of freedom (rounded down to 5) and a standard error of sqrt(10 / 3)
+        final RegressionGate.Comparison comparison = RegressionGate.compare("message-throughput:latency.p99Ms",
+                List.of(10.0, 12.0, 14.0), List.of(20.0, 22.0, 24.0, 26.0, 28.0), 0.1);
+
+        Assertions.assertEquals(1.0, comparison.change(), 1e-9);
+        Assertions.assertEquals(12.0 - 4.69398, comparison.diffLow(), 1e-5);
+        Assertions.assertEquals(12.0 + 4.69398, comparison.diffHigh(), 1e-5);
+        Assertions.assertTrue(comparison.regressed());
+    }
+
+    @Test
+    void insignificantChangeDoesNotRegress() {
+        final RegressionGate.Comparison comparison = RegressionGate.compare("message-throughput:latency.p99Ms",
+                List.of(10.0, 20.0, 30.0), List.of(15.0, 25.0, 35.0), 0.1);
+
+        Assertions.assertTrue(comparison.diffLow() < 0);
+        Assertions.assertFalse(comparison.regressed());
+    }
+
+    @Test
+    void changeWithinThresholdDoesNotRegress() {
+        final RegressionGate.Comparison comparison = RegressionGate.compare("message-throughput:latency.p99Ms",
+                List.of(100.0, 100.1, 99.9), List.of(105.0, 105.1, 104.9), 0.1);
+
+        Assertions.assertTrue(comparison.diffLow() > 0);
+        Assertions.assertFalse(comparison.regressed());
+    }
+
+    @Test
+    void risingFailureRateRegresses() {
+        final RegressionGate.Comparison comparison = RegressionGate.compare("login-storm:failureRate",
+                List.of(0.01), List.of(0.05), 0.1);
+
+        Assertions.assertNull(comparison.diffLow(), "A single run per tag has no confidence interval");
+        Assertions.assertTrue(comparison.regressed());
+    }
+
+    @Test
+    void fallingThroughputRegresses() {
+        Assertions.assertTrue(RegressionGate.compare("message-throughput:messagesPerSecond", List.of(1000.0), List.of(800.0), 0.1).regressed());
+        Assertions.assertFalse(RegressionGate.compare("message-throughput:messagesPerSecond", List.of(800.0), List.of(1000.0), 0.1).regressed());
+    }
+}
@@ -0,0 +1,254 @@
+package org.igniterealtime.openfire.integration.benchmark;
+
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+
+import javax.net.SocketFactory;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes and stanzas that client connections send and receive.
+ *
+ * Bytes are counted on the wire: connections that are instrumented (see {@link #instrument}) use a socket factory that
+ * counts everything that is written to and read from their sockets, including stream negotiation, and (when TLS is
+ * used) the TLS handshake, records and padding. Stanzas are counted per type ({@code message}, {@code presence} or
+ * {@code iq}), together with their serialized size, for connections that are tracked (see {@link #track}). Serializing
+ * stanzas to determine their size costs some CPU time in the test process. Received stanzas are therefore counted by
+ * an asynchronous listener, so that they are not serialized ahead of the (synchronous) listeners that measure their
+ * latency; the counts of stanzas that were received just before a summary is taken may lag behind.
+ *
+ * An instance accumulates the counts of all connections it instruments and tracks, so that either a single connection
+ * or a group of connections (such as all senders of a benchmark) can be accounted.
+ */
+public final class WireAccounting {
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Map<String, StanzaCounters> stanzasIn = new ConcurrentHashMap<>();
+    private final Map<String, StanzaCounters> stanzasOut = new ConcurrentHashMap<>();
+
+    /**
+     * Makes connections that are created from a configuration count the bytes they send and receive.
+     *
+     * @param builder the configuration of the connections
+     * @return the builder
+     */
+    public XMPPTCPConnectionConfiguration.Builder instrument(XMPPTCPConnectionConfiguration.Builder builder) {
+        return builder.setSocketFactory(new CountingSocketFactory());
+    }
+
+    /**
+     * Counts the stanzas that a connection sends and receives.
+     *
+     * @param connection the connection
+     * @param <C>        the type of the connection
+     * @return the connection
+     */
+    public <C extends XMPPConnection> C track(C connection) {
+        connection.addStanzaSendingListener(stanza -> count(stanzasOut, stanza), stanza -> true);
+        connection.addAsyncStanzaListener(stanza -> count(stanzasIn, stanza), stanza -> true);
+        return connection;
+    }
+
+    private static void count(Map<String, StanzaCounters> counters, Stanza stanza) {
+        final StanzaCounters type = counters.computeIfAbsent(stanza.getElementName(), name -> new StanzaCounters());
+        type.count.increment();
+        type.bytes.add(stanza.toXML().toString().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * Returns the number of bytes received by all instrumented connections.
+     *
+     * @return the number of bytes received
+     */
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * Returns the number of bytes sent by all instrumented connections.
+     *
+     * @return the number of bytes sent
+     */
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Returns the number of stanzas received by all tracked connections.
+     *
+     * @return the number of stanzas received
+     */
+    public long getStanzasIn() {
+        return stanzasIn.values().stream().mapToLong(counters -> counters.count.sum()).sum();
+    }
+
+    /**
+     * Returns the number of stanzas sent by all tracked connections.
+     *
+     * @return the number of stanzas sent
+     */
+    public long getStanzasOut() {
+        return stanzasOut.values().stream().mapToLong(counters -> counters.count.sum()).sum();
+    }
+
+    /**
+     * Resets the byte and stanza counts, for example to exclude stream negotiation from the counts of a step of a
+     * benchmark. Bytes and stanzas that are in transit while the counts are reset may or may not be counted.
+     */
+    public void reset() {
+        bytesIn.reset();
+        bytesOut.reset();
+        stanzasIn.clear();
+        stanzasOut.clear();
+    }
+
+    /**
+     * Returns a summary of the counts, suitable for inclusion in a benchmark report.
+     *
+     * @return the number of instrumented sockets, the bytes and stanzas in both directions, the average number of
+     * wire bytes per stanza, and the number and serialized size of stanzas per type and direction
+     */
+    public Map<String, Object> summary() {
+        final long in = getStanzasIn();
+        final long out = getStanzasOut();
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("sockets", connections.sum());
+        summary.put("bytesIn", getBytesIn());
+        summary.put("bytesOut", getBytesOut());
+        summary.put("stanzasIn", in);
+        summary.put("stanzasOut", out);
+        summary.put("wireBytesPerStanzaIn", in == 0 ? null : (double) getBytesIn() / in);
+        summary.put("wireBytesPerStanzaOut", out == 0 ? null : (double) getBytesOut() / out);
+        final Map<String, Map<String, Object>> types = new TreeMap<>();
+        stanzasIn.forEach((type, counters) -> types.computeIfAbsent(type, t -> new LinkedHashMap<>()).put("in", counters.toMap()));
+        stanzasOut.forEach((type, counters) -> types.computeIfAbsent(type, t -> new LinkedHashMap<>()).put("out", counters.toMap()));
+        summary.put("stanzaTypes", types);
+        return summary;
+    }
+
+    private static final class StanzaCounters {
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        Map<String, Object> toMap() {
+            final long stanzas = count.sum();
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("stanzas", stanzas);
+            map.put("xmlBytes", bytes.sum());
+            map.put("xmlBytesPerStanza", stanzas == 0 ? null : (double) bytes.sum() / stanzas);
+            return map;
+        }
+    }
+
+    /**
+     * Creates sockets that count the bytes that are read from and written to them.
+     */
+    private final class CountingSocketFactory extends SocketFactory {
+        @Override
+        public Socket createSocket() {
+            connections.increment();
+            return new CountingSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            final Socket socket = createSocket();
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            final Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localHost, localPort));
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            final Socket socket = createSocket();
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            final Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(new InetSocketAddress(address, port));
+            return socket;
+        }
+    }
+
+    /**
+     * A socket of which the streams count the bytes that pass through them. When TLS is negotiated, the TLS socket is
+     * layered on top of this socket, so that encrypted bytes are counted.
+     */
+    private final class CountingSocket extends Socket {
+        private InputStream in;
+        private OutputStream out;
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        final int b = super.read();
+                        if (b >= 0) {
+                            bytesIn.increment();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        final int read = super.read(b, off, len);
+                        if (read > 0) {
+                            bytesIn.add(read);
+                        }
+                        return read;
+                    }
+                };
+            }
+            return in;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytesOut.increment();
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        bytesOut.add(len);
+                    }
+                };
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Waits for all containers of a Docker Compose project to become healthy.
+ *
+ * Rather than polling each container, the watcher subscribes to the Docker event stream of the project, and tracks
+ * the health of all its containers in parallel. The current state of every container is inspected once, after the
+ * subscription is in place, so that no transitions are missed. Containers that do not define a health check are
+ * considered healthy as soon as they are running.
+ *
+ * The wait completes when the last container reports healthy. It fails fast when any container reports
+ * {@code unhealthy} or exits with a non-zero exit code, and when the event stream fails.
+ */
+public class ContainerHealthWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerHealthWatcher.class);
+
+    private enum Status { STARTING, HEALTHY, FAILED }
+
+    private static final class ContainerState {
+        final String service;
+        Status status = Status.STARTING;
+        Duration timeToHealthy;
+        String reason;
+
+        ContainerState(String service) {
+            this.service = service;
+        }
+    }
+
+    private final DockerClient client;
+    private final String project;
+    private final Set<String> requiredServices;
+    private final Map<String, ContainerState> containers = new LinkedHashMap<>();
+    private long start;
+
+    // Set when the event stream fails, after which no further transitions are observed
+    private IOException failure;
+
+    /**
+     * Creates a watcher.
+     *
+     * @param client           the client used to communicate with the Docker daemon
+     * @param project          the Docker Compose project name
+     * @param requiredServices names of services that must be present (and healthy) before the wait can complete
+     */
+    public ContainerHealthWatcher(DockerClient client, String project, Collection<String> requiredServices) {
+        this.client = client;
+        this.project = project;
+        this.requiredServices = new TreeSet<>(requiredServices);
+    }
+
+    /**
+     * Blocks until all containers of the project are healthy.
+     *
+     * @param deadline the point in time after which the wait is abandoned
+     * @return the time it took for each container to become healthy, measured from the start of the wait, keyed by
+     *         container name
+     * @throws IllegalStateException if a container becomes unhealthy, exits, or does not become healthy before the
+     *                               deadline
+     * @throws InterruptedException  if the thread is interrupted while waiting
+     * @throws IOException           if an error occurs communicating with the Docker daemon
+     */
+    public Map<String, Duration> await(Instant deadline) throws IOException, InterruptedException {
+        start = System.nanoTime();
+        final ResultCallback.Adapter<Event> events = client.eventsCmd()
+                .withEventTypeFilter(EventType.CONTAINER)
+                .withLabelFilter(Map.of("com.docker.compose.project", project))
+                .exec(new ResultCallback.Adapter<>() {
+                    @Override
+                    public void onNext(Event event) {
+                        try {
+                            handle(event);
+                        } catch (RuntimeException e) {
+                            // Later events of the container (such as its health status) are still processed.
+                            logger.warn("Unable to process {} event of container {}", event.getAction(), event.getActor().getId(), e);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        fail(throwable);
+                        super.onError(throwable);
+                    }
+                });
+        try {
+            events.awaitStarted();
+            for (Container container : DockerCommands.listContainers(client, project)) {
+                inspect(container.getId());
+            }
+            return waitUntilHealthy(deadline);
+        } catch (DockerException e) {
+            throw new IOException("Failed to inspect the containers of " + project, e);
+        } finally {
+            events.close();
+        }
+    }
+
+    private synchronized Map<String, Duration> waitUntilHealthy(Instant deadline) throws IOException, InterruptedException {
+        while (true) {
+            if (failure != null) {
+                throw failure;
+            }
+            for (Map.Entry<String, ContainerState> entry : containers.entrySet()) {
+                if (entry.getValue().status == Status.FAILED) {
+                    throw new IllegalStateException("Container " + entry.getKey() + " failed: " + entry.getValue().reason);
+                }
+            }
+            final Set<String> missing = new TreeSet<>(requiredServices);
+            containers.values().forEach(state -> missing.remove(state.service));
+            final boolean allHealthy = containers.values().stream().allMatch(state -> state.status == Status.HEALTHY);
+            if (missing.isEmpty() && allHealthy && !containers.isEmpty()) {
+                final Map<String, Duration> result = new LinkedHashMap<>();
+                containers.forEach((name, state) -> result.put(name, state.timeToHealthy));
+                return result;
+            }
+
+            final long remaining = Duration.between(Instant.now(), deadline).toMillis();
+            if (remaining <= 0) {
+                final Set<String> pending = new TreeSet<>(missing);
+                containers.forEach((name, state) -> {
+                    if (state.status != Status.HEALTHY) {
+                        pending.add(name);
+                    }
+                });
+                throw new IllegalStateException("Timed out waiting for " + String.join(", ", pending) + " to become healthy");
+            }
+            wait(remaining);
+        }
+    }
+
+    private void inspect(String id) {
+        final InspectContainerResponse container = client.inspectContainerCmd(id).exec();
+        final String name = container.getName().replaceFirst("^/", "");
+        final String service = container.getConfig().getLabels().get("com.docker.compose.service");
+        final String health = container.getState().getHealth() == null ? null : container.getState().getHealth().getStatus();
+        final String state = container.getState().getStatus();
+
+        if (health != null) {
+            update(name, service, switch (health) {
+                case "healthy" -> Status.HEALTHY;
+                case "unhealthy" -> Status.FAILED;
+                default -> Status.STARTING;
+            }, "reported " + health);
+        } else if ("running".equals(state)) {
+            update(name, service, Status.HEALTHY, "running (no health check)");
+        } else if ("exited".equals(state) && Long.valueOf(0).equals(container.getState().getExitCodeLong())) {
+            update(name, service, Status.HEALTHY, "completed successfully");
+        } else if ("exited".equals(state) || "dead".equals(state)) {
+            update(name, service, Status.FAILED, "container is " + state);
+        } else {
+            update(name, service, Status.STARTING, "container is " + state);
+        }
+    }
+
+    private void handle(Event event) {
+        final String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        final Map<String, String> attributes = event.getActor() == null ? null : event.getActor().getAttributes();
+        if (action == null || attributes == null || attributes.get("name") == null) {
+            return;
+        }
+        final String name = attributes.get("name");
+        final String service = attributes.get("com.docker.compose.service");
+        switch (action) {
+            case "health_status: healthy" -> update(name, service, Status.HEALTHY, "reported healthy");
+            case "health_status: unhealthy" -> update(name, service, Status.FAILED, "reported unhealthy");
+            case "die" -> {
+                // One-off containers (for example, initialisation jobs) are expected to exit successfully.
+                final String exitCode = attributes.get("exitCode");
+                if ("0".equals(exitCode)) {
+                    update(name, service, Status.HEALTHY, "completed successfully");
+                } else {
+                    update(name, service, Status.FAILED, "container exited with code " + exitCode);
+                }
+            }
+            case "start" -> inspect(event.getActor().getId());
+            default -> { }
+        }
+    }
+
+    private synchronized void fail(Throwable cause) {
+        failure = new IOException("Docker event stream of " + project + " failed", cause);
+        notifyAll();
+    }
+
+    private synchronized void update(String name, String service, Status status, String reason) {
+        final ContainerState state = containers.computeIfAbsent(name, n -> new ContainerState(service));
+        if (state.status == status || (state.status == Status.HEALTHY && status == Status.STARTING)) {
+            return;
+        }
+        state.status = status;
+        state.reason = reason;
+        if (status == Status.HEALTHY) {
+            state.timeToHealthy = Duration.ofNanos(System.nanoTime() - start);
+            logger.info("Container {} healthy after {} ms ({})", name, state.timeToHealthy.toMillis(), reason);
+        } else if (status == Status.FAILED) {
+            logger.error("Container {} failed: {}", name, reason);
+        }
+        notifyAll();
+    }
+}
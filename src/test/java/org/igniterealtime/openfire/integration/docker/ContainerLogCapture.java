@@ -0,0 +1,273 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams the logs of all containers of a Docker Compose project to files, while the containers are running.
+ *
+ * For services that write their log to a file inside the container (such as Openfire), that file is followed by
+ * executing {@code tail -F} in the container. For all other services, the standard output and standard error of the
+ * container are followed through the logs endpoint of the Docker Engine API. Only lines that are logged after capture
+ * starts are captured. The output of a container that runs with a TTY is a single raw stream (the TTY merges standard
+ * output and standard error), and is split into lines as such.
+ *
+ * Logs are appended to a file per service in the output directory, as they are produced. Every line is also passed to
+ * an optional {@link LineListener}, which can be used to extract events from the logs while they are being written.
+ *
+ * The Docker event stream of the project is followed, so that containers that are started (or restarted) after
+ * capture started are captured too.
+ */
+public class ContainerLogCapture implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerLogCapture.class);
+
+    /**
+     * Receives the lines of the captured logs. Implementations must be thread-safe, as lines of different containers
+     * are delivered concurrently.
+     */
+    @FunctionalInterface
+    public interface LineListener {
+        /**
+         * Invoked for every captured line.
+         *
+         * @param service the Docker Compose service of the container that logged the line
+         * @param line    the line, without line terminator
+         */
+        void onLine(String service, String line);
+    }
+
+    private final DockerClient client;
+    private final String project;
+    private final Path outputDirectory;
+    private final Map<String, String> logFiles;
+    private final LineListener listener;
+
+    // Streams that are being followed, keyed by container ID
+    private final Map<String, Closeable> streams = new ConcurrentHashMap<>();
+    private final Map<String, BufferedWriter> writers = new ConcurrentHashMap<>();
+    private Closeable events;
+    private volatile boolean closed;
+
+    /**
+     * Creates a log capture.
+     *
+     * @param client          the client used to communicate with the Docker daemon
+     * @param project         the Docker Compose project name
+     * @param outputDirectory the directory to which the logs are written, one file per service
+     * @param logFiles        paths of the log files inside the containers of services that log to a file, keyed by
+     *                        service
+     * @param listener        receives every captured line, or {@code null}
+     */
+    public ContainerLogCapture(DockerClient client, String project, Path outputDirectory, Map<String, String> logFiles, LineListener listener) {
+        this.client = client;
+        this.project = project;
+        this.outputDirectory = outputDirectory;
+        this.logFiles = logFiles;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts capturing the logs of all running containers, and of all containers that are started later.
+     *
+     * @throws IOException if the output directory cannot be created, or the Docker daemon cannot be reached
+     */
+    public synchronized void start() throws IOException {
+        if (events != null) {
+            return;
+        }
+        Files.createDirectories(outputDirectory);
+        try {
+            events = client.eventsCmd()
+                    .withEventTypeFilter(EventType.CONTAINER)
+                    .withEventFilter("start")
+                    .withLabelFilter(Map.of("com.docker.compose.project", project))
+                    .exec(new ResultCallback.Adapter<Event>() {
+                        @Override
+                        public void onNext(Event event) {
+                            if (event.getActor() != null && event.getActor().getId() != null) {
+                                attach(event.getActor().getId());
+                            }
+                        }
+                    });
+            for (Container container : DockerCommands.listContainers(client, project)) {
+                if ("running".equals(container.getState())) {
+                    attach(container.getId());
+                }
+            }
+        } catch (DockerException e) {
+            throw new IOException("Unable to follow the containers of " + project, e);
+        }
+        logger.info("Capturing container logs to {}", outputDirectory);
+    }
+
+    /**
+     * Stops capturing logs, and closes all log files.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeQuietly(events);
+        streams.values().forEach(ContainerLogCapture::closeQuietly);
+        streams.clear();
+        for (BufferedWriter writer : writers.values()) {
+            synchronized (writer) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    logger.debug("Unable to close log file", e);
+                }
+            }
+        }
+        writers.clear();
+    }
+
+    private synchronized void attach(String id) {
+        if (closed || streams.containsKey(id)) {
+            return;
+        }
+        try {
+            final InspectContainerResponse container = client.inspectContainerCmd(id).exec();
+            final String service = container.getConfig().getLabels().get("com.docker.compose.service");
+            final String name = service != null ? service : container.getName().replaceFirst("^/", "");
+            final String logFile = logFiles.get(name);
+            // Commands are executed without a TTY, so only the logs of the container itself can be a raw stream.
+            final boolean tty = logFile == null && Boolean.TRUE.equals(container.getConfig().getTty());
+            final LogStream stream = new LogStream(id, name, tty);
+            streams.put(id, stream);
+            if (logFile != null) {
+                final String execId = client.execCreateCmd(id)
+                        .withAttachStdout(true)
+                        .withAttachStderr(true)
+                        .withCmd("tail", "-n", "0", "-F", logFile)
+                        .exec()
+                        .getId();
+                client.execStartCmd(execId).exec(stream);
+            } else {
+                client.logContainerCmd(id)
+                        .withFollowStream(true)
+                        .withStdOut(true)
+                        .withStdErr(true)
+                        .withSince((int) (System.currentTimeMillis() / 1000))
+                        .exec(stream);
+            }
+        } catch (DockerException e) {
+            // The container may have stopped in the meantime.
+            streams.remove(id);
+            logger.warn("Unable to capture the logs of container {}", id, e);
+        }
+    }
+
+    /**
+     * Receives the frames of a log stream, and processes every complete line as soon as it is available.
+     */
+    private final class LogStream extends ResultCallback.Adapter<Frame> {
+        private final String id;
+        private final String service;
+        private final boolean tty;
+        private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+        LogStream(String id, String service, boolean tty) {
+            this.id = id;
+            this.service = service;
+            this.tty = tty;
+        }
+
+        @Override
+        public void onNext(Frame frame) {
+            final ByteArrayOutputStream buffer = !tty && frame.getStreamType() == StreamType.STDERR ? stderr : stdout;
+            for (byte b : frame.getPayload()) {
+                if (b == '\n') {
+                    line(service, buffer.toString(StandardCharsets.UTF_8));
+                    buffer.reset();
+                } else if (b != '\r') {
+                    buffer.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Expected when the container stops, or capture is stopped.
+            logger.debug("Log stream of {} closed", service, throwable);
+            finish();
+        }
+
+        @Override
+        public void onComplete() {
+            finish();
+        }
+
+        private void finish() {
+            for (ByteArrayOutputStream buffer : new ByteArrayOutputStream[]{stdout, stderr}) {
+                if (buffer.size() > 0) {
+                    line(service, buffer.toString(StandardCharsets.UTF_8));
+                    buffer.reset();
+                }
+            }
+            streams.remove(id, this);
+            closeQuietly(this);
+        }
+    }
+
+    private void line(String service, String line) {
+        if (closed) {
+            return;
+        }
+        final BufferedWriter writer = writers.computeIfAbsent(service, s -> {
+            try {
+                return Files.newBufferedWriter(outputDirectory.resolve(s + ".log"), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create log file for " + s, e);
+            }
+        });
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                logger.debug("Unable to write log of {}", service, e);
+            }
+        }
+        if (listener != null) {
+            try {
+                listener.onLine(service, line);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to process log line of {}: {}", service, line, e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close stream", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import org.igniterealtime.openfire.integration.util.Csv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the resource usage of all containers of a Docker Compose project at a fixed interval, and writes the samples
+ * as a time series to a CSV file.
+ *
+ * Samples are obtained from the stats endpoint of the Docker Engine API, one at a time. CPU usage is computed from
+ * the difference between consecutive samples of a container, like {@code docker stats} does. Memory usage excludes
+ * the (inactive) page cache. The number of processes includes threads, which makes it a measure of the number of
+ * threads of the Openfire and PostgreSQL processes.
+ *
+ * Every sample is tagged with the phase that is current at the time of sampling (see {@link #setPhase(String)}), so
+ * that resource usage can be attributed to the test, or the step of a benchmark, that caused it. The containers of the
+ * project are listed anew for every sample, so that containers that are started later, or restarted, are included.
+ *
+ * The CSV file has the following columns:
+ * <ul>
+ *     <li>{@code timestamp} - wall clock time of the sample, in milliseconds since the epoch</li>
+ *     <li>{@code elapsedMs} - time since the sampler was started</li>
+ *     <li>{@code phase} - the phase that was current when the sample was taken (empty if none)</li>
+ *     <li>{@code container} - the name of the container</li>
+ *     <li>{@code cpuPercent} - CPU usage since the previous sample, where 100 equals one fully used CPU</li>
+ *     <li>{@code memoryBytes} and {@code memoryLimitBytes} - memory usage and limit</li>
+ *     <li>{@code pids} - number of processes and threads</li>
+ *     <li>{@code netRxBytes} and {@code netTxBytes} - cumulative network traffic</li>
+ *     <li>{@code blockReadBytes} and {@code blockWriteBytes} - cumulative block I/O</li>
+ * </ul>
+ */
+public class ContainerStatsSampler implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerStatsSampler.class);
+
+    private static final String HEADER = "timestamp,elapsedMs,phase,container,cpuPercent,memoryBytes,memoryLimitBytes,pids,netRxBytes,netTxBytes,blockReadBytes,blockWriteBytes";
+
+    private final DockerClient client;
+    private final String project;
+    private final Duration interval;
+    private final Path output;
+
+    // Previous CPU readings of every container, used to compute CPU usage over the sampling interval
+    private final Map<String, long[]> previousCpu = new HashMap<>();
+
+    private volatile String phase;
+    private ScheduledExecutorService executor;
+    private BufferedWriter writer;
+    private long start;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param client   the client used to communicate with the Docker daemon
+     * @param project  the Docker Compose project name
+     * @param interval the time between consecutive samples
+     * @param output   the file to which samples are written (an existing file is replaced)
+     */
+    public ContainerStatsSampler(DockerClient client, String project, Duration interval, Path output) {
+        this.client = client;
+        this.project = project;
+        this.interval = interval;
+        this.output = output;
+    }
+
+    /**
+     * Sets the phase with which subsequent samples are tagged.
+     *
+     * @param phase the phase, or {@code null} for none
+     */
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Returns the phase with which samples are currently tagged.
+     *
+     * @return the current phase, or {@code null} for none
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * Starts sampling, in the background.
+     *
+     * @throws IOException if the output file cannot be created
+     */
+    public synchronized void start() throws IOException {
+        if (executor != null) {
+            return;
+        }
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.newLine();
+        start = System.nanoTime();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "docker-stats-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sample, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Sampling container resource usage every {} ms to {}", interval.toMillis(), output);
+    }
+
+    /**
+     * Stops sampling, and closes the output file.
+     *
+     * @throws IOException if the output file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(interval.toMillis() + 10_000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        writer.close();
+    }
+
+    private void sample() {
+        try {
+            final List<Container> containers = DockerCommands.listContainers(client, project);
+            final Set<String> running = new HashSet<>();
+            for (Container container : containers) {
+                if (!"running".equals(container.getState())) {
+                    continue;
+                }
+                final String id = container.getId();
+                final String[] names = container.getNames();
+                final String name = names == null || names.length == 0 ? id : names[0].replaceFirst("^/", "");
+                running.add(id);
+                try {
+                    write(name, id, DockerCommands.stats(client, id));
+                } catch (IOException e) {
+                    // The container may have stopped in the meantime.
+                    logger.debug("Unable to sample container {}", name, e);
+                }
+            }
+            previousCpu.keySet().retainAll(running);
+            writer.flush();
+        } catch (Exception e) {
+            logger.warn("Unable to sample container resource usage", e);
+        }
+    }
+
+    private void write(String name, String id, Statistics stats) throws IOException {
+        final long cpuTotal = stats.getCpuStats() == null || stats.getCpuStats().getCpuUsage() == null ? 0 : value(stats.getCpuStats().getCpuUsage().getTotalUsage());
+        final long systemTotal = stats.getCpuStats() == null ? 0 : value(stats.getCpuStats().getSystemCpuUsage());
+        long cpus = stats.getCpuStats() == null ? 0 : value(stats.getCpuStats().getOnlineCpus());
+        if (cpus <= 0) {
+            final List<Long> perCpu = stats.getCpuStats() == null || stats.getCpuStats().getCpuUsage() == null ? null : stats.getCpuStats().getCpuUsage().getPercpuUsage();
+            cpus = perCpu != null && !perCpu.isEmpty() ? perCpu.size() : 1;
+        }
+        final long[] previous = previousCpu.put(id, new long[]{cpuTotal, systemTotal});
+        String cpuPercent = "";
+        if (previous != null && systemTotal > previous[1]) {
+            final double percent = (double) (cpuTotal - previous[0]) / (systemTotal - previous[1]) * cpus * 100;
+            cpuPercent = String.format(Locale.ROOT, "%.2f", percent);
+        }
+
+        // Like 'docker stats', exclude the page cache (cgroup v2 reports 'inactive_file', v1 'total_inactive_file').
+        long memory = 0;
+        long memoryLimit = 0;
+        if (stats.getMemoryStats() != null) {
+            memory = value(stats.getMemoryStats().getUsage());
+            memoryLimit = value(stats.getMemoryStats().getLimit());
+            final long inactive = stats.getMemoryStats().getStats() == null ? 0
+                    : value(stats.getMemoryStats().getStats().getInactiveFile()) + value(stats.getMemoryStats().getStats().getTotalInactiveFile());
+            if (inactive < memory) {
+                memory -= inactive;
+            }
+        }
+
+        long rx = 0;
+        long tx = 0;
+        if (stats.getNetworks() != null) {
+            for (StatisticNetworksConfig network : stats.getNetworks().values()) {
+                rx += value(network.getRxBytes());
+                tx += value(network.getTxBytes());
+            }
+        }
+        long read = 0;
+        long written = 0;
+        if (stats.getBlkioStats() != null && stats.getBlkioStats().getIoServiceBytesRecursive() != null) {
+            for (BlkioStatEntry entry : stats.getBlkioStats().getIoServiceBytesRecursive()) {
+                final String op = String.valueOf(entry.getOp());
+                if (op.equalsIgnoreCase("read")) {
+                    read += value(entry.getValue());
+                } else if (op.equalsIgnoreCase("write")) {
+                    written += value(entry.getValue());
+                }
+            }
+        }
+
+        writer.write(String.join(",",
+                Long.toString(System.currentTimeMillis()),
+                Long.toString(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)),
+                Csv.escape(phase),
+                Csv.escape(name),
+                cpuPercent,
+                Long.toString(memory),
+                Long.toString(memoryLimit),
+                Long.toString(stats.getPidsStats() == null ? 0 : value(stats.getPidsStats().getCurrent())),
+                Long.toString(rx),
+                Long.toString(tx),
+                Long.toString(read),
+                Long.toString(written)));
+        writer.newLine();
+    }
+
+    private static long value(Long value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,211 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.api.model.StreamType;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.testcontainers.DockerClientFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Docker operations that are used throughout the test harness, built on the Docker client that Testcontainers
+ * provides.
+ *
+ * The client is configured by Testcontainers from the environment ({@code DOCKER_HOST}, {@code ~/.testcontainers.properties}
+ * and the like), and is safe to use from multiple threads.
+ */
+public final class DockerCommands {
+
+    private DockerCommands() {
+    }
+
+    /**
+     * Returns the Docker client for the Docker daemon configured in the environment.
+     *
+     * @return the shared Docker client
+     */
+    public static DockerClient client() {
+        return DockerClientFactory.instance().client();
+    }
+
+    /**
+     * Lists all containers (running or not) that belong to a Docker Compose project.
+     *
+     * @param client  the Docker client
+     * @param project the Docker Compose project name
+     * @return the container summaries, as returned by the Docker daemon
+     */
+    public static List<Container> listContainers(DockerClient client, String project) {
+        return client.listContainersCmd()
+                .withShowAll(true)
+                .withLabelFilter(Map.of("com.docker.compose.project", project))
+                .exec();
+    }
+
+    /**
+     * Returns the Docker Compose service that a container belongs to.
+     *
+     * @param container the container summary
+     * @return the service name, or {@code null} if the container was not created by Docker Compose
+     */
+    public static String service(Container container) {
+        return container.getLabels() == null ? null : container.getLabels().get("com.docker.compose.service");
+    }
+
+    /**
+     * Starts a container. Starting a container that is already running has no effect.
+     *
+     * @param client    the Docker client
+     * @param container the name or ID of the container
+     * @throws IOException if the container cannot be started
+     */
+    public static void start(DockerClient client, String container) throws IOException {
+        try {
+            client.startContainerCmd(container).exec();
+        } catch (NotModifiedException e) {
+            // Already running
+        } catch (DockerException e) {
+            throw new IOException("Failed to start " + container, e);
+        }
+    }
+
+    /**
+     * Stops a container. Stopping a container that is not running has no effect.
+     *
+     * @param client    the Docker client
+     * @param container the name or ID of the container
+     * @param timeout   time to wait for the container to stop gracefully, before it is killed
+     * @throws IOException if the container cannot be stopped
+     */
+    public static void stop(DockerClient client, String container, Duration timeout) throws IOException {
+        try {
+            client.stopContainerCmd(container).withTimeout((int) timeout.toSeconds()).exec();
+        } catch (NotModifiedException e) {
+            // Not running
+        } catch (DockerException e) {
+            throw new IOException("Failed to stop " + container, e);
+        }
+    }
+
+    /**
+     * The outcome of a command that was executed in a container.
+     *
+     * @param exitCode the exit code of the command
+     * @param stdout   everything the command wrote to its standard output
+     * @param stderr   everything the command wrote to its standard error
+     */
+    public record ExecResult(long exitCode, String stdout, String stderr) {
+    }
+
+    /**
+     * Executes a command in a running container, and waits for it to complete.
+     *
+     * @param client    the Docker client
+     * @param container the name or ID of the container
+     * @param command   the command to execute, and its arguments
+     * @return the outcome of the command
+     * @throws IOException if the command cannot be executed
+     */
+    public static ExecResult exec(DockerClient client, String container, String... command) throws IOException {
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        try {
+            final String execId = client.execCreateCmd(container)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .withCmd(command)
+                    .exec()
+                    .getId();
+            client.execStartCmd(execId).exec(new ResultCallback.Adapter<Frame>() {
+                @Override
+                public void onNext(Frame frame) {
+                    (frame.getStreamType() == StreamType.STDERR ? stderr : stdout).writeBytes(frame.getPayload());
+                }
+            }).awaitCompletion();
+            final Long exitCode = client.inspectExecCmd(execId).exec().getExitCodeLong();
+            return new ExecResult(exitCode == null ? -1 : exitCode,
+                    stdout.toString(StandardCharsets.UTF_8), stderr.toString(StandardCharsets.UTF_8));
+        } catch (DockerException e) {
+            throw new IOException("Failed to execute " + List.of(command) + " in " + container, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while executing " + List.of(command) + " in " + container);
+        }
+    }
+
+    /**
+     * Copies files into a directory of a container. The container does not need to be running. Existing files are
+     * replaced.
+     *
+     * @param client    the Docker client
+     * @param container the name or ID of the container
+     * @param directory the absolute path of an existing directory in the container
+     * @param files     the contents of the files, keyed by file name
+     * @throws IOException if the files cannot be copied
+     */
+    public static void copyToContainer(DockerClient client, String container, String directory, Map<String, byte[]> files) throws IOException {
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(tar)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                final TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(file.getValue().length);
+                entry.setMode(0644);
+                out.putArchiveEntry(entry);
+                out.write(file.getValue());
+                out.closeArchiveEntry();
+            }
+        }
+        try {
+            client.copyArchiveToContainerCmd(container)
+                    .withRemotePath(directory)
+                    .withTarInputStream(new ByteArrayInputStream(tar.toByteArray()))
+                    .exec();
+        } catch (DockerException e) {
+            throw new IOException("Failed to copy " + files.keySet() + " to " + directory + " in " + container, e);
+        }
+    }
+
+    /**
+     * Returns a single sample of the resource usage statistics of a running container.
+     *
+     * @param client    the Docker client
+     * @param container the name or ID of the container
+     * @return the statistics of the container
+     * @throws IOException if the statistics cannot be retrieved, for example because the container is not running
+     */
+    public static Statistics stats(DockerClient client, String container) throws IOException {
+        final AtomicReference<Statistics> result = new AtomicReference<>();
+        try (ResultCallback.Adapter<Statistics> callback = client.statsCmd(container).withNoStream(true).exec(new ResultCallback.Adapter<>() {
+            @Override
+            public void onNext(Statistics statistics) {
+                result.compareAndSet(null, statistics);
+            }
+        })) {
+            callback.awaitCompletion();
+        } catch (DockerException e) {
+            throw new IOException("Failed to retrieve the statistics of " + container, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrieving the statistics of " + container);
+        }
+        if (result.get() == null) {
+            throw new IOException("No statistics were returned for " + container);
+        }
+        return result.get();
+    }
+}
@@ -0,0 +1,271 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Inspects the Java virtual machine that runs in a container, without requiring any tools of a JDK in the container.
+ *
+ * The JVM is found through its performance data file ({@code /tmp/hsperfdata_<user>/<pid>}), the memory-mapped file
+ * that HotSpot maintains for {@code jstat}, or otherwise as the first process named {@code java}. The performance data
+ * file is copied out of the container and decoded, which gives access to the same counters that {@code jstat} reports,
+ * such as the occupancy of the heap. The number of threads and open file descriptors are read from {@code /proc}, as
+ * are the TCP sockets of the network namespace of the container.
+ *
+ * A probe takes a single {@code docker exec} round-trip, and does not affect the JVM, which makes it cheap enough to
+ * repeat every few seconds for hours.
+ */
+public class JvmProbe {
+
+    // Locates the JVM, and prints its process ID, thread and file descriptor counts, performance data and TCP sockets
+    private static final String SCRIPT = String.join("\n",
+            "pid=''; perf=''",
+            "for f in /tmp/hsperfdata_*/[0-9]*; do",
+            "  if [ -d \"/proc/${f##*/}\" ]; then pid=${f##*/}; perf=$f; break; fi",
+            "done",
+            "if [ -z \"$pid\" ]; then",
+            "  for p in /proc/[0-9]*; do",
+            "    if [ \"$(cat $p/comm 2>/dev/null)\" = java ]; then pid=${p##*/}; break; fi",
+            "  done",
+            "fi",
+            "echo \"pid $pid\"",
+            "if [ -n \"$pid\" ]; then",
+            "  echo \"threads $(ls /proc/$pid/task 2>/dev/null | wc -l)\"",
+            "  echo \"fds $(ls /proc/$pid/fd 2>/dev/null | wc -l)\"",
+            "fi",
+            "if [ -n \"$perf\" ]; then echo \"perfdata $(base64 \"$perf\" | tr -d '\\n')\"; fi",
+            "echo tcp",
+            "cat /proc/net/tcp /proc/net/tcp6 2>/dev/null || true");
+
+    private static final Pattern HEAP_SPACE_USED = Pattern.compile("sun\\.gc\\.generation\\.\\d+\\.space\\.\\d+\\.used");
+    private static final Pattern COLLECTIONS = Pattern.compile("sun\\.gc\\.collector\\.\\d+\\.invocations");
+
+    // Magic number at the start of every performance data file
+    private static final int PERFDATA_MAGIC = 0xcafec0c0;
+
+    /**
+     * A TCP socket, as listed in {@code /proc/net/tcp}.
+     *
+     * @param localPort  the local port
+     * @param remotePort the remote port
+     * @param state      the state of the socket, such as {@code ESTABLISHED} or {@code CLOSE_WAIT}
+     */
+    public record TcpSocket(int localPort, int remotePort, String state) {
+    }
+
+    /**
+     * The state of a JVM at one point in time.
+     *
+     * @param pid             the process ID of the JVM in the container
+     * @param threads         the number of threads of the JVM, or {@code null} if it cannot be determined
+     * @param fileDescriptors the number of open file descriptors of the JVM, or {@code null} if it cannot be determined
+     * @param counters        the performance counters of the JVM, keyed by name, with {@code Long} or {@code String}
+     *                        values; empty if the JVM does not publish performance data
+     * @param sockets         the TCP sockets in the network namespace of the container
+     */
+    public record Sample(long pid, Integer threads, Integer fileDescriptors, Map<String, Object> counters, List<TcpSocket> sockets) {
+
+        /**
+         * Returns the number of bytes that are used in all spaces of the heap.
+         *
+         * @return the heap occupancy, or {@code null} if the JVM does not publish it
+         */
+        public Long getHeapUsedBytes() {
+            return sum(HEAP_SPACE_USED);
+        }
+
+        /**
+         * Returns the number of garbage collections, of all collectors, since the JVM started.
+         *
+         * @return the number of collections, or {@code null} if the JVM does not publish it
+         */
+        public Long getCollections() {
+            return sum(COLLECTIONS);
+        }
+
+        /**
+         * Returns the number of bytes that are used by class metadata, as of the last garbage collection (the JVM only
+         * updates this counter when it collects garbage).
+         *
+         * @return the metaspace occupancy, or {@code null} if the JVM does not publish it
+         */
+        public Long getMetaspaceUsedBytes() {
+            return counters.get("sun.gc.metaspace.used") instanceof Long used ? used : null;
+        }
+
+        /**
+         * Returns the number of sockets in a state, of which the local or remote port is one of a number of ports.
+         *
+         * @param state       the state of the sockets
+         * @param localPorts  the local ports of the sockets to count
+         * @param remotePorts the remote ports of the sockets to count
+         * @return the number of sockets
+         */
+        public int countSockets(String state, List<Integer> localPorts, List<Integer> remotePorts) {
+            return (int) sockets.stream()
+                    .filter(socket -> socket.state().equals(state))
+                    .filter(socket -> localPorts.contains(socket.localPort()) || remotePorts.contains(socket.remotePort()))
+                    .count();
+        }
+
+        private Long sum(Pattern names) {
+            Long total = null;
+            for (Map.Entry<String, Object> counter : counters.entrySet()) {
+                if (counter.getValue() instanceof Long value && names.matcher(counter.getKey()).matches()) {
+                    total = (total == null ? 0 : total) + value;
+                }
+            }
+            return total;
+        }
+    }
+
+    private final DockerClient client;
+
+    /**
+     * Creates a probe.
+     *
+     * @param client the client used to communicate with the Docker daemon
+     */
+    public JvmProbe(DockerClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Inspects the JVM that runs in a container.
+     *
+     * @param container the ID or name of the container
+     * @return the state of the JVM
+     * @throws IOException if the container cannot be inspected, or does not run a JVM
+     */
+    public Sample sample(String container) throws IOException {
+        final DockerCommands.ExecResult result = DockerCommands.exec(client, container, "sh", "-c", SCRIPT);
+        if (result.exitCode() != 0) {
+            throw new IOException("Unable to inspect the JVM in container " + container + ": " + result.stderr().trim());
+        }
+        long pid = 0;
+        Integer threads = null;
+        Integer fileDescriptors = null;
+        Map<String, Object> counters = Map.of();
+        final List<TcpSocket> sockets = new ArrayList<>();
+        boolean tcp = false;
+        for (String line : result.stdout().lines().toList()) {
+            if (tcp) {
+                final TcpSocket socket = parseSocket(line);
+                if (socket != null) {
+                    sockets.add(socket);
+                }
+            } else if (line.equals("tcp")) {
+                tcp = true;
+            } else if (line.startsWith("pid ")) {
+                final String value = line.substring(4).trim();
+                pid = value.isEmpty() ? 0 : Long.parseLong(value);
+            } else if (line.startsWith("threads ")) {
+                threads = positive(line.substring(8));
+            } else if (line.startsWith("fds ")) {
+                fileDescriptors = positive(line.substring(4));
+            } else if (line.startsWith("perfdata ")) {
+                counters = parsePerfData(Base64.getDecoder().decode(line.substring(9).trim()));
+            }
+        }
+        if (pid == 0) {
+            throw new IOException("No JVM found in container " + container);
+        }
+        return new Sample(pid, threads, fileDescriptors, counters, sockets);
+    }
+
+    // A count of zero means that the directory could not be listed, as a running JVM always has threads and open files.
+    private static Integer positive(String value) {
+        final int count = Integer.parseInt(value.trim());
+        return count > 0 ? count : null;
+    }
+
+    /**
+     * Parses a line of {@code /proc/net/tcp} or {@code /proc/net/tcp6}, such as
+     * {@code 0: 0100007F:1466 00000000:0000 0A ...}, in which addresses, ports and the state are hexadecimal.
+     */
+    static TcpSocket parseSocket(String line) {
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length < 4 || !fields[0].endsWith(":")) {
+            return null;
+        }
+        final int localPort = Integer.parseInt(fields[1].substring(fields[1].lastIndexOf(':') + 1), 16);
+        final int remotePort = Integer.parseInt(fields[2].substring(fields[2].lastIndexOf(':') + 1), 16);
+        final String state = switch (Integer.parseInt(fields[3], 16)) {
+            case 0x01 -> "ESTABLISHED";
+            case 0x02 -> "SYN_SENT";
+            case 0x03 -> "SYN_RECV";
+            case 0x04 -> "FIN_WAIT1";
+            case 0x05 -> "FIN_WAIT2";
+            case 0x06 -> "TIME_WAIT";
+            case 0x07 -> "CLOSE";
+            case 0x08 -> "CLOSE_WAIT";
+            case 0x09 -> "LAST_ACK";
+            case 0x0A -> "LISTEN";
+            case 0x0B -> "CLOSING";
+            default -> "UNKNOWN";
+        };
+        return new TcpSocket(localPort, remotePort, state);
+    }
+
+    /**
+     * Decodes the counters of a HotSpot performance data file (version 2, as written by Java 6 and later).
+     *
+     * The file starts with a prologue: a magic number (always big-endian), the byte order of the rest of the file,
+     * the version, and the offset and number of entries. Every entry consists of its length, the offset of its
+     * null-terminated name, the length of its vector (0 for scalars), its type ({@code J} for longs, {@code B} for
+     * bytes, which hold strings), flags, units and variability, and the offset of its data.
+     *
+     * @param data the contents of the file
+     * @return the long and string counters, keyed by name
+     * @throws IOException if the data is not a performance data file of a supported version
+     */
+    static Map<String, Object> parsePerfData(byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        if (data.length < 32 || buffer.getInt(0) != PERFDATA_MAGIC) {
+            throw new IOException("Not a performance data file");
+        }
+        buffer.order(data[4] == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        if (data[5] != 2) {
+            throw new IOException("Unsupported performance data version " + data[5] + "." + data[6]);
+        }
+        final int entryOffset = buffer.getInt(24);
+        final int entries = buffer.getInt(28);
+
+        final Map<String, Object> counters = new LinkedHashMap<>();
+        int entry = entryOffset;
+        for (int i = 0; i < entries && entry + 20 <= data.length; i++) {
+            final int length = buffer.getInt(entry);
+            if (length <= 0 || entry + length > data.length) {
+                break;
+            }
+            final String name = cString(data, entry + buffer.getInt(entry + 4), entry + length);
+            final int vectorLength = buffer.getInt(entry + 8);
+            final byte type = buffer.get(entry + 12);
+            final int dataOffset = entry + buffer.getInt(entry + 16);
+            if (vectorLength == 0 && type == 'J' && dataOffset + 8 <= data.length) {
+                counters.put(name, buffer.getLong(dataOffset));
+            } else if (vectorLength > 0 && type == 'B') {
+                counters.put(name, cString(data, dataOffset, Math.min(data.length, dataOffset + vectorLength)));
+            }
+            entry += length;
+        }
+        return counters;
+    }
+
+    private static String cString(byte[] data, int start, int limit) {
+        int end = start;
+        while (end < limit && data[end] != 0) {
+            end++;
+        }
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+}
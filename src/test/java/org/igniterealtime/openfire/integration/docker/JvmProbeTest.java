@@ -0,0 +1,152 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link JvmProbe}.
+ */
+public class JvmProbeTest {
+
+    @Test
+    void listeningSocketIsParsed() {
+        final JvmProbe.TcpSocket socket = JvmProbe.parseSocket("   0: 00000000:1466 00000000:0000 0A 00000000:00000000 00:00000000 00000000   999        0 31842 1 0000000000000000 100 0 0 10 0");
+
+        Assertions.assertEquals(new JvmProbe.TcpSocket(5222, 0, "LISTEN"), socket);
+    }
+
+    @Test
+    void establishedAndClosingSocketsAreParsed() {
+        Assertions.assertEquals(new JvmProbe.TcpSocket(5269, 41822, "ESTABLISHED"),
+                JvmProbe.parseSocket("  12: 0300A8C0:1495 0400A8C0:A35E 01 00000000:00000000 02:000A7C8B 00000000   999        0 40213 2 0000000000000000 20 4 30 10 -1"));
+        Assertions.assertEquals(new JvmProbe.TcpSocket(5222, 53000, "CLOSE_WAIT"),
+                JvmProbe.parseSocket("  13: 0100007F:1466 0100007F:CF08 08 00000000:00000001 00:00000000 00000000   999        0 40977 1 0000000000000000 20 4 0 10 -1"));
+    }
+
+    @Test
+    void ipv6SocketIsParsed() {
+        final JvmProbe.TcpSocket socket = JvmProbe.parseSocket("   1: 0000000000000000FFFF00000300A8C0:1495 0000000000000000FFFF00000400A8C0:A360 06 00000000:00000000 03:000016D5 00000000     0        0 0 3 0000000000000000");
+
+        Assertions.assertEquals(new JvmProbe.TcpSocket(5269, 41824, "TIME_WAIT"), socket);
+    }
+
+    @Test
+    void headerAndBlankLinesAreSkipped() {
+        Assertions.assertNull(JvmProbe.parseSocket("  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode"));
+        Assertions.assertNull(JvmProbe.parseSocket(""));
+    }
+
+    @Test
+    void perfDataIsParsedInBothByteOrders() throws IOException {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            final Map<String, Object> counters = JvmProbe.parsePerfData(perfData(order));
+
+            final Map<String, Object> expected = new LinkedHashMap<>();
+            expected.put("sun.gc.collector.0.invocations", 42L);
+            expected.put("java.property.java.vm.name", "OpenJDK 64-Bit Server VM");
+            expected.put("sun.gc.generation.1.space.0.used", 0x0102030405060708L);
+            Assertions.assertEquals(expected, counters, order.toString());
+        }
+    }
+
+    @Test
+    void perfDataOfUnsupportedVersionIsRejected() {
+        final byte[] data = perfData(ByteOrder.LITTLE_ENDIAN);
+        data[5] = 1;
+
+        Assertions.assertThrows(IOException.class, () -> JvmProbe.parsePerfData(data));
+        Assertions.assertThrows(IOException.class, () -> JvmProbe.parsePerfData(new byte[64]));
+    }
+
+    @Test
+    void perfDataOfThisJvmIsParsedInBothByteOrders() throws IOException {
+        final Path file = Path.of(System.getProperty("java.io.tmpdir"), "hsperfdata_" + System.getProperty("user.name"), Long.toString(ProcessHandle.current().pid()));
+        Assumptions.assumeTrue(Files.isRegularFile(file), "This JVM does not publish performance data");
+        final byte[] captured = Files.readAllBytes(file);
+
+        final Map<String, Object> counters = JvmProbe.parsePerfData(captured);
+
+        Assertions.assertEquals(System.getProperty("java.vm.name"), counters.get("java.property.java.vm.name"));
+        Assertions.assertInstanceOf(Long.class, counters.get("sun.gc.collector.0.invocations"));
+        Assertions.assertEquals(counters, JvmProbe.parsePerfData(swapByteOrder(captured)));
+    }
+
+    /**
+     * Builds a performance data file with a long counter, a string counter and a long counter whose bytes all differ,
+     * laid out like HotSpot does.
+     */
+    private static byte[] perfData(ByteOrder order) {
+        final ByteBuffer buffer = ByteBuffer.allocate(512).order(order);
+        buffer.order(ByteOrder.BIG_ENDIAN).putInt(0xcafec0c0).order(order);
+        buffer.put((byte) (order == ByteOrder.BIG_ENDIAN ? 0 : 1)).put((byte) 2).put((byte) 0).put((byte) 1);
+        buffer.putInt(0).putInt(0).putLong(0).putInt(32).putInt(3);
+        putEntry(buffer, "sun.gc.collector.0.invocations", 'J', longBytes(42L, order));
+        putEntry(buffer, "java.property.java.vm.name", 'B', "OpenJDK 64-Bit Server VM\0\0\0\0\0\0\0\0".getBytes(StandardCharsets.UTF_8));
+        putEntry(buffer, "sun.gc.generation.1.space.0.used", 'J', longBytes(0x0102030405060708L, order));
+        final int used = buffer.position();
+        buffer.putInt(8, used);
+        final byte[] data = new byte[used];
+        buffer.get(0, data);
+        return data;
+    }
+
+    private static void putEntry(ByteBuffer buffer, String name, char type, byte[] value) {
+        final byte[] nameBytes = (name + "\0").getBytes(StandardCharsets.UTF_8);
+        final int dataOffset = align(20 + nameBytes.length);
+        final int length = align(dataOffset + value.length);
+        final int entry = buffer.position();
+        buffer.putInt(length).putInt(20).putInt(type == 'J' ? 0 : value.length)
+                .put((byte) type).put((byte) 0).put((byte) 1).put((byte) 3).putInt(dataOffset);
+        buffer.put(nameBytes);
+        buffer.position(entry + dataOffset).put(value);
+        buffer.position(entry + length);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    private static byte[] longBytes(long value, ByteOrder order) {
+        return ByteBuffer.allocate(8).order(order).putLong(value).array();
+    }
+
+    /**
+     * Converts a performance data file to the opposite byte order, by swapping the fields of the prologue, the fields
+     * of every entry, and the values of long counters.
+     */
+    private static byte[] swapByteOrder(byte[] data) {
+        final byte[] swapped = data.clone();
+        final ByteOrder from = data[4] == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        final ByteOrder to = from == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final ByteBuffer in = ByteBuffer.wrap(data).order(from);
+        final ByteBuffer out = ByteBuffer.wrap(swapped).order(to);
+        swapped[4] = (byte) (to == ByteOrder.BIG_ENDIAN ? 0 : 1);
+        for (int offset : new int[]{8, 12, 24, 28}) {
+            out.putInt(offset, in.getInt(offset));
+        }
+        out.putLong(16, in.getLong(16));
+        int entry = in.getInt(24);
+        for (int i = 0; i < in.getInt(28); i++) {
+            final int length = in.getInt(entry);
+            for (int field : new int[]{0, 4, 8, 16}) {
+                out.putInt(entry + field, in.getInt(entry + field));
+            }
+            if (in.getInt(entry + 8) == 0 && in.get(entry + 12) == 'J') {
+                final int dataOffset = entry + in.getInt(entry + 16);
+                out.putLong(dataOffset, in.getLong(dataOffset));
+            }
+            entry += length;
+        }
+        return swapped;
+    }
+}
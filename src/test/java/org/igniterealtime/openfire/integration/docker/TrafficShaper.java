@@ -0,0 +1,150 @@
+package org.igniterealtime.openfire.integration.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Capability;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.HostConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Impairs the network traffic of a container, using the Linux {@code netem} queueing discipline.
+ *
+ * Traffic control is configured from a short-lived helper container that shares the network namespace of the target
+ * container, and that has the {@code NET_ADMIN} capability. This works for containers that do not have the {@code tc}
+ * tool installed, or the capability to use it, but requires the helper image to provide {@code sh}, {@code ip} and
+ * {@code tc}.
+ *
+ * Only traffic that is sent to a given set of destination addresses is impaired: a {@code prio} queueing discipline
+ * with an additional band is installed on every interface that routes to a destination, traffic to the destinations is
+ * classified into that band, and the band is served by {@code netem}. All other traffic of the container is not
+ * affected. As {@code netem} acts on egress traffic only, impairing both directions of a link requires shaping both
+ * containers.
+ */
+public class TrafficShaper {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficShaper.class);
+
+    private final DockerClient client;
+    private final String image;
+
+    /**
+     * Creates a traffic shaper.
+     *
+     * @param client the client used to communicate with the Docker daemon
+     * @param image  the image of the helper container, which must provide {@code sh}, {@code ip} and {@code tc}
+     */
+    public TrafficShaper(DockerClient client, String image) {
+        this.client = client;
+        this.image = image;
+    }
+
+    /**
+     * Impairs the traffic that a container sends to a set of destinations, replacing any earlier impairment.
+     *
+     * @param container    the name or ID of the container
+     * @param destinations the IPv4 addresses of the destinations
+     * @param netem        the arguments of the {@code netem} queueing discipline, such as {@code delay 50ms loss 1%}
+     * @throws IOException if the helper container cannot be run, or traffic control cannot be configured
+     */
+    public void shape(String container, Collection<String> destinations, String netem) throws IOException {
+        final StringBuilder script = new StringBuilder(clearScript()).append("set -e\n");
+        for (String destination : destinations) {
+            if (!destination.matches("[0-9.]+")) {
+                throw new IllegalArgumentException("Not an IPv4 address: " + destination);
+            }
+            script.append("dev=$(ip -o route get ").append(destination).append(" | sed -n 's/.* dev \\([^ ]*\\).*/\\1/p')\n")
+                    .append("if ! tc qdisc show dev $dev | grep -q 'qdisc netem 40:'; then\n")
+                    .append("  tc qdisc add dev $dev root handle 1: prio bands 4\n")
+                    .append("  tc qdisc add dev $dev parent 1:4 handle 40: netem ").append(netem).append('\n')
+                    .append("fi\n")
+                    .append("tc filter add dev $dev parent 1: protocol ip prio 1 u32 match ip dst ").append(destination).append("/32 flowid 1:4\n");
+        }
+        run(container, script.toString());
+        logger.debug("Shaped traffic of {} to {} with netem {}", container, destinations, netem);
+    }
+
+    /**
+     * Removes any impairment of the traffic of a container.
+     *
+     * @param container the name or ID of the container
+     * @throws IOException if the helper container cannot be run
+     */
+    public void clear(String container) throws IOException {
+        run(container, clearScript());
+        logger.debug("Cleared traffic shaping of {}", container);
+    }
+
+    private static String clearScript() {
+        return "for dev in $(ls /sys/class/net); do tc qdisc del dev $dev root 2>/dev/null || true; done\n";
+    }
+
+    /**
+     * Runs a script in a helper container that shares the network namespace of a container, and waits for it to
+     * complete.
+     */
+    private void run(String container, String script) throws IOException {
+        try {
+            final CreateContainerCmd create = client.createContainerCmd(image)
+                    .withEntrypoint("/bin/sh", "-c")
+                    .withCmd(script)
+                    .withHostConfig(HostConfig.newHostConfig()
+                            .withNetworkMode("container:" + container)
+                            .withCapAdd(Capability.NET_ADMIN));
+            String id;
+            try {
+                id = create.exec().getId();
+            } catch (NotFoundException e) {
+                pull();
+                id = create.exec().getId();
+            }
+            try {
+                client.startContainerCmd(id).exec();
+                final int exitCode = client.waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+                if (exitCode != 0) {
+                    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    client.logContainerCmd(id).withStdOut(true).withStdErr(true).exec(new ResultCallback.Adapter<Frame>() {
+                        @Override
+                        public void onNext(Frame frame) {
+                            output.writeBytes(frame.getPayload());
+                        }
+                    }).awaitCompletion();
+                    throw new IOException("Unable to configure traffic control of " + container + " (exit code " + exitCode + "): "
+                            + output.toString(StandardCharsets.UTF_8).trim());
+                }
+            } finally {
+                try {
+                    client.removeContainerCmd(id).withForce(true).exec();
+                } catch (DockerException e) {
+                    logger.debug("Unable to remove helper container {}", id, e);
+                }
+            }
+        } catch (DockerException e) {
+            throw new IOException("Unable to run traffic shaping helper container for " + container, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while configuring traffic control of " + container);
+        }
+    }
+
+    private void pull() throws InterruptedException {
+        logger.info("Pulling traffic shaping helper image {}...", image);
+        final int separator = image.lastIndexOf(':');
+        final boolean tagged = separator > image.lastIndexOf('/');
+        client.pullImageCmd(tagged ? image.substring(0, separator) : image)
+                .withTag(tagged ? image.substring(separator + 1) : "latest")
+                .exec(new PullImageResultCallback())
+                .awaitCompletion();
+    }
+}
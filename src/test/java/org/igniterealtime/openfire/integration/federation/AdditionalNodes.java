@@ -0,0 +1,370 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Adds Openfire nodes to the federated environment, beyond the two that are defined by the base environment.
+ *
+ * The base environment (defined by the openfire-docker-compose project) consists of exactly two nodes. Additional
+ * nodes are cloned from node 1: the resolved Docker Compose definition of service {@code xmpp1}, and of every service
+ * it depends on that is specific to it (such as its database), is copied for every additional node, with the
+ * references to node 1 in its names, dependencies and volumes renamed. Directories that are bind-mounted into the cloned services (configuration and SQL
+ * scripts) are copied in the same way. The clones are written to a separate compose file, and started in the same
+ * Docker Compose project as the base environment, on the same networks.
+ *
+ * Cloned nodes do not use fixed IP addresses. Instead, their domains are registered as network aliases, so that all
+ * other nodes can resolve them through Docker's DNS.
+ *
+ * The directories that were copied are listed in the generated compose file (as the extension field
+ * {@code x-copied-directories}), so that they can be removed by another JVM than the one that added the nodes, such as
+ * the last of several JVMs that share the environment.
+ */
+class AdditionalNodes {
+    private static final Logger logger = LoggerFactory.getLogger(AdditionalNodes.class);
+
+    // Template service from which additional nodes are cloned
+    private static final String TEMPLATE_SERVICE = "xmpp1";
+
+    // Extension field of the generated compose file that lists the directories that were copied for the clones
+    private static final String COPIED_DIRECTORIES = "x-copied-directories";
+
+    // Part of a name or path, between separators
+    private static final Pattern TOKEN = Pattern.compile("[^/._-]+");
+
+    // Name of a service that belongs to node 1 only, following the numbering of the base environment (xmpp1, db1)
+    private static final Pattern NODE_1_SERVICE = Pattern.compile("[a-z]+1");
+
+    // Files larger than this are copied verbatim, rather than having references to node 1 renamed
+    private static final long MAX_TEXT_FILE_SIZE = 16 * 1024 * 1024;
+
+    private final Path composeDirectory;
+    private final String project;
+    private final Path composeFile;
+    private final Set<Path> copiedDirectories = new LinkedHashSet<>();
+
+    /**
+     * Creates a manager for additional nodes.
+     *
+     * @param composeDirectory the directory that holds the compose file of the base environment
+     * @param project          the Docker Compose project name of the environment
+     * @param composeFile      the location of the compose file that is generated for the additional nodes
+     */
+    AdditionalNodes(Path composeDirectory, String project, Path composeFile) {
+        this.composeDirectory = composeDirectory;
+        this.project = project;
+        this.composeFile = composeFile;
+    }
+
+    /**
+     * Clones node 1 for every node that is not part of the base environment, and starts the clones.
+     *
+     * @param nodes all nodes of the environment
+     * @param environment environment variables used to resolve the base compose definition
+     * @throws IOException          if the compose definitions cannot be resolved or written, or the clones cannot be
+     *                              started
+     * @throws InterruptedException if the thread is interrupted while waiting for Docker Compose
+     */
+    void start(List<FederationNode> nodes, Map<String, String> environment) throws IOException, InterruptedException {
+        final List<FederationNode> additional = nodes.stream().filter(node -> !node.isBaseNode()).toList();
+        if (additional.isEmpty()) {
+            return;
+        }
+        logger.info("Adding {} nodes to the federated environment...", additional.size());
+
+        final Object config = Json.parse(compose(composeDirectory, environment, "config", "--format", "json"));
+        final Map<?, ?> services = (Map<?, ?>) Json.get(config, "services");
+        if (services == null || !services.containsKey(TEMPLATE_SERVICE)) {
+            throw new IllegalStateException("Base environment does not define service " + TEMPLATE_SERVICE);
+        }
+
+        // Clone the template, and the services it depends on that are specific to it.
+        final List<String> templates = new ArrayList<>();
+        templates.add(TEMPLATE_SERVICE);
+        final Object dependencies = Json.get(config, "services", TEMPLATE_SERVICE, "depends_on");
+        if (dependencies instanceof Map<?, ?> map) {
+            map.keySet().stream().map(String::valueOf).filter(name -> NODE_1_SERVICE.matcher(name).matches()).forEach(templates::add);
+        } else if (dependencies instanceof List<?> list) {
+            list.stream().map(String::valueOf).filter(name -> NODE_1_SERVICE.matcher(name).matches()).forEach(templates::add);
+        }
+
+        final Map<String, Object> clones = new LinkedHashMap<>();
+        final Map<String, Object> volumes = new LinkedHashMap<>();
+        for (FederationNode node : additional) {
+            for (String template : templates) {
+                final Map<String, Object> clone = cloneService(services.get(template), templates, node);
+                if (template.equals(TEMPLATE_SERVICE)) {
+                    registerAliases(clone, node);
+                }
+                copyBindMounts(services.get(template), clone, templates, node);
+                collectNamedVolumes(clone, volumes);
+                clones.put(rename(template, node), clone);
+            }
+        }
+
+        final Map<String, Object> generated = new LinkedHashMap<>();
+        generated.put("name", project);
+        generated.put("services", clones);
+        if (Json.get(config, "networks") != null) {
+            generated.put("networks", Json.get(config, "networks"));
+        }
+        if (!volumes.isEmpty()) {
+            generated.put("volumes", volumes);
+        }
+        generated.put(COPIED_DIRECTORIES, copiedDirectories.stream().map(Path::toString).toList());
+        Files.createDirectories(composeFile.toAbsolutePath().getParent());
+        // JSON is valid YAML, and therefore a valid compose file.
+        Files.writeString(composeFile, Json.write(generated));
+
+        compose(composeFile.toAbsolutePath().getParent(), environment, "-f", composeFile.toAbsolutePath().toString(), "up", "-d");
+    }
+
+    /**
+     * Stops and removes the additional nodes, and the directories that were copied for them.
+     *
+     * @param environment environment variables used to invoke Docker Compose
+     * @throws IOException          if the nodes cannot be removed
+     * @throws InterruptedException if the thread is interrupted while waiting for Docker Compose
+     */
+    void remove(Map<String, String> environment) throws IOException, InterruptedException {
+        if (Files.exists(composeFile)) {
+            logger.info("Removing additional nodes from the federated environment...");
+            if (Json.get(Json.parse(Files.readString(composeFile)), COPIED_DIRECTORIES) instanceof List<?> directories) {
+                directories.stream().map(directory -> Path.of(String.valueOf(directory))).forEach(copiedDirectories::add);
+            }
+            compose(composeFile.toAbsolutePath().getParent(), environment, "-f", composeFile.toAbsolutePath().toString(), "rm", "--stop", "--force", "--volumes");
+            Files.delete(composeFile);
+        }
+        for (Path directory : copiedDirectories) {
+            deleteRecursively(directory);
+        }
+        copiedDirectories.clear();
+    }
+
+    /**
+     * Copies a service definition, renaming the references to node 1 in the fields that identify the service: its
+     * container name, host name, the services it depends on, and the sources of its volumes (bind-mounted per-node
+     * directories, such as {@code sql/1}, and named volumes). Other fields, such as environment variables and commands,
+     * are copied unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> cloneService(Object template, List<String> templates, FederationNode node) {
+        final Map<String, Object> clone = (Map<String, Object>) Json.parse(Json.write(template));
+        for (String field : List.of("container_name", "hostname")) {
+            if (clone.get(field) instanceof String value) {
+                clone.put(field, renameTokens(value, templates, node, false));
+            }
+        }
+
+        final Object dependencies = clone.get("depends_on");
+        if (dependencies instanceof Map<?, ?> map) {
+            final Map<String, Object> renamed = new LinkedHashMap<>();
+            map.forEach((name, condition) -> renamed.put(renameService(String.valueOf(name), templates, node), condition));
+            clone.put("depends_on", renamed);
+        } else if (dependencies instanceof List<?> list) {
+            clone.put("depends_on", list.stream().map(name -> renameService(String.valueOf(name), templates, node)).toList());
+        }
+
+        if (clone.get("volumes") instanceof List<?> mounts) {
+            for (Object mount : mounts) {
+                if (mount instanceof Map<?, ?> map && map.get("source") instanceof String source) {
+                    final boolean bind = "bind".equals(map.get("type"));
+                    ((Map<String, Object>) map).put("source", renameTokens(source, templates, node, bind));
+                }
+            }
+        }
+
+        // Published ports of the base nodes are consecutive; continue the sequence.
+        final Object ports = clone.get("ports");
+        if (ports instanceof List<?> list) {
+            for (Object port : list) {
+                if (port instanceof Map<?, ?> map && map.get("published") != null) {
+                    final int published = Integer.parseInt(String.valueOf(map.get("published")));
+                    ((Map<String, Object>) map).put("published", String.valueOf(published + node.index() - 1));
+                }
+            }
+        }
+        return clone;
+    }
+
+    /**
+     * Replaces fixed IP addresses by network aliases for the domain of the node, and of its chat service.
+     */
+    @SuppressWarnings("unchecked")
+    private static void registerAliases(Map<String, Object> service, FederationNode node) {
+        final Object networks = service.get("networks");
+        if (networks instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                final Map<String, Object> network = entry.getValue() instanceof Map<?, ?> value
+                        ? (Map<String, Object>) value : new LinkedHashMap<>();
+                network.remove("ipv4_address");
+                network.remove("ipv6_address");
+                network.put("aliases", List.of(node.domain(), "conference." + node.domain()));
+                ((Map<String, Object>) map).put(String.valueOf(entry.getKey()), network);
+            }
+        }
+        service.remove("container_name");
+    }
+
+    /**
+     * Copies every bind-mounted directory of the template that was renamed in the clone, renaming the names of the
+     * services of node 1 in its files where they appear as a whole word (so {@code xmpp1.localhost.example} becomes
+     * {@code xmpp3.localhost.example}, but {@code xmpp10} is left alone). Files that already exist in the copy (such as
+     * generated SQL overlays) are left alone.
+     */
+    private void copyBindMounts(Object template, Map<String, Object> clone, List<String> templates, FederationNode node) throws IOException {
+        final List<?> original = (List<?>) Json.get(template, "volumes");
+        final List<?> cloned = (List<?>) clone.get("volumes");
+        if (original == null || cloned == null) {
+            return;
+        }
+        for (int i = 0; i < original.size(); i++) {
+            if (!"bind".equals(Json.get(original.get(i), "type"))) {
+                continue;
+            }
+            final Path source = Path.of(String.valueOf(Json.get(original.get(i), "source")));
+            final Path target = Path.of(String.valueOf(Json.get(cloned.get(i), "source")));
+            if (source.equals(target) || !Files.exists(source)) {
+                continue;
+            }
+            if (!Files.exists(target)) {
+                copiedDirectories.add(target.toAbsolutePath());
+            }
+            copyRenaming(source, target, templates, node);
+        }
+    }
+
+    private void copyRenaming(Path source, Path target, List<String> templates, FederationNode node) throws IOException {
+        if (Files.isRegularFile(source)) {
+            copyFileRenaming(source, target, templates, node);
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(source)) {
+            for (Path path : stream.toList()) {
+                final Path destination = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    copyFileRenaming(path, destination, templates, node);
+                }
+            }
+        }
+    }
+
+    private void copyFileRenaming(Path source, Path destination, List<String> templates, FederationNode node) throws IOException {
+        if (Files.exists(destination)) {
+            return;
+        }
+        Files.createDirectories(destination.toAbsolutePath().getParent());
+        final byte[] content = Files.readAllBytes(source);
+        if (content.length > MAX_TEXT_FILE_SIZE || isBinary(content)) {
+            Files.write(destination, content);
+            return;
+        }
+        final Pattern names = Pattern.compile("(?<![A-Za-z0-9])("
+                + templates.stream().map(Pattern::quote).collect(Collectors.joining("|")) + ")(?![A-Za-z0-9])");
+        final String text = names.matcher(new String(content, StandardCharsets.UTF_8))
+                .replaceAll(match -> Matcher.quoteReplacement(rename(match.group(1), node)));
+        Files.writeString(destination, text);
+    }
+
+    private static boolean isBinary(byte[] content) {
+        for (byte b : content) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectNamedVolumes(Map<String, Object> service, Map<String, Object> volumes) {
+        final Object mounts = service.get("volumes");
+        if (mounts instanceof List<?> list) {
+            for (Object mount : list) {
+                if ("volume".equals(Json.get(mount, "type")) && Json.get(mount, "source") != null) {
+                    volumes.put(String.valueOf(Json.get(mount, "source")), new LinkedHashMap<String, Object>());
+                }
+            }
+        }
+    }
+
+    private static String renameService(String name, List<String> templates, FederationNode node) {
+        return templates.contains(name) ? rename(name, node) : name;
+    }
+
+    /**
+     * Renames the parts of a name or path (separated by {@code /}, {@code .}, {@code -} or {@code _}) that are the name
+     * of a service of node 1, and optionally the parts that are the index of node 1, such as in {@code ./sql/1}.
+     */
+    private static String renameTokens(String value, List<String> templates, FederationNode node, boolean index) {
+        final StringBuilder renamed = new StringBuilder();
+        final Matcher matcher = TOKEN.matcher(value);
+        int end = 0;
+        while (matcher.find()) {
+            final String token = matcher.group();
+            renamed.append(value, end, matcher.start());
+            if (templates.contains(token)) {
+                renamed.append(rename(token, node));
+            } else if (index && token.equals("1")) {
+                renamed.append(node.index());
+            } else {
+                renamed.append(token);
+            }
+            end = matcher.end();
+        }
+        return renamed.append(value.substring(end)).toString();
+    }
+
+    /**
+     * Renames a service of node 1 (for example, {@code xmpp1} or {@code db1}) to that of another node.
+     */
+    private static String rename(String name, FederationNode node) {
+        final int last = name.lastIndexOf('1');
+        return name.substring(0, last) + node.index() + name.substring(last + 1);
+    }
+
+    private String compose(Path directory, Map<String, String> environment, String... arguments) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>(List.of("docker", "compose", "-p", project));
+        command.addAll(List.of(arguments));
+        final ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        processBuilder.environment().putAll(environment);
+        final Process process = processBuilder.start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        final int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("'" + String.join(" ", command) + "' failed with exit code " + exitCode);
+        }
+        return output;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests injection of a connected and authenticated XMPP connection into a test method (or lifecycle method)
+ * parameter of type {@link org.jivesoftware.smack.tcp.XMPPTCPConnection} (or any of its supertypes).
+ *
+ * By default, the connection is leased from a pool that is shared by all tests. Listeners and interceptors that the
+ * test adds to a pooled connection are removed when the test completes, after which the connection is returned to
+ * the pool. Tests that change other session state (for example, presence or roster) should request a fresh
+ * connection instead, which is closed when the test completes.
+ *
+ * @see AuthenticatedConnectionExtension
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AuthenticatedConnection {
+
+    /**
+     * The XMPP domain of the user, for example {@link FederatedTestEnvironment#XMPP1_DOMAIN}.
+     */
+    String domain();
+
+    /**
+     * The username of the user, for example {@link FederatedTestEnvironment#USER_1}.
+     */
+    String user();
+
+    /**
+     * Whether a newly established connection is required, rather than one from the pool.
+     */
+    boolean fresh() default false;
+}
@@ -0,0 +1,123 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JUnit extension that injects connected and authenticated XMPP connections into parameters that are annotated with
+ * {@link AuthenticatedConnection}.
+ *
+ * Connections are leased from a {@link ConnectionPool} that is shared by all tests in the test run, and are returned
+ * to it when the scope in which they were injected (typically, a test method) completes. This avoids the cost of
+ * establishing a TCP connection and authenticating for every test.
+ *
+ * When users are partitioned (see {@link UserPartition}), every test class leases a partition of synthetic users, and
+ * the users of the annotations are mapped to the users of that partition, so that test classes that run concurrently
+ * use distinct users.
+ *
+ * Usage:
+ * <pre>{@code
+ * @Test
+ * void test(@AuthenticatedConnection(domain = XMPP1_DOMAIN, user = USER_1) XMPPTCPConnection connection) { ... }
+ * }</pre>
+ */
+public class AuthenticatedConnectionExtension implements ParameterResolver {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(AuthenticatedConnectionExtension.class);
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) throws ParameterResolutionException {
+        return parameterContext.isAnnotated(AuthenticatedConnection.class)
+                && parameterContext.getParameter().getType().isAssignableFrom(PooledXMPPConnection.class);
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) throws ParameterResolutionException {
+        final AuthenticatedConnection annotation = parameterContext.findAnnotation(AuthenticatedConnection.class).orElseThrow();
+        final ConnectionPool pool = getPool(extensionContext);
+        final UserPartition partition = getPartition(extensionContext);
+        final SyntheticPopulation.SyntheticUser user = partition == null
+                ? new SyntheticPopulation.SyntheticUser(annotation.domain(), annotation.user(), FederatedTestEnvironment.PASSWORD, -1)
+                : partition.map(annotation.domain(), annotation.user());
+        final Leases leases = extensionContext.getStore(NAMESPACE).getOrComputeIfAbsent(Leases.class, k -> new Leases(pool), Leases.class);
+        try {
+            if (annotation.fresh()) {
+                final PooledXMPPConnection connection = pool.openFresh(user);
+                leases.fresh.add(connection);
+                return connection;
+            }
+            final PooledXMPPConnection connection = pool.lease(user);
+            leases.pooled.add(connection);
+            return connection;
+        } catch (Exception e) {
+            throw new ParameterResolutionException("Unable to obtain an authenticated connection for " + user.jid(), e);
+        }
+    }
+
+    /**
+     * Returns the connection pool that is shared by all tests in the current test run.
+     *
+     * @param extensionContext any extension context of the test run
+     * @return the shared connection pool
+     */
+    public static ConnectionPool getPool(ExtensionContext extensionContext) {
+        return extensionContext.getRoot().getStore(NAMESPACE).getOrComputeIfAbsent(ConnectionPool.class, k -> new ConnectionPool(), ConnectionPool.class);
+    }
+
+    /**
+     * Returns the partition of users that is leased by the test class of a context, leasing one when the class first
+     * needs it (see {@link UserPartition}). The partition is released when the test class completes.
+     *
+     * @param extensionContext the extension context of a test class, or of one of its tests
+     * @return the leased partition, or {@code null} if users are not partitioned
+     * @throws ParameterResolutionException if no partition can be leased
+     */
+    public static UserPartition getPartition(ExtensionContext extensionContext) {
+        if (UserPartition.getConfiguredSize() == 0) {
+            return null;
+        }
+        ExtensionContext classContext = extensionContext;
+        while (classContext.getTestMethod().isPresent() && classContext.getParent().isPresent()) {
+            classContext = classContext.getParent().get();
+        }
+        return classContext.getStore(NAMESPACE).getOrComputeIfAbsent(UserPartition.class, k -> {
+            try {
+                return UserPartition.lease();
+            } catch (IOException e) {
+                throw new ParameterResolutionException("Unable to lease a partition of users", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParameterResolutionException("Interrupted while leasing a partition of users", e);
+            }
+        }, UserPartition.class);
+    }
+
+    /**
+     * The connections that were injected in a particular scope. These are released when the scope is closed.
+     */
+    private static final class Leases implements ExtensionContext.Store.CloseableResource {
+        private final ConnectionPool pool;
+        private final List<PooledXMPPConnection> pooled = new ArrayList<>();
+        private final List<PooledXMPPConnection> fresh = new ArrayList<>();
+
+        Leases(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() {
+            pooled.forEach(pool::release);
+            fresh.forEach(connection -> {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            });
+        }
+    }
+}
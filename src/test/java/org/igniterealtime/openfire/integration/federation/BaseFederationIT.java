@@ -1,15 +1,54 @@
 package org.igniterealtime.openfire.integration.federation;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 /**
  * Base class for federation integration tests. All federation-related tests should extend this class
  * to ensure proper test environment setup.
+ *
+ * Tests can obtain connected and authenticated connections by declaring parameters annotated with
+ * {@link AuthenticatedConnection}.
+ *
+ * Samples of the resource usage of the containers, and server-to-server events that are logged by the servers, are
+ * tagged with the name of the test that is running. Tests that consist of several steps can refine this using
+ * {@link #setStep(String)}. When test classes run concurrently (see {@link UserPartition}), samples and events are
+ * tagged with whichever test or step started last, so the tags are only indicative.
  */
+@ExtendWith(AuthenticatedConnectionExtension.class)
 public abstract class BaseFederationIT {
 
+    // Name of the test that is running, used to tag samples of container resource usage and server-to-server events
+    private static final ThreadLocal<String> currentTest = new ThreadLocal<>();
+
     @BeforeAll
     public static void setupEnvironment() throws Exception {
         FederatedTestEnvironment.start();
     }
-}
\ No newline at end of file
+
+    @BeforeEach
+    void tagTest(TestInfo testInfo) {
+        currentTest.set(testInfo.getTestClass().map(Class::getSimpleName).orElse("")
+                + testInfo.getTestMethod().map(method -> "#" + method.getName()).orElse(""));
+        FederatedTestEnvironment.setPhase(currentTest.get());
+    }
+
+    @AfterEach
+    void untagTest() {
+        currentTest.remove();
+        FederatedTestEnvironment.setPhase(null);
+    }
+
+    /**
+     * Tags samples of the resource usage of the containers, and server-to-server events, with a step of the test that
+     * is running.
+     *
+     * @param step the name of the step, or {@code null} to tag samples with just the name of the test
+     */
+    protected static void setStep(String step) {
+        FederatedTestEnvironment.setPhase(step == null ? currentTest.get() : currentTest.get() + "/" + step);
+    }
+}
@@ -1,7 +1,6 @@
 package org.igniterealtime.openfire.integration.federation;
 
 import org.jivesoftware.smack.AbstractXMPPConnection;
-import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.sasl.SASLErrorException;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
@@ -22,77 +21,23 @@ public class ConnectAndAuthenticateIT extends BaseFederationIT {
      * Tests basic federation functionality by:
      * 1. Connecting and authenticating a user to the first XMPP server
      * 2. Connecting and authenticating a different user to the second XMPP server
-     * Both connections are made with valid credentials and should succeed.
+     * Both connections are made with valid credentials and should succeed. Fresh connections are requested, so that
+     * both are established (rather than taken from the connection pool) for this test.
      */
     @Test
-    void basicFederationTest() throws Exception {
+    void basicFederationTest(
+            @AuthenticatedConnection(domain = XMPP1_DOMAIN, user = USER_1, fresh = true) XMPPTCPConnection connection1,
+            @AuthenticatedConnection(domain = XMPP2_DOMAIN, user = USER_3, fresh = true) XMPPTCPConnection connection2
+    ) {
         logger.info("Starting basic federation test...");
 
-        // Configure first user connection
-        XMPPTCPConnectionConfiguration config1 = XMPPTCPConnectionConfiguration.builder()
-                .setHost("localhost")
-                .setPort(XMPP1_PORT)
-                .setXmppDomain(XMPP1_DOMAIN)
-                .setUsernameAndPassword(USER_1, PASSWORD)
-                .setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.disabled)
-                .setConnectTimeout(5000)  // 5 second timeout
-                .build();
-
-        // Connect first user
-        logger.info("Attempting to connect to XMPP server 1...");
-        AbstractXMPPConnection connection1 = new XMPPTCPConnection(config1);
-
-        try {
-            connection1.connect();
-            logger.info("Successfully connected to server 1");
-
-            connection1.login();
-            logger.info("Successfully logged in as user1");
-
-            // Add a small delay before disconnecting
-            Thread.sleep(1000);
-        } catch (SmackException e) {
-            logger.error("XMPP Connection to server 1 failed", e);
-            throw e;
-        } finally {
-            if (connection1.isConnected()) {
-                connection1.disconnect();
-                logger.info("Successfully disconnected from server 1");
-            }
-        }
+        Assertions.assertTrue(connection1.isAuthenticated(), "Expected " + USER_1 + " to be logged in to server 1");
+        Assertions.assertEquals(USER_1 + "@" + XMPP1_DOMAIN, connection1.getUser().asBareJid().toString());
+        logger.info("Successfully logged in as {}", connection1.getUser());
 
-        // Configure second user connection
-        XMPPTCPConnectionConfiguration config2 = XMPPTCPConnectionConfiguration.builder()
-                .setHost("localhost")
-                .setPort(XMPP2_PORT)
-                .setXmppDomain(XMPP2_DOMAIN)
-                .setUsernameAndPassword(USER_3, PASSWORD)
-                .setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.disabled)
-                .setConnectTimeout(5000)  // 5 second timeout
-                .build();
-
-        // Connect second user
-        logger.info("Attempting to connect to XMPP server 2...");
-        AbstractXMPPConnection connection2 = new XMPPTCPConnection(config2);
-
-        try {
-            connection2.connect();
-            logger.info("Successfully connected to server 2");
-
-            connection2.login();
-            logger.info("Successfully logged in as user3");
-
-            // Add a small delay before disconnecting
-            Thread.sleep(1000);
-        } catch (SmackException e) {
-            logger.error("XMPP Connection to server 2 failed", e);
-            throw e;
-        } finally {
-            if (connection2.isConnected()) {
-                connection2.disconnect();
-                logger.info("Successfully disconnected from server 2");
-            }
-        }
+        Assertions.assertTrue(connection2.isAuthenticated(), "Expected " + USER_3 + " to be logged in to server 2");
+        Assertions.assertEquals(USER_3 + "@" + XMPP2_DOMAIN, connection2.getUser().asBareJid().toString());
+        logger.info("Successfully logged in as {}", connection2.getUser());
     }
 
     /**
@@ -103,14 +48,10 @@ public class ConnectAndAuthenticateIT extends BaseFederationIT {
     void unauthorizedUserTest() throws Exception {
         logger.info("Starting unauthorized user test...");
 
-        // Configure connection with invalid credentials
-        XMPPTCPConnectionConfiguration config = XMPPTCPConnectionConfiguration.builder()
-                .setHost("localhost")
-                .setPort(XMPP1_PORT)
-                .setXmppDomain("xmpp1.localhost.example")
+        // Configure connection with invalid credentials. The connection is built by hand, as the injected connections
+        // are always logged in.
+        XMPPTCPConnectionConfiguration config = connectionConfigurationBuilder(XMPP1_DOMAIN, "invalidUser")
                 .setUsernameAndPassword("invalidUser", "invalidPassword")
-                .setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.disabled)
-                .setConnectTimeout(5000)  // 5 second timeout
                 .build();
 
         // Attempt to connect and login
@@ -0,0 +1,163 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smackx.ping.PingManager;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of connected and authenticated XMPP connections, keyed by domain and user.
+ *
+ * Connections are only established when no idle connection is available for the requested user. Before an idle
+ * connection is handed out, its health is verified by pinging its server; connections that fail this check are
+ * discarded. Each pooled connection uses a distinct resource, so that multiple connections for the same user can be
+ * leased at the same time.
+ *
+ * The pool is thread-safe.
+ */
+public class ConnectionPool implements ExtensionContext.Store.CloseableResource {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    // Maximum time to wait for the response to a health check
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 2_000;
+
+    private record Key(String domain, String user) {
+    }
+
+    private final Map<Key, Deque<PooledXMPPConnection>> idle = new ConcurrentHashMap<>();
+    private final AtomicInteger resourceCounter = new AtomicInteger();
+    private final AtomicInteger established = new AtomicInteger();
+
+    /**
+     * Leases a connection for a user. The connection must be returned using {@link #release(PooledXMPPConnection)}.
+     *
+     * @param domain the XMPP domain of the user
+     * @param user   the username of the user
+     * @return a connected and authenticated connection
+     * @throws Exception if a new connection cannot be established
+     */
+    public PooledXMPPConnection lease(String domain, String user) throws Exception {
+        return lease(new SyntheticPopulation.SyntheticUser(domain, user, FederatedTestEnvironment.PASSWORD, -1));
+    }
+
+    /**
+     * Leases a connection for a user with its own password, such as a synthetic user. The connection must be returned
+     * using {@link #release(PooledXMPPConnection)}.
+     *
+     * @param user the user
+     * @return a connected and authenticated connection
+     * @throws Exception if a new connection cannot be established
+     */
+    public PooledXMPPConnection lease(SyntheticPopulation.SyntheticUser user) throws Exception {
+        final Deque<PooledXMPPConnection> available = idle.computeIfAbsent(new Key(user.domain(), user.username()), k -> new ConcurrentLinkedDeque<>());
+        PooledXMPPConnection connection;
+        while ((connection = available.pollFirst()) != null) {
+            if (isHealthy(connection)) {
+                return connection;
+            }
+            logger.info("Discarding unhealthy pooled connection {}", connection.getUser());
+            connection.instantShutdown();
+        }
+        return open(user, "pool-" + resourceCounter.incrementAndGet());
+    }
+
+    /**
+     * Establishes a new connection for a user, that is not part of the pool.
+     *
+     * @param domain the XMPP domain of the user
+     * @param user   the username of the user
+     * @return a connected and authenticated connection
+     * @throws Exception if the connection cannot be established
+     */
+    public PooledXMPPConnection openFresh(String domain, String user) throws Exception {
+        return openFresh(new SyntheticPopulation.SyntheticUser(domain, user, FederatedTestEnvironment.PASSWORD, -1));
+    }
+
+    /**
+     * Establishes a new connection for a user with its own password, such as a synthetic user, that is not part of
+     * the pool.
+     *
+     * @param user the user
+     * @return a connected and authenticated connection
+     * @throws Exception if the connection cannot be established
+     */
+    public PooledXMPPConnection openFresh(SyntheticPopulation.SyntheticUser user) throws Exception {
+        return open(user, "fresh-" + resourceCounter.incrementAndGet());
+    }
+
+    /**
+     * Returns a leased connection to the pool. Listeners and interceptors that were added while it was leased are
+     * removed. Connections that are no longer connected are discarded.
+     *
+     * @param connection the connection to return
+     */
+    public void release(PooledXMPPConnection connection) {
+        connection.removeTestListeners();
+        if (!connection.isConnected() || !connection.isAuthenticated()) {
+            connection.instantShutdown();
+            return;
+        }
+        final Key key = new Key(connection.getXMPPServiceDomain().toString(), connection.getConfiguration().getUsername().toString());
+        idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>()).addFirst(connection);
+    }
+
+    /**
+     * Returns the number of connections that have been established by this pool (including fresh connections).
+     *
+     * @return the number of established connections
+     */
+    public int getEstablishedCount() {
+        return established.get();
+    }
+
+    /**
+     * Disconnects all idle connections.
+     */
+    @Override
+    public void close() {
+        final List<PooledXMPPConnection> connections = new ArrayList<>();
+        idle.values().forEach(deque -> {
+            PooledXMPPConnection connection;
+            while ((connection = deque.pollFirst()) != null) {
+                connections.add(connection);
+            }
+        });
+        logger.info("Closing {} pooled connections ({} established in total)", connections.size(), established.get());
+        connections.forEach(PooledXMPPConnection::disconnect);
+    }
+
+    private PooledXMPPConnection open(SyntheticPopulation.SyntheticUser user, String resource) throws Exception {
+        final PooledXMPPConnection connection = new PooledXMPPConnection(
+                FederatedTestEnvironment.connectionConfigurationBuilder(user)
+                        .setResource(resource)
+                        .build());
+        connection.connect();
+        connection.login();
+        established.incrementAndGet();
+        logger.debug("Established connection {}", connection.getUser());
+        return connection;
+    }
+
+    private static boolean isHealthy(PooledXMPPConnection connection) {
+        if (!connection.isConnected() || !connection.isAuthenticated()) {
+            return false;
+        }
+        try {
+            return PingManager.getInstanceFor(connection).pingMyServer(false, HEALTH_CHECK_TIMEOUT_MS);
+        } catch (SmackException.NotConnectedException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Load scenario that measures how a single server-to-server link behaves under sustained one-to-one chat traffic.
+ *
+ * A configurable number of sender/receiver pairs is established: senders connect to the first server, receivers to
+ * the second. Every pair uses a dedicated resource, which allows all pairs to share the pre-configured test accounts.
+ * Each sender paces its messages to meet its share of the target rate. Every message carries a
+ * {@link BenchmarkStamp} from which end-to-end latency, loss, duplication and reordering are derived on receipt.
+ *
+ * The scenario is executed once for every configured target rate, so that a sweep of rates can be used to find the
+ * point at which the S2S link saturates. Messages sent during the warm-up period of each step are delivered, but are
+ * not included in the reported throughput and latency.
+ *
+ * The sweep of rates can be repeated under different network conditions of the S2S link (see {@link LinkProfile}),
+ * which gives throughput and latency as a function of round-trip time, loss and bandwidth.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.pairs} - number of sender/receiver pairs (default: 4)</li>
+ *     <li>{@code benchmark.rates} - comma-separated aggregate target rates, in messages per second (default: 200)</li>
+ *     <li>{@code benchmark.warmup} - warm-up period of each step, in seconds (default: 5)</li>
+ *     <li>{@code benchmark.duration} - measurement period of each step, in seconds (default: 30)</li>
+ *     <li>{@code benchmark.drainTimeout} - maximum time to wait for outstanding messages, in seconds (default: 10)</li>
+ *     <li>{@code benchmark.linkProfiles} - comma-separated link profiles to run the sweep of rates under (default:
+ *     the network conditions of the environment)</li>
+ * </ul>
+ */
+public class FederatedMessageThroughputBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedMessageThroughputBenchmark.class);
+
+    private final int pairCount = BenchmarkSettings.getInt("benchmark.pairs", 4);
+    private final List<Double> rates = BenchmarkSettings.getDoubleList("benchmark.rates", 200.0);
+    private final Duration warmup = BenchmarkSettings.getDuration("benchmark.warmup", Duration.ofSeconds(5));
+    private final Duration duration = BenchmarkSettings.getDuration("benchmark.duration", Duration.ofSeconds(30));
+    private final Duration drainTimeout = BenchmarkSettings.getDuration("benchmark.drainTimeout", Duration.ofSeconds(10));
+    private final List<LinkProfile> linkProfiles = LinkProfile.parseList(BenchmarkSettings.getString("benchmark.linkProfiles", ""));
+
+    private final List<Pair> pairs = new ArrayList<>();
+    private volatile Step currentStep;
+
+    @Test
+    void federatedMessageThroughput() throws Exception {
+        logger.info("Starting federated message throughput benchmark with {} pairs at rates {} msg/s...", pairCount, rates);
+
+        try {
+            for (int i = 0; i < pairCount; i++) {
+                pairs.add(createPair(i));
+            }
+            logger.info("Established {} sender/receiver pairs", pairs.size());
+
+            primeRoutes();
+
+            final List<Map<String, Object>> results = new ArrayList<>();
+            int id = 0;
+            for (LinkProfile profile : linkProfiles.isEmpty() ? List.of(getCurrentLinkProfile()) : linkProfiles) {
+                if (!linkProfiles.isEmpty()) {
+                    setLinkProfile(profile);
+                }
+                for (double rate : rates) {
+                    results.add(runStep(++id, rate, profile));
+                }
+            }
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("pairs", pairCount);
+            configuration.put("warmupSeconds", warmup.toMillis() / 1000.0);
+            configuration.put("durationSeconds", duration.toMillis() / 1000.0);
+
+            new BenchmarkReport("federated-message-throughput")
+                    .put("configuration", configuration)
+                    .put("steps", results)
+                    .write();
+
+            final long received = results.stream().mapToLong(r -> (Long) r.get("received")).sum();
+            Assertions.assertTrue(received > 0, "At least one benchmark message should have been received");
+        } finally {
+            if (!linkProfiles.isEmpty()) {
+                setLinkProfile(getLinkProfile());
+            }
+            for (Pair pair : pairs) {
+                pair.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Sends a single message for each pair, and waits for all of them to be received. This ensures that the
+     * server-to-server connection has been established, and that all receivers are routable, before measuring.
+     */
+    private void primeRoutes() throws Exception {
+        logger.info("Priming federated routes...");
+        final Step prime = new Step(0, pairCount, Long.MIN_VALUE, Long.MAX_VALUE);
+        currentStep = prime;
+        for (Pair pair : pairs) {
+            pair.send(prime, 0);
+        }
+        if (!prime.awaitReceived(pairCount, Duration.ofSeconds(60))) {
+            throw new IllegalStateException("Timed out priming federated routes: received " + prime.received.get() + " of " + pairCount + " messages");
+        }
+        logger.info("All federated routes primed");
+    }
+
+    /**
+     * Executes one step of the benchmark, sending messages at the provided aggregate target rate.
+     *
+     * @param id         the identifier of this step
+     * @param targetRate the aggregate number of messages per second to send, divided evenly over all pairs
+     * @param profile    the network conditions of the S2S link during this step
+     * @return the results of this step
+     */
+    private Map<String, Object> runStep(int id, double targetRate, LinkProfile profile) throws Exception {
+        logger.info("Step {}: sending {} msg/s over {} pairs for {}s (after {}s warm-up) with link profile {}...",
+                id, targetRate, pairCount, duration.toSeconds(), warmup.toSeconds(), profile);
+
+        final long intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) * pairCount / targetRate);
+        final long start = System.nanoTime();
+        final long measureStart = start + warmup.toNanos();
+        final long end = measureStart + duration.toNanos();
+
+        final Step step = new Step(id, pairCount, measureStart, end);
+        currentStep = step;
+        setStep("step-" + id + "-" + profile);
+
+        final ExecutorService senders = Executors.newFixedThreadPool(pairCount);
+        try {
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            for (Pair pair : pairs) {
+                tasks.add(() -> {
+                    // Offset the schedule of each pair, to avoid all pairs sending in bursts at the same moment.
+                    final long offset = intervalNanos * pair.index / pairCount;
+                    for (long seq = 0; ; seq++) {
+                        final long scheduled = start + offset + seq * intervalNanos;
+                        if (scheduled >= end) {
+                            break;
+                        }
+                        final long delay = scheduled - System.nanoTime();
+                        if (delay > 0) {
+                            LockSupport.parkNanos(delay);
+                        }
+                        step.scheduleLag.recordNanos(System.nanoTime() - scheduled);
+                        try {
+                            pair.send(step, seq);
+                        } catch (SmackException.NotConnectedException e) {
+                            logger.warn("Sender of pair {} is no longer connected", pair.index, e);
+                            step.sendFailures.incrementAndGet();
+                            break;
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (var future : senders.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+
+        final long sent = step.sent.get();
+        if (!step.awaitReceived(sent, drainTimeout)) {
+            logger.warn("Step {}: timed out waiting for outstanding messages to arrive", id);
+        }
+        final Map<String, Object> results = step.results(targetRate, duration);
+        results.put("linkProfile", profile.toMap());
+        return results;
+    }
+
+    private Pair createPair(int index) throws Exception {
+        final String resource = "bench-" + index;
+        final AbstractXMPPConnection sender = connect(XMPP1_DOMAIN, index % 2 == 0 ? USER_1 : USER_2, resource);
+        final AbstractXMPPConnection receiver = connect(XMPP2_DOMAIN, index % 2 == 0 ? USER_3 : USER_4, resource);
+        final Pair pair = new Pair(index, sender, receiver);
+        receiver.addSyncStanzaListener(
+                stanza -> {
+                    final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                    final Step step = currentStep;
+                    if (step != null && stamp.run() == step.id) {
+                        step.onReceived(stamp);
+                    }
+                },
+                stanza -> stanza instanceof Message && BenchmarkStamp.from(stanza) != null
+        );
+        return pair;
+    }
+
+    private static AbstractXMPPConnection connect(String domain, String user, String resource) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(domain, user)
+                .setResource(resource)
+                .build());
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+
+    /**
+     * A sender on the first server, and the receiver on the second server that it sends messages to.
+     */
+    private static final class Pair {
+        final int index;
+        final AbstractXMPPConnection sender;
+        final AbstractXMPPConnection receiver;
+        final EntityFullJid receiverJid;
+
+        Pair(int index, AbstractXMPPConnection sender, AbstractXMPPConnection receiver) {
+            this.index = index;
+            this.sender = sender;
+            this.receiver = receiver;
+            this.receiverJid = receiver.getUser();
+        }
+
+        void send(Step step, long sequence) throws SmackException.NotConnectedException, InterruptedException {
+            final BenchmarkStamp stamp = BenchmarkStamp.now(step.id, index, sequence);
+            final Message message = sender.getStanzaFactory()
+                    .buildMessageStanza()
+                    .to(receiverJid)
+                    .ofType(Message.Type.chat)
+                    .setBody("Benchmark message " + sequence + " of pair " + index)
+                    .addExtension(stamp.toExtensionElement())
+                    .build();
+            sender.sendStanza(message);
+            step.onSent(stamp);
+        }
+
+        void disconnect() {
+            if (sender.isConnected()) {
+                sender.disconnect();
+            }
+            if (receiver.isConnected()) {
+                receiver.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Collects the measurements of a single step of the benchmark.
+     */
+    private static final class Step {
+        final int id;
+        final long measureStart;
+        final long measureEnd;
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong sentInWindow = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong receivedInWindow = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong reordered = new AtomicLong();
+        final AtomicLong sendFailures = new AtomicLong();
+        final BitSet[] seenPerPair;
+        final long[] highestSequencePerPair;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram scheduleLag = new LatencyHistogram();
+
+        Step(int id, int pairCount, long measureStart, long measureEnd) {
+            this.id = id;
+            this.measureStart = measureStart;
+            this.measureEnd = measureEnd;
+            this.seenPerPair = new BitSet[pairCount];
+            this.highestSequencePerPair = new long[pairCount];
+            for (int i = 0; i < pairCount; i++) {
+                seenPerPair[i] = new BitSet();
+                highestSequencePerPair[i] = -1;
+            }
+        }
+
+        void onSent(BenchmarkStamp stamp) {
+            sent.incrementAndGet();
+            if (stamp.sentNanos() >= measureStart && stamp.sentNanos() < measureEnd) {
+                sentInWindow.incrementAndGet();
+            }
+        }
+
+        void onReceived(BenchmarkStamp stamp) {
+            final long now = System.nanoTime();
+            final int pair = stamp.stream();
+            final int sequence = (int) stamp.sequence();
+            synchronized (this) {
+                if (pair < 0 || pair >= seenPerPair.length) {
+                    return;
+                }
+                if (seenPerPair[pair].get(sequence)) {
+                    duplicates.incrementAndGet();
+                    return;
+                }
+                seenPerPair[pair].set(sequence);
+                if (sequence < highestSequencePerPair[pair]) {
+                    reordered.incrementAndGet();
+                } else {
+                    highestSequencePerPair[pair] = sequence;
+                }
+                received.incrementAndGet();
+                notifyAll();
+            }
+            if (stamp.sentNanos() >= measureStart && stamp.sentNanos() < measureEnd) {
+                latency.recordNanos(now - stamp.sentNanos());
+            }
+            if (now >= measureStart && now < measureEnd) {
+                receivedInWindow.incrementAndGet();
+            }
+        }
+
+        synchronized boolean awaitReceived(long expected, Duration timeout) throws InterruptedException {
+            final long deadline = System.nanoTime() + timeout.toNanos();
+            while (received.get() < expected) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        synchronized Map<String, Object> results(double targetRate, Duration duration) {
+            final double seconds = duration.toMillis() / 1000.0;
+            final long sentTotal = sent.get();
+            final long receivedTotal = received.get();
+
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("step", id);
+            result.put("targetRate", targetRate);
+            result.put("sentRate", Math.round(sentInWindow.get() / seconds * 10) / 10.0);
+            result.put("deliveredRate", Math.round(receivedInWindow.get() / seconds * 10) / 10.0);
+            result.put("sent", sentTotal);
+            result.put("received", receivedTotal);
+            result.put("lost", sentTotal - receivedTotal);
+            result.put("duplicates", duplicates.get());
+            result.put("reordered", reordered.get());
+            result.put("sendFailures", sendFailures.get());
+            result.put("latency", latency.summary());
+            result.put("scheduleLag", scheduleLag.summary());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkExecutors;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smackx.muc.MultiUserChat;
+import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.xdata.form.FillableForm;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Load scenario that measures the cost of a multi-user chat room with occupants on both servers of the federation.
+ *
+ * A new room is created on the chat service of the first server, and joined by a number of local occupants (on the
+ * first server). Then, in steps, remote occupants (on the second server) are added, up to a configurable sequence of
+ * totals. Each step measures:
+ * <ul>
+ *     <li>The join storm: all new remote occupants join concurrently. The latency of each join, and the number of
+ *     presence stanzas that are broadcast to the occupants as a result, are recorded.</li>
+ *     <li>Message fan-out: the first local occupant sends stamped messages to the room at a fixed rate. The latency of
+ *     every delivery is recorded (separately for local and remote occupants), as is the fan-out latency: the time
+ *     until the message reached the last occupant. Throughput is reported as deliveries per second.</li>
+ * </ul>
+ * Finally, all remote occupants leave concurrently, which measures the leave storm.
+ *
+ * The room is configured without a limit on the number of occupants. When not all occupants of a step manage to join,
+ * the benchmark fails, rather than measuring fan-out at a lower occupancy than intended.
+ *
+ * Occupants are synthetic users (see {@link SyntheticPopulation}) if enough have been provisioned. Otherwise, the
+ * pre-configured users are shared, each connection using its own resource and nickname.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.localOccupants} - number of occupants on the first server (default: 10)</li>
+ *     <li>{@code benchmark.remoteOccupants} - comma-separated, increasing numbers of occupants on the second server,
+ *     one for each step (default: 0,10,25,50)</li>
+ *     <li>{@code benchmark.rate} - messages per second sent to the room (default: 10)</li>
+ *     <li>{@code benchmark.duration} - measurement period of each step, in seconds (default: 20)</li>
+ *     <li>{@code benchmark.drainTimeout} - maximum time to wait for outstanding deliveries, in seconds (default: 10)</li>
+ *     <li>{@code benchmark.joinTimeout} - timeout of joining or leaving the room, in seconds (default: 30)</li>
+ * </ul>
+ */
+public class FederatedMucFanoutBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedMucFanoutBenchmark.class);
+
+    // Time without new presence stanzas after which a presence broadcast is considered to have completed
+    private static final Duration PRESENCE_SETTLE_TIME = Duration.ofSeconds(1);
+
+    private final int localOccupantCount = BenchmarkSettings.getInt("benchmark.localOccupants", 10);
+    private final List<Double> remoteOccupantSteps = BenchmarkSettings.getDoubleList("benchmark.remoteOccupants", 0.0, 10.0, 25.0, 50.0);
+    private final double rate = BenchmarkSettings.getDouble("benchmark.rate", 10);
+    private final Duration duration = BenchmarkSettings.getDuration("benchmark.duration", Duration.ofSeconds(20));
+    private final Duration drainTimeout = BenchmarkSettings.getDuration("benchmark.drainTimeout", Duration.ofSeconds(10));
+    private final Duration joinTimeout = BenchmarkSettings.getDuration("benchmark.joinTimeout", Duration.ofSeconds(30));
+
+    private final List<Occupant> occupants = new ArrayList<>();
+    private final AtomicLong presencesReceived = new AtomicLong();
+    private volatile Step currentStep;
+    private EntityBareJid room;
+
+    @Test
+    void mucFanout() throws Exception {
+        room = JidCreate.entityBareFrom("fanout-" + System.currentTimeMillis() + "@conference." + XMPP1_DOMAIN);
+        logger.info("Starting MUC fan-out benchmark in {} with {} local occupants, and steps of {} remote occupants...",
+                room, localOccupantCount, remoteOccupantSteps);
+
+        final SyntheticPopulation population = SyntheticPopulation.configured();
+        try {
+            // The first local occupant creates the room, and sends all messages.
+            final Occupant owner = new Occupant(0, population.getLoadUser(XMPP1_DOMAIN, 0), false);
+            owner.connect();
+            owner.muc.create(owner.nickname);
+            // Openfire limits rooms to 30 occupants by default, fewer than the later steps need.
+            final FillableForm roomConfiguration = owner.muc.getConfigurationForm().getFillableForm();
+            roomConfiguration.setAnswer("muc#roomconfig_maxusers", "0");
+            owner.muc.sendConfigurationForm(roomConfiguration);
+            occupants.add(owner);
+
+            final List<Occupant> locals = new ArrayList<>();
+            for (int i = 1; i < localOccupantCount; i++) {
+                locals.add(new Occupant(i, population.getLoadUser(XMPP1_DOMAIN, i), false));
+            }
+            setStep("join-local");
+            final Map<String, Object> localJoin = joinStorm(locals);
+            final List<String> incomplete = new ArrayList<>();
+            if (occupants.size() < localOccupantCount) {
+                incomplete.add("only " + occupants.size() + " of " + localOccupantCount + " local occupants joined");
+            }
+
+            final List<Map<String, Object>> steps = new ArrayList<>();
+            int remoteCount = 0;
+            for (int s = 0; s < remoteOccupantSteps.size() && incomplete.isEmpty(); s++) {
+                final int target = remoteOccupantSteps.get(s).intValue();
+                final List<Occupant> joining = new ArrayList<>();
+                for (; remoteCount < target; remoteCount++) {
+                    joining.add(new Occupant(localOccupantCount + remoteCount, population.getLoadUser(XMPP2_DOMAIN, remoteCount), true));
+                }
+                setStep("join-" + (s + 1));
+                final Map<String, Object> join = joinStorm(joining);
+
+                final Map<String, Object> step = new LinkedHashMap<>();
+                final long remoteOccupants = occupants.stream().filter(o -> o.remote).count();
+                step.put("step", s + 1);
+                step.put("localOccupants", occupants.stream().filter(o -> !o.remote).count());
+                step.put("remoteOccupants", remoteOccupants);
+                step.put("join", join);
+                steps.add(step);
+                if (remoteOccupants < target) {
+                    // Fan-out at a lower occupancy than intended would be reported as that of the intended occupancy.
+                    incomplete.add("only " + remoteOccupants + " of " + target + " remote occupants joined in step " + (s + 1));
+                    break;
+                }
+                setStep("fanout-" + (s + 1));
+                step.put("fanout", fanout(s + 1, owner));
+            }
+
+            setStep("leave");
+            final Map<String, Object> leave = leaveStorm(occupants.stream().filter(o -> o.remote).toList());
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("room", room.toString());
+            configuration.put("localOccupants", localOccupantCount);
+            configuration.put("remoteOccupants", remoteOccupantSteps);
+            configuration.put("rate", rate);
+            configuration.put("durationSeconds", duration.toMillis() / 1000.0);
+            configuration.put("syntheticOccupants", population.getUsersPerServer() >= Math.max(localOccupantCount, remoteCount));
+
+            new BenchmarkReport("federated-muc-fanout")
+                    .put("configuration", configuration)
+                    .put("localJoin", localJoin)
+                    .put("steps", steps)
+                    .put("remoteLeave", leave)
+                    .write();
+
+            Assertions.assertTrue(incomplete.isEmpty(), "Not all occupants joined the room: " + String.join("; ", incomplete));
+            final long delivered = steps.stream()
+                    .mapToLong(step -> (Long) ((Map<?, ?>) step.get("fanout")).get("deliveries"))
+                    .sum();
+            Assertions.assertTrue(delivered > 0, "At least one room message should have been delivered");
+        } finally {
+            for (Occupant occupant : occupants) {
+                occupant.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Joins a number of occupants to the room concurrently, and measures the latency of each join, and the presence
+     * broadcast that the joins cause.
+     */
+    private Map<String, Object> joinStorm(List<Occupant> joining) throws Exception {
+        final LatencyHistogram joinLatency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final List<Occupant> joined = new ArrayList<>();
+        final long presencesBefore = presencesReceived.get();
+        final long start = System.nanoTime();
+
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("muc-join");
+        try {
+            final List<Future<Occupant>> futures = new ArrayList<>();
+            for (Occupant occupant : joining) {
+                futures.add(executor.submit(() -> {
+                    occupant.connect();
+                    final long joinStart = System.nanoTime();
+                    occupant.muc.join(occupant.muc.getEnterConfigurationBuilder(occupant.nickname)
+                            .requestNoHistory()
+                            .timeoutAfter(joinTimeout.toMillis())
+                            .build());
+                    joinLatency.recordNanos(System.nanoTime() - joinStart);
+                    return occupant;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    joined.add(futures.get(i).get());
+                } catch (Exception e) {
+                    logger.warn("Occupant {} failed to join {}", joining.get(i).nickname, room, e);
+                    joining.get(i).disconnect();
+                    failures.incrementAndGet();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final long joinedNanos = System.nanoTime() - start;
+        synchronized (occupants) {
+            occupants.addAll(joined);
+        }
+        final long settledNanos = awaitPresenceSettled() - start;
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("joining", joining.size());
+        result.put("failed", failures.get());
+        result.put("joinLatency", joinLatency.summary());
+        result.put("joinStormMs", TimeUnit.NANOSECONDS.toMillis(joinedNanos));
+        result.put("presenceSettledMs", TimeUnit.NANOSECONDS.toMillis(settledNanos));
+        result.put("presencesBroadcast", presencesReceived.get() - presencesBefore);
+        return result;
+    }
+
+    /**
+     * Makes a number of occupants leave the room concurrently, and measures the latency of each leave, and the
+     * presence broadcast that the leaves cause.
+     */
+    private Map<String, Object> leaveStorm(List<Occupant> leaving) throws Exception {
+        final LatencyHistogram leaveLatency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final long presencesBefore = presencesReceived.get();
+        final long start = System.nanoTime();
+
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("muc-leave");
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (Occupant occupant : leaving) {
+                futures.add(executor.submit(() -> {
+                    final long leaveStart = System.nanoTime();
+                    occupant.muc.leave();
+                    leaveLatency.recordNanos(System.nanoTime() - leaveStart);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    logger.warn("Occupant failed to leave {}", room, e);
+                    failures.incrementAndGet();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final long leftNanos = System.nanoTime() - start;
+        final long settledNanos = awaitPresenceSettled() - start;
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("leaving", leaving.size());
+        result.put("failed", failures.get());
+        result.put("leaveLatency", leaveLatency.summary());
+        result.put("leaveStormMs", TimeUnit.NANOSECONDS.toMillis(leftNanos));
+        result.put("presenceSettledMs", TimeUnit.NANOSECONDS.toMillis(settledNanos));
+        result.put("presencesBroadcast", presencesReceived.get() - presencesBefore);
+        return result;
+    }
+
+    /**
+     * Waits until no presence stanzas have been received for {@link #PRESENCE_SETTLE_TIME}.
+     *
+     * @return the {@link System#nanoTime()} at which the last presence stanza was received
+     */
+    private long awaitPresenceSettled() throws InterruptedException {
+        long lastCount = presencesReceived.get();
+        long lastChange = System.nanoTime();
+        final long deadline = lastChange + joinTimeout.toNanos();
+        while (System.nanoTime() - lastChange < PRESENCE_SETTLE_TIME.toNanos() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            final long count = presencesReceived.get();
+            if (count != lastCount) {
+                lastCount = count;
+                lastChange = System.nanoTime();
+            }
+        }
+        return lastChange;
+    }
+
+    /**
+     * Sends stamped messages to the room at the configured rate, and measures their delivery to all occupants.
+     */
+    private Map<String, Object> fanout(int id, Occupant sender) throws Exception {
+        final int occupantCount;
+        synchronized (occupants) {
+            occupantCount = occupants.size();
+        }
+        final Step step = new Step(id, occupantCount);
+        currentStep = step;
+        logger.info("Step {}: sending {} msg/s to {} occupants for {}s...", id, rate, occupantCount, duration.toSeconds());
+
+        final long intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / rate);
+        final long start = System.nanoTime();
+        final long end = start + duration.toNanos();
+        for (long seq = 0; ; seq++) {
+            final long scheduled = start + seq * intervalNanos;
+            if (scheduled >= end) {
+                break;
+            }
+            final long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            final BenchmarkStamp stamp = BenchmarkStamp.now(id, 0, seq);
+            step.pending.put(seq, new Fanout(stamp.sentNanos()));
+            sender.muc.sendMessage(sender.muc.buildMessage()
+                    .setBody("Fan-out message " + seq)
+                    .addExtension(stamp.toExtensionElement()));
+            step.sent.incrementAndGet();
+        }
+
+        final long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (step.deliveries.get() < step.sent.get() * occupantCount && System.nanoTime() < drainDeadline) {
+            Thread.sleep(20);
+        }
+        currentStep = null;
+        return step.results(duration);
+    }
+
+    /**
+     * Tracks the deliveries of a single room message to all occupants.
+     */
+    private static final class Fanout {
+        final long sentNanos;
+        final AtomicInteger delivered = new AtomicInteger();
+
+        Fanout(long sentNanos) {
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    /**
+     * Collects the measurements of the message fan-out of a single step.
+     */
+    private static final class Step {
+        final int id;
+        final int occupantCount;
+        final Map<Long, Fanout> pending = new ConcurrentHashMap<>();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong deliveries = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final LatencyHistogram localDelivery = new LatencyHistogram();
+        final LatencyHistogram remoteDelivery = new LatencyHistogram();
+        final LatencyHistogram fanoutToLast = new LatencyHistogram();
+
+        Step(int id, int occupantCount) {
+            this.id = id;
+            this.occupantCount = occupantCount;
+        }
+
+        void onDelivered(BenchmarkStamp stamp, boolean remote) {
+            final long now = System.nanoTime();
+            final Fanout fanout = pending.get(stamp.sequence());
+            if (fanout == null) {
+                return;
+            }
+            deliveries.incrementAndGet();
+            (remote ? remoteDelivery : localDelivery).recordNanos(now - stamp.sentNanos());
+            if (fanout.delivered.incrementAndGet() == occupantCount) {
+                fanoutToLast.recordNanos(now - fanout.sentNanos);
+                completed.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> results(Duration duration) {
+            final double seconds = duration.toMillis() / 1000.0;
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("occupants", occupantCount);
+            result.put("sent", sent.get());
+            result.put("deliveries", deliveries.get());
+            result.put("expectedDeliveries", sent.get() * occupantCount);
+            result.put("incompleteMessages", sent.get() - completed.get());
+            result.put("messagesPerSecond", sent.get() / seconds);
+            result.put("deliveriesPerSecond", deliveries.get() / seconds);
+            result.put("fanoutToLastLatency", fanoutToLast.summary());
+            result.put("localDeliveryLatency", localDelivery.summary());
+            result.put("remoteDeliveryLatency", remoteDelivery.summary());
+            return result;
+        }
+    }
+
+    /**
+     * A connection that is (to be) joined to the room.
+     */
+    private final class Occupant {
+        final SyntheticPopulation.SyntheticUser user;
+        final boolean remote;
+        final Resourcepart nickname;
+        AbstractXMPPConnection connection;
+        MultiUserChat muc;
+
+        Occupant(int index, SyntheticPopulation.SyntheticUser user, boolean remote) throws Exception {
+            this.user = user;
+            this.remote = remote;
+            this.nickname = Resourcepart.from("occupant-" + index);
+        }
+
+        void connect() throws Exception {
+            connection = new XMPPTCPConnection(connectionConfigurationBuilder(user)
+                    .setResource(nickname.toString())
+                    .build());
+            connection.setReplyTimeout(joinTimeout.toMillis());
+            connection.connect();
+            connection.login();
+            muc = MultiUserChatManager.getInstanceFor(connection).getMultiUserChat(room);
+            muc.addParticipantListener(presence -> presencesReceived.incrementAndGet());
+            muc.addMessageListener(message -> {
+                final Step step = currentStep;
+                final BenchmarkStamp stamp = BenchmarkStamp.from(message);
+                if (step != null && stamp != null && stamp.run() == step.id) {
+                    step.onDelivered(stamp, remote);
+                }
+            });
+        }
+
+        void disconnect() {
+            if (connection != null && connection.isConnected()) {
+                connection.disconnect();
+            }
+        }
+    }
+}
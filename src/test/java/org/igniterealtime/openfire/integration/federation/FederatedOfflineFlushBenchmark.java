@@ -0,0 +1,360 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smackx.ping.PingManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Measures how a backlog of messages for an offline user on a remote server is stored, and how it is delivered when
+ * the user logs in.
+ *
+ * The benchmark runs in two steps:
+ * <ul>
+ *     <li>Ingest: senders on the first server send a burst of messages to a user of the second server that is offline.
+ *     The second server stores these messages in its database. The number of stored messages is polled in the
+ *     database, which gives the rate at which messages are stored, and the time until the whole burst is stored.
+ *     Messages that the second server bounces (for example, because the offline message quota of the user is
+ *     exceeded, see {@link FederatedTestEnvironment#getOfflineQuota()}) are counted.</li>
+ *     <li>Flush: the user logs in, upon which the second server delivers the stored messages. The latency of the login,
+ *     the time until the first message and until all messages are received (measured from the start of the login, as
+ *     delivery may start before the login completes), and the order in which they are received are recorded. Messages that are received before a message that was sent earlier by the same sender are counted
+ *     as {@code reordered}; messages that are received before any message that was sent earlier are counted as
+ *     {@code globallyReordered}. While the backlog is delivered, the user pings its server at a fixed interval: the
+ *     round-trip time of these pings, the number of pings that are not answered in time, and the longest gap between
+ *     two messages show whether the client connection stalls.</li>
+ * </ul>
+ * Before the burst, the user logs in once to receive any messages that were stored for it earlier.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.messages} - number of messages of the burst (default: 5000)</li>
+ *     <li>{@code benchmark.senders} - number of connections on the first server that send the burst (default: 4)</li>
+ *     <li>{@code benchmark.rate} - number of messages per second at which the burst is sent by all senders together,
+ *     or 0 to send as fast as possible (default: 0)</li>
+ *     <li>{@code benchmark.pingInterval} - interval between pings while the backlog is delivered, in seconds (default:
+ *     0.1)</li>
+ *     <li>{@code benchmark.timeout} - maximum time to wait for the burst to be stored, or the backlog to be delivered,
+ *     in seconds (default: 120)</li>
+ * </ul>
+ */
+public class FederatedOfflineFlushBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedOfflineFlushBenchmark.class);
+
+    // Time after a client disconnects during which the server may still route messages to its session
+    private static final Duration SESSION_CLOSE_GRACE = Duration.ofSeconds(1);
+
+    // Interval at which the number of stored messages is polled
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private final int messages = BenchmarkSettings.getInt("benchmark.messages", 5000);
+    private final int senderCount = BenchmarkSettings.getInt("benchmark.senders", 4);
+    private final double rate = BenchmarkSettings.getDouble("benchmark.rate", 0);
+    private final Duration pingInterval = BenchmarkSettings.getDuration("benchmark.pingInterval", Duration.ofMillis(100));
+    private final Duration timeout = BenchmarkSettings.getDuration("benchmark.timeout", Duration.ofSeconds(120));
+
+    private final FederationNode remote = FederationNode.of(2);
+    private final String recipientUser = USER_4;
+    private final long run = System.currentTimeMillis();
+
+    @Test
+    void offlineFlush() throws Exception {
+        logger.info("Starting offline flush benchmark: {} senders sending {} messages to offline user {}@{}...", senderCount, messages, recipientUser, remote.domain());
+
+        setStep("drain");
+        drain();
+
+        setStep("ingest");
+        final Map<String, Object> ingest = ingest();
+
+        setStep("flush");
+        final Map<String, Object> flush = flush((Long) ingest.get("stored"));
+
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+        configuration.put("messages", messages);
+        configuration.put("senders", senderCount);
+        configuration.put("rate", rate);
+        configuration.put("pingIntervalMs", pingInterval.toMillis());
+        configuration.put("offlineQuota", getOfflineQuota());
+        configuration.put("linkProfile", getCurrentLinkProfile().toMap());
+
+        new BenchmarkReport("federated-offline-flush")
+                .put("configuration", configuration)
+                .put("ingest", ingest)
+                .put("flush", flush)
+                .write();
+
+        Assertions.assertEquals(ingest.get("sent"), ingest.get("stored"), "All messages should be stored");
+        Assertions.assertEquals(0L, flush.get("missing"), "All stored messages should be delivered");
+    }
+
+    /**
+     * Logs in as the recipient to receive any messages that were stored earlier, and logs out again.
+     */
+    private void drain() throws Exception {
+        final AbstractXMPPConnection recipient = connect(remote.domain(), recipientUser, "offline-drain");
+        try {
+            final long deadline = System.nanoTime() + timeout.toNanos();
+            while (countStored() > 0) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Timed out waiting for earlier offline messages of " + recipientUser + " to be delivered");
+                }
+                Thread.sleep(POLL_INTERVAL_MS);
+            }
+        } finally {
+            recipient.disconnect();
+        }
+        Thread.sleep(SESSION_CLOSE_GRACE.toMillis());
+    }
+
+    /**
+     * Sends the burst to the offline recipient, and measures how fast it is stored.
+     */
+    private Map<String, Object> ingest() throws Exception {
+        final EntityBareJid recipient = JidCreate.entityBareFrom(recipientUser + "@" + remote.domain());
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong sendFailures = new AtomicLong();
+        final AtomicLong bounced = new AtomicLong();
+        final List<AbstractXMPPConnection> senders = new ArrayList<>();
+        try {
+            for (int i = 0; i < senderCount; i++) {
+                final AbstractXMPPConnection sender = connect(XMPP1_DOMAIN, i % 2 == 0 ? USER_1 : USER_2, "offline-sender-" + i);
+                sender.addSyncStanzaListener(
+                        stanza -> bounced.incrementAndGet(),
+                        stanza -> stanza instanceof Message message && message.getType() == Message.Type.error && message.getFrom() != null && recipient.equals(message.getFrom().asBareJid())
+                );
+                senders.add(sender);
+            }
+
+            final long start = System.nanoTime();
+            final ExecutorService executor = Executors.newFixedThreadPool(senderCount);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < senderCount; i++) {
+                    final int stream = i;
+                    final int count = messages / senderCount + (i < messages % senderCount ? 1 : 0);
+                    final long intervalNanos = rate > 0 ? Math.round(TimeUnit.SECONDS.toNanos(1) * senderCount / rate) : 0;
+                    futures.add(executor.submit(() -> {
+                        final AbstractXMPPConnection sender = senders.get(stream);
+                        for (int seq = 0; seq < count; seq++) {
+                            final long delay = start + seq * intervalNanos - System.nanoTime();
+                            if (delay > 0) {
+                                LockSupport.parkNanos(delay);
+                            }
+                            try {
+                                sender.sendStanza(sender.getStanzaFactory()
+                                        .buildMessageStanza()
+                                        .to(recipient)
+                                        .ofType(Message.Type.chat)
+                                        .setBody("Offline message " + seq + " of sender " + stream)
+                                        .addExtension(BenchmarkStamp.now(run, stream, seq).toExtensionElement())
+                                        .build());
+                                sent.incrementAndGet();
+                            } catch (Exception e) {
+                                logger.debug("Unable to send message {} of sender {}", seq, stream, e);
+                                sendFailures.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            final long sendDone = System.nanoTime();
+
+            // Poll until every message that was sent is either stored or bounced.
+            final long deadline = sendDone + timeout.toNanos();
+            long stored = countStored();
+            long lastIncrease = stored > 0 ? System.nanoTime() : start;
+            while (stored + bounced.get() < sent.get() && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_INTERVAL_MS);
+                final long count = countStored();
+                if (count > stored) {
+                    lastIncrease = System.nanoTime();
+                }
+                stored = count;
+            }
+            if (stored + bounced.get() < sent.get()) {
+                logger.warn("Timed out waiting for messages to be stored: {} stored and {} bounced of {}", stored, bounced.get(), sent.get());
+            }
+
+            final double sendSeconds = (sendDone - start) / 1_000_000_000.0;
+            final double storeSeconds = (lastIncrease - start) / 1_000_000_000.0;
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sent", sent.get());
+            result.put("sendFailures", sendFailures.get());
+            result.put("stored", stored);
+            result.put("bounced", bounced.get());
+            result.put("storedBytes", Long.parseLong(queryDatabase(remote, "SELECT COALESCE(SUM(messageSize), 0) FROM ofOffline WHERE username = '" + recipientUser + "'").get(0)));
+            result.put("sendMs", (sendDone - start) / 1_000_000.0);
+            result.put("storeMs", stored == 0 ? null : (lastIncrease - start) / 1_000_000.0);
+            result.put("sentPerSecond", sendSeconds == 0 ? null : sent.get() / sendSeconds);
+            result.put("storedPerSecond", stored == 0 || storeSeconds == 0 ? null : stored / storeSeconds);
+            logger.info("Ingest: {}", result);
+            return result;
+        } finally {
+            for (AbstractXMPPConnection sender : senders) {
+                if (sender.isConnected()) {
+                    sender.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs in as the recipient, and measures the delivery of the stored messages.
+     */
+    private Map<String, Object> flush(long stored) throws Exception {
+        final Set<Long> received = ConcurrentHashMap.newKeySet();
+        final Map<Integer, Long> lastSequence = new ConcurrentHashMap<>();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong reordered = new AtomicLong();
+        final AtomicLong globallyReordered = new AtomicLong();
+        final AtomicLong firstArrival = new AtomicLong();
+        final AtomicLong lastArrival = new AtomicLong();
+        final AtomicLong maxGap = new AtomicLong();
+        final AtomicLong latestSent = new AtomicLong(Long.MIN_VALUE);
+
+        final AbstractXMPPConnection recipient = new XMPPTCPConnection(connectionConfigurationBuilder(remote.domain(), recipientUser)
+                .setResource("offline-recipient")
+                .setConnectTimeout((int) timeout.toMillis())
+                .build());
+        recipient.addSyncStanzaListener(
+                stanza -> {
+                    final long now = System.nanoTime();
+                    final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                    if (stamp.run() != run) {
+                        return;
+                    }
+                    // Sync listeners are invoked one at a time, in the order in which stanzas are received.
+                    if (!received.add(((long) stamp.stream() << 40) | stamp.sequence())) {
+                        duplicates.incrementAndGet();
+                        return;
+                    }
+                    final Long previous = lastSequence.put(stamp.stream(), Math.max(stamp.sequence(), lastSequence.getOrDefault(stamp.stream(), -1L)));
+                    if (previous != null && stamp.sequence() < previous) {
+                        reordered.incrementAndGet();
+                    }
+                    if (stamp.sentNanos() < latestSent.getAndAccumulate(stamp.sentNanos(), Math::max)) {
+                        globallyReordered.incrementAndGet();
+                    }
+                    if (firstArrival.get() == 0) {
+                        firstArrival.set(now);
+                    } else {
+                        maxGap.accumulateAndGet(now - lastArrival.get(), Math::max);
+                    }
+                    lastArrival.set(now);
+                },
+                stanza -> stanza instanceof Message && BenchmarkStamp.from(stanza) != null
+        );
+
+        final LatencyHistogram pingLatency = new LatencyHistogram();
+        final AtomicLong pingTimeouts = new AtomicLong();
+        final AtomicBoolean flushing = new AtomicBoolean(true);
+        final ExecutorService pinger = Executors.newSingleThreadExecutor();
+        try {
+            final long start = System.nanoTime();
+            recipient.connect();
+            final long connected = System.nanoTime();
+            // Logging in sends the initial presence, upon which the server starts delivering the stored messages.
+            recipient.login();
+            final long loggedIn = System.nanoTime();
+
+            final Future<?> pings = pinger.submit(() -> {
+                final PingManager pingManager = PingManager.getInstanceFor(recipient);
+                while (flushing.get()) {
+                    final long pingStart = System.nanoTime();
+                    if (pingManager.pingMyServer(false, timeout.toMillis())) {
+                        pingLatency.recordNanos(System.nanoTime() - pingStart);
+                    } else {
+                        pingTimeouts.incrementAndGet();
+                    }
+                    final long delay = pingStart + pingInterval.toNanos() - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+                return null;
+            });
+
+            final long deadline = connected + timeout.toNanos();
+            while (received.size() < stored && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            flushing.set(false);
+            pings.get();
+
+            final long count = received.size();
+            final long flushNanos = lastArrival.get() == 0 ? 0 : lastArrival.get() - connected;
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("expected", stored);
+            result.put("received", count);
+            result.put("missing", stored - count);
+            result.put("duplicates", duplicates.get());
+            result.put("reordered", reordered.get());
+            result.put("globallyReordered", globallyReordered.get());
+            result.put("connectMs", (connected - start) / 1_000_000.0);
+            result.put("loginMs", (loggedIn - connected) / 1_000_000.0);
+            result.put("timeToFirstMessageMs", firstArrival.get() == 0 ? null : (firstArrival.get() - connected) / 1_000_000.0);
+            result.put("flushMs", count == 0 ? null : flushNanos / 1_000_000.0);
+            result.put("flushedPerSecond", count == 0 || flushNanos == 0 ? null : count / (flushNanos / 1_000_000_000.0));
+            result.put("maxGapMs", maxGap.get() / 1_000_000.0);
+            result.put("pingLatency", pingLatency.summary());
+            result.put("pingTimeouts", pingTimeouts.get());
+            result.put("remainingStored", countStored());
+            logger.info("Flush: {}", result);
+            return result;
+        } finally {
+            flushing.set(false);
+            pinger.shutdownNow();
+            recipient.disconnect();
+        }
+    }
+
+    private long countStored() throws IOException {
+        return Long.parseLong(queryDatabase(remote, "SELECT COUNT(*) FROM ofOffline WHERE username = '" + recipientUser + "'").get(0));
+    }
+
+    private AbstractXMPPConnection connect(String domain, String user, String resource) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(domain, user)
+                .setResource(resource)
+                .setConnectTimeout((int) timeout.toMillis())
+                .build());
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+}
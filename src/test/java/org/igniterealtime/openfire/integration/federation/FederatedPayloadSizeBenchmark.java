@@ -0,0 +1,256 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.igniterealtime.openfire.integration.benchmark.WireAccounting;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Measures federated message throughput as the size of the messages grows, from a few bytes to hundreds of kilobytes.
+ *
+ * For every payload size, senders on the first server send messages with a body of that size to receivers on the
+ * second server, as fast as a window of outstanding messages allows. The connections of the senders and receivers are
+ * instrumented (see {@link WireAccounting}), so that the bytes that are actually sent and received per message are
+ * recorded alongside the throughput, in messages and in payload bytes per second, the latency and the CPU time that
+ * both servers used per message. Messages that are not received within the timeout are reported as lost; a sender
+ * stops when its window stays full for longer than the timeout.
+ *
+ * New connections are used for every payload size, and the wire counts start after the routes have been established,
+ * so that they include the framing of every message, but not stream negotiation.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.payloadSizes} - comma-separated sizes of the message bodies, in bytes (default:
+ *     64,1024,16384,131072,524288)</li>
+ *     <li>{@code benchmark.pairs} - number of sender/receiver pairs (default: 4)</li>
+ *     <li>{@code benchmark.messages} - maximum number of messages sent by every pair, per payload size (default:
+ *     1000)</li>
+ *     <li>{@code benchmark.bytesPerPair} - maximum number of payload bytes sent by every pair, per payload size, which
+ *     limits the number of messages of large payload sizes (default: 67108864)</li>
+ *     <li>{@code benchmark.window} - maximum number of outstanding messages of every pair (default: 20)</li>
+ *     <li>{@code benchmark.timeout} - maximum time to wait for messages to be delivered, in seconds (default: 60)</li>
+ * </ul>
+ */
+public class FederatedPayloadSizeBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedPayloadSizeBenchmark.class);
+
+    private final List<Integer> payloadSizes = BenchmarkSettings.getDoubleList("benchmark.payloadSizes", 64.0, 1024.0, 16384.0, 131072.0, 524288.0)
+            .stream()
+            .map(Double::intValue)
+            .toList();
+    private final int pairCount = BenchmarkSettings.getInt("benchmark.pairs", 4);
+    private final int maxMessages = BenchmarkSettings.getInt("benchmark.messages", 1000);
+    private final long bytesPerPair = BenchmarkSettings.getLong("benchmark.bytesPerPair", 64 * 1024 * 1024);
+    private final int window = BenchmarkSettings.getInt("benchmark.window", 20);
+    private final Duration timeout = BenchmarkSettings.getDuration("benchmark.timeout", Duration.ofSeconds(60));
+
+    private final FederationNode local = FederationNode.of(1);
+    private final FederationNode remote = FederationNode.of(2);
+
+    @Test
+    void payloadSizeSweep() throws Exception {
+        logger.info("Starting payload size sweep with {} pairs over sizes {}...", pairCount, payloadSizes);
+
+        final List<Map<String, Object>> steps = new ArrayList<>();
+        for (int run = 0; run < payloadSizes.size(); run++) {
+            final int payloadSize = payloadSizes.get(run);
+            setStep(payloadSize + "B");
+            steps.add(measure(run, payloadSize));
+        }
+
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+        configuration.put("tls", isTls());
+        configuration.put("pairs", pairCount);
+        configuration.put("messages", maxMessages);
+        configuration.put("bytesPerPair", bytesPerPair);
+        configuration.put("window", window);
+        configuration.put("linkProfile", getCurrentLinkProfile().toMap());
+
+        new BenchmarkReport("federated-payload-size")
+                .put("configuration", configuration)
+                .put("steps", steps)
+                .write();
+
+        for (Map<String, Object> step : steps) {
+            Assertions.assertEquals(0L, step.get("lost"), "All messages of " + step.get("payloadBytes") + " bytes should be received");
+        }
+    }
+
+    private Map<String, Object> measure(int run, int payloadSize) throws Exception {
+        final int messages = (int) Math.max(1, Math.min(maxMessages, bytesPerPair / Math.max(1, payloadSize)));
+        logger.info("Measuring payloads of {} bytes: {} pairs sending {} messages each...", payloadSize, pairCount, messages);
+        final String body = "x".repeat(payloadSize);
+        final WireAccounting senderWire = new WireAccounting();
+        final WireAccounting receiverWire = new WireAccounting();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong primed = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong sendFailures = new AtomicLong();
+        final List<AbstractXMPPConnection> senders = new ArrayList<>();
+        final List<AbstractXMPPConnection> receivers = new ArrayList<>();
+        final List<Semaphore> windows = new ArrayList<>();
+        try {
+            for (int i = 0; i < pairCount; i++) {
+                final String resource = "payload-size-" + run + "-" + i;
+                final AbstractXMPPConnection sender = connect(senderWire, XMPP1_DOMAIN, i % 2 == 0 ? USER_1 : USER_2, resource);
+                final AbstractXMPPConnection receiver = connect(receiverWire, XMPP2_DOMAIN, i % 2 == 0 ? USER_3 : USER_4, resource);
+                senders.add(sender);
+                receivers.add(receiver);
+                final Semaphore permits = new Semaphore(window);
+                windows.add(permits);
+                receiver.addSyncStanzaListener(
+                        stanza -> {
+                            final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                            if (stamp.run() != run) {
+                                return;
+                            }
+                            if (stamp.sequence() < 0) {
+                                primed.incrementAndGet();
+                                return;
+                            }
+                            latency.recordNanos(stamp.elapsedNanos());
+                            received.incrementAndGet();
+                            permits.release();
+                        },
+                        stanza -> stanza instanceof Message && BenchmarkStamp.from(stanza) != null
+                );
+            }
+
+            // Establish the routes before measuring: messages with sequence -1 are not counted.
+            for (int i = 0; i < pairCount; i++) {
+                send(senders.get(i), receivers.get(i).getUser(), run, i, -1, "");
+            }
+            if (!awaitReceived(primed, pairCount, System.nanoTime() + timeout.toNanos())) {
+                throw new IllegalStateException("Timed out establishing routes: received " + primed.get() + " of " + pairCount + " messages");
+            }
+            senderWire.reset();
+            receiverWire.reset();
+
+            final Duration localCpuBefore = getCpuTime(local);
+            final Duration remoteCpuBefore = getCpuTime(remote);
+            final long start = System.nanoTime();
+            final ExecutorService executor = Executors.newFixedThreadPool(pairCount);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < pairCount; i++) {
+                    final int pair = i;
+                    futures.add(executor.submit(() -> {
+                        final EntityFullJid receiver = receivers.get(pair).getUser();
+                        for (int seq = 0; seq < messages; seq++) {
+                            if (!windows.get(pair).tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                                logger.warn("Pair {} stopped sending payloads of {} bytes: no messages were received for {}s", pair, payloadSize, timeout.toSeconds());
+                                return null;
+                            }
+                            try {
+                                send(senders.get(pair), receiver, run, pair, seq, body);
+                                sent.incrementAndGet();
+                            } catch (Exception e) {
+                                logger.debug("Unable to send message {} of pair {}", seq, pair, e);
+                                sendFailures.incrementAndGet();
+                                windows.get(pair).release();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            awaitReceived(received, sent.get(), System.nanoTime() + timeout.toNanos());
+            final long elapsed = System.nanoTime() - start;
+            final Duration localCpu = getCpuTime(local).minus(localCpuBefore);
+            final Duration remoteCpu = getCpuTime(remote).minus(remoteCpuBefore);
+
+            final long count = received.get();
+            final double seconds = elapsed / 1_000_000_000.0;
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("payloadBytes", payloadSize);
+            result.put("sent", sent.get());
+            result.put("received", count);
+            result.put("lost", sent.get() - count);
+            result.put("sendFailures", sendFailures.get());
+            result.put("messagesPerSecond", count / seconds);
+            result.put("payloadBytesPerSecond", count * (double) payloadSize / seconds);
+            result.put("latency", latency.summary());
+            result.put("senderWireBytesPerMessage", sent.get() == 0 ? null : (double) senderWire.getBytesOut() / sent.get());
+            result.put("receiverWireBytesPerMessage", count == 0 ? null : (double) receiverWire.getBytesIn() / count);
+            result.put("senderServerCpuPerMessageMs", count == 0 ? null : localCpu.toNanos() / 1_000_000.0 / count);
+            result.put("receiverServerCpuPerMessageMs", count == 0 ? null : remoteCpu.toNanos() / 1_000_000.0 / count);
+            result.put("senderWire", senderWire.summary());
+            result.put("receiverWire", receiverWire.summary());
+            logger.info("Payloads of {} bytes: {} messages per second, {} of {} received", payloadSize, result.get("messagesPerSecond"), count, sent.get());
+            return result;
+        } finally {
+            for (AbstractXMPPConnection connection : senders) {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            }
+            for (AbstractXMPPConnection connection : receivers) {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    private static boolean awaitReceived(AtomicLong received, long expected, long deadline) throws InterruptedException {
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static void send(AbstractXMPPConnection sender, EntityFullJid receiver, int run, int stream, long sequence, String body) throws Exception {
+        final Message message = sender.getStanzaFactory()
+                .buildMessageStanza()
+                .to(receiver)
+                .ofType(Message.Type.chat)
+                .setBody(body)
+                .addExtension(BenchmarkStamp.now(run, stream, sequence).toExtensionElement())
+                .build();
+        sender.sendStanza(message);
+    }
+
+    private AbstractXMPPConnection connect(WireAccounting wire, String domain, String user, String resource) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(wire.instrument(connectionConfigurationBuilder(domain, user))
+                .setResource(resource)
+                .setConnectTimeout((int) timeout.toMillis())
+                .build());
+        wire.track(connection);
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+}
@@ -0,0 +1,361 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkExecutors;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Load scenario that reproduces presence storms across the federation: users with large cross-domain rosters that log
+ * in, or change their presence, in bursts.
+ *
+ * This scenario requires a synthetic population with rosters (see {@link SyntheticPopulation}): synthetic users on the
+ * first server have mutual subscriptions with contacts on the second server. First, a number of these contacts (the
+ * observers) log in on the second server. Then, users on the first server log in, in one or more waves, followed by a
+ * number of bursts in which all of them change their presence at (nearly) the same time.
+ *
+ * Every presence update that is sent by a user on the first server carries a {@link BenchmarkStamp}, and is broadcast
+ * over the server-to-server link to all of the user's contacts that are online. For each phase (login wave or
+ * burst), the following is recorded:
+ * <ul>
+ *     <li>The latency of every presence delivery to a contact, and the time until the last online contact of a user
+ *     has seen the update.</li>
+ *     <li>The number of presence stanzas delivered, and the rate at which they crossed the federated link.</li>
+ *     <li>For login waves: the number of presence stanzas that the users received from their contacts in response to
+ *     the presence probes that their server sent on their behalf.</li>
+ * </ul>
+ *
+ * The bursts can be repeated under different network conditions of the S2S link (see {@link LinkProfile}), to see how
+ * presence broadcasts behave as round-trip time, loss and bandwidth of the link change.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.users} - number of users on the first server that log in and change presence (default: 100,
+ *     limited to the synthetic population)</li>
+ *     <li>{@code benchmark.observers} - number of users on the second server that are online (default: 100, limited
+ *     to the synthetic population)</li>
+ *     <li>{@code benchmark.waves} - number of waves in which users log in (default: 1)</li>
+ *     <li>{@code benchmark.bursts} - number of presence change bursts after all users logged in (default: 5)</li>
+ *     <li>{@code benchmark.burstInterval} - minimum time between consecutive phases, in seconds (default: 2)</li>
+ *     <li>{@code benchmark.drainTimeout} - maximum time to wait for outstanding presence deliveries, in seconds (default: 30)</li>
+ *     <li>{@code benchmark.loginTimeout} - connect and reply timeout of each connection, in seconds (default: 30)</li>
+ *     <li>{@code benchmark.linkProfiles} - comma-separated link profiles to run the bursts under (default: the network
+ *     conditions of the environment)</li>
+ * </ul>
+ */
+public class FederatedPresenceStormBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedPresenceStormBenchmark.class);
+
+    private final SyntheticPopulation population = SyntheticPopulation.configured();
+    private final int userCount = Math.min(BenchmarkSettings.getInt("benchmark.users", 100), population.getUsersPerServer());
+    private final int observerCount = Math.min(BenchmarkSettings.getInt("benchmark.observers", 100), population.getUsersPerServer());
+    private final int waveCount = BenchmarkSettings.getInt("benchmark.waves", 1);
+    private final int burstCount = BenchmarkSettings.getInt("benchmark.bursts", 5);
+    private final Duration burstInterval = BenchmarkSettings.getDuration("benchmark.burstInterval", Duration.ofSeconds(2));
+    private final Duration drainTimeout = BenchmarkSettings.getDuration("benchmark.drainTimeout", Duration.ofSeconds(30));
+    private final Duration loginTimeout = BenchmarkSettings.getDuration("benchmark.loginTimeout", Duration.ofSeconds(30));
+    private final List<LinkProfile> linkProfiles = LinkProfile.parseList(BenchmarkSettings.getString("benchmark.linkProfiles", ""));
+
+    private final Queue<AbstractXMPPConnection> connections = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, AbstractXMPPConnection> users = new ConcurrentHashMap<>();
+    private volatile Phase currentPhase;
+
+    @Test
+    void presenceStorm() throws Exception {
+        Assumptions.assumeTrue(population.getUsersPerServer() > 0 && population.getContactsPerUser() > 0,
+                "This benchmark requires a synthetic population with rosters (population.users and population.contacts)");
+
+        logger.info("Starting presence storm: {} users with {} contacts each, {} observers online, {} login waves and {} bursts...",
+                userCount, population.getContactsPerUser(), observerCount, waveCount, burstCount);
+
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("presence-storm");
+        try {
+            setStep("observers");
+            connectObservers(executor);
+
+            final List<Phase> phases = new ArrayList<>();
+            int id = 0;
+            int index = 0;
+            for (int w = 0; w < waveCount; w++) {
+                final int size = userCount / waveCount + (w < userCount % waveCount ? 1 : 0);
+                final List<Integer> wave = new ArrayList<>();
+                for (int i = 0; i < size; i++, index++) {
+                    wave.add(index);
+                }
+                final Phase phase = new Phase(++id, "login-" + (w + 1), getCurrentLinkProfile());
+                phases.add(phase);
+                run(phase, executor, wave, true);
+            }
+            final List<Integer> all = new ArrayList<>(users.keySet());
+            for (LinkProfile profile : linkProfiles.isEmpty() ? List.of(getCurrentLinkProfile()) : linkProfiles) {
+                if (!linkProfiles.isEmpty()) {
+                    setLinkProfile(profile);
+                }
+                for (int b = 0; b < burstCount; b++) {
+                    final Phase phase = new Phase(++id, (linkProfiles.isEmpty() ? "" : profile + "/") + "burst-" + (b + 1), profile);
+                    phases.add(phase);
+                    run(phase, executor, all, false);
+                }
+            }
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("users", userCount);
+            configuration.put("contactsPerUser", population.getContactsPerUser());
+            configuration.put("observers", observerCount);
+            configuration.put("waves", waveCount);
+            configuration.put("bursts", burstCount);
+            configuration.put("burstIntervalSeconds", burstInterval.toMillis() / 1000.0);
+
+            new BenchmarkReport("federated-presence-storm")
+                    .put("configuration", configuration)
+                    .put("phases", phases.stream().map(Phase::results).toList())
+                    .write();
+
+            final long delivered = phases.stream().mapToLong(phase -> phase.delivered.get()).sum();
+            Assertions.assertTrue(delivered > 0, "At least one presence update should have reached a contact");
+        } finally {
+            if (!linkProfiles.isEmpty()) {
+                setLinkProfile(getLinkProfile());
+            }
+            executor.shutdownNow();
+            for (AbstractXMPPConnection connection : connections) {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs in the observers on the second server, which record the presence updates they receive from their contacts.
+     */
+    private void connectObservers(ExecutorService executor) throws Exception {
+        logger.info("Connecting {} observers on {}...", observerCount, XMPP2_DOMAIN);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < observerCount; i++) {
+            final SyntheticPopulation.SyntheticUser observer = population.getUser(XMPP2_DOMAIN, i);
+            futures.add(executor.submit(() -> {
+                final AbstractXMPPConnection connection = connect(observer, true);
+                connection.addSyncStanzaListener(stanza -> {
+                    final Phase phase = currentPhase;
+                    final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                    if (phase != null && stamp != null && stamp.run() == phase.id) {
+                        phase.onDelivered(stamp);
+                    }
+                }, stanza -> stanza instanceof Presence && stanza.getFrom() != null
+                        && stanza.getFrom().asDomainBareJid().toString().equals(XMPP1_DOMAIN));
+                connection.login();
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Runs a single phase: every user sends a stamped presence update (after logging in, for login waves), after
+     * which all deliveries to online contacts are awaited.
+     */
+    private void run(Phase phase, ExecutorService executor, List<Integer> indices, boolean login) throws Exception {
+        logger.info("Phase {}: {} users {}...", phase.name, indices.size(), login ? "logging in" : "changing presence");
+        currentPhase = phase;
+        setStep(phase.name);
+        phase.start = System.nanoTime();
+
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int index : indices) {
+            futures.add(executor.submit(() -> {
+                try {
+                    update(phase, index, login);
+                } catch (Exception e) {
+                    logger.debug("User {} failed in phase {}", index, phase.name, e);
+                    phase.failed.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        phase.sentNanos = System.nanoTime() - phase.start;
+
+        final long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (phase.completed.get() < phase.tracked.get() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(20);
+        }
+        // Let presence stanzas that are not tracked (probe responses) arrive too.
+        final long remaining = phase.start + burstInterval.toNanos() - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+        currentPhase = null;
+    }
+
+    private void update(Phase phase, int index, boolean login) throws Exception {
+        final AbstractXMPPConnection connection;
+        if (login) {
+            // Initial presence is sent explicitly, so that it can be stamped.
+            connection = connect(population.getUser(XMPP1_DOMAIN, index), false);
+            connection.addSyncStanzaListener(stanza -> {
+                final Phase current = currentPhase;
+                if (current != null) {
+                    current.probeResponses.incrementAndGet();
+                }
+            }, stanza -> stanza instanceof Presence && stanza.getFrom() != null
+                    && !stanza.getFrom().asDomainBareJid().toString().equals(XMPP1_DOMAIN));
+            final long loginStart = System.nanoTime();
+            connection.login();
+            phase.login.recordNanos(System.nanoTime() - loginStart);
+            users.put(index, connection);
+        } else {
+            connection = users.get(index);
+        }
+
+        final int expected = countOnlineContacts(index);
+        final BenchmarkStamp stamp = BenchmarkStamp.now(phase.id, index, 0);
+        if (expected > 0) {
+            phase.updates.put(index, new Update(stamp.sentNanos(), expected));
+            phase.tracked.incrementAndGet();
+        }
+        connection.sendStanza(connection.getStanzaFactory()
+                .buildPresenceStanza()
+                .ofType(Presence.Type.available)
+                .setMode(phase.id % 2 == 0 ? Presence.Mode.away : Presence.Mode.available)
+                .setStatus("Presence storm " + phase.name)
+                .addExtension(stamp.toExtensionElement())
+                .build());
+        phase.sent.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of contacts of a user on the first server that are online observers.
+     */
+    private int countOnlineContacts(int index) {
+        int count = 0;
+        for (SyntheticPopulation.SyntheticUser contact : population.getContacts(population.getUser(XMPP1_DOMAIN, index))) {
+            if (contact.domain().equals(XMPP2_DOMAIN) && contact.index() < observerCount) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private AbstractXMPPConnection connect(SyntheticPopulation.SyntheticUser user, boolean sendPresence) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(user)
+                .setResource("presence-storm")
+                .setSendPresence(sendPresence)
+                .setConnectTimeout((int) loginTimeout.toMillis())
+                .build());
+        connection.setReplyTimeout(loginTimeout.toMillis());
+        connections.add(connection);
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * Tracks the delivery of a single presence update to the online contacts of its sender.
+     */
+    private static final class Update {
+        final long sentNanos;
+        final int expected;
+        final AtomicInteger delivered = new AtomicInteger();
+
+        Update(long sentNanos, int expected) {
+            this.sentNanos = sentNanos;
+            this.expected = expected;
+        }
+    }
+
+    /**
+     * Collects the measurements of a single login wave or presence burst.
+     */
+    private static final class Phase {
+        final int id;
+        final String name;
+        final LinkProfile profile;
+        final Map<Integer, Update> updates = new ConcurrentHashMap<>();
+        final LatencyHistogram login = new LatencyHistogram();
+        final LatencyHistogram delivery = new LatencyHistogram();
+        final LatencyHistogram allContacts = new LatencyHistogram();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong tracked = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong probeResponses = new AtomicLong();
+        final AtomicLong lastDelivery = new AtomicLong();
+        volatile long start;
+        volatile long sentNanos;
+
+        Phase(int id, String name, LinkProfile profile) {
+            this.id = id;
+            this.name = name;
+            this.profile = profile;
+        }
+
+        void onDelivered(BenchmarkStamp stamp) {
+            final long now = System.nanoTime();
+            delivered.incrementAndGet();
+            delivery.recordNanos(now - stamp.sentNanos());
+            lastDelivery.accumulateAndGet(now, Math::max);
+            final Update update = updates.get(stamp.stream());
+            if (update != null && update.delivered.incrementAndGet() == update.expected) {
+                allContacts.recordNanos(now - update.sentNanos);
+                completed.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> results() {
+            final long deliveryNanos = lastDelivery.get() == 0 ? 0 : lastDelivery.get() - start;
+            long expected = 0;
+            for (Update update : updates.values()) {
+                expected += update.expected;
+            }
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("phase", name);
+            result.put("linkProfile", profile.toMap());
+            result.put("updatesSent", sent.get());
+            result.put("failed", failed.get());
+            result.put("sendDurationMs", TimeUnit.NANOSECONDS.toMillis(sentNanos));
+            result.put("expectedDeliveries", expected);
+            result.put("delivered", delivered.get());
+            result.put("incompleteUpdates", tracked.get() - completed.get());
+            result.put("timeToLastDeliveryMs", TimeUnit.NANOSECONDS.toMillis(deliveryNanos));
+            result.put("deliveriesPerSecond", deliveryNanos == 0 ? 0 : delivered.get() / (deliveryNanos / 1e9));
+            result.put("amplification", sent.get() == 0 ? 0 : (double) delivered.get() / sent.get());
+            result.put("probeResponses", probeResponses.get());
+            if (login.getCount() > 0) {
+                result.put("loginLatency", login.summary());
+            }
+            result.put("deliveryLatency", delivery.summary());
+            result.put("allContactsLatency", allContacts.summary());
+            return result;
+        }
+    }
+}
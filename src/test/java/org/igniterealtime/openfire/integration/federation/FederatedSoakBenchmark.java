@@ -0,0 +1,345 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.GrowthTrend;
+import org.igniterealtime.openfire.integration.docker.JvmProbe;
+import org.igniterealtime.openfire.integration.workload.Scenario;
+import org.igniterealtime.openfire.integration.workload.WorkloadEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Soak test that runs mixed federated traffic for hours, and fails when the resource usage of a server grows in a
+ * sustained way, which reveals slow leaks (of memory, threads, file descriptors or sessions) that short tests do not.
+ *
+ * Traffic is generated in cycles. Every cycle connects the clients and targets of a workload scenario (see
+ * {@link Scenario}, by default the bundled {@code soak} scenario), runs it, and disconnects them again, so that session
+ * setup and teardown are exercised as well as the routing of stanzas. After every cycle, the servers are left idle for
+ * a moment, and their state is recorded. As every cycle applies the same load, by the same users, a server that does
+ * not leak returns to the same state after every cycle.
+ *
+ * The JVM of every server is inspected throughout (see {@link JvmProbe}). For every cycle and server, the following
+ * is recorded:
+ * <ul>
+ *     <li>{@code heapAfterGcBytes} - the lowest heap occupancy that was observed during the cycle. Every young
+ *     collection empties the young generation, so the lowest occupancy approximates the occupancy after garbage
+ *     collection, without forcing a collection.</li>
+ *     <li>{@code metaspaceBytes}, {@code threads} and {@code fileDescriptors} - when idle, after the cycle</li>
+ *     <li>{@code c2sSessions} and {@code s2sSessions} - established client and server connections, when idle, after the
+ *     cycle. Client connections should all have been closed; server connections are kept for reuse, and should not
+ *     accumulate.</li>
+ *     <li>{@code closeWaitSockets} - client and server connections that the peer has closed, but the server has not,
+ *     when idle, after the cycle</li>
+ * </ul>
+ *
+ * Once the warm-up period has passed, the trend of every metric over the cycles is fitted (see {@link GrowthTrend}).
+ * The run fails when any metric of any server grows in a sustained way by more than its limit. The workload results
+ * of every cycle are reported as well, so that a gradual increase in latency can be spotted.
+ *
+ * A cycle of which the workload cannot be set up or run is recorded as failed, with its error, and the run continues
+ * with the next cycle; failed cycles are not included in the trends. The run stops early when a number of consecutive
+ * cycles fail, as the environment is then unlikely to recover. In either case the report is written, and the run
+ * fails.
+ *
+ * Soak tests are not part of the benchmark suite; they are run with the {@code soak} Maven profile.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code soak.duration} - time after which no new cycle is started, in seconds (default: 14400)</li>
+ *     <li>{@code soak.scenario} - name of a bundled scenario, or path of a scenario file, of which every cycle consists
+ *     (default: soak)</li>
+ *     <li>{@code soak.rateScale} - factor by which all rates of the scenario are multiplied (default: 1)</li>
+ *     <li>{@code soak.sampleInterval} - time between inspections of the servers, in seconds (default: 15)</li>
+ *     <li>{@code soak.settle} - time that the servers are left idle after every cycle, before their state is recorded,
+ *     in seconds (default: 15)</li>
+ *     <li>{@code soak.warmup} - period at the start of the run of which the cycles are not included in the trends, in
+ *     seconds (default: 1800)</li>
+ *     <li>{@code soak.maxHeapGrowth} - tolerated growth of the heap and metaspace occupancy, relative to the start of
+ *     the trend (default: 0.25)</li>
+ *     <li>{@code soak.maxThreadGrowth} - tolerated growth of the number of threads (default: 10)</li>
+ *     <li>{@code soak.maxFdGrowth} - tolerated growth of the number of open file descriptors (default: 50)</li>
+ *     <li>{@code soak.maxSessionGrowth} - tolerated growth of the numbers of sessions and of sockets in
+ *     {@code CLOSE_WAIT} (default: 2)</li>
+ *     <li>{@code soak.maxConsecutiveFailures} - number of consecutive failed cycles after which the run stops
+ *     (default: 3)</li>
+ * </ul>
+ */
+public class FederatedSoakBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederatedSoakBenchmark.class);
+
+    // Ports on which Openfire accepts client connections (STARTTLS and direct TLS) within its container
+    private static final List<Integer> C2S_PORTS = List.of(5222, 5223);
+
+    // Ports on which Openfire accepts and makes server connections (STARTTLS and direct TLS) within its container
+    private static final List<Integer> S2S_PORTS = List.of(5269, 5270);
+
+    private final Duration duration = BenchmarkSettings.getDuration("soak.duration", Duration.ofHours(4));
+    private final String scenarioName = BenchmarkSettings.getString("soak.scenario", "soak");
+    private final double rateScale = BenchmarkSettings.getDouble("soak.rateScale", 1);
+    private final Duration sampleInterval = BenchmarkSettings.getDuration("soak.sampleInterval", Duration.ofSeconds(15));
+    private final Duration settle = BenchmarkSettings.getDuration("soak.settle", Duration.ofSeconds(15));
+    private final Duration warmup = BenchmarkSettings.getDuration("soak.warmup", Duration.ofMinutes(30));
+    private final double maxHeapGrowth = BenchmarkSettings.getDouble("soak.maxHeapGrowth", 0.25);
+    private final double maxThreadGrowth = BenchmarkSettings.getDouble("soak.maxThreadGrowth", 10);
+    private final double maxFdGrowth = BenchmarkSettings.getDouble("soak.maxFdGrowth", 50);
+    private final double maxSessionGrowth = BenchmarkSettings.getDouble("soak.maxSessionGrowth", 2);
+    private final int maxConsecutiveFailures = BenchmarkSettings.getInt("soak.maxConsecutiveFailures", 3);
+
+    private final List<FederationNode> nodes = getNodes();
+
+    // The lowest heap occupancy of every server that was observed since the start of the current cycle
+    private final Map<String, Long> lowestHeap = new LinkedHashMap<>();
+
+    @Test
+    void soak() throws Exception {
+        final Scenario scenario = Scenario.load(scenarioName).scaleRates(rateScale);
+        logger.info("Starting soak test of {} with cycles of scenario {} ({}s each)...",
+                duration, scenario.name(), scenario.getDuration().toSeconds());
+
+        final List<Cycle> cycles = new ArrayList<>();
+        final long start = System.nanoTime();
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "soak-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            sampler.scheduleAtFixedRate(this::sampleHeap, 0, sampleInterval.toMillis(), TimeUnit.MILLISECONDS);
+            int consecutiveFailures = 0;
+            while (System.nanoTime() - start < duration.toNanos() && consecutiveFailures < maxConsecutiveFailures) {
+                final Cycle cycle = runCycle(cycles.size() + 1, scenario, start);
+                cycles.add(cycle);
+                consecutiveFailures = cycle.error == null ? 0 : consecutiveFailures + 1;
+            }
+            if (consecutiveFailures >= maxConsecutiveFailures) {
+                logger.error("Stopping the soak test after {} consecutive failed cycles", consecutiveFailures);
+            }
+        } finally {
+            sampler.shutdownNow();
+        }
+
+        final Map<String, Object> trends = new LinkedHashMap<>();
+        final List<String> leaks = new ArrayList<>();
+        final List<Cycle> measured = cycles.stream()
+                .filter(cycle -> cycle.error == null && cycle.hours * 3600 >= warmup.toSeconds())
+                .toList();
+        for (FederationNode node : nodes) {
+            final Map<String, Object> nodeTrends = new LinkedHashMap<>();
+            for (Metric metric : metrics()) {
+                final List<Double> hours = new ArrayList<>();
+                final List<Double> values = new ArrayList<>();
+                for (Cycle cycle : measured) {
+                    final Number value = (Number) cycle.servers.get(node.service()).get(metric.name());
+                    if (value != null) {
+                        hours.add(cycle.hours);
+                        values.add(value.doubleValue());
+                    }
+                }
+                if (values.size() < GrowthTrend.MIN_POINTS) {
+                    nodeTrends.put(metric.name(), null);
+                    continue;
+                }
+                final GrowthTrend trend = GrowthTrend.fit(hours, values);
+                final boolean sustained = trend.isSustained(metric.limit(), metric.relative());
+                final Map<String, Object> result = new LinkedHashMap<>(trend.toMap());
+                result.put("limit", metric.limit());
+                result.put("relativeLimit", metric.relative());
+                result.put("sustainedGrowth", sustained);
+                nodeTrends.put(metric.name(), result);
+                if (sustained) {
+                    leaks.add(node.service() + " " + metric.name() + " grew from " + format(trend.quarterMedians().get(0))
+                            + " to " + format(trend.quarterMedians().get(3)) + " (" + format(trend.slopePerHour()) + " per hour)");
+                }
+            }
+            trends.put(node.service(), nodeTrends);
+        }
+        if (measured.size() < GrowthTrend.MIN_POINTS) {
+            logger.warn("Only {} cycles completed after the warm-up period; at least {} are needed to detect sustained growth",
+                    measured.size(), GrowthTrend.MIN_POINTS);
+        }
+
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+        configuration.put("durationSeconds", duration.toMillis() / 1000.0);
+        configuration.put("scenario", scenario.toMap());
+        configuration.put("rateScale", rateScale);
+        configuration.put("sampleIntervalSeconds", sampleInterval.toMillis() / 1000.0);
+        configuration.put("settleSeconds", settle.toMillis() / 1000.0);
+        configuration.put("warmupSeconds", warmup.toMillis() / 1000.0);
+        configuration.put("maxConsecutiveFailures", maxConsecutiveFailures);
+        configuration.put("linkProfile", getCurrentLinkProfile().toMap());
+
+        new BenchmarkReport("federated-soak")
+                .put("configuration", configuration)
+                .put("cycles", cycles.stream().map(Cycle::toMap).toList())
+                .put("measuredCycles", measured.size())
+                .put("failedCycles", cycles.stream().filter(cycle -> cycle.error != null).count())
+                .put("trends", trends)
+                .write();
+
+        final long completed = cycles.stream().mapToLong(cycle -> cycle.completed).sum();
+        Assertions.assertTrue(completed > 0, "At least one operation should have completed");
+        final List<String> errors = cycles.stream()
+                .filter(cycle -> cycle.error != null)
+                .map(cycle -> "cycle " + cycle.number + ": " + cycle.error)
+                .toList();
+        Assertions.assertTrue(errors.isEmpty(), "Cycles failed: " + String.join("; ", errors));
+        Assertions.assertTrue(leaks.isEmpty(), "Resource usage grew in a sustained way: " + String.join("; ", leaks));
+    }
+
+    /**
+     * Runs one cycle of the scenario, waits for the servers to become idle, and records their state. A cycle of which
+     * the workload fails is returned with its error, rather than aborting the run.
+     */
+    private Cycle runCycle(int number, Scenario scenario, long start) throws InterruptedException {
+        synchronized (lowestHeap) {
+            lowestHeap.clear();
+        }
+        setStep("cycle-" + number);
+        Map<String, Object> results = null;
+        String error = null;
+        try (XmppWorkload workload = new XmppWorkload(scenario)) {
+            workload.setUp();
+            results = new WorkloadEngine(scenario, workload.getOperations(), workload.getClientCount(), workload.getTargetCount())
+                    .run();
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Cycle {} failed", number, e);
+            error = e.toString();
+        }
+
+        setStep("cycle-" + number + "/idle");
+        TimeUnit.NANOSECONDS.sleep(settle.toNanos());
+        final Cycle cycle = new Cycle(number, (System.nanoTime() - start) / 3.6e12, results, error);
+        for (FederationNode node : nodes) {
+            final Map<String, Object> state = new LinkedHashMap<>();
+            JvmProbe.Sample sample = null;
+            try {
+                sample = probeJvm(node);
+                recordHeap(node, sample);
+            } catch (IOException e) {
+                logger.warn("Unable to inspect {} after cycle {}", node.service(), number, e);
+            }
+            synchronized (lowestHeap) {
+                state.put("heapAfterGcBytes", lowestHeap.get(node.service()));
+            }
+            state.put("metaspaceBytes", sample == null ? null : sample.getMetaspaceUsedBytes());
+            state.put("threads", sample == null ? null : sample.threads());
+            state.put("fileDescriptors", sample == null ? null : sample.fileDescriptors());
+            state.put("c2sSessions", sample == null ? null : sample.countSockets("ESTABLISHED", C2S_PORTS, List.of()));
+            state.put("s2sSessions", sample == null ? null : sample.countSockets("ESTABLISHED", S2S_PORTS, S2S_PORTS));
+            state.put("closeWaitSockets", sample == null ? null : sample.countSockets("CLOSE_WAIT", C2S_PORTS, S2S_PORTS));
+            state.put("collections", sample == null ? null : sample.getCollections());
+            cycle.servers.put(node.service(), state);
+        }
+        setStep(null);
+        logger.info("Cycle {} ({} h): {} operations completed, {} failed, {} timed out{}; servers: {}",
+                number, format(cycle.hours), cycle.completed, cycle.failed, cycle.timedOut,
+                error == null ? "" : "; cycle failed", cycle.servers);
+        return cycle;
+    }
+
+    private void sampleHeap() {
+        for (FederationNode node : nodes) {
+            try {
+                recordHeap(node, probeJvm(node));
+            } catch (Exception e) {
+                logger.debug("Unable to inspect {}", node.service(), e);
+            }
+        }
+    }
+
+    private void recordHeap(FederationNode node, JvmProbe.Sample sample) {
+        final Long heap = sample.getHeapUsedBytes();
+        if (heap != null) {
+            synchronized (lowestHeap) {
+                lowestHeap.merge(node.service(), heap, Math::min);
+            }
+        }
+    }
+
+    /**
+     * A metric of which the trend is fitted, and the growth that is tolerated.
+     */
+    private record Metric(String name, double limit, boolean relative) {
+    }
+
+    private List<Metric> metrics() {
+        return List.of(
+                new Metric("heapAfterGcBytes", maxHeapGrowth, true),
+                new Metric("metaspaceBytes", maxHeapGrowth, true),
+                new Metric("threads", maxThreadGrowth, false),
+                new Metric("fileDescriptors", maxFdGrowth, false),
+                new Metric("c2sSessions", maxSessionGrowth, false),
+                new Metric("s2sSessions", maxSessionGrowth, false),
+                new Metric("closeWaitSockets", maxSessionGrowth, false));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * The results of a cycle, and the state of every server after it. A failed cycle has an error, and no results.
+     */
+    private static final class Cycle {
+        final int number;
+        final double hours;
+        final Map<?, ?> total;
+        final long completed;
+        final long failed;
+        final long timedOut;
+        final String error;
+        final Map<String, Map<String, Object>> servers = new LinkedHashMap<>();
+
+        Cycle(int number, double hours, Map<String, Object> results, String error) {
+            this.number = number;
+            this.hours = hours;
+            this.total = results == null ? Map.of() : (Map<?, ?>) results.get("total");
+            this.completed = sum(total, "completed");
+            this.failed = sum(total, "failed");
+            this.timedOut = sum(total, "timedOut");
+            this.error = error;
+        }
+
+        private static long sum(Map<?, ?> total, String field) {
+            if (!(total.get("operations") instanceof Map<?, ?> operations)) {
+                return 0;
+            }
+            return operations.values().stream()
+                    .mapToLong(operation -> ((Number) ((Map<?, ?>) operation).get(field)).longValue())
+                    .sum();
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("cycle", number);
+            map.put("hours", hours);
+            map.put("completed", completed);
+            map.put("failed", failed);
+            map.put("timedOut", timedOut);
+            map.put("error", error);
+            map.put("completedRate", total.get("completedRate"));
+            map.put("responseTime", total.get("responseTime"));
+            map.put("servers", servers);
+            return map;
+        }
+    }
+}
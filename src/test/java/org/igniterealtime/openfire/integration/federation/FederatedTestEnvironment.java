@@ -1,24 +1,48 @@
 package org.igniterealtime.openfire.integration.federation;
 
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.ContainerNetwork;
+import com.github.dockerjava.api.model.Statistics;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.docker.ContainerHealthWatcher;
+import org.igniterealtime.openfire.integration.docker.ContainerLogCapture;
+import org.igniterealtime.openfire.integration.docker.ContainerStatsSampler;
+import org.igniterealtime.openfire.integration.docker.DockerCommands;
+import org.igniterealtime.openfire.integration.docker.JvmProbe;
+import org.igniterealtime.openfire.integration.docker.TrafficShaper;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.stringprep.XmppStringprepException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.X509TrustManager;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Manages the test environment for federated XMPP integration tests.
  *
  * This environment consists of:
- * - Two Openfire XMPP servers in a federated configuration
- * - Two PostgreSQL databases (one for each server)
- * - Custom network configuration for server-to-server communication
+ * - Two (or more, see {@link #getNodeCount()}) Openfire XMPP servers in a federated configuration
+ * - A PostgreSQL database for each server
+ * - Custom network configuration for server-to-server communication, optionally with impaired network conditions
+ * - Optionally, TLS on client and server-to-server connections, using locally generated certificates
  * - Pre-configured users and chat rooms on each server
  *
  * The environment is managed through Docker Compose, using configurations from
@@ -33,9 +57,74 @@ public class FederatedTestEnvironment {
     private static final Logger logger = LoggerFactory.getLogger(FederatedTestEnvironment.class);
     private static boolean initialized = false;
 
+    // Coordinates the use of the environment by the JVMs (such as Failsafe forks) that run tests against it in parallel
+    private static final SharedEnvironment sharedEnvironment = new SharedEnvironment(Path.of("target/federation"));
+
+    // Whether this JVM uses an environment that was started by another JVM
+    private static boolean attached = false;
+
     // Time to wait for services to start up completely
     private static final Duration STARTUP_WAIT = Duration.of(3, ChronoUnit.MINUTES);
 
+    // Time to wait for server-to-server federation to be established, once all services are healthy
+    private static final Duration FEDERATION_WAIT = Duration.of(1, ChronoUnit.MINUTES);
+
+    // Time it took for federation to be established in both directions, after all services became healthy
+    private static Duration timeToFederation;
+
+    // Docker Compose project name under which the containers of the environment are created
+    private static final String COMPOSE_PROJECT = "openfire";
+
+    // Directory that holds the compose file and scripts of the federated environment
+    private static final Path COMPOSE_DIRECTORY = Path.of("openfire-docker-compose/federation");
+
+    // Compose file that is generated for nodes beyond the two of the base environment
+    private static final Path ADDITIONAL_NODES_FILE = Path.of("target/federation/docker-compose-additional-nodes.json");
+
+    private static final AdditionalNodes additionalNodes = new AdditionalNodes(COMPOSE_DIRECTORY, COMPOSE_PROJECT, ADDITIONAL_NODES_FILE);
+
+    // Time series of the resource usage of all containers, written next to the failsafe reports
+    private static final Path CONTAINER_STATS_FILE = Path.of("target/failsafe-reports/container-stats.csv");
+
+    // Samples container resource usage while the environment is in use, or null if sampling is disabled
+    private static ContainerStatsSampler statsSampler;
+
+    // Directory to which the logs of all containers are streamed while the environment is in use
+    private static final Path CONTAINER_LOGS_DIRECTORY = Path.of("target/failsafe-reports/container-logs");
+
+    // Index of the server-to-server events that are logged by the servers, written next to the failsafe reports
+    private static final Path S2S_EVENTS_FILE = Path.of("target/failsafe-reports/s2s-events.csv");
+
+    // Location of the log file of Openfire, inside its container
+    private static final String OPENFIRE_LOG_FILE = "/usr/local/openfire/logs/openfire.log";
+
+    // Streams container logs while the environment is in use, or null if capture could not be started
+    private static ContainerLogCapture logCapture;
+
+    // Indexes the server-to-server events in the captured logs, or null if log capture could not be started
+    private static S2sEventIndex s2sEvents;
+
+    // Captures the SQL statements that the servers execute per phase, or null if not enabled
+    private static StatementStatistics statementStatistics;
+
+    // The phase with which resource usage samples and server-to-server events are tagged
+    private static volatile String phase;
+
+    // Network conditions that are currently applied to the server-to-server links
+    private static LinkProfile linkProfile = LinkProfile.NONE;
+
+    // Records the network conditions that are applied, so that JVMs that attach to the environment know them
+    private static final Path LINK_PROFILE_FILE = Path.of("target/federation/link-profile");
+
+    // Certificates that are used when TLS is enabled
+    private static final TlsCertificates tlsCertificates = new TlsCertificates(Path.of("target/federation/tls"));
+
+    // Directory of the Openfire image that holds its keystore and truststores
+    private static final String OPENFIRE_SECURITY_DIRECTORY = "/usr/local/openfire/resources/security";
+
+    // Trusts the certificates that are used when TLS is enabled (created on first use)
+    private static X509TrustManager trustManager;
+
     // Port configuration for each XMPP server
     public static final int XMPP1_PORT = 5221;  // First server client port
     public static final int XMPP2_PORT = 5222;  // Second server client port
@@ -60,18 +149,43 @@ public class FederatedTestEnvironment {
      * 1. Sets up SQL overlay directories with required configuration
      * 2. Launches the Docker containers using docker-compose
      * 3. Waits for services to initialize
-     * 4. Registers a shutdown hook for cleanup
+     * 4. Applies the configured network conditions to the server-to-server links (see {@link #getLinkProfile()})
+     * 5. Waits for server-to-server federation to be established in both directions
+     * 6. Registers a shutdown hook for cleanup
+     *
+     * Sampling of the resource usage of the containers (see {@link #getStatsInterval()}) and streaming of their logs
+     * (see {@link #getS2sEvents()}) start before the environment is started, and continue until it is stopped.
      *
      * The method is idempotent - subsequent calls will have no effect
      * if the environment is already initialized.
      *
+     * When "keep warm" mode is enabled (see {@link #isKeepWarm()}), a running environment with a matching
+     * configuration is reused instead of being started from scratch.
+     *
+     * When tests run in several JVMs at the same time (such as the forks of Maven Failsafe), only the first JVM starts
+     * the environment; the others attach to it (see {@link SharedEnvironment}). The resource usage of the containers,
+     * their logs and the statement statistics are then captured only by the JVM that started the environment.
+     *
      * @throws Exception if environment setup fails
      */
     public static synchronized void start() throws Exception {
         if (!initialized) {
-            setupSqlOverlay();
-            startFederatedEnvironment();
-            waitForFederatedEnvironment();
+            sharedEnvironment.lock();
+            try {
+                final List<Long> otherWorkers = sharedEnvironment.getOtherWorkers();
+                if (otherWorkers.isEmpty()) {
+                    startEnvironment();
+                } else {
+                    logger.info("Attaching to the federated environment that is in use by {} other test JVM(s)", otherWorkers.size());
+                    if (isTls()) {
+                        tlsCertificates.generate(getDomains());
+                    }
+                    attached = true;
+                }
+                sharedEnvironment.register();
+            } finally {
+                sharedEnvironment.unlock();
+            }
             initialized = true;
             // Register shutdown hook to ensure cleanup happens even if tests fail
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -84,12 +198,44 @@ public class FederatedTestEnvironment {
         }
     }
 
+    private static void startEnvironment() throws Exception {
+        // Left behind by an earlier run that did not stop cleanly
+        Files.deleteIfExists(LINK_PROFILE_FILE);
+        startStatsSampler();
+        startLogCapture();
+        setPhase("startup");
+        if (isTls()) {
+            tlsCertificates.generate(getDomains());
+        }
+        setupSqlOverlay();
+        if (isKeepWarm()) {
+            startOrReattachWarmEnvironment();
+        } else {
+            startFederatedEnvironment();
+            waitForFederatedEnvironment();
+        }
+        if (!getLinkProfile().isNone() || isKeepWarm()) {
+            // A warm environment may still have the network conditions of an earlier run applied.
+            setLinkProfile(getLinkProfile());
+        }
+        waitForFederation();
+        if (isStatementStatistics()) {
+            statementStatistics = new StatementStatistics(getNodes());
+            statementStatistics.start(null);
+        }
+        setPhase(null);
+    }
+
     /**
      * Stops the federated test environment and performs cleanup.
      *
      * This method:
-     * 1. Removes SQL overlay files
-     * 2. Stops and removes Docker containers
+     * 1. Stops streaming container logs, or exports them if they could not be streamed
+     * 2. Removes SQL overlay files
+     * 3. Stops and removes Docker containers, unless "keep warm" mode is enabled, in which case any impairment of the
+     *    server-to-server links is removed
+     *
+     * Steps 2 and 3 are skipped while other JVMs still use the environment; the last of them to stop performs them.
      *
      * The method is idempotent - subsequent calls will have no effect
      * if the environment is already stopped.
@@ -98,31 +244,718 @@ public class FederatedTestEnvironment {
      */
     public static synchronized void stop() throws Exception {
         if (initialized) {
-            exportLogs();
-            cleanupSqlOverlay();
-            stopFederatedEnvironment();
+            setPhase("shutdown");
+            if (!attached) {
+                writeStatementStatistics();
+                stopLogCapture();
+            }
+            sharedEnvironment.lock();
+            try {
+                if (!sharedEnvironment.unregister()) {
+                    logger.info("Leaving federated environment running for the other test JVMs that use it");
+                } else {
+                    cleanupSqlOverlay();
+                    if (isKeepWarm()) {
+                        setLinkProfile(LinkProfile.NONE);
+                        logger.info("Keeping federated environment running for reuse by later runs");
+                    } else {
+                        stopFederatedEnvironment();
+                    }
+                }
+            } finally {
+                sharedEnvironment.unlock();
+            }
+            stopStatsSampler();
+            attached = false;
             initialized = false;
         }
     }
 
+    /**
+     * Returns the number of Openfire servers in the environment.
+     *
+     * Checks the {@code OPENFIRE_NODES} environment variable first, falling back to 2 if not set. The first two
+     * servers are defined by the base environment; any additional servers are cloned from the first one (see
+     * {@link FederationNode}).
+     *
+     * @return the number of servers, at least 2
+     */
+    public static int getNodeCount() {
+        final String nodes = System.getenv("OPENFIRE_NODES");
+        if (nodes == null || nodes.trim().isEmpty()) {
+            return 2;
+        }
+        final int count = Integer.parseInt(nodes.trim());
+        if (count < 2) {
+            throw new IllegalArgumentException("OPENFIRE_NODES must be at least 2, got " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns all servers in the environment, in the order in which they are numbered.
+     *
+     * @return the servers
+     */
+    public static List<FederationNode> getNodes() {
+        final List<FederationNode> nodes = new ArrayList<>();
+        for (int i = 1; i <= getNodeCount(); i++) {
+            nodes.add(FederationNode.of(i));
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the XMPP domains of all servers in the environment, in the order in which they are numbered.
+     *
+     * @return the domains of the servers
+     */
+    public static List<String> getDomains() {
+        return getNodes().stream().map(FederationNode::domain).toList();
+    }
+
+    /**
+     * Returns the client port of the server that serves a particular domain.
+     *
+     * @param domain the XMPP domain of one of the servers in the environment
+     * @return the port on which the server accepts client connections
+     * @throws IllegalArgumentException if the domain is not served by this environment
+     */
+    public static int getClientPort(String domain) {
+        return getNodes().stream()
+                .filter(node -> node.domain().equals(domain))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown domain: " + domain))
+                .clientPort();
+    }
+
+    private static List<String> getServices() {
+        return getNodes().stream().map(FederationNode::service).toList();
+    }
+
+    /**
+     * Creates a connection configuration builder for a user of this environment, with the settings used throughout
+     * the integration tests: a connection to the server that serves the domain, and a 5 second connection timeout. The
+     * connection uses TLS if TLS is enabled in the environment (see {@link #isTls()}), and is plain otherwise.
+     *
+     * @param domain the XMPP domain of the user
+     * @param user   the username (local part of the JID) of the user
+     * @return a pre-populated configuration builder
+     * @throws XmppStringprepException if the domain is not a valid XMPP domain
+     */
+    public static XMPPTCPConnectionConfiguration.Builder connectionConfigurationBuilder(String domain, String user) throws XmppStringprepException {
+        return connectionConfigurationBuilder(domain, user, isTls());
+    }
+
+    /**
+     * Creates a connection configuration builder for a user of this environment (see
+     * {@link #connectionConfigurationBuilder(String, String)}), that either requires TLS, or disables it.
+     *
+     * TLS can only be used when it is enabled in the environment. The servers accept plain client connections in either
+     * case, which allows the cost of TLS to be compared within a single run.
+     *
+     * @param domain the XMPP domain of the user
+     * @param user   the username (local part of the JID) of the user
+     * @param tls    {@code true} to require TLS, using the certificates of the environment
+     * @return a pre-populated configuration builder
+     * @throws XmppStringprepException if the domain is not a valid XMPP domain
+     * @throws IllegalStateException if TLS is requested, but not enabled in the environment
+     */
+    public static XMPPTCPConnectionConfiguration.Builder connectionConfigurationBuilder(String domain, String user, boolean tls) throws XmppStringprepException {
+        final XMPPTCPConnectionConfiguration.Builder builder = XMPPTCPConnectionConfiguration.builder()
+                .setHost("localhost")
+                .setPort(getClientPort(domain))
+                .setXmppDomain(domain)
+                .setUsernameAndPassword(user, PASSWORD)
+                .setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.disabled)
+                .setConnectTimeout(5000);
+        if (tls) {
+            builder.setSecurityMode(XMPPTCPConnectionConfiguration.SecurityMode.required)
+                    .setCustomX509TrustManager(getTrustManager());
+        }
+        return builder;
+    }
+
+    private static synchronized X509TrustManager getTrustManager() {
+        if (!isTls()) {
+            throw new IllegalStateException("TLS is not enabled in the environment (set OPENFIRE_TLS=true)");
+        }
+        if (trustManager == null) {
+            try {
+                trustManager = tlsCertificates.getTrustManager();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return trustManager;
+    }
+
+    /**
+     * Creates a connection configuration builder for a user of the synthetic population (see
+     * {@link #connectionConfigurationBuilder(String, String)}).
+     *
+     * @param user the user
+     * @return a pre-populated configuration builder
+     * @throws XmppStringprepException if the domain of the user is not a valid XMPP domain
+     */
+    public static XMPPTCPConnectionConfiguration.Builder connectionConfigurationBuilder(SyntheticPopulation.SyntheticUser user) throws XmppStringprepException {
+        return connectionConfigurationBuilder(user.domain(), user.username())
+                .setUsernameAndPassword(user.username(), user.password());
+    }
+
+    /**
+     * Returns whether the environment is to be kept running between test runs.
+     *
+     * Enabled by setting the {@code OPENFIRE_KEEP_WARM} environment variable to {@code true}. In this mode, the
+     * containers are left running when the tests complete. The next run reattaches to them if their configuration
+     * has not changed, and resets server state by restoring database snapshots, which is much faster than starting a
+     * new environment.
+     *
+     * @return {@code true} if "keep warm" mode is enabled
+     */
+    public static boolean isKeepWarm() {
+        return Boolean.parseBoolean(System.getenv("OPENFIRE_KEEP_WARM"));
+    }
+
+    /**
+     * Returns the interval at which the resource usage of the containers of the environment is sampled.
+     *
+     * Checks the {@code OPENFIRE_STATS_INTERVAL} environment variable (in seconds) first, falling back to 1 second if
+     * not set. An interval of 0 disables sampling.
+     *
+     * @return the sampling interval, or {@link Duration#ZERO} if sampling is disabled
+     */
+    public static Duration getStatsInterval() {
+        final String interval = System.getenv("OPENFIRE_STATS_INTERVAL");
+        if (interval == null || interval.trim().isEmpty()) {
+            return Duration.ofSeconds(1);
+        }
+        return Duration.ofMillis(Math.round(Double.parseDouble(interval.trim()) * 1000));
+    }
+
+    /**
+     * Returns the network conditions that are applied to the server-to-server links when the environment is started.
+     *
+     * Checks the {@code OPENFIRE_LINK_PROFILE} environment variable first, falling back to no impairment if not set.
+     * The value is the name or specification of a profile (see {@link LinkProfile}). Benchmarks can change the network
+     * conditions while the environment is running, using {@link #setLinkProfile(LinkProfile)}.
+     *
+     * @return the configured profile
+     */
+    public static LinkProfile getLinkProfile() {
+        final String profile = System.getenv("OPENFIRE_LINK_PROFILE");
+        if (profile == null || profile.trim().isEmpty()) {
+            return LinkProfile.NONE;
+        }
+        return LinkProfile.parse(profile);
+    }
+
+    /**
+     * Returns the image of the helper container that is used to impair the server-to-server links.
+     *
+     * Checks the {@code OPENFIRE_NETEM_IMAGE} environment variable first, falling back to "nicolaka/netshoot" if not
+     * set. The image must provide {@code sh}, {@code ip} and {@code tc}.
+     *
+     * @return the helper image
+     */
+    public static String getNetemImage() {
+        final String image = System.getenv("OPENFIRE_NETEM_IMAGE");
+        if (image == null || image.trim().isEmpty()) {
+            return "nicolaka/netshoot";
+        }
+        return image.trim();
+    }
+
+    /**
+     * Applies network conditions to the server-to-server links between all servers, replacing any that were applied
+     * before.
+     *
+     * Every server impairs the traffic it sends to the other servers (see {@link TrafficShaper}), so that both
+     * directions of every link are affected. Traffic between clients and servers, and between servers and their
+     * databases, is not impaired. Established server-to-server connections are not interrupted.
+     *
+     * @param profile the network conditions to apply
+     * @throws IOException if the network conditions cannot be applied
+     */
+    public static synchronized void setLinkProfile(LinkProfile profile) throws IOException {
+        final DockerClient client = DockerCommands.client();
+        final Map<String, String> containers = new HashMap<>();
+        final Map<String, List<String>> addresses = new HashMap<>();
+        for (Container container : DockerCommands.listContainers(client, COMPOSE_PROJECT)) {
+            final String service = DockerCommands.service(container);
+            if (!getServices().contains(service) || !"running".equals(container.getState())) {
+                continue;
+            }
+            final String id = container.getId();
+            containers.put(service, id);
+            final List<String> ips = new ArrayList<>();
+            final Map<String, ContainerNetwork> networks = client.inspectContainerCmd(id).exec().getNetworkSettings().getNetworks();
+            if (networks != null) {
+                for (ContainerNetwork network : networks.values()) {
+                    if (network.getIpAddress() != null && !network.getIpAddress().isEmpty()) {
+                        ips.add(network.getIpAddress());
+                    }
+                }
+            }
+            addresses.put(service, ips);
+        }
+
+        final TrafficShaper shaper = new TrafficShaper(client, getNetemImage());
+        for (String service : getServices()) {
+            final String id = containers.get(service);
+            if (id == null) {
+                throw new IllegalStateException("Container of " + service + " is not running");
+            }
+            if (profile.isNone()) {
+                shaper.clear(id);
+            } else {
+                final List<String> peers = new ArrayList<>();
+                addresses.forEach((peer, ips) -> {
+                    if (!peer.equals(service)) {
+                        peers.addAll(ips);
+                    }
+                });
+                shaper.shape(id, peers, profile.netemArguments());
+            }
+        }
+        linkProfile = profile;
+        if (profile.isNone()) {
+            Files.deleteIfExists(LINK_PROFILE_FILE);
+        } else {
+            Files.createDirectories(LINK_PROFILE_FILE.toAbsolutePath().getParent());
+            Files.writeString(LINK_PROFILE_FILE, profile.name());
+        }
+        logger.info("Applied link profile {} to server-to-server links: {}", profile, profile.toMap());
+    }
+
+    /**
+     * Kills the container of a server, without giving it the opportunity to shut down gracefully. Its database is not
+     * affected. Use {@link #startNode(FederationNode)} to start the server again.
+     *
+     * @param node the server to kill
+     * @throws IOException if the container cannot be killed
+     */
+    public static void killNode(FederationNode node) throws IOException {
+        logger.info("Killing {}...", node.service());
+        try {
+            DockerCommands.client().killContainerCmd(getContainerId(node.service())).exec();
+        } catch (DockerException e) {
+            throw new IOException("Unable to kill " + node.service(), e);
+        }
+    }
+
+    /**
+     * Starts the container of a server that was killed, and waits for it to become healthy. The network conditions of
+     * the server-to-server links (see {@link #setLinkProfile(LinkProfile)}) are applied to the restarted server again.
+     *
+     * @param node the server to start
+     * @return the time it took for the server to become healthy
+     * @throws IllegalStateException if the server does not become healthy within the startup wait
+     * @throws IOException if the container cannot be started
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public static Duration startNode(FederationNode node) throws IOException, InterruptedException {
+        logger.info("Starting {}...", node.service());
+        final DockerClient client = DockerCommands.client();
+        final long start = System.nanoTime();
+        DockerCommands.start(client, getContainerId(node.service()));
+        new ContainerHealthWatcher(client, COMPOSE_PROJECT, getServices()).await(Instant.now().plus(STARTUP_WAIT));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        logger.info("{} healthy again after {} ms", node.service(), elapsed.toMillis());
+        if (!getCurrentLinkProfile().isNone()) {
+            // The network namespace of the container was recreated, and its address may have changed.
+            setLinkProfile(getCurrentLinkProfile());
+        }
+        return elapsed;
+    }
+
+    /**
+     * Suspends all processes of the container of a server. The server does not respond to any traffic, but its
+     * connections are not closed. Use {@link #unpauseNode(FederationNode)} to resume the server.
+     *
+     * @param node the server to pause
+     * @throws IOException if the container cannot be paused
+     */
+    public static void pauseNode(FederationNode node) throws IOException {
+        logger.info("Pausing {}...", node.service());
+        try {
+            DockerCommands.client().pauseContainerCmd(getContainerId(node.service())).exec();
+        } catch (DockerException e) {
+            throw new IOException("Unable to pause " + node.service(), e);
+        }
+    }
+
+    /**
+     * Resumes the processes of the container of a server that was paused.
+     *
+     * @param node the server to resume
+     * @throws IOException if the container cannot be resumed
+     */
+    public static void unpauseNode(FederationNode node) throws IOException {
+        logger.info("Resuming {}...", node.service());
+        try {
+            DockerCommands.client().unpauseContainerCmd(getContainerId(node.service())).exec();
+        } catch (DockerException e) {
+            throw new IOException("Unable to resume " + node.service(), e);
+        }
+    }
+
+    /**
+     * Returns the CPU time that the container of a server has used since it was started, as accounted by the Docker
+     * daemon. The difference between two readings is the CPU cost of the work that the server did in between.
+     *
+     * @param node the server
+     * @return the CPU time used by all processes of the container
+     * @throws IOException if the statistics of the container cannot be retrieved
+     */
+    public static Duration getCpuTime(FederationNode node) throws IOException {
+        final Statistics stats = DockerCommands.stats(DockerCommands.client(), getContainerId(node.service()));
+        final Long usage = stats.getCpuStats() == null || stats.getCpuStats().getCpuUsage() == null ? null : stats.getCpuStats().getCpuUsage().getTotalUsage();
+        return Duration.ofNanos(usage == null ? 0 : usage);
+    }
+
+    /**
+     * Inspects the JVM of a server: its heap occupancy and other performance counters, its threads and open file
+     * descriptors, and the TCP sockets of its container (see {@link JvmProbe}).
+     *
+     * @param node the server
+     * @return the state of the JVM of the server
+     * @throws IOException if the JVM cannot be inspected
+     */
+    public static JvmProbe.Sample probeJvm(FederationNode node) throws IOException {
+        return new JvmProbe(DockerCommands.client()).sample(getContainerId(node.service()));
+    }
+
+    /**
+     * Executes an SQL query in the database of a server, for example to inspect the state that the server stores.
+     *
+     * @param node  the server
+     * @param query the query
+     * @return the rows of the result, with the values of their columns separated by {@code |}
+     * @throws IOException if the query cannot be executed
+     */
+    public static List<String> queryDatabase(FederationNode node, String query) throws IOException {
+        final DockerClient client = DockerCommands.client();
+        final String container = getContainerId("db" + node.index());
+        final WarmEnvironment.Database database;
+        try {
+            database = WarmEnvironment.toDatabase(container, client.inspectContainerCmd(container).exec().getConfig().getEnv());
+        } catch (DockerException e) {
+            throw new IOException("Unable to inspect the database of " + node.service(), e);
+        }
+        if (database == null) {
+            throw new IllegalStateException("The database of " + node.service() + " is not a PostgreSQL database");
+        }
+        final DockerCommands.ExecResult result = DockerCommands.exec(client, container,
+                "psql", "-v", "ON_ERROR_STOP=1", "-U", database.user(), "-d", database.name(), "-At", "-c", query);
+        if (result.exitCode() != 0) {
+            throw new IOException("Failed to execute '" + query + "' in the database of " + node.service() + ": " + result.stderr().trim());
+        }
+        return result.stdout().lines().filter(line -> !line.isEmpty()).toList();
+    }
+
+    private static String getContainerId(String service) throws IOException {
+        for (Container container : DockerCommands.listContainers(DockerCommands.client(), COMPOSE_PROJECT)) {
+            if (service.equals(DockerCommands.service(container))) {
+                return container.getId();
+            }
+        }
+        throw new IllegalStateException("No container found for " + service);
+    }
+
+    /**
+     * Returns the network conditions that are currently applied to the server-to-server links.
+     *
+     * When this JVM attached to an environment that was started by another JVM, the profile that was last applied by
+     * any of the JVMs is returned.
+     *
+     * @return the current profile
+     */
+    public static synchronized LinkProfile getCurrentLinkProfile() {
+        if (attached) {
+            try {
+                return Files.exists(LINK_PROFILE_FILE) ? LinkProfile.parse(Files.readString(LINK_PROFILE_FILE)) : LinkProfile.NONE;
+            } catch (IOException e) {
+                logger.warn("Unable to read the link profile of the federated environment", e);
+            }
+        }
+        return linkProfile;
+    }
+
+    /**
+     * Returns whether TLS is enabled in the environment.
+     *
+     * Enabled by setting the {@code OPENFIRE_TLS} environment variable to {@code true}. In this mode, a local
+     * certificate authority and a certificate for every domain are generated (see {@link TlsCertificates}), and
+     * installed in the servers. Server-to-server connections then require TLS, and the servers authenticate each
+     * other using their certificates. Clients connect using TLS by default (see
+     * {@link #connectionConfigurationBuilder(String, String)}), but plain client connections are accepted too.
+     *
+     * When not enabled, server-to-server TLS is disabled, and clients connect without TLS.
+     *
+     * @return {@code true} if TLS is enabled
+     */
+    public static boolean isTls() {
+        return Boolean.parseBoolean(System.getenv("OPENFIRE_TLS"));
+    }
+
+    /**
+     * Returns whether debug logging is enabled in the Openfire servers.
+     *
+     * Enabled by setting the {@code OPENFIRE_DEBUG_LOG} environment variable to {@code true}. Most server-to-server
+     * events are logged at debug level only, so that this is needed for a complete index of these events (see
+     * {@link #getS2sEvents()}). Debug logging adds overhead to the servers, which affects benchmark results.
+     *
+     * @return {@code true} if debug logging is enabled
+     */
+    public static boolean isDebugLog() {
+        return Boolean.parseBoolean(System.getenv("OPENFIRE_DEBUG_LOG"));
+    }
+
+    /**
+     * Returns whether the SQL statements that the servers execute are captured per test.
+     *
+     * Enabled by setting the {@code OPENFIRE_STATEMENT_STATS} environment variable to {@code true}. In this mode, the
+     * {@code pg_stat_statements} extension is enabled in the database of every server, and the statements are
+     * captured at the start and end of every test and step of a benchmark (see {@link StatementStatistics}). A summary
+     * of the statements per test is written as a benchmark report when the environment is stopped. Collecting and
+     * capturing the statistics adds overhead, which affects benchmark results.
+     *
+     * @return {@code true} if statement statistics are captured
+     */
+    public static boolean isStatementStatistics() {
+        return Boolean.parseBoolean(System.getenv("OPENFIRE_STATEMENT_STATS"));
+    }
+
+    /**
+     * Returns the maximum size of the offline messages that the servers store per user.
+     *
+     * Configured by setting the {@code OPENFIRE_OFFLINE_QUOTA} environment variable to a number of bytes. Defaults to
+     * 100 MB, rather than the 100 KB that Openfire uses by default, so that backlogs of thousands of messages are stored
+     * instead of bounced. Messages beyond the quota are bounced to their senders.
+     *
+     * @return the offline message quota per user, in bytes
+     */
+    public static long getOfflineQuota() {
+        final String quota = System.getenv("OPENFIRE_OFFLINE_QUOTA");
+        if (quota == null || quota.trim().isEmpty()) {
+            return 100L * 1024 * 1024;
+        }
+        return Long.parseLong(quota.trim());
+    }
+
+    /**
+     * Sets the phase with which samples of the resource usage of the containers and server-to-server events are
+     * tagged, so that these can be attributed to a test, or to a step of a benchmark. Tests that extend
+     * {@link BaseFederationIT} are tagged with the name of the test automatically.
+     *
+     * @param phase the phase, or {@code null} for none
+     */
+    public static synchronized void setPhase(String phase) {
+        FederatedTestEnvironment.phase = phase;
+        if (statsSampler != null) {
+            statsSampler.setPhase(phase);
+        }
+        if (s2sEvents != null) {
+            s2sEvents.setPhase(phase);
+        }
+        if (statementStatistics != null) {
+            statementStatistics.setPhase(phase);
+        }
+    }
+
+    /**
+     * Returns the phase with which samples of the resource usage of the containers and server-to-server events are
+     * currently tagged.
+     *
+     * @return the current phase, or {@code null} for none
+     */
+    public static String getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the index of the server-to-server events that the servers logged while the environment was in use.
+     *
+     * The logs of all containers are streamed to {@code target/failsafe-reports/container-logs} while the environment
+     * is in use, and server-to-server events are extracted from them as they are logged. The events are written to
+     * {@code target/failsafe-reports/s2s-events.csv}, and a summary of the events per test is written as a benchmark
+     * report when the environment is stopped.
+     *
+     * @return the event index, or {@code null} if the logs of the containers could not be captured
+     */
+    public static synchronized S2sEventIndex getS2sEvents() {
+        return s2sEvents;
+    }
+
+    private static void startStatsSampler() {
+        final Duration interval = getStatsInterval();
+        if (statsSampler != null || interval.isZero() || interval.isNegative()) {
+            return;
+        }
+        try {
+            statsSampler = new ContainerStatsSampler(DockerCommands.client(), COMPOSE_PROJECT, interval, CONTAINER_STATS_FILE);
+            statsSampler.start();
+        } catch (IOException e) {
+            logger.warn("Unable to sample container resource usage", e);
+            statsSampler = null;
+        }
+    }
+
+    private static void stopStatsSampler() throws IOException {
+        if (statsSampler != null) {
+            statsSampler.close();
+            statsSampler = null;
+        }
+    }
+
+    private static void startLogCapture() {
+        if (logCapture != null) {
+            return;
+        }
+        final Map<String, String> domains = getNodes().stream().collect(Collectors.toMap(FederationNode::service, FederationNode::domain));
+        final Map<String, String> logFiles = getNodes().stream().collect(Collectors.toMap(FederationNode::service, node -> OPENFIRE_LOG_FILE));
+        final S2sEventIndex index = new S2sEventIndex(domains, S2S_EVENTS_FILE);
+        final ContainerLogCapture capture = new ContainerLogCapture(DockerCommands.client(), COMPOSE_PROJECT, CONTAINER_LOGS_DIRECTORY, logFiles, index);
+        try {
+            index.start();
+            capture.start();
+            s2sEvents = index;
+            logCapture = capture;
+        } catch (IOException e) {
+            logger.warn("Unable to capture container logs, logs will be exported when the environment is stopped", e);
+            capture.close();
+            try {
+                index.close();
+            } catch (IOException ex) {
+                logger.debug("Unable to close server-to-server event index", ex);
+            }
+        }
+    }
+
+    private static void stopLogCapture() throws IOException, InterruptedException {
+        if (logCapture == null) {
+            exportLogs();
+            return;
+        }
+        logCapture.close();
+        logCapture = null;
+
+        final Map<String, Object> perPhase = new LinkedHashMap<>();
+        for (S2sEventIndex.PhaseSummary summary : s2sEvents.getPhaseSummaries()) {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("start", summary.start().toString());
+            values.put("end", summary.end() == null ? null : summary.end().toString());
+            final Map<String, Object> counts = new LinkedHashMap<>();
+            summary.counts().forEach((type, count) -> counts.put(type.name(), count));
+            values.put("events", counts);
+            perPhase.put(summary.phase(), values);
+        }
+        s2sEvents.close();
+        new BenchmarkReport("s2s-events")
+                .put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag())
+                .put("phases", perPhase)
+                .write();
+    }
+
+    private static void writeStatementStatistics() throws IOException {
+        if (statementStatistics == null) {
+            return;
+        }
+        if (statementStatistics.isAvailable()) {
+            new BenchmarkReport("database-statements")
+                    .put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag())
+                    .put("phases", statementStatistics.toMap())
+                    .write();
+        }
+        statementStatistics = null;
+    }
+
+    /**
+     * Reattaches to a warm environment if one with a matching configuration fingerprint is running, resetting its
+     * state by restoring database snapshots. Otherwise, replaces any running environment by a newly started one, and
+     * takes the snapshots that later runs will restore.
+     *
+     * @throws IOException if an error occurs communicating with the Docker daemon or executing scripts
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void startOrReattachWarmEnvironment() throws IOException, InterruptedException {
+        final WarmEnvironment warm = new WarmEnvironment(DockerCommands.client(), COMPOSE_PROJECT, Path.of("openfire-docker-compose"));
+        final String fingerprint = warm.fingerprint(getOpenfireImage() + ":" + getOpenfireTag() + " nodes=" + getNodeCount()
+                + " tls=" + (isTls() ? tlsCertificates.getFingerprint() : "disabled"));
+        final long start = System.nanoTime();
+        if (warm.canReattach(fingerprint, getServices())) {
+            logger.info("Reattaching to warm federated environment {}", fingerprint);
+            warm.restoreSnapshots();
+            waitForFederatedEnvironment();
+            logger.info("Warm federated environment reset in {} ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+            return;
+        }
+
+        warm.forget();
+        stopFederatedEnvironment();
+        startFederatedEnvironment();
+        waitForFederatedEnvironment();
+        warm.takeSnapshots();
+        waitForFederatedEnvironment();
+        warm.recordFingerprint(fingerprint);
+        logger.info("Started warm federated environment {} in {} ms", fingerprint, Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
     /**
      * Sets up SQL overlay directories with configuration files.
      *
      * Copies the STARTTLS disable script. This script is required as
      * there's currently a bug preventing self-signed certificates from
-     * being used for server-to-server (S2S) connections.
+     * being used for server-to-server (S2S) connections. When TLS is enabled (see {@link #isTls()}), the script that
+     * requires TLS for server-to-server connections is copied instead, as the servers then use certificates that they
+     * trust.
+     *
+     * When a synthetic population is configured (see {@link SyntheticPopulation}), also generates the script that
+     * provisions its users, rosters and chat rooms. When debug logging is enabled (see {@link #isDebugLog()}), also
+     * copies the script that enables it, and likewise for statement statistics (see {@link #isStatementStatistics()}).
+     * Always generates the script that sets the offline message quota (see {@link #getOfflineQuota()}).
      *
      * @throws IOException if file operations fail
      */
     private static void setupSqlOverlay() throws IOException {
         logger.info("Setting up SQL overlay directories...");
-        for (int i = 1; i <= 2; i++) {
-            Files.createDirectories(Path.of("openfire-docker-compose/federation/sql/" + i));
+        final SyntheticPopulation population = SyntheticPopulation.configured();
+        final List<String> domains = getDomains();
+        for (int i = 1; i <= domains.size(); i++) {
+            Files.createDirectories(COMPOSE_DIRECTORY.resolve("sql/" + i));
+            final String tlsScript = isTls() ? "enable-tls.sql" : "disable-starttls.sql";
+            Files.deleteIfExists(COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-" + (isTls() ? "disable-starttls.sql" : "enable-tls.sql")));
             Files.copy(
-                    Path.of("src/test/resources/docker/federation/disable-starttls.sql"),
-                    Path.of("openfire-docker-compose/federation/sql/" + i + "/zz-disable-starttls.sql"),
+                    Path.of("src/test/resources/docker/federation/" + tlsScript),
+                    COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-" + tlsScript),
                     StandardCopyOption.REPLACE_EXISTING
             );
+            final Path statementStatisticsScript = COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-enable-statement-statistics.sql");
+            if (isStatementStatistics()) {
+                Files.copy(Path.of("src/test/resources/docker/federation/enable-statement-statistics.sql"), statementStatisticsScript, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(statementStatisticsScript);
+            }
+            final Path debugLogScript = COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-enable-debug-log.sql");
+            if (isDebugLog()) {
+                Files.copy(Path.of("src/test/resources/docker/federation/enable-debug-log.sql"), debugLogScript, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(debugLogScript);
+            }
+            Files.writeString(COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-offline-quota.sql"),
+                    "-- Description: Offline message quota of " + getOfflineQuota() + " bytes per user\n"
+                            + "INSERT INTO ofProperty (name, propValue)\n"
+                            + "VALUES ('xmpp.offline.quota', '" + getOfflineQuota() + "')\n"
+                            + "    ON CONFLICT (name) DO UPDATE SET propValue = '" + getOfflineQuota() + "';\n");
+            final Path populationScript = COMPOSE_DIRECTORY.resolve("sql/" + i + "/zz-synthetic-population.sql");
+            if (population.isEmpty()) {
+                Files.deleteIfExists(populationScript);
+            } else {
+                logger.info("Generating synthetic population of {} users and {} rooms for {}...",
+                        population.getUsersPerServer(), population.getRoomsPerServer(), domains.get(i - 1));
+                population.writeSql(domains.get(i - 1), populationScript);
+            }
         }
     }
 
@@ -135,6 +968,9 @@ public class FederatedTestEnvironment {
      * 3. Launches Openfire servers
      * 4. Configures federation between servers
      *
+     * Servers beyond the two that are defined by the start script are then cloned and started (see
+     * {@link AdditionalNodes}).
+     *
      * @throws IOException if script execution fails
      * @throws InterruptedException if script execution is interrupted
      * @throws RuntimeException if script exits with non-zero status
@@ -142,30 +978,18 @@ public class FederatedTestEnvironment {
     private static void startFederatedEnvironment() throws IOException, InterruptedException {
         logger.info("Starting federated environment...");
 
-        File startScript = new File("openfire-docker-compose/federation/start.sh");
+        File startScript = COMPOSE_DIRECTORY.resolve("start.sh").toFile();
         startScript.setExecutable(true);
 
         ProcessBuilder processBuilder = new ProcessBuilder("/bin/bash", startScript.getPath())
                 .directory(new File("."))
                 .inheritIO();
 
-        // Set Openfire image name
-        // Check environment variable first, fallback to "openfire" if not set
-        String openFireImage = System.getenv("OPENFIRE_IMAGE");
-        if (openFireImage == null || openFireImage.trim().isEmpty()) {
-            openFireImage = "openfire";
-        }
-
-        // Set Openfire version tag
-        // Check environment variable first, fallback to "latest" if not set
-        String openFireTag = System.getenv("OPENFIRE_TAG");
-        if (openFireTag == null || openFireTag.trim().isEmpty()) {
-            openFireTag = "latest";
-        }
+        final String openFireImage = getOpenfireImage();
+        final String openFireTag = getOpenfireTag();
 
         logger.info("Configured to use Openfire Docker image {}:{}", openFireImage, openFireTag);
-        processBuilder.environment().put("OPENFIRE_IMAGE", openFireImage);
-        processBuilder.environment().put("OPENFIRE_TAG", openFireTag);
+        processBuilder.environment().putAll(getComposeEnvironment());
 
         Process process = processBuilder.start();
         int exitCode = process.waitFor();
@@ -173,15 +997,82 @@ public class FederatedTestEnvironment {
         if (exitCode != 0) {
             throw new RuntimeException("Failed to start federated environment, exit code: " + exitCode);
         }
+
+        additionalNodes.start(getNodes(), getComposeEnvironment());
+        if (isTls()) {
+            installCertificates();
+        }
+    }
+
+    /**
+     * Installs the keystore and truststore of every server (see {@link TlsCertificates}), replacing the self-signed
+     * certificates that Openfire generated on its first start, and restarts the servers to load them.
+     *
+     * @throws IOException if the stores cannot be read or copied, or a server cannot be restarted
+     */
+    private static void installCertificates() throws IOException {
+        logger.info("Installing certificates in the servers...");
+        final DockerClient client = DockerCommands.client();
+        final byte[] truststore = Files.readAllBytes(tlsCertificates.getTruststore());
+        for (FederationNode node : getNodes()) {
+            final String container = getContainerId(node.service());
+            DockerCommands.copyToContainer(client, container, OPENFIRE_SECURITY_DIRECTORY, Map.of(
+                    "keystore", Files.readAllBytes(tlsCertificates.getKeystore(node.domain())),
+                    "truststore", truststore,
+                    "client.truststore", truststore));
+            // The files are owned by root when copied, while the server may run as a different user.
+            final DockerCommands.ExecResult chown = DockerCommands.exec(client, container, "sh", "-c",
+                    "cd " + OPENFIRE_SECURITY_DIRECTORY + " && chown --reference=. keystore truststore client.truststore");
+            if (chown.exitCode() != 0) {
+                logger.debug("Unable to change the owner of the stores of {}: {}", node.service(), chown.stderr().trim());
+            }
+            DockerCommands.stop(client, container, Duration.ofSeconds(30));
+            DockerCommands.start(client, container);
+        }
+    }
+
+    private static Map<String, String> getComposeEnvironment() {
+        return Map.of("OPENFIRE_IMAGE", getOpenfireImage(), "OPENFIRE_TAG", getOpenfireTag());
+    }
+
+    /**
+     * Returns the name of the Openfire Docker image that is used for the servers in this environment.
+     *
+     * Checks the {@code OPENFIRE_IMAGE} environment variable first, falling back to "openfire" if not set.
+     *
+     * @return the Openfire Docker image name
+     */
+    public static String getOpenfireImage() {
+        final String openFireImage = System.getenv("OPENFIRE_IMAGE");
+        if (openFireImage == null || openFireImage.trim().isEmpty()) {
+            return "openfire";
+        }
+        return openFireImage;
     }
 
     /**
-     * Waits for the federated environment to have fully initialized and all servers to be healthy.
+     * Returns the tag of the Openfire Docker image that is used for the servers in this environment.
+     *
+     * Checks the {@code OPENFIRE_TAG} environment variable first, falling back to "latest" if not set.
+     *
+     * @return the Openfire Docker image tag
+     */
+    public static String getOpenfireTag() {
+        final String openFireTag = System.getenv("OPENFIRE_TAG");
+        if (openFireTag == null || openFireTag.trim().isEmpty()) {
+            return "latest";
+        }
+        return openFireTag;
+    }
+
+    /**
+     * Waits for the federated environment to have fully initialized and all containers to be healthy.
      * <p>
-     * Blocks until all Openfire instances in the federated environment report a healthy status,
-     * or until {@link #STARTUP_WAIT} has elapsed.
+     * Blocks until all containers in the federated environment (Openfire instances as well as their databases) report
+     * a healthy status, or until {@link #STARTUP_WAIT} has elapsed. Container health is tracked in parallel, using the
+     * event stream of the Docker Engine API. The wait fails fast if any container reports to be unhealthy.
      *
-     * @throws IllegalStateException if any server does not become healthy within the allotted time
+     * @throws IllegalStateException if any container does not become healthy within the allotted time
      * @throws InterruptedException if the thread is interrupted while waiting
      * @throws IOException if an error occurs communicating with the Docker daemon
      */
@@ -189,65 +1080,69 @@ public class FederatedTestEnvironment {
     {
         logger.info("Waiting up to {} seconds for servers to initialize...", STARTUP_WAIT.toSeconds());
         final Instant deadline = Instant.now().plus(STARTUP_WAIT);
-        waitForHealthy("openfire", "xmpp1", deadline);
-        waitForHealthy("openfire", "xmpp2", deadline);
+        final Map<String, Duration> timeToHealthy = new ContainerHealthWatcher(DockerCommands.client(), COMPOSE_PROJECT, getServices())
+                .await(deadline);
+
+        final Map<String, Object> perContainer = new LinkedHashMap<>();
+        timeToHealthy.forEach((container, elapsed) -> perContainer.put(container, elapsed.toMillis()));
+        new BenchmarkReport("time-to-healthy")
+                .put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag())
+                .put("timeToHealthyMs", perContainer)
+                .write();
     }
 
     /**
-     * Blocks until a specific Docker container reports a healthy status, or the deadline is reached.
-     *
-     * The container is identified by the standard Compose naming convention: {@code <project>-<service>-1}.
+     * Waits for server-to-server federation to be established between all servers, in both directions.
      *
-     * Health status is polled using the Docker inspect command.
+     * Federation is actively probed using {@link FederationReadinessProbe}. The time it took for federation to be
+     * established is recorded, and is made available through {@link #getTimeToFederation()} and as a benchmark report.
+     * When server-to-server events are indexed (see {@link #getS2sEvents()}), the report also includes the time it took
+     * to establish every outgoing session, as logged by the servers.
      *
-     * @param project  the Docker Compose project name
-     * @param service  the service name within the Compose project
-     * @param deadline the point in time after which the wait is abandoned
-     * @throws IllegalStateException if the container does not become healthy before the deadline
-     * @throws InterruptedException  if the thread is interrupted while waiting
-     * @throws IOException           if an error occurs communicating with the Docker daemon
+     * @throws IllegalStateException if federation is not established within {@link #FEDERATION_WAIT}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws IOException if the time-to-federation report cannot be written
      */
-    private static void waitForHealthy(String project, String service, Instant deadline) throws IOException, InterruptedException
+    private static void waitForFederation() throws IllegalStateException, InterruptedException, IOException
     {
-        System.out.print("Waiting for " + service + "...");
-        while (Instant.now().isBefore(deadline)) {
-            if (isContainerHealthy(project, service)) {
-                System.out.println(" healthy.");
-                return;
+        final Instant since = Instant.now();
+        final long start = System.nanoTime();
+        final Map<String, FederationReadinessProbe.RouteResult> routes = new FederationReadinessProbe(FEDERATION_WAIT).await();
+        timeToFederation = Duration.ofNanos(System.nanoTime() - start);
+        logger.info("Federation established in {} ms", timeToFederation.toMillis());
+
+        final S2sEventIndex index = getS2sEvents();
+        final Map<String, Duration> establishment = index == null ? Map.of() : index.getEstablishmentTimes(since);
+        final Map<String, Object> perRoute = new LinkedHashMap<>();
+        routes.forEach((route, result) -> {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("elapsedMs", result.elapsed().toMillis());
+            values.put("attempts", result.attempts());
+            if (establishment.containsKey(route)) {
+                values.put("serverEstablishmentMs", establishment.get(route).toMillis());
             }
-            Thread.sleep(1_000);
-            System.out.print(".");
-        }
-        throw new IllegalStateException("Timed out waiting for " + service + " to become healthy");
+            perRoute.put(route, values);
+        });
+        new BenchmarkReport("time-to-federation")
+                .put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag())
+                .put("timeToFederationMs", timeToFederation.toMillis())
+                .put("routes", perRoute)
+                .write();
     }
 
     /**
-     * Checks whether a Docker container is currently reporting a healthy status.
-     *
-     * Invokes {@code docker inspect} to retrieve the container's health status. Returns {@code false} for any status
-     * other than {@code healthy}, including {@code starting}, {@code unhealthy}, or if the container cannot be found.
+     * Returns the time it took for server-to-server federation to be established in all directions, measured from the
+     * moment that all servers reported to be healthy.
      *
-     * @param project the Docker Compose project name
-     * @param service the service name within the Compose project
-     * @return {@code true} if the container's health status is {@code healthy}, {@code false} otherwise
-     * @throws InterruptedException if the thread is interrupted while waiting for the {@code docker inspect} process to complete
-     * @throws IOException if the {@code docker} executable cannot be found or an I/O error occurs
+     * @return the time to federation, or {@code null} if the environment has not been started
      */
-    private static boolean isContainerHealthy(String project, String service) throws IOException, InterruptedException
-    {
-        final String containerName = project + "-" + service + "-1";
-        final ProcessBuilder pb = new ProcessBuilder("docker", "inspect", "--format", "{{.State.Health.Status}}", containerName);
-        pb.redirectErrorStream(true);
-
-        final Process process = pb.start();
-        final String output = new String(process.getInputStream().readAllBytes()).trim();
-        process.waitFor();
-
-        return "healthy".equals(output);
+    public static Duration getTimeToFederation() {
+        return timeToFederation;
     }
 
     /**
-     * Invokes the get_logs.sh script to export Openfire logs from the images.
+     * Invokes the get_logs.sh script to export Openfire logs from the images. Used only when the logs could not be
+     * streamed while the environment was in use.
      *
      * @throws IOException if script execution fails
      * @throws InterruptedException if script execution is interrupted
@@ -272,8 +1167,23 @@ public class FederatedTestEnvironment {
      */
     private static void cleanupSqlOverlay() throws IOException {
         logger.info("Cleaning up SQL overlay files...");
-        for (int i = 1; i <= 2; i++) {
-            Files.deleteIfExists(Path.of("openfire-docker-compose/federation/sql/" + i + "/zz-disable-starttls.sql"));
+        for (FederationNode node : getNodes()) {
+            final Path directory = COMPOSE_DIRECTORY.resolve("sql/" + node.index());
+            Files.deleteIfExists(directory.resolve("zz-disable-starttls.sql"));
+            Files.deleteIfExists(directory.resolve("zz-enable-tls.sql"));
+            Files.deleteIfExists(directory.resolve("zz-synthetic-population.sql"));
+            Files.deleteIfExists(directory.resolve("zz-enable-debug-log.sql"));
+            Files.deleteIfExists(directory.resolve("zz-offline-quota.sql"));
+            Files.deleteIfExists(directory.resolve("zz-enable-statement-statistics.sql"));
+            if (!node.isBaseNode() && Files.isDirectory(directory)) {
+                // Holds copies of the scripts of node 1, which are recreated when the node is cloned again.
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(directory);
+            }
         }
     }
 
@@ -287,6 +1197,11 @@ public class FederatedTestEnvironment {
     private static void stopFederatedEnvironment() throws IOException, InterruptedException {
         logger.info("Stopping federated environment...");
 
+        // Additional nodes are attached to the networks of the base environment, so must be removed first.
+        additionalNodes.remove(getComposeEnvironment());
+        Files.deleteIfExists(LINK_PROFILE_FILE);
+        linkProfile = LinkProfile.NONE;
+
         File stopScript = new File("openfire-docker-compose/stop.sh");
         stopScript.setExecutable(true);
 
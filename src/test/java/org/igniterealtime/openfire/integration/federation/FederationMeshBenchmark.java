@@ -0,0 +1,208 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Load scenario that measures how federation scales with the number of servers in a full mesh.
+ *
+ * The size of the mesh is that of the environment (see {@link FederatedTestEnvironment#getNodeCount()}); run this
+ * benchmark repeatedly with an increasing {@code OPENFIRE_NODES} to see how costs grow with N. A mesh of N servers
+ * needs N * (N - 1) routes, each of which requires a server-to-server connection.
+ *
+ * Two things are measured:
+ * <ul>
+ *     <li>Full-mesh establishment time: the time it took, after all servers became healthy, for every route of the
+ *     mesh to carry traffic. This is measured by the environment during startup.</li>
+ *     <li>Cross-domain routing latency: one client is connected to every server, and each client sends stamped
+ *     messages to the clients on all other servers, at a fixed rate per route. End-to-end latency and loss are
+ *     recorded per route, and for the mesh as a whole.</li>
+ * </ul>
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.messages} - number of messages sent on every route (default: 200)</li>
+ *     <li>{@code benchmark.interval} - time between consecutive messages on a route, in seconds (default: 0.05)</li>
+ *     <li>{@code benchmark.drainTimeout} - maximum time to wait for outstanding messages, in seconds (default: 10)</li>
+ * </ul>
+ */
+public class FederationMeshBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederationMeshBenchmark.class);
+
+    private final int messagesPerRoute = BenchmarkSettings.getInt("benchmark.messages", 200);
+    private final Duration interval = BenchmarkSettings.getDuration("benchmark.interval", Duration.ofMillis(50));
+    private final Duration drainTimeout = BenchmarkSettings.getDuration("benchmark.drainTimeout", Duration.ofSeconds(10));
+
+    private final List<FederationNode> nodes = getNodes();
+    private final List<AbstractXMPPConnection> connections = new ArrayList<>();
+
+    // Latency of every route, indexed by [origin][destination] node position
+    private LatencyHistogram[][] latency;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    @Test
+    void fullMesh() throws Exception {
+        final int n = nodes.size();
+        final int routeCount = n * (n - 1);
+        logger.info("Starting federation mesh benchmark with {} servers ({} routes)...", n, routeCount);
+
+        latency = new LatencyHistogram[n][n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                latency[from][to] = new LatencyHistogram();
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                connections.add(connect(i));
+            }
+
+            final long runId = System.currentTimeMillis();
+            final List<Future<?>> senders = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                final int origin = i;
+                senders.add(executor.submit(() -> {
+                    send(runId, origin);
+                    return null;
+                }));
+            }
+            for (Future<?> sender : senders) {
+                sender.get();
+            }
+            final long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+            while (received.get() < sent.get() && System.nanoTime() < drainDeadline) {
+                Thread.sleep(50);
+            }
+
+            final LatencyHistogram overall = new LatencyHistogram();
+            final Map<String, Object> routes = new LinkedHashMap<>();
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    if (from != to) {
+                        overall.add(latency[from][to]);
+                        final Map<String, Object> route = new LinkedHashMap<>();
+                        route.put("received", latency[from][to].getCount());
+                        route.put("latency", latency[from][to].summary());
+                        routes.put(nodes.get(from).domain() + " -> " + nodes.get(to).domain(), route);
+                    }
+                }
+            }
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("nodes", n);
+            configuration.put("messagesPerRoute", messagesPerRoute);
+            configuration.put("intervalSeconds", interval.toMillis() / 1000.0);
+
+            final Map<String, Object> establishment = new LinkedHashMap<>();
+            establishment.put("routes", routeCount);
+            establishment.put("timeToFullMeshMs", getTimeToFederation() == null ? null : getTimeToFederation().toMillis());
+
+            final Map<String, Object> routing = new LinkedHashMap<>();
+            routing.put("sent", sent.get());
+            routing.put("received", received.get());
+            routing.put("lost", sent.get() - received.get());
+            routing.put("latency", overall.summary());
+            routing.put("routes", routes);
+
+            new BenchmarkReport("federation-mesh-" + n)
+                    .put("configuration", configuration)
+                    .put("establishment", establishment)
+                    .put("routing", routing)
+                    .write();
+
+            Assertions.assertTrue(received.get() > 0, "At least one message should have been routed");
+        } finally {
+            executor.shutdownNow();
+            for (AbstractXMPPConnection connection : connections) {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Connects the first user of a server, and records the latency of all stamped messages that it receives.
+     */
+    private AbstractXMPPConnection connect(int position) throws Exception {
+        final FederationNode node = nodes.get(position);
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(node.domain(), node.users().get(0))
+                .setResource("mesh-bench")
+                .build());
+        connection.addSyncStanzaListener(stanza -> {
+            final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+            if (stamp != null && stamp.stream() >= 0 && stamp.stream() < nodes.size()) {
+                // The stream of a stamp identifies the server from which the message originates.
+                latency[stamp.stream()][position].recordNanos(stamp.elapsedNanos());
+                received.incrementAndGet();
+            }
+        }, stanza -> stanza instanceof Message);
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+
+    /**
+     * Sends messages from the client on one server to the clients on all other servers, pacing each round of
+     * messages to the configured interval.
+     */
+    private void send(long runId, int origin) throws Exception {
+        final AbstractXMPPConnection connection = connections.get(origin);
+        final List<EntityFullJid> peers = new ArrayList<>();
+        for (int i = 0; i < connections.size(); i++) {
+            if (i != origin) {
+                peers.add(connections.get(i).getUser());
+            }
+        }
+
+        final long start = System.nanoTime();
+        for (long sequence = 0; sequence < messagesPerRoute; sequence++) {
+            final long due = start + sequence * interval.toNanos();
+            final long delay = due - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            for (EntityFullJid peer : peers) {
+                final BenchmarkStamp stamp = BenchmarkStamp.now(runId, origin, sequence);
+                connection.sendStanza(connection.getStanzaFactory()
+                        .buildMessageStanza()
+                        .to(peer)
+                        .ofType(Message.Type.chat)
+                        .setBody("Mesh message " + sequence)
+                        .addExtension(stamp.toExtensionElement())
+                        .build());
+                sent.incrementAndGet();
+            }
+        }
+        logger.info("{} sent {} messages to each of {} peers in {} ms", nodes.get(origin).domain(), messagesPerRoute,
+                peers.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
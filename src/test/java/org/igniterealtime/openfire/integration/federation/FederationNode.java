@@ -0,0 +1,46 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import java.util.List;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * An Openfire server in the federated test environment.
+ *
+ * Nodes are numbered from 1. Every node is named after its number: node {@code n} runs as Docker Compose service
+ * {@code xmppn}, serves domain {@code xmppn.localhost.example}, and accepts client connections on port
+ * {@code 5220 + n}. The first two nodes are defined by the base environment, and have users {@code user1} and
+ * {@code user2} (node 1), and {@code user3} and {@code user4} (node 2). Additional nodes are cloned from node 1, and
+ * therefore have the same users as node 1.
+ *
+ * @param index      the number of the node, starting at 1
+ * @param service    the Docker Compose service name of the node
+ * @param domain     the XMPP domain that is served by the node
+ * @param clientPort the (host) port on which the node accepts client connections
+ * @param users      the pre-configured users of the node
+ */
+public record FederationNode(int index, String service, String domain, int clientPort, List<String> users) {
+
+    /**
+     * Creates the definition of a node by its number.
+     *
+     * @param index the number of the node, starting at 1
+     * @return the node definition
+     */
+    public static FederationNode of(int index) {
+        if (index < 1) {
+            throw new IllegalArgumentException("Nodes are numbered from 1, got " + index);
+        }
+        final List<String> users = index == 2 ? List.of(USER_3, USER_4) : List.of(USER_1, USER_2);
+        return new FederationNode(index, "xmpp" + index, "xmpp" + index + ".localhost.example", 5220 + index, users);
+    }
+
+    /**
+     * Returns whether this node is part of the base environment, as opposed to having been cloned from node 1.
+     *
+     * @return {@code true} for the first two nodes
+     */
+    public boolean isBaseNode() {
+        return index <= 2;
+    }
+}
@@ -0,0 +1,192 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smackx.ping.PingManager;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Actively checks that server-to-server federation is established between the servers of the test environment.
+ *
+ * Every ordered pair of servers forms a route, so that a full mesh of N servers has N * (N - 1) routes. For each
+ * route, a user that is connected to the originating server sends XEP-0199 pings to the domain of the other server. A
+ * ping can only be answered once the originating server has established an outgoing server-to-server connection to
+ * the remote domain, and the remote server has established one back. Failed or unanswered pings are retried with
+ * exponential backoff. All routes are probed in parallel, and the probe completes as soon as all of them route.
+ */
+public class FederationReadinessProbe {
+    private static final Logger logger = LoggerFactory.getLogger(FederationReadinessProbe.class);
+
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(100);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(2);
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * A route between two servers that is to be probed.
+     *
+     * @param domain     domain of the server from which the route originates
+     * @param user       the user that is used to send probes
+     * @param peerDomain domain of the server that is the target of the route
+     */
+    public record Route(String domain, String user, String peerDomain) {
+        @Override
+        public String toString() {
+            return domain + " -> " + peerDomain;
+        }
+    }
+
+    /**
+     * The outcome of probing a single route.
+     *
+     * @param route    the route that was probed
+     * @param elapsed  time from the start of probing until the first successful response
+     * @param attempts number of pings that were sent
+     */
+    public record RouteResult(Route route, Duration elapsed, int attempts) {
+    }
+
+    private final List<Route> routes;
+
+    private final Duration timeout;
+
+    /**
+     * Creates a probe for the full mesh of all servers in the environment.
+     *
+     * @param timeout the maximum time to wait for all routes to become available
+     */
+    public FederationReadinessProbe(Duration timeout) {
+        this(timeout, getNodes());
+    }
+
+    /**
+     * Creates a probe for the full mesh of a set of servers.
+     *
+     * @param timeout the maximum time to wait for all routes to become available
+     * @param nodes   the servers between which federation is to be established
+     */
+    public FederationReadinessProbe(Duration timeout, List<FederationNode> nodes) {
+        this.timeout = timeout;
+        this.routes = fullMesh(nodes);
+    }
+
+    /**
+     * Returns all routes between a set of servers. Probes are sent by the second user of each server, so that the
+     * first user remains available to tests.
+     *
+     * @param nodes the servers
+     * @return a route for every ordered pair of servers
+     */
+    public static List<Route> fullMesh(List<FederationNode> nodes) {
+        final List<Route> routes = new ArrayList<>();
+        for (FederationNode from : nodes) {
+            for (FederationNode to : nodes) {
+                if (from != to) {
+                    routes.add(new Route(from.domain(), from.users().get(1), to.domain()));
+                }
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Blocks until all federated routes are available.
+     *
+     * @return the time that it took for each route to become available, keyed by route description
+     * @throws IllegalStateException if a route does not become available within the timeout
+     * @throws InterruptedException  if the thread is interrupted while waiting
+     */
+    public Map<String, RouteResult> await() throws InterruptedException {
+        logger.info("Waiting up to {} seconds for server-to-server federation to be established...", timeout.toSeconds());
+        final ExecutorService executor = Executors.newFixedThreadPool(routes.size());
+        try {
+            final List<Future<RouteResult>> futures = new ArrayList<>();
+            for (Route route : routes) {
+                futures.add(executor.submit((Callable<RouteResult>) () -> probe(route)));
+            }
+            final Map<String, RouteResult> results = new LinkedHashMap<>();
+            for (Future<RouteResult> future : futures) {
+                final RouteResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Unable to probe federated route", e.getCause());
+                }
+                logger.info("Route {} available after {} ms ({} attempts)", result.route(), result.elapsed().toMillis(), result.attempts());
+                results.put(result.route().toString(), result);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Repeatedly pings the peer domain of a route until a response is received, or the timeout elapses.
+     *
+     * @param route the route to probe
+     * @return the outcome of probing the route
+     */
+    private RouteResult probe(Route route) throws Exception {
+        final long start = System.nanoTime();
+        final long deadline = start + timeout.toNanos();
+        final DomainBareJid peer = JidCreate.domainBareFrom(route.peerDomain());
+
+        final AbstractXMPPConnection connection = connect(route);
+        try {
+            final PingManager pingManager = PingManager.getInstanceFor(connection);
+            Duration backoff = INITIAL_BACKOFF;
+            int attempts = 0;
+            while (true) {
+                attempts++;
+                try {
+                    if (pingManager.ping(peer, PING_TIMEOUT.toMillis())) {
+                        return new RouteResult(route, Duration.ofNanos(System.nanoTime() - start), attempts);
+                    }
+                    logger.debug("Route {} not yet available (attempt {}): ping returned an error", route, attempts);
+                } catch (SmackException.NoResponseException e) {
+                    logger.debug("Route {} not yet available (attempt {}): no response", route, attempts);
+                }
+
+                if (System.nanoTime() + backoff.toNanos() >= deadline) {
+                    throw new IllegalStateException("Timed out waiting for federated route " + route + " after " + attempts + " attempts");
+                }
+                Thread.sleep(backoff.toMillis());
+                backoff = backoff.multipliedBy(2);
+                if (backoff.compareTo(MAX_BACKOFF) > 0) {
+                    backoff = MAX_BACKOFF;
+                }
+            }
+        } finally {
+            if (connection.isConnected()) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static AbstractXMPPConnection connect(Route route) throws Exception {
+        // Routes that originate from the same server share a user, so each needs its own resource.
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(route.domain(), route.user())
+                .setResource("readiness-probe-" + route.peerDomain())
+                .build());
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+}
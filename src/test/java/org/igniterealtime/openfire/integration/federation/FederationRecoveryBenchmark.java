@@ -0,0 +1,456 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Failure scenario that measures how federation recovers when a peer server goes away and comes back.
+ *
+ * Senders on the first server send a steady stream of stamped messages to receivers on the second server. After a
+ * period of steady traffic, a fault is injected, and removed again after the configured outage. Traffic is sent
+ * throughout, and continues for a while after recovery. The following faults are supported:
+ * <ul>
+ *     <li>{@code partition} - all server-to-server traffic is dropped (see {@link LinkProfile}), while both servers
+ *     keep running</li>
+ *     <li>{@code pause} - all processes of the second server are suspended, so that it does not respond to anything,
+ *     but none of its connections are closed</li>
+ *     <li>{@code kill} - the second server is killed, and started again once the outage has passed. Its receivers
+ *     reconnect as soon as it is healthy again.</li>
+ * </ul>
+ *
+ * For every fault, the following is recorded:
+ * <ul>
+ *     <li>The time from the removal of the fault until the first message is delivered, and until the first message that
+ *     was sent after the removal of the fault is delivered (that is, until traffic flows again).</li>
+ *     <li>For messages sent before, during and after the outage: how many were delivered, and how many were lost.
+ *     Messages that were sent during the outage and delivered later were queued by the first server, or stored offline
+ *     by the second. Error responses that bounced back to the senders are counted separately.</li>
+ *     <li>The number of deliveries in every second of the run, which shows the burst of queued messages that the first
+ *     server flushes when the link is re-established, and the server-to-server events that both servers logged (see
+ *     {@link FederatedTestEnvironment#getS2sEvents()}).</li>
+ * </ul>
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.faults} - comma-separated faults to inject, one after the other (default:
+ *     partition,pause,kill)</li>
+ *     <li>{@code benchmark.pairs} - number of sender/receiver pairs (default: 4)</li>
+ *     <li>{@code benchmark.rate} - aggregate rate at which messages are sent, in messages per second (default: 50)</li>
+ *     <li>{@code benchmark.steady} - period of steady traffic before the fault is injected, in seconds (default: 10)</li>
+ *     <li>{@code benchmark.outage} - time between injection and removal of the fault, in seconds (default: 10)</li>
+ *     <li>{@code benchmark.observe} - period of traffic after it flows again, in seconds (default: 20)</li>
+ *     <li>{@code benchmark.recoveryTimeout} - maximum time to wait for traffic to flow again, in seconds (default: 180)</li>
+ *     <li>{@code benchmark.drainTimeout} - maximum time to wait for outstanding messages, in seconds (default: 30)</li>
+ * </ul>
+ */
+public class FederationRecoveryBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(FederationRecoveryBenchmark.class);
+
+    private final List<String> faults = Arrays.stream(BenchmarkSettings.getString("benchmark.faults", "partition,pause,kill").split(","))
+            .map(String::trim)
+            .filter(fault -> !fault.isEmpty())
+            .toList();
+    private final int pairCount = BenchmarkSettings.getInt("benchmark.pairs", 4);
+    private final double rate = BenchmarkSettings.getDouble("benchmark.rate", 50);
+    private final Duration steady = BenchmarkSettings.getDuration("benchmark.steady", Duration.ofSeconds(10));
+    private final Duration outage = BenchmarkSettings.getDuration("benchmark.outage", Duration.ofSeconds(10));
+    private final Duration observe = BenchmarkSettings.getDuration("benchmark.observe", Duration.ofSeconds(20));
+    private final Duration recoveryTimeout = BenchmarkSettings.getDuration("benchmark.recoveryTimeout", Duration.ofSeconds(180));
+    private final Duration drainTimeout = BenchmarkSettings.getDuration("benchmark.drainTimeout", Duration.ofSeconds(30));
+
+    private final FederationNode peer = FederationNode.of(2);
+    private final List<Pair> pairs = new ArrayList<>();
+    private volatile Run currentRun;
+
+    @Test
+    void federationRecovery() throws Exception {
+        for (String fault : faults) {
+            if (!List.of("partition", "pause", "kill").contains(fault)) {
+                throw new IllegalArgumentException("Unknown fault: " + fault);
+            }
+        }
+        logger.info("Starting federation recovery benchmark with faults {}, {} pairs at {} msg/s...", faults, pairCount, rate);
+
+        try {
+            for (int i = 0; i < pairCount; i++) {
+                pairs.add(createPair(i));
+            }
+
+            final List<Map<String, Object>> results = new ArrayList<>();
+            final List<String> unrecovered = new ArrayList<>();
+            for (int i = 0; i < faults.size(); i++) {
+                final Run run = new Run(i + 1, faults.get(i));
+                execute(run);
+                results.add(run.results());
+                if (run.flowNanos == 0) {
+                    unrecovered.add(run.fault);
+                }
+            }
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("pairs", pairCount);
+            configuration.put("rate", rate);
+            configuration.put("steadySeconds", steady.toMillis() / 1000.0);
+            configuration.put("outageSeconds", outage.toMillis() / 1000.0);
+            configuration.put("observeSeconds", observe.toMillis() / 1000.0);
+            configuration.put("linkProfile", getCurrentLinkProfile().toMap());
+
+            new BenchmarkReport("federation-recovery")
+                    .put("configuration", configuration)
+                    .put("faults", results)
+                    .write();
+
+            Assertions.assertTrue(unrecovered.isEmpty(), "Traffic did not flow again within " + recoveryTimeout.toSeconds() + "s after: " + unrecovered);
+        } finally {
+            currentRun = null;
+            for (Pair pair : pairs) {
+                pair.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Runs traffic while a fault is injected and removed.
+     */
+    private void execute(Run run) throws Exception {
+        reconnectReceivers(Instant.now().plus(recoveryTimeout));
+        logger.info("Fault {}: {}s of steady traffic, followed by {}s of outage...", run.fault, steady.toSeconds(), outage.toSeconds());
+        currentRun = run;
+        setStep(run.fault + "/steady");
+        run.start = System.nanoTime();
+
+        final ExecutorService senders = Executors.newFixedThreadPool(pairCount);
+        try {
+            final long intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) * pairCount / rate);
+            for (Pair pair : pairs) {
+                senders.submit(() -> send(run, pair, intervalNanos));
+            }
+
+            TimeUnit.NANOSECONDS.sleep(steady.toNanos());
+            final LinkProfile profile = getCurrentLinkProfile();
+            setStep(run.fault + "/outage");
+            run.faultNanos = System.nanoTime();
+            run.faultInstant = Instant.now();
+            switch (run.fault) {
+                case "partition" -> setLinkProfile(LinkProfile.parse("partition"));
+                case "pause" -> pauseNode(peer);
+                case "kill" -> killNode(peer);
+                default -> throw new IllegalArgumentException("Unknown fault: " + run.fault);
+            }
+            final long remaining = run.faultNanos + outage.toNanos() - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
+
+            setStep(run.fault + "/recovery");
+            run.recoverNanos = System.nanoTime();
+            run.recoverInstant = Instant.now();
+            switch (run.fault) {
+                case "partition" -> setLinkProfile(profile);
+                case "pause" -> unpauseNode(peer);
+                case "kill" -> run.peerHealthy = startNode(peer);
+                default -> throw new IllegalArgumentException("Unknown fault: " + run.fault);
+            }
+            final Instant deadline = run.recoverInstant.plus(recoveryTimeout);
+            reconnectReceivers(deadline);
+            run.reconnectedNanos = System.nanoTime() - run.recoverNanos;
+
+            synchronized (run) {
+                while (run.flowNanos == 0 && Instant.now().isBefore(deadline)) {
+                    run.wait(Math.max(1, Duration.between(Instant.now(), deadline).toMillis()));
+                }
+            }
+            if (run.flowNanos == 0) {
+                logger.warn("Fault {}: traffic did not flow again within {}s", run.fault, recoveryTimeout.toSeconds());
+            } else {
+                logger.info("Fault {}: traffic flows again {} ms after recovery", run.fault, TimeUnit.NANOSECONDS.toMillis(run.flowNanos));
+                TimeUnit.NANOSECONDS.sleep(observe.toNanos());
+            }
+        } finally {
+            run.stopped = true;
+            senders.shutdown();
+            senders.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        run.end = System.nanoTime();
+
+        final long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (run.delivered.size() + run.bounced.get() < run.sent.size() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        currentRun = null;
+    }
+
+    private Void send(Run run, Pair pair, long intervalNanos) throws InterruptedException {
+        // Offset the schedule of each pair, to avoid all pairs sending in bursts at the same moment.
+        final long offset = intervalNanos * pair.index / pairCount;
+        for (long seq = 0; !run.stopped; seq++) {
+            final long delay = run.start + offset + seq * intervalNanos - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            try {
+                pair.send(run, seq);
+            } catch (SmackException.NotConnectedException e) {
+                run.sendFailures.incrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reconnects receivers that lost their connection, retrying until they are all connected.
+     */
+    private void reconnectReceivers(Instant deadline) throws Exception {
+        for (Pair pair : pairs) {
+            while (!pair.receiver.isAuthenticated()) {
+                try {
+                    if (!pair.receiver.isConnected()) {
+                        pair.receiver.connect();
+                    }
+                    pair.receiver.login();
+                } catch (Exception e) {
+                    if (Instant.now().isAfter(deadline)) {
+                        throw e;
+                    }
+                    logger.debug("Unable to reconnect receiver of pair {}, retrying", pair.index, e);
+                    if (pair.receiver.isConnected()) {
+                        pair.receiver.disconnect();
+                    }
+                    Thread.sleep(500);
+                }
+            }
+        }
+    }
+
+    private Pair createPair(int index) throws Exception {
+        final String resource = "recovery-" + index;
+        final AbstractXMPPConnection sender = connect(XMPP1_DOMAIN, index % 2 == 0 ? USER_1 : USER_2, resource);
+        final AbstractXMPPConnection receiver = connect(XMPP2_DOMAIN, index % 2 == 0 ? USER_3 : USER_4, resource);
+        final Pair pair = new Pair(index, sender, receiver);
+        receiver.addSyncStanzaListener(
+                stanza -> {
+                    final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                    final Run run = currentRun;
+                    if (run != null && stamp.run() == run.id) {
+                        run.onDelivered(stamp);
+                    }
+                },
+                stanza -> stanza instanceof Message message && message.getType() != Message.Type.error && BenchmarkStamp.from(stanza) != null
+        );
+        sender.addSyncStanzaListener(
+                stanza -> {
+                    final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                    final Run run = currentRun;
+                    if (run != null && stamp.run() == run.id) {
+                        run.bounced.incrementAndGet();
+                    }
+                },
+                stanza -> stanza instanceof Message message && message.getType() == Message.Type.error && BenchmarkStamp.from(stanza) != null
+        );
+        return pair;
+    }
+
+    private static AbstractXMPPConnection connect(String domain, String user, String resource) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(domain, user)
+                .setResource(resource)
+                .build());
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+
+    /**
+     * A sender on the first server, and the receiver on the second server that it sends messages to.
+     */
+    private static final class Pair {
+        final int index;
+        final AbstractXMPPConnection sender;
+        final AbstractXMPPConnection receiver;
+        final EntityFullJid receiverJid;
+
+        Pair(int index, AbstractXMPPConnection sender, AbstractXMPPConnection receiver) {
+            this.index = index;
+            this.sender = sender;
+            this.receiver = receiver;
+            this.receiverJid = receiver.getUser();
+        }
+
+        void send(Run run, long sequence) throws SmackException.NotConnectedException, InterruptedException {
+            final BenchmarkStamp stamp = BenchmarkStamp.now(run.id, index, sequence);
+            final Message message = sender.getStanzaFactory()
+                    .buildMessageStanza()
+                    .to(receiverJid)
+                    .ofType(Message.Type.chat)
+                    .setBody("Recovery message " + sequence + " of pair " + index)
+                    .addExtension(stamp.toExtensionElement())
+                    .build();
+            sender.sendStanza(message);
+            run.sent.put(key(stamp), stamp.sentNanos());
+        }
+
+        void disconnect() {
+            if (sender.isConnected()) {
+                sender.disconnect();
+            }
+            if (receiver.isConnected()) {
+                receiver.disconnect();
+            }
+        }
+    }
+
+    private static long key(BenchmarkStamp stamp) {
+        return ((long) stamp.stream() << 40) | stamp.sequence();
+    }
+
+    /**
+     * Collects the measurements of the injection and removal of a single fault.
+     */
+    private static final class Run {
+        final int id;
+        final String fault;
+        // Send and delivery times of every message, keyed by pair and sequence number
+        final Map<Long, Long> sent = new ConcurrentHashMap<>();
+        final Map<Long, Long> delivered = new ConcurrentHashMap<>();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong bounced = new AtomicLong();
+        final AtomicLong sendFailures = new AtomicLong();
+        volatile boolean stopped;
+        volatile long start;
+        volatile long faultNanos;
+        volatile long recoverNanos;
+        volatile long reconnectedNanos;
+        volatile long end;
+        volatile Instant faultInstant;
+        volatile Instant recoverInstant;
+        volatile Duration peerHealthy;
+        // Time from recovery until the first delivery, and until the first delivery of a message sent after recovery
+        volatile long firstDeliveryNanos;
+        volatile long flowNanos;
+
+        Run(int id, String fault) {
+            this.id = id;
+            this.fault = fault;
+        }
+
+        void onDelivered(BenchmarkStamp stamp) {
+            final long now = System.nanoTime();
+            if (delivered.putIfAbsent(key(stamp), now) != null) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            if (recoverNanos == 0 || now < recoverNanos) {
+                return;
+            }
+            if (firstDeliveryNanos == 0) {
+                firstDeliveryNanos = now - recoverNanos;
+            }
+            if (flowNanos == 0 && stamp.sentNanos() >= recoverNanos) {
+                synchronized (this) {
+                    flowNanos = now - recoverNanos;
+                    notifyAll();
+                }
+            }
+        }
+
+        Map<String, Object> results() {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("fault", fault);
+            result.put("outageMs", TimeUnit.NANOSECONDS.toMillis(recoverNanos - faultNanos));
+            if (peerHealthy != null) {
+                result.put("peerTimeToHealthyMs", peerHealthy.toMillis());
+            }
+            result.put("receiversReconnectedMs", TimeUnit.NANOSECONDS.toMillis(reconnectedNanos));
+            result.put("timeToFirstDeliveryMs", firstDeliveryNanos == 0 ? null : TimeUnit.NANOSECONDS.toMillis(firstDeliveryNanos));
+            result.put("timeToFlowMs", flowNanos == 0 ? null : TimeUnit.NANOSECONDS.toMillis(flowNanos));
+            result.put("downtimeMs", flowNanos == 0 ? null : TimeUnit.NANOSECONDS.toMillis(recoverNanos + flowNanos - faultNanos));
+            result.put("beforeFault", window(Long.MIN_VALUE, faultNanos));
+            result.put("duringOutage", window(faultNanos, recoverNanos));
+            result.put("afterRecovery", window(recoverNanos, Long.MAX_VALUE));
+            result.put("bounced", bounced.get());
+            result.put("sendFailures", sendFailures.get());
+            result.put("duplicates", duplicates.get());
+
+            final int seconds = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(end - start) + 1);
+            final long[] perSecond = new long[seconds];
+            for (long deliveredAt : delivered.values()) {
+                final int second = (int) TimeUnit.NANOSECONDS.toSeconds(deliveredAt - start);
+                if (second >= 0 && second < seconds) {
+                    perSecond[second]++;
+                }
+            }
+            long peak = 0;
+            for (int s = (int) TimeUnit.NANOSECONDS.toSeconds(recoverNanos - start); s < seconds; s++) {
+                peak = Math.max(peak, perSecond[s]);
+            }
+            result.put("peakDeliveriesPerSecondAfterRecovery", peak);
+            result.put("deliveriesPerSecond", Arrays.stream(perSecond).boxed().toList());
+
+            final S2sEventIndex index = getS2sEvents();
+            if (index != null) {
+                final Map<String, Long> events = new LinkedHashMap<>();
+                for (S2sEventIndex.Event event : index.getEvents(faultInstant)) {
+                    events.merge(event.type().name(), 1L, Long::sum);
+                }
+                result.put("s2sEvents", events);
+                final Map<String, Object> establishment = new LinkedHashMap<>();
+                index.getEstablishmentTimes(recoverInstant).forEach((route, elapsed) -> establishment.put(route, elapsed.toMillis()));
+                result.put("serverEstablishmentMs", establishment);
+            }
+            return result;
+        }
+
+        /**
+         * Summarizes the delivery of the messages that were sent in a window of time.
+         */
+        private Map<String, Object> window(long from, long to) {
+            long count = 0;
+            long received = 0;
+            final LatencyHistogram latency = new LatencyHistogram();
+            for (Map.Entry<Long, Long> entry : sent.entrySet()) {
+                if (entry.getValue() < from || entry.getValue() >= to) {
+                    continue;
+                }
+                count++;
+                final Long deliveredAt = delivered.get(entry.getKey());
+                if (deliveredAt != null) {
+                    received++;
+                    latency.recordNanos(deliveredAt - entry.getValue());
+                }
+            }
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sent", count);
+            result.put("delivered", received);
+            result.put("lost", count - received);
+            result.put("latency", latency.summary());
+            return result;
+        }
+    }
+}
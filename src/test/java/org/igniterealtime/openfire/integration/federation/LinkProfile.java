@@ -0,0 +1,151 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The network conditions of the server-to-server links between the servers of the federated test environment.
+ *
+ * A profile describes a link in both directions: the round-trip time is split evenly between the two directions, while
+ * jitter, loss and the bandwidth limit apply to each direction separately.
+ *
+ * Profiles are referred to by name ({@code none}, {@code lan}, {@code metro}, {@code region}, {@code continent},
+ * {@code intercontinental}, {@code lossy}, {@code constrained}, or {@code partition}, which drops all traffic), or are
+ * defined by a specification of the form {@code rtt=100:jitter=10:loss=0.5:rate=10mbit}, in which times are in
+ * milliseconds, loss is a percentage and rate is a bandwidth as understood by {@code tc}. Every part of a specification
+ * is optional.
+ *
+ * @param name   the name of the profile
+ * @param rtt    the round-trip time that is added to the link
+ * @param jitter the variation of the delay in each direction
+ * @param loss   the percentage of packets that is dropped in each direction
+ * @param rate   the bandwidth of each direction, such as {@code 10mbit}, or {@code null} for no limit
+ */
+public record LinkProfile(String name, Duration rtt, Duration jitter, double loss, String rate) {
+
+    /**
+     * A link without impairments.
+     */
+    public static final LinkProfile NONE = new LinkProfile("none", Duration.ZERO, Duration.ZERO, 0, null);
+
+    private static final List<LinkProfile> PRESETS = List.of(
+            NONE,
+            new LinkProfile("lan", Duration.ofMillis(1), Duration.ZERO, 0, null),
+            new LinkProfile("metro", Duration.ofMillis(10), Duration.ofMillis(1), 0, null),
+            new LinkProfile("region", Duration.ofMillis(40), Duration.ofMillis(5), 0, null),
+            new LinkProfile("continent", Duration.ofMillis(100), Duration.ofMillis(10), 0.1, null),
+            new LinkProfile("intercontinental", Duration.ofMillis(250), Duration.ofMillis(20), 0.5, null),
+            new LinkProfile("lossy", Duration.ofMillis(50), Duration.ofMillis(5), 2, null),
+            new LinkProfile("constrained", Duration.ofMillis(50), Duration.ofMillis(5), 0, "10mbit"),
+            new LinkProfile("partition", Duration.ZERO, Duration.ZERO, 100, null)
+    );
+
+    /**
+     * Resolves a profile by name, or parses a profile specification.
+     *
+     * @param value the name of a profile, or a profile specification
+     * @return the profile
+     * @throws IllegalArgumentException if the value is neither a known profile, nor a valid specification
+     */
+    public static LinkProfile parse(String value) {
+        final String trimmed = value.trim();
+        if (!trimmed.contains("=")) {
+            return PRESETS.stream()
+                    .filter(profile -> profile.name().equalsIgnoreCase(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown link profile: " + trimmed));
+        }
+        Duration rtt = Duration.ZERO;
+        Duration jitter = Duration.ZERO;
+        double loss = 0;
+        String rate = null;
+        for (String part : trimmed.split(":")) {
+            final String[] keyValue = part.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Invalid link profile: " + trimmed);
+            }
+            final String v = keyValue[1].trim();
+            switch (keyValue[0].trim()) {
+                case "rtt" -> rtt = Duration.ofNanos(Math.round(Double.parseDouble(v) * 1_000_000));
+                case "jitter" -> jitter = Duration.ofNanos(Math.round(Double.parseDouble(v) * 1_000_000));
+                case "loss" -> loss = Double.parseDouble(v);
+                case "rate" -> {
+                    if (!v.matches("[0-9.]+[a-zA-Z]*")) {
+                        throw new IllegalArgumentException("Invalid rate in link profile: " + trimmed);
+                    }
+                    rate = v;
+                }
+                default -> throw new IllegalArgumentException("Invalid link profile: " + trimmed);
+            }
+        }
+        return new LinkProfile(trimmed, rtt, jitter, loss, rate);
+    }
+
+    /**
+     * Parses a comma-separated list of profiles (see {@link #parse(String)}).
+     *
+     * @param values the profiles
+     * @return the parsed profiles, in order
+     */
+    public static List<LinkProfile> parseList(String values) {
+        return Arrays.stream(values.split(","))
+                .filter(value -> !value.isBlank())
+                .map(LinkProfile::parse)
+                .toList();
+    }
+
+    /**
+     * Returns whether this profile leaves the link unimpaired.
+     *
+     * @return {@code true} if no delay, loss or bandwidth limit is applied
+     */
+    public boolean isNone() {
+        return rtt.isZero() && jitter.isZero() && loss == 0 && rate == null;
+    }
+
+    /**
+     * Returns the arguments of the {@code netem} queueing discipline that impairs one direction of the link.
+     *
+     * @return the {@code netem} arguments
+     */
+    public String netemArguments() {
+        final StringBuilder sb = new StringBuilder("limit 100000");
+        if (!rtt.isZero() || !jitter.isZero()) {
+            sb.append(" delay ").append(rtt.toNanos() / 2_000).append("us");
+            if (!jitter.isZero()) {
+                sb.append(' ').append(jitter.toNanos() / 1_000).append("us distribution normal");
+            }
+        }
+        if (loss > 0) {
+            sb.append(" loss ").append(String.format(Locale.ROOT, "%.4f", loss)).append('%');
+        }
+        if (rate != null) {
+            sb.append(" rate ").append(rate);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the parameters of this profile, for inclusion in benchmark reports.
+     *
+     * @return the parameters, in milliseconds and percentages
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("name", name);
+        values.put("rttMs", rtt.toNanos() / 1_000_000.0);
+        values.put("jitterMs", jitter.toNanos() / 1_000_000.0);
+        values.put("lossPercent", loss);
+        values.put("rate", rate);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
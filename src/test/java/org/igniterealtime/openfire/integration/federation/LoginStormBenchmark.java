@@ -0,0 +1,286 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkExecutors;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.debugger.SmackDebugger;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+import org.jivesoftware.smack.sasl.packet.SaslNonza;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jxmpp.jid.EntityFullJid;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Load scenario that reproduces a login storm: many clients connecting and authenticating at (nearly) the same time,
+ * as happens after a server restart or a network interruption.
+ *
+ * Connections are opened in a configurable number of waves. Within a wave, all connections are opened concurrently,
+ * each from its own (virtual, where available) thread. Connections are distributed evenly over both servers and all
+ * pre-configured users, each using a distinct resource. All connections are held open until the storm completes.
+ *
+ * For every connection attempt, the latency of establishing the TCP connection and XMPP stream ({@code connect()}),
+ * of authenticating ({@code login()}, which covers SASL authentication, resource binding and session establishment)
+ * and of the whole session establishment is recorded, as are failures and timeouts. The {@code login()} latency is
+ * split further into SASL authentication (up to the {@code <success/>} of the server) and what follows it (stream
+ * restart, resource binding and session establishment). Smack does not report the end of SASL authentication, so it is
+ * observed through a debugger that is installed on every connection, which sees every top-level element received.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.connections} - total number of connections to open (default: 1000)</li>
+ *     <li>{@code benchmark.waves} - number of waves in which connections are opened (default: 5)</li>
+ *     <li>{@code benchmark.waveInterval} - time between the start of consecutive waves, in seconds (default: 2)</li>
+ *     <li>{@code benchmark.loginTimeout} - connect and reply timeout of each connection, in seconds (default: 30)</li>
+ * </ul>
+ */
+public class LoginStormBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(LoginStormBenchmark.class);
+
+    private static final String[][] USERS = {
+            {XMPP1_DOMAIN, USER_1}, {XMPP2_DOMAIN, USER_3}, {XMPP1_DOMAIN, USER_2}, {XMPP2_DOMAIN, USER_4}
+    };
+
+    private final int connectionCount = BenchmarkSettings.getInt("benchmark.connections", 1000);
+    private final int waveCount = BenchmarkSettings.getInt("benchmark.waves", 5);
+    private final Duration waveInterval = BenchmarkSettings.getDuration("benchmark.waveInterval", Duration.ofSeconds(2));
+    private final Duration loginTimeout = BenchmarkSettings.getDuration("benchmark.loginTimeout", Duration.ofSeconds(30));
+
+    private final Queue<AbstractXMPPConnection> connections = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void loginStorm() throws Exception {
+        logger.info("Starting login storm of {} connections in {} waves, {} s apart (virtual threads: {})...",
+                connectionCount, waveCount, waveInterval.toSeconds(), BenchmarkExecutors.isVirtualThreadsAvailable());
+
+        final Wave total = new Wave(0);
+        final List<Wave> waves = new ArrayList<>();
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("login-storm");
+        final long start = System.nanoTime();
+        try {
+            final List<Future<?>> attempts = new ArrayList<>();
+            int index = 0;
+            for (int w = 0; w < waveCount; w++) {
+                final long waveStart = start + w * waveInterval.toNanos();
+                final long delay = waveStart - System.nanoTime();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+
+                final Wave wave = new Wave(w + 1);
+                waves.add(wave);
+                setStep("wave-" + wave.id);
+                final int size = connectionCount / waveCount + (w < connectionCount % waveCount ? 1 : 0);
+                logger.info("Wave {}: opening {} connections...", wave.id, size);
+                for (int i = 0; i < size; i++, index++) {
+                    final int connectionIndex = index;
+                    attempts.add(executor.submit(() -> attempt(connectionIndex, wave, total)));
+                }
+            }
+            for (Future<?> attempt : attempts) {
+                attempt.get();
+            }
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            final Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+            configuration.put("connections", connectionCount);
+            configuration.put("waves", waveCount);
+            configuration.put("waveIntervalSeconds", waveInterval.toMillis() / 1000.0);
+            configuration.put("loginTimeoutSeconds", loginTimeout.toMillis() / 1000.0);
+            configuration.put("virtualThreads", BenchmarkExecutors.isVirtualThreadsAvailable());
+
+            final Map<String, Object> overall = total.results();
+            overall.put("elapsedSeconds", elapsed.toMillis() / 1000.0);
+            overall.put("sessionsPerSecond", Math.round(total.succeeded.get() / (elapsed.toMillis() / 1000.0) * 10) / 10.0);
+
+            new BenchmarkReport("login-storm")
+                    .put("configuration", configuration)
+                    .put("overall", overall)
+                    .put("waves", waves.stream().map(Wave::results).toList())
+                    .write();
+
+            Assertions.assertTrue(total.succeeded.get() > 0, "At least one session should have been established");
+        } finally {
+            executor.shutdownNow();
+            disconnectAll();
+        }
+    }
+
+    /**
+     * Opens and authenticates a single connection, recording its latencies in both its wave and the overall totals.
+     */
+    private void attempt(int index, Wave wave, Wave total) {
+        final String[] user = USERS[index % USERS.length];
+        final long start = System.nanoTime();
+        AbstractXMPPConnection connection = null;
+        final AtomicReference<SaslSuccessTimer> saslTimer = new AtomicReference<>();
+        try {
+            connection = new XMPPTCPConnection(connectionConfigurationBuilder(user[0], user[1])
+                    .setResource("storm-" + index)
+                    .setConnectTimeout((int) loginTimeout.toMillis())
+                    .setDebuggerFactory(c -> {
+                        final SaslSuccessTimer timer = new SaslSuccessTimer(c);
+                        saslTimer.set(timer);
+                        return timer;
+                    })
+                    .build());
+            connection.setReplyTimeout(loginTimeout.toMillis());
+            connections.add(connection);
+
+            connection.connect();
+            final long connected = System.nanoTime();
+            connection.login();
+            final long authenticated = System.nanoTime();
+            final long saslSucceeded = saslTimer.get() == null ? 0 : saslTimer.get().succeeded;
+
+            for (Wave w : List.of(wave, total)) {
+                w.connect.recordNanos(connected - start);
+                w.login.recordNanos(authenticated - connected);
+                if (saslSucceeded != 0) {
+                    w.sasl.recordNanos(saslSucceeded - connected);
+                    w.bind.recordNanos(authenticated - saslSucceeded);
+                }
+                w.session.recordNanos(authenticated - start);
+                w.succeeded.incrementAndGet();
+            }
+        } catch (Exception e) {
+            final boolean timeout = isTimeout(e);
+            final String reason = e.getClass().getSimpleName();
+            logger.debug("Connection {} for {}@{} failed", index, user[1], user[0], e);
+            for (Wave w : List.of(wave, total)) {
+                (timeout ? w.timedOut : w.failed).incrementAndGet();
+                w.failureReasons.computeIfAbsent(reason, r -> new AtomicLong()).incrementAndGet();
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SmackException.NoResponseException || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void disconnectAll() throws InterruptedException {
+        logger.info("Disconnecting {} connections...", connections.size());
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("login-storm-disconnect");
+        try {
+            for (AbstractXMPPConnection connection : connections) {
+                executor.submit(() -> {
+                    if (connection.isConnected()) {
+                        connection.disconnect();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Records when the server reports successful SASL authentication. All other debugger callbacks are ignored.
+     */
+    private static final class SaslSuccessTimer extends SmackDebugger {
+        volatile long succeeded;
+
+        SaslSuccessTimer(XMPPConnection connection) {
+            super(connection);
+        }
+
+        @Override
+        public void onIncomingStreamElement(TopLevelStreamElement element) {
+            if (element instanceof SaslNonza.Success) {
+                succeeded = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void onOutgoingStreamElement(TopLevelStreamElement element) {
+        }
+
+        @Override
+        public void userHasLogged(EntityFullJid user) {
+        }
+
+        @Override
+        public void outgoingStreamSink(CharSequence outgoing) {
+        }
+
+        @Override
+        public void incomingStreamSink(CharSequence incoming) {
+        }
+    }
+
+    /**
+     * Latencies and outcomes of the connection attempts of a single wave (or of all waves combined).
+     */
+    private static final class Wave {
+        final int id;
+        final LatencyHistogram connect = new LatencyHistogram();
+        final LatencyHistogram login = new LatencyHistogram();
+        final LatencyHistogram sasl = new LatencyHistogram();
+        final LatencyHistogram bind = new LatencyHistogram();
+        final LatencyHistogram session = new LatencyHistogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final Map<String, AtomicLong> failureReasons = new ConcurrentHashMap<>();
+
+        Wave(int id) {
+            this.id = id;
+        }
+
+        Map<String, Object> results() {
+            final long attempts = succeeded.get() + failed.get() + timedOut.get();
+            final Map<String, Object> result = new LinkedHashMap<>();
+            if (id > 0) {
+                result.put("wave", id);
+            }
+            result.put("attempts", attempts);
+            result.put("succeeded", succeeded.get());
+            result.put("failed", failed.get());
+            result.put("timedOut", timedOut.get());
+            result.put("failureRate", attempts == 0 ? 0 : (double) failed.get() / attempts);
+            result.put("timeoutRate", attempts == 0 ? 0 : (double) timedOut.get() / attempts);
+            final Map<String, Object> reasons = new LinkedHashMap<>();
+            failureReasons.forEach((reason, count) -> reasons.put(reason, count.get()));
+            result.put("failureReasons", reasons);
+            result.put("connectLatency", connect.summary());
+            result.put("loginLatency", login.summary());
+            result.put("saslLatency", sasl.summary());
+            result.put("bindLatency", bind.summary());
+            result.put("sessionLatency", session.summary());
+            return result;
+        }
+    }
+}
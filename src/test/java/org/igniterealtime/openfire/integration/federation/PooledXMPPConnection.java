@@ -0,0 +1,85 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.MessageBuilder;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.PresenceBuilder;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jivesoftware.smack.util.Consumer;
+import org.jivesoftware.smack.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An XMPP connection that can be reused by multiple tests.
+ *
+ * Keeps track of the listeners and interceptors that are added to it, so that those added by a test can be removed
+ * before the connection is handed to another test. Listeners that are registered by Smack itself (for example, by
+ * managers such as {@code PingManager}, which are bound to the connection for its lifetime) are retained. Interceptors
+ * added through the deprecated {@code addStanzaInterceptor} are not tracked; tests use message and presence
+ * interceptors instead.
+ */
+class PooledXMPPConnection extends XMPPTCPConnection {
+
+    private final List<Runnable> removals = new ArrayList<>();
+
+    PooledXMPPConnection(XMPPTCPConnectionConfiguration config) {
+        super(config);
+    }
+
+    /**
+     * Removes all listeners and interceptors that were added by tests since the last invocation of this method.
+     */
+    synchronized void removeTestListeners() {
+        removals.forEach(Runnable::run);
+        removals.clear();
+    }
+
+    private synchronized void track(Object listener, Runnable removal) {
+        // Listeners added by the superclass constructor are added before this class is initialized.
+        if (removals != null && !listener.getClass().getName().startsWith("org.jivesoftware.")) {
+            removals.add(removal);
+        }
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        super.addConnectionListener(listener);
+        track(listener, () -> removeConnectionListener(listener));
+    }
+
+    @Override
+    public void addSyncStanzaListener(StanzaListener listener, StanzaFilter filter) {
+        super.addSyncStanzaListener(listener, filter);
+        track(listener, () -> removeSyncStanzaListener(listener));
+    }
+
+    @Override
+    public void addAsyncStanzaListener(StanzaListener listener, StanzaFilter filter) {
+        super.addAsyncStanzaListener(listener, filter);
+        track(listener, () -> removeAsyncStanzaListener(listener));
+    }
+
+    @Override
+    public void addStanzaSendingListener(StanzaListener listener, StanzaFilter filter) {
+        super.addStanzaSendingListener(listener, filter);
+        track(listener, () -> removeStanzaSendingListener(listener));
+    }
+
+    @Override
+    public void addMessageInterceptor(Consumer<MessageBuilder> interceptor, Predicate<Message> filter) {
+        super.addMessageInterceptor(interceptor, filter);
+        track(interceptor, () -> removeMessageInterceptor(interceptor));
+    }
+
+    @Override
+    public void addPresenceInterceptor(Consumer<PresenceBuilder> interceptor, Predicate<Presence> filter) {
+        super.addPresenceInterceptor(interceptor, filter);
+        track(interceptor, () -> removePresenceInterceptor(interceptor));
+    }
+}
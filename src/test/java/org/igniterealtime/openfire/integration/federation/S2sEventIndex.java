@@ -0,0 +1,337 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.docker.ContainerLogCapture;
+import org.igniterealtime.openfire.integration.util.Csv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts server-to-server lifecycle events from the logs of the Openfire servers, while they are being captured (see
+ * {@link ContainerLogCapture}), and writes them as a timestamped index to a CSV file.
+ *
+ * Every event is tagged with the phase (the test, or the step of a benchmark) that was current when it was logged, so
+ * that server-side S2S activity can be correlated with the tests that caused it. The start and end of every phase are
+ * recorded too, and are summarized by {@link #getPhaseSummaries()}.
+ *
+ * All events are written to the CSV file, but only a window of recent events is kept in memory, for the queries of
+ * {@link #getEvents(Instant)} and {@link #getEstablishmentTimes(Instant)}: events are evicted once they are older than
+ * {@link #RETENTION}, or when more than {@link #MAX_EVENTS} events are kept. The counts of the phase summaries cover
+ * all events.
+ *
+ * Lines are classified by the Openfire class that logged them, and by their message. Most S2S events are logged at
+ * debug level only, so that debug logging needs to be enabled in Openfire (see
+ * {@link FederatedTestEnvironment#isDebugLog()}) for a complete index. Warnings and errors are always logged.
+ *
+ * The CSV file has the following columns:
+ * <ul>
+ *     <li>{@code timestamp} - wall clock time at which the line was captured, in milliseconds since the epoch</li>
+ *     <li>{@code serverTime} - the timestamp that the server logged the line with (empty if it could not be parsed)</li>
+ *     <li>{@code phase} - the phase that was current when the line was captured (empty if none)</li>
+ *     <li>{@code service} - the Docker Compose service of the server that logged the line</li>
+ *     <li>{@code event} - the type of event, see {@link Type}</li>
+ *     <li>{@code remoteDomain} - the domain of the other server of the session (empty if not logged)</li>
+ *     <li>{@code message} - the logged message</li>
+ * </ul>
+ */
+public class S2sEventIndex implements ContainerLogCapture.LineListener, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(S2sEventIndex.class);
+
+    private static final String HEADER = "timestamp,serverTime,phase,service,event,remoteDomain,message";
+
+    /**
+     * The time for which events are kept in memory.
+     */
+    public static final Duration RETENTION = Duration.ofMinutes(30);
+
+    /**
+     * The maximum number of events that are kept in memory.
+     */
+    public static final int MAX_EVENTS = 100_000;
+
+    // Openfire log lines, e.g. "2024.01.15 10:20:30.123 DEBUG [socket_s2s-thread-2]: org.jivesoftware...Class - message"
+    private static final Pattern LINE = Pattern.compile(
+            "^(\\d{4}\\.\\d{2}\\.\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+(?:(TRACE|DEBUG|INFO|WARN|ERROR)\\s+)?(?:\\[[^\\]]*\\]:?\\s*)?(\\S+)\\s+-\\s+(.*)$");
+
+    private static final DateTimeFormatter SERVER_TIME = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss[.SSS]");
+
+    // Classes of Openfire that are involved in server-to-server communication
+    private static final Pattern S2S_CLASS = Pattern.compile(
+            "\\.server\\.|ServerSession|ServerDialback|ServerStanzaHandler|ServerSocketReader|OutgoingSessionPromise|RemoteServerManager|S2S",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern FAILURE = Pattern.compile("\\b(fail|error|unable|refused|timed out|timeout|invalid)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CLOSED = Pattern.compile("\\bclos(e|ed|ing)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ESTABLISHED = Pattern.compile("\\b(success|established|created|authenticated|validated)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DIALBACK = Pattern.compile("dialback", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The types of server-to-server lifecycle events that are indexed.
+     */
+    public enum Type {
+        /** A step of the server dialback protocol (XEP-0220). */
+        DIALBACK,
+        /** An outgoing server-to-server session was established. */
+        OUTGOING_ESTABLISHED,
+        /** An incoming server-to-server session was established. */
+        INCOMING_ESTABLISHED,
+        /** A server-to-server session was closed. */
+        CLOSED,
+        /** A warning or error that relates to server-to-server communication. */
+        ERROR
+    }
+
+    /**
+     * A server-to-server lifecycle event.
+     *
+     * @param received     wall clock time at which the line was captured
+     * @param serverTime   the time that the server logged the line with, or {@code null} if it could not be parsed
+     * @param phase        the phase that was current when the line was captured, or {@code null} for none
+     * @param service      the Docker Compose service of the server that logged the event
+     * @param type         the type of event
+     * @param remoteDomain the domain of the other server of the session, or {@code null} if not logged
+     * @param message      the logged message
+     */
+    public record Event(Instant received, LocalDateTime serverTime, String phase, String service, Type type, String remoteDomain, String message) {
+    }
+
+    /**
+     * A summary of the events that were logged during a phase.
+     *
+     * @param phase  the phase
+     * @param start  the time at which the phase started
+     * @param end    the time at which the phase ended, or {@code null} if it has not ended
+     * @param counts the number of events of every type that were logged during the phase
+     */
+    public record PhaseSummary(String phase, Instant start, Instant end, Map<Type, Integer> counts) {
+    }
+
+    private final Map<String, String> domains;
+    private final Path output;
+
+    // The most recent events, oldest first
+    private final Deque<Event> events = new ArrayDeque<>();
+    private final Map<String, PhaseSummary> phases = new LinkedHashMap<>();
+    private volatile String phase;
+    private BufferedWriter writer;
+
+    /**
+     * Creates an index.
+     *
+     * @param domains the XMPP domains of the servers, keyed by their Docker Compose service
+     * @param output  the file to which events are written (an existing file is replaced)
+     */
+    public S2sEventIndex(Map<String, String> domains, Path output) {
+        this.domains = domains;
+        this.output = output;
+    }
+
+    /**
+     * Creates the output file.
+     *
+     * @throws IOException if the output file cannot be created
+     */
+    public synchronized void start() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.newLine();
+        writer.flush();
+        logger.info("Indexing server-to-server events to {}", output);
+    }
+
+    /**
+     * Ends the current phase, and starts a new one. Events that are captured from now on are tagged with the new phase.
+     *
+     * @param phase the new phase, or {@code null} for none
+     */
+    public synchronized void setPhase(String phase) {
+        final Instant now = Instant.now();
+        if (this.phase != null) {
+            phases.computeIfPresent(this.phase, (name, summary) -> new PhaseSummary(name, summary.start(), now, summary.counts()));
+        }
+        this.phase = phase;
+        if (phase != null) {
+            phases.put(phase, new PhaseSummary(phase, now, null, new LinkedHashMap<>()));
+        }
+    }
+
+    @Override
+    public void onLine(String service, String line) {
+        final String domain = domains.get(service);
+        if (domain == null) {
+            return;
+        }
+        final Matcher matcher = LINE.matcher(line);
+        if (!matcher.matches() || !S2S_CLASS.matcher(matcher.group(3)).find()) {
+            return;
+        }
+        final String level = matcher.group(2);
+        final String message = matcher.group(4);
+        final Type type = classify(level, matcher.group(3), message);
+        if (type == null) {
+            return;
+        }
+        LocalDateTime serverTime;
+        try {
+            serverTime = LocalDateTime.parse(matcher.group(1), SERVER_TIME);
+        } catch (DateTimeParseException e) {
+            serverTime = null;
+        }
+        String remoteDomain = null;
+        for (String candidate : domains.values()) {
+            if (!candidate.equals(domain) && message.contains(candidate)) {
+                remoteDomain = candidate;
+                break;
+            }
+        }
+        record(new Event(Instant.now(), serverTime, phase, service, type, remoteDomain, message));
+    }
+
+    private static Type classify(String level, String className, String message) {
+        if ("WARN".equals(level) || "ERROR".equals(level) || FAILURE.matcher(message).find()) {
+            return Type.ERROR;
+        }
+        if (CLOSED.matcher(message).find()) {
+            return Type.CLOSED;
+        }
+        if (ESTABLISHED.matcher(message).find()) {
+            if (className.contains("Outgoing") || message.toLowerCase().contains("outgoing")) {
+                return Type.OUTGOING_ESTABLISHED;
+            }
+            if (className.contains("Incoming") || message.toLowerCase().contains("incoming")) {
+                return Type.INCOMING_ESTABLISHED;
+            }
+        }
+        if (DIALBACK.matcher(className).find() || DIALBACK.matcher(message).find()) {
+            return Type.DIALBACK;
+        }
+        return null;
+    }
+
+    private synchronized void record(Event event) {
+        events.addLast(event);
+        final Instant horizon = event.received().minus(RETENTION);
+        while (events.size() > MAX_EVENTS || events.getFirst().received().isBefore(horizon)) {
+            events.removeFirst();
+        }
+        if (event.phase() != null) {
+            final PhaseSummary summary = phases.get(event.phase());
+            if (summary != null) {
+                summary.counts().merge(event.type(), 1, Integer::sum);
+            }
+        }
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(String.join(",",
+                    Long.toString(event.received().toEpochMilli()),
+                    event.serverTime() == null ? "" : event.serverTime().toString(),
+                    Csv.escape(event.phase()),
+                    Csv.escape(event.service()),
+                    event.type().name(),
+                    Csv.escape(event.remoteDomain()),
+                    Csv.escape(event.message())));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            logger.debug("Unable to write server-to-server event", e);
+        }
+    }
+
+    /**
+     * Returns the events that were captured at or after a particular time, of those that are still kept in memory.
+     *
+     * @param since the time from which to return events
+     * @return the events, in the order in which they were captured
+     */
+    public synchronized List<Event> getEvents(Instant since) {
+        return events.stream().filter(event -> !event.received().isBefore(since)).toList();
+    }
+
+    /**
+     * Returns the events that were captured during a phase, of those that are still kept in memory.
+     *
+     * @param phase the phase
+     * @return the events, in the order in which they were captured
+     */
+    public synchronized List<Event> getEvents(String phase) {
+        return events.stream().filter(event -> phase.equals(event.phase())).toList();
+    }
+
+    /**
+     * Returns the summaries of all phases, in the order in which they started.
+     *
+     * @return the phase summaries
+     */
+    public synchronized List<PhaseSummary> getPhaseSummaries() {
+        return phases.values().stream()
+                .map(summary -> new PhaseSummary(summary.phase(), summary.start(), summary.end(), Map.copyOf(summary.counts())))
+                .toList();
+    }
+
+    /**
+     * Returns the time it took to establish outgoing server-to-server sessions, as logged by the servers.
+     *
+     * For every route from a server to a remote domain, this is the time between the first event of that route that
+     * was captured at or after {@code since}, and the first event that reports the outgoing session to be established.
+     * Server timestamps are used when available, so that the time it took to capture the lines does not affect the
+     * result. Routes for which no outgoing session was established are omitted.
+     *
+     * @param since the time from which to consider events
+     * @return the establishment times, keyed by route (formatted as {@code domain -> remoteDomain})
+     */
+    public synchronized Map<String, Duration> getEstablishmentTimes(Instant since) {
+        final Map<String, Event> first = new LinkedHashMap<>();
+        final Map<String, Duration> result = new LinkedHashMap<>();
+        for (Event event : getEvents(since)) {
+            if (event.remoteDomain() == null) {
+                continue;
+            }
+            final String route = domains.get(event.service()) + " -> " + event.remoteDomain();
+            first.putIfAbsent(route, event);
+            if (event.type() == Type.OUTGOING_ESTABLISHED && !result.containsKey(route)) {
+                final Event start = first.get(route);
+                result.put(route, start.serverTime() != null && event.serverTime() != null
+                        ? Duration.between(start.serverTime(), event.serverTime())
+                        : Duration.between(start.received(), event.received()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ends the current phase, and closes the output file.
+     *
+     * @throws IOException if the output file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        setPhase(null);
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Coordinates the use of a single federated environment by several JVMs, such as the forks in which Maven Failsafe runs
+ * the tests in parallel.
+ *
+ * Every JVM that uses the environment registers itself as a worker, by creating a file named after its process ID.
+ * Starting, attaching to and stopping the environment happen while holding an exclusive lock on a file, so that only
+ * one JVM at a time does so. The first JVM to acquire the lock finds no other workers, and starts the environment;
+ * JVMs that acquire it later find that it is in use by other workers, and attach to it instead. The last worker to
+ * unregister stops the environment. Workers whose process is no longer alive (for example, because it crashed) are
+ * ignored and cleaned up.
+ */
+class SharedEnvironment {
+    private static final Logger logger = LoggerFactory.getLogger(SharedEnvironment.class);
+
+    private final Path lockFile;
+    private final Path workerDirectory;
+    private final long pid = ProcessHandle.current().pid();
+
+    private FileChannel channel;
+    private FileLock lock;
+
+    /**
+     * Creates the coordination of the environment.
+     *
+     * @param directory the directory that holds the lock file and the worker registrations, shared by all JVMs
+     */
+    SharedEnvironment(Path directory) {
+        this.lockFile = directory.resolve("environment.lock");
+        this.workerDirectory = directory.resolve("workers");
+    }
+
+    /**
+     * Acquires the exclusive lock on the environment, waiting for other JVMs to release it.
+     *
+     * @throws IOException if the lock cannot be acquired
+     */
+    synchronized void lock() throws IOException {
+        Files.createDirectories(workerDirectory);
+        channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        logger.debug("Acquiring lock on the federated environment...");
+        lock = channel.lock();
+    }
+
+    /**
+     * Releases the exclusive lock on the environment.
+     *
+     * @throws IOException if the lock cannot be released
+     */
+    synchronized void unlock() throws IOException {
+        if (lock != null) {
+            lock.release();
+            lock = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns the process IDs of the other JVMs that use the environment. Must be called while holding the lock.
+     *
+     * @return the process IDs of the other live workers
+     * @throws IOException if the registrations cannot be read
+     */
+    List<Long> getOtherWorkers() throws IOException {
+        try (Stream<Path> files = Files.list(workerDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("\\d+"))
+                    .map(Long::parseLong)
+                    .filter(worker -> worker != pid)
+                    .filter(worker -> {
+                        if (ProcessHandle.of(worker).map(ProcessHandle::isAlive).orElse(false)) {
+                            return true;
+                        }
+                        logger.info("Removing the registration of worker {}, which is no longer running", worker);
+                        try {
+                            Files.deleteIfExists(workerDirectory.resolve(String.valueOf(worker)));
+                        } catch (IOException e) {
+                            logger.debug("Unable to remove the registration of worker {}", worker, e);
+                        }
+                        return false;
+                    })
+                    .toList();
+        }
+    }
+
+    /**
+     * Registers this JVM as a user of the environment. Must be called while holding the lock.
+     *
+     * @throws IOException if the registration cannot be written
+     */
+    void register() throws IOException {
+        Files.createDirectories(workerDirectory);
+        Files.writeString(workerDirectory.resolve(String.valueOf(pid)), String.valueOf(pid));
+    }
+
+    /**
+     * Unregisters this JVM as a user of the environment. Must be called while holding the lock.
+     *
+     * @return {@code true} if no other JVMs use the environment, in which case it can be stopped
+     * @throws IOException if the registrations cannot be updated
+     */
+    boolean unregister() throws IOException {
+        Files.deleteIfExists(workerDirectory.resolve(String.valueOf(pid)));
+        return getOtherWorkers().isEmpty();
+    }
+}
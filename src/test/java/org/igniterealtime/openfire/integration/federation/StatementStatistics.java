@@ -0,0 +1,211 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Captures the SQL statements that the Openfire servers execute in their databases, per phase (the test, or the step of
+ * a benchmark), so that workloads can be related to the database round-trips that they cause.
+ *
+ * The statistics are collected by the {@code pg_stat_statements} extension of PostgreSQL, which is enabled by an SQL
+ * overlay (see {@link FederatedTestEnvironment#isStatementStatistics()}). At every phase boundary, the statistics of
+ * every database are read and attributed to the phase that ends, and are then reset. Statements that are normalized to
+ * the same text (constants are replaced by placeholders) are combined, also when a phase occurs more than once.
+ *
+ * For every phase and server, the totals are summarized, together with the statements that took the most time, that
+ * were executed most often, and that returned or affected the most rows.
+ */
+public class StatementStatistics {
+    private static final Logger logger = LoggerFactory.getLogger(StatementStatistics.class);
+
+    // Number of statements that are listed per phase, server and ordering
+    private static final int TOP_STATEMENTS = 20;
+
+    // Number of statements that are read from a database at every phase boundary
+    private static final int MAX_STATEMENTS = 500;
+
+    /**
+     * The statistics of a normalized statement.
+     */
+    private static final class Statement {
+        long calls;
+        double totalMs;
+        long rows;
+
+        Map<String, Object> toMap(String query) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("query", query);
+            map.put("calls", calls);
+            map.put("totalMs", totalMs);
+            map.put("meanMs", calls == 0 ? null : totalMs / calls);
+            map.put("rows", rows);
+            return map;
+        }
+    }
+
+    private final List<FederationNode> nodes;
+
+    // Statements per phase, per service, per query
+    private final Map<String, Map<String, Map<String, Statement>>> phases = new LinkedHashMap<>();
+    private String phase;
+    private boolean available = true;
+    // Name of the column that holds the total execution time, which was renamed in PostgreSQL 13
+    private String timeColumn = "total_exec_time";
+
+    /**
+     * Creates a capture of the statements of the databases of a number of servers.
+     *
+     * @param nodes the servers
+     */
+    public StatementStatistics(List<FederationNode> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Discards the statistics that were collected so far, and starts attributing statements to a phase.
+     *
+     * @param phase the phase, or {@code null} for none
+     */
+    public synchronized void start(String phase) {
+        for (FederationNode node : nodes) {
+            reset(node);
+        }
+        this.phase = phase;
+    }
+
+    /**
+     * Attributes the statements that were executed since the previous phase boundary to the phase that ends, and
+     * starts a new phase.
+     *
+     * @param phase the new phase, or {@code null} for none
+     */
+    public synchronized void setPhase(String phase) {
+        if (!available) {
+            return;
+        }
+        for (FederationNode node : nodes) {
+            if (this.phase != null) {
+                capture(node, this.phase);
+            }
+            reset(node);
+        }
+        this.phase = phase;
+    }
+
+    /**
+     * Returns whether statistics are available in the databases. When the extension is not loaded, a warning is logged
+     * once, and no statistics are captured.
+     *
+     * @return {@code true} if statistics are being captured
+     */
+    public synchronized boolean isAvailable() {
+        return available;
+    }
+
+    private void capture(FederationNode node, String phase) {
+        if (!available) {
+            return;
+        }
+        final List<String> rows;
+        try {
+            rows = query(node, "SELECT json_agg(s) FROM ("
+                    + "SELECT regexp_replace(query, '\\s+', ' ', 'g') AS query, calls, %s AS total_ms, rows"
+                    + " FROM pg_stat_statements"
+                    + " WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())"
+                    + " AND query NOT LIKE '%%pg_stat_statements%%'"
+                    + " ORDER BY %s DESC LIMIT " + MAX_STATEMENTS + ") s");
+        } catch (IOException e) {
+            unavailable(e);
+            return;
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        final Map<String, Statement> statements = phases
+                .computeIfAbsent(phase, p -> new LinkedHashMap<>())
+                .computeIfAbsent(node.service(), s -> new LinkedHashMap<>());
+        if (Json.parse(String.join("\n", rows)) instanceof List<?> list) {
+            for (Object row : list) {
+                final Statement statement = statements.computeIfAbsent(String.valueOf(Json.get(row, "query")), q -> new Statement());
+                statement.calls += ((Number) Json.get(row, "calls")).longValue();
+                statement.totalMs += ((Number) Json.get(row, "total_ms")).doubleValue();
+                statement.rows += ((Number) Json.get(row, "rows")).longValue();
+            }
+        }
+    }
+
+    private void reset(FederationNode node) {
+        if (!available) {
+            return;
+        }
+        try {
+            FederatedTestEnvironment.queryDatabase(node, "SELECT pg_stat_statements_reset()");
+        } catch (IOException e) {
+            unavailable(e);
+        }
+    }
+
+    /**
+     * Executes a query in which {@code %s} stands for the column that holds the total execution time, falling back to
+     * the name of that column in versions of PostgreSQL before 13.
+     */
+    private List<String> query(FederationNode node, String query) throws IOException {
+        try {
+            return FederatedTestEnvironment.queryDatabase(node, String.format(query, timeColumn, timeColumn));
+        } catch (IOException e) {
+            if (!timeColumn.equals("total_exec_time") || !String.valueOf(e.getMessage()).contains("column \"total_exec_time\" does not exist")) {
+                throw e;
+            }
+            timeColumn = "total_time";
+            return FederatedTestEnvironment.queryDatabase(node, String.format(query, timeColumn, timeColumn));
+        }
+    }
+
+    private void unavailable(IOException e) {
+        logger.warn("Unable to capture statement statistics of the Openfire databases; is pg_stat_statements loaded?", e);
+        available = false;
+    }
+
+    /**
+     * Returns the statements that were captured, per phase and server, suitable for inclusion in a benchmark report.
+     *
+     * @return per phase and service: the number of distinct statements, their total number of calls, time and rows,
+     * and the top statements by total time, by number of calls and by number of rows
+     */
+    public synchronized Map<String, Object> toMap() {
+        final Map<String, Object> perPhase = new LinkedHashMap<>();
+        phases.forEach((phase, services) -> {
+            final Map<String, Object> perService = new LinkedHashMap<>();
+            services.forEach((service, statements) -> {
+                final Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("statements", statements.size());
+                summary.put("calls", statements.values().stream().mapToLong(s -> s.calls).sum());
+                summary.put("totalMs", statements.values().stream().mapToDouble(s -> s.totalMs).sum());
+                summary.put("rows", statements.values().stream().mapToLong(s -> s.rows).sum());
+                summary.put("topByTotalTime", top(statements, s -> s.totalMs));
+                summary.put("topByCalls", top(statements, s -> s.calls));
+                summary.put("topByRows", top(statements, s -> s.rows));
+                perService.put(service, summary);
+            });
+            perPhase.put(phase, perService);
+        });
+        return perPhase;
+    }
+
+    private static List<Map<String, Object>> top(Map<String, Statement> statements, ToDoubleFunction<Statement> key) {
+        final List<Map<String, Object>> top = new ArrayList<>();
+        statements.entrySet().stream()
+                .sorted((a, b) -> Double.compare(key.applyAsDouble(b.getValue()), key.applyAsDouble(a.getValue())))
+                .limit(TOP_STATEMENTS)
+                .forEach(entry -> top.add(entry.getValue().toMap(entry.getKey())));
+        return top;
+    }
+}
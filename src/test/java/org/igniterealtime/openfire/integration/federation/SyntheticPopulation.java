@@ -0,0 +1,378 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A deterministic, synthetic population of users, rosters and chat rooms, used for scale and performance tests.
+ *
+ * The population is generated from a seed, and is provisioned in the databases of the servers through a generated
+ * SQL overlay (see {@link #writeSql(String, Path)}), which is far faster than registering users over XMPP at test
+ * time. As generation is deterministic, tests can use this class as a registry of the users and their credentials
+ * that were provisioned.
+ *
+ * Each server gets the same number of users, named {@code synth000000}, {@code synth000001}, and so on. Optionally,
+ * users get pre-built rosters with a fixed number of contacts on the next server of the federation, with mutual
+ * ({@code both}) subscriptions, and each server gets a number of persistent, public chat rooms.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code population.users} - number of synthetic users per server (default: 0, which disables provisioning)</li>
+ *     <li>{@code population.contacts} - number of cross-domain roster contacts per user (default: 0)</li>
+ *     <li>{@code population.rooms} - number of chat rooms per server (default: 0)</li>
+ *     <li>{@code population.seed} - seed from which the population is generated (default: 1)</li>
+ *     <li>{@code population.password} - password of every synthetic user (default: password)</li>
+ * </ul>
+ */
+public class SyntheticPopulation {
+
+    // Identifiers of the Openfire sequences (see JiveConstants) for roster items and chat rooms
+    private static final int ROSTER_SEQUENCE = 18;
+    private static final int MUC_ROOM_SEQUENCE = 23;
+
+    // Generated identifiers start high, to avoid clashing with the pre-configured users and rooms
+    private static final long FIRST_ID = 1_000_000;
+
+    // Maximum number of rows in a single INSERT statement
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final int SCRAM_ITERATIONS = 4096;
+
+    private static SyntheticPopulation configured;
+
+    /**
+     * A synthetic user.
+     *
+     * @param domain   the XMPP domain of the user
+     * @param username the username (local part of the JID) of the user
+     * @param password the password of the user
+     * @param index    the index of the user in the population of its domain
+     */
+    public record SyntheticUser(String domain, String username, String password, int index) {
+        public String jid() {
+            return username + "@" + domain;
+        }
+    }
+
+    private final long seed;
+    private final List<String> domains;
+    private final int usersPerServer;
+    private final int contactsPerUser;
+    private final int roomsPerServer;
+    private final String password;
+    private final int[] contactOffsets;
+
+    /**
+     * Creates a population.
+     *
+     * @param seed            seed from which the population is generated
+     * @param domains         the domains of the servers, in federation order
+     * @param usersPerServer  number of users per server
+     * @param contactsPerUser number of cross-domain roster contacts per user
+     * @param roomsPerServer  number of chat rooms per server
+     * @param password        password of every user
+     */
+    public SyntheticPopulation(long seed, List<String> domains, int usersPerServer, int contactsPerUser, int roomsPerServer, String password) {
+        if (contactsPerUser > usersPerServer) {
+            throw new IllegalArgumentException("Cannot have more contacts per user (" + contactsPerUser + ") than users per server (" + usersPerServer + ")");
+        }
+        this.seed = seed;
+        this.domains = List.copyOf(domains);
+        this.usersPerServer = usersPerServer;
+        this.contactsPerUser = contactsPerUser;
+        this.roomsPerServer = roomsPerServer;
+        this.password = password;
+
+        // Every user is linked to the users at the same, randomly chosen, offsets on the next server. This gives every
+        // user exactly the same number of contacts in both directions.
+        final Random random = new Random(seed);
+        final Set<Integer> offsets = new LinkedHashSet<>();
+        while (offsets.size() < contactsPerUser) {
+            offsets.add(random.nextInt(usersPerServer));
+        }
+        this.contactOffsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the population that is configured for the test environment.
+     *
+     * @return the configured population, which is empty if no synthetic users have been configured
+     */
+    public static synchronized SyntheticPopulation configured() {
+        if (configured == null) {
+            configured = new SyntheticPopulation(
+                    BenchmarkSettings.getLong("population.seed", 1),
+                    FederatedTestEnvironment.getDomains(),
+                    BenchmarkSettings.getInt("population.users", 0),
+                    BenchmarkSettings.getInt("population.contacts", 0),
+                    BenchmarkSettings.getInt("population.rooms", 0),
+                    BenchmarkSettings.getString("population.password", FederatedTestEnvironment.PASSWORD)
+            );
+        }
+        return configured;
+    }
+
+    public boolean isEmpty() {
+        return usersPerServer == 0 && roomsPerServer == 0;
+    }
+
+    public int getUsersPerServer() {
+        return usersPerServer;
+    }
+
+    public int getContactsPerUser() {
+        return contactsPerUser;
+    }
+
+    public int getRoomsPerServer() {
+        return roomsPerServer;
+    }
+
+    /**
+     * Returns a synthetic user.
+     *
+     * @param domain the domain of the user
+     * @param index  the index of the user, between 0 (inclusive) and the number of users per server (exclusive)
+     * @return the user
+     */
+    public SyntheticUser getUser(String domain, int index) {
+        if (!domains.contains(domain) || index < 0 || index >= usersPerServer) {
+            throw new IllegalArgumentException("No synthetic user " + index + " on " + domain);
+        }
+        return new SyntheticUser(domain, String.format("synth%06d", index), password, index);
+    }
+
+    /**
+     * Returns a user for load scenarios that need many distinct users. If the population is large enough, this is a
+     * synthetic user. Otherwise, the pre-configured users of the domain are shared (in rotation), in which case every
+     * connection of a user needs its own resource.
+     *
+     * @param domain the domain of the user
+     * @param index  the index of the user, starting at 0
+     * @return the user
+     */
+    public SyntheticUser getLoadUser(String domain, int index) {
+        if (index < usersPerServer) {
+            return getUser(domain, index);
+        }
+        final FederationNode node = FederatedTestEnvironment.getNodes().stream()
+                .filter(n -> n.domain().equals(domain))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown domain: " + domain));
+        return new SyntheticUser(domain, node.users().get(index % node.users().size()), FederatedTestEnvironment.PASSWORD, index);
+    }
+
+    /**
+     * Returns all synthetic users of a domain.
+     *
+     * @param domain the domain of the users
+     * @return the users, ordered by index
+     */
+    public List<SyntheticUser> getUsers(String domain) {
+        final List<SyntheticUser> users = new ArrayList<>(usersPerServer);
+        for (int i = 0; i < usersPerServer; i++) {
+            users.add(getUser(domain, i));
+        }
+        return users;
+    }
+
+    /**
+     * Returns the roster contacts of a synthetic user. All contacts are on other domains, and have a mutual
+     * subscription with the user.
+     *
+     * @param user the user
+     * @return the contacts of the user
+     */
+    public List<SyntheticUser> getContacts(SyntheticUser user) {
+        final List<SyntheticUser> contacts = new ArrayList<>();
+        final int server = domains.indexOf(user.domain());
+        for (int peer = 0; peer < domains.size(); peer++) {
+            if (isLinked(server, peer)) {
+                for (int offset : contactOffsets) {
+                    contacts.add(getUser(domains.get(peer), Math.floorMod(user.index() + offset, usersPerServer)));
+                }
+            } else if (isLinked(peer, server)) {
+                for (int offset : contactOffsets) {
+                    contacts.add(getUser(domains.get(peer), Math.floorMod(user.index() - offset, usersPerServer)));
+                }
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * Returns the names of the synthetic chat rooms of a domain. The rooms are hosted by the {@code conference}
+     * service of the domain.
+     *
+     * @param domain the domain that hosts the rooms
+     * @return the (local part of the) names of the rooms
+     */
+    public List<String> getRooms(String domain) {
+        final List<String> rooms = new ArrayList<>(roomsPerServer);
+        for (int i = 0; i < roomsPerServer; i++) {
+            rooms.add(String.format("synth-room-%04d", i));
+        }
+        return rooms;
+    }
+
+    /**
+     * Servers are linked to the next server in the federation (and the last one back to the first). Each link
+     * produces contacts in both directions.
+     */
+    private boolean isLinked(int from, int to) {
+        final int count = domains.size();
+        if (count < 2 || contactsPerUser == 0) {
+            return false;
+        }
+        return to == (from + 1) % count && (count > 2 || from == 0);
+    }
+
+    /**
+     * Writes an SQL script that provisions the synthetic users, rosters and rooms of one server.
+     *
+     * @param domain the domain of the server
+     * @param file   the file to write the script to
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSql(String domain, Path file) throws IOException {
+        final String creationDate = String.format("%015d", 1_700_000_000_000L);
+        final String[] credentials = scramCredentials();
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("-- Description: synthetic population for " + domain + " (seed " + seed + ", " + usersPerServer
+                    + " users, " + contactsPerUser + " contacts per user, " + roomsPerServer + " rooms)\n");
+            out.write("-- Generated by " + SyntheticPopulation.class.getSimpleName() + ". Do not edit.\n");
+            out.write("BEGIN;\n");
+
+            final List<SyntheticUser> users = getUsers(domain);
+            final Batch userBatch = new Batch(out, "INSERT INTO ofUser (username, storedKey, serverKey, salt, iterations, name, email, creationDate, modificationDate) VALUES");
+            for (SyntheticUser user : users) {
+                userBatch.add("(" + quote(user.username()) + ", " + quote(credentials[0]) + ", " + quote(credentials[1]) + ", "
+                        + quote(credentials[2]) + ", " + SCRAM_ITERATIONS + ", " + quote("Synthetic User " + user.index()) + ", "
+                        + quote(user.username() + "@example.org") + ", " + quote(creationDate) + ", " + quote(creationDate) + ")");
+            }
+            userBatch.flush();
+
+            long rosterId = FIRST_ID;
+            final Batch rosterBatch = new Batch(out, "INSERT INTO ofRoster (rosterID, username, jid, sub, ask, recv, nick) VALUES");
+            final Batch groupBatch = new Batch(out, "INSERT INTO ofRosterGroups (rosterID, rank, groupName) VALUES");
+            for (SyntheticUser user : users) {
+                for (SyntheticUser contact : getContacts(user)) {
+                    // Subscription 'both' (3), with no pending outgoing or incoming subscription requests (-1)
+                    rosterBatch.add("(" + rosterId + ", " + quote(user.username()) + ", " + quote(contact.jid()) + ", 3, -1, -1, " + quote(contact.username()) + ")");
+                    groupBatch.add("(" + rosterId + ", 0, " + quote("Synthetic " + contact.domain()) + ")");
+                    rosterId++;
+                }
+            }
+            rosterBatch.flush();
+            groupBatch.flush();
+            if (rosterId > FIRST_ID) {
+                out.write("UPDATE ofID SET id = GREATEST(id, " + rosterId + ") WHERE idType = " + ROSTER_SEQUENCE + ";\n");
+            }
+
+            long roomId = FIRST_ID;
+            final Batch roomBatch = new Batch(out, "INSERT INTO ofMucRoom (serviceID, roomID, creationDate, modificationDate, name, naturalName, description, "
+                    + "lockedDate, canChangeSubject, maxUsers, publicRoom, moderated, membersOnly, canInvite, canDiscoverJID, logEnabled, "
+                    + "rolesToBroadcast, useReservedNick, canChangeNick, canRegister) VALUES");
+            final Batch affiliationBatch = new Batch(out, "INSERT INTO ofMucAffiliation (roomID, jid, affiliation) VALUES");
+            for (String room : getRooms(domain)) {
+                // Rooms are hosted by the default 'conference' service. They are unlocked, public, unmoderated and open,
+                // without an occupant limit.
+                roomBatch.add("((SELECT serviceID FROM ofMucService WHERE subdomain = 'conference'), " + roomId + ", "
+                        + quote(creationDate) + ", " + quote(creationDate) + ", " + quote(room) + ", " + quote(room) + ", "
+                        + quote("Synthetic room") + ", '000000000000000', 0, 0, 1, 0, 0, 1, 1, 0, 7, 0, 1, 1)");
+                if (usersPerServer > 0) {
+                    // The first synthetic user of the domain owns (affiliation 10) every room.
+                    affiliationBatch.add("(" + roomId + ", " + quote(getUser(domain, 0).jid()) + ", 10)");
+                }
+                roomId++;
+            }
+            roomBatch.flush();
+            affiliationBatch.flush();
+            if (roomId > FIRST_ID) {
+                out.write("UPDATE ofID SET id = GREATEST(id, " + roomId + ") WHERE idType = " + MUC_ROOM_SEQUENCE + ";\n");
+            }
+
+            out.write("COMMIT;\n");
+        }
+    }
+
+    /**
+     * Computes SCRAM-SHA-1 credentials (stored key, server key and salt, all base64-encoded) for the password of the
+     * population, as stored by Openfire. All users share the same password and salt, so that these only need to be
+     * computed once.
+     */
+    private String[] scramCredentials() {
+        try {
+            final byte[] salt = new byte[16];
+            new Random(seed).nextBytes(salt);
+
+            final SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+            final byte[] saltedPassword = factory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, SCRAM_ITERATIONS, 160)).getEncoded();
+
+            final Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(saltedPassword, "HmacSHA1"));
+            final byte[] clientKey = mac.doFinal("Client Key".getBytes(StandardCharsets.UTF_8));
+            final byte[] serverKey = mac.doFinal("Server Key".getBytes(StandardCharsets.UTF_8));
+            final byte[] storedKey = MessageDigest.getInstance("SHA-1").digest(clientKey);
+
+            final Base64.Encoder base64 = Base64.getEncoder();
+            return new String[] { base64.encodeToString(storedKey), base64.encodeToString(serverKey), base64.encodeToString(salt) };
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute SCRAM credentials", e);
+        }
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /**
+     * Writes rows as multi-row INSERT statements, of at most {@link #BATCH_SIZE} rows each. Rows are buffered until
+     * a statement is complete, so that batches for different tables can be filled at the same time.
+     */
+    private static final class Batch {
+        private final BufferedWriter out;
+        private final String statement;
+        private final StringBuilder rows = new StringBuilder();
+        private int count = 0;
+
+        Batch(BufferedWriter out, String statement) {
+            this.out = out;
+            this.statement = statement;
+        }
+
+        void add(String row) throws IOException {
+            rows.append(count == 0 ? "\n  " : ",\n  ").append(row);
+            if (++count == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (count > 0) {
+                out.write(statement);
+                out.append(rows).write(";\n");
+                rows.setLength(0);
+                count = 0;
+            }
+        }
+    }
+}
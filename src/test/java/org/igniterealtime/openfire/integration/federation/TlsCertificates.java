@@ -0,0 +1,170 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Generates the certificates that are used when the federated environment runs with TLS enabled (see
+ * {@link FederatedTestEnvironment#isTls()}).
+ *
+ * A local certificate authority is created, which signs a certificate for every XMPP domain. The certificate of a
+ * domain is valid for the domain itself, for its subdomains (such as the MUC service) and for {@code localhost}, and
+ * can be used both to accept connections and to initiate server-to-server connections. Every server gets a keystore
+ * with the key and certificate chain of its domain, and a truststore that holds the certificate of the authority, so
+ * that the servers authenticate each other, and clients can authenticate the servers, without accepting self-signed
+ * certificates.
+ *
+ * Keys and certificates are generated with the {@code keytool} of the JDK that runs the tests. Generated stores are
+ * reused by later runs, as long as they cover all domains, so that an environment that is kept warm (see
+ * {@link FederatedTestEnvironment#isKeepWarm()}) keeps trusting the same authority.
+ */
+class TlsCertificates {
+    private static final Logger logger = LoggerFactory.getLogger(TlsCertificates.class);
+
+    // Password of all stores and keys, which is also the default password of the stores of Openfire
+    static final String PASSWORD = "changeit";
+
+    private static final String CA_ALIAS = "ca";
+
+    private final Path directory;
+
+    /**
+     * Creates a generator.
+     *
+     * @param directory the directory in which the stores are generated
+     */
+    TlsCertificates(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Generates the certificate authority and the certificates of all domains, unless they have been generated before.
+     *
+     * @param domains the XMPP domains of the servers
+     * @throws IOException          if a key or certificate cannot be generated
+     * @throws InterruptedException if the thread is interrupted while waiting for {@code keytool}
+     */
+    void generate(List<String> domains) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        if (!Files.exists(getTruststore())) {
+            logger.info("Generating certificate authority in {}...", directory);
+            Files.deleteIfExists(directory.resolve("ca.jks"));
+            keytool("-genkeypair", "-alias", CA_ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+                    "-dname", "CN=Openfire Integration Tests CA", "-ext", "bc:c",
+                    "-keystore", "ca.jks");
+            keytool("-exportcert", "-rfc", "-alias", CA_ALIAS, "-keystore", "ca.jks", "-file", "ca.pem");
+            keytool("-importcert", "-noprompt", "-alias", CA_ALIAS, "-file", "ca.pem", "-keystore", "truststore.jks");
+        }
+        for (String domain : domains) {
+            if (Files.exists(getKeystore(domain))) {
+                continue;
+            }
+            logger.info("Generating certificate for {}...", domain);
+            final String keystore = domain + ".jks";
+            keytool("-genkeypair", "-alias", domain, "-keyalg", "RSA", "-keysize", "2048", "-validity", "825",
+                    "-dname", "CN=" + domain, "-keystore", keystore);
+            keytool("-certreq", "-alias", domain, "-keystore", keystore, "-file", domain + ".csr");
+            keytool("-gencert", "-rfc", "-alias", CA_ALIAS, "-keystore", "ca.jks", "-validity", "825",
+                    "-infile", domain + ".csr", "-outfile", domain + ".pem",
+                    "-ext", "san=dns:" + domain + ",dns:*." + domain + ",dns:localhost",
+                    "-ext", "ku:c=digitalSignature,keyEncipherment",
+                    "-ext", "eku=serverAuth,clientAuth");
+            keytool("-importcert", "-noprompt", "-alias", CA_ALIAS, "-file", "ca.pem", "-keystore", keystore);
+            keytool("-importcert", "-alias", domain, "-file", domain + ".pem", "-keystore", keystore);
+        }
+    }
+
+    /**
+     * Returns the keystore that holds the key and certificate chain of a domain.
+     *
+     * @param domain the XMPP domain
+     * @return the location of the keystore (in JKS format)
+     */
+    Path getKeystore(String domain) {
+        return directory.resolve(domain + ".jks");
+    }
+
+    /**
+     * Returns the truststore that holds the certificate of the certificate authority.
+     *
+     * @return the location of the truststore (in JKS format)
+     */
+    Path getTruststore() {
+        return directory.resolve("truststore.jks");
+    }
+
+    /**
+     * Returns a trust manager that trusts the certificates signed by the certificate authority, and no others.
+     *
+     * @return the trust manager
+     * @throws IOException if the truststore cannot be read
+     */
+    X509TrustManager getTrustManager() throws IOException {
+        try (InputStream in = Files.newInputStream(getTruststore())) {
+            final KeyStore truststore = KeyStore.getInstance("JKS");
+            truststore.load(in, PASSWORD.toCharArray());
+            final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(truststore);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509TrustManager x509TrustManager) {
+                    return x509TrustManager;
+                }
+            }
+            throw new IllegalStateException("No X.509 trust manager available");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to load truststore " + getTruststore(), e);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 fingerprint of the certificate of the certificate authority. Servers that were set up with a
+     * different authority cannot be reused.
+     *
+     * @return the hex-encoded fingerprint
+     * @throws IOException if the truststore cannot be read
+     */
+    String getFingerprint() throws IOException {
+        try (InputStream in = Files.newInputStream(getTruststore())) {
+            final KeyStore truststore = KeyStore.getInstance("JKS");
+            truststore.load(in, PASSWORD.toCharArray());
+            final Certificate certificate = truststore.getCertificate(CA_ALIAS);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to load truststore " + getTruststore(), e);
+        }
+    }
+
+    private void keytool(String... arguments) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(List.of(arguments));
+        command.addAll(List.of("-storetype", "JKS", "-storepass", PASSWORD));
+        if (arguments[0].equals("-genkeypair")) {
+            command.addAll(List.of("-keypass", PASSWORD));
+        }
+        final Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool " + arguments[0] + " failed: " + output.trim());
+        }
+    }
+}
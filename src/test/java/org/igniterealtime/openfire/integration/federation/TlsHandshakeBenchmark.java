@@ -0,0 +1,456 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Measures the cost of TLS: the latency and CPU cost of client-to-server and server-to-server handshakes, and message
+ * throughput over connections with and without TLS.
+ *
+ * TLS needs to be enabled in the environment (see {@link FederatedTestEnvironment#isTls()}) to measure connections
+ * that use it. Clients can use TLS or not within a single run, so that client-to-server results are reported for both
+ * modes. Server-to-server TLS is a property of the environment: to compare server-to-server results with and without
+ * TLS, run the benchmark with TLS enabled and with TLS disabled (the mode is included in the report).
+ *
+ * The following is measured, for every client connection mode:
+ * <ul>
+ *     <li>Client-to-server handshakes: connections to the first server are opened and closed again, recording the
+ *     latency of {@code connect()} (TCP connection, stream negotiation and, with TLS, STARTTLS and the TLS handshake)
+ *     and of {@code login()}, the number of handshakes per second, and the CPU time that the server and the test
+ *     process used per handshake.</li>
+ *     <li>Throughput: senders on the first server send messages to receivers on the second server as fast as a window
+ *     of outstanding messages allows, recording the throughput, latency and the CPU time that both servers used per
+ *     message.</li>
+ * </ul>
+ *
+ * Server-to-server handshakes are measured by killing and restarting the second server, which forces a new
+ * server-to-server session to be established for the next message that the first server routes to it. The latency of
+ * that message, compared to the latency of messages over the established session, gives the cost of establishing
+ * the session. The establishment time as logged by the first server (see {@link FederatedTestEnvironment#getS2sEvents()})
+ * and the CPU time that it used are recorded too.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.modes} - comma-separated client connection modes, {@code plain} and/or {@code tls}
+ *     (default: both when TLS is enabled, {@code plain} otherwise)</li>
+ *     <li>{@code benchmark.handshakes} - number of client-to-server handshakes per mode (default: 200)</li>
+ *     <li>{@code benchmark.concurrency} - number of handshakes that are performed concurrently (default: 4)</li>
+ *     <li>{@code benchmark.pairs} - number of sender/receiver pairs of the throughput measurement (default: 4)</li>
+ *     <li>{@code benchmark.messages} - number of messages sent by every pair, per mode (default: 2000)</li>
+ *     <li>{@code benchmark.window} - maximum number of outstanding messages of every pair (default: 50)</li>
+ *     <li>{@code benchmark.s2sHandshakes} - number of server-to-server handshakes, or 0 to skip (default: 3)</li>
+ *     <li>{@code benchmark.timeout} - maximum time to wait for a handshake, or for messages to be delivered, in
+ *     seconds (default: 60)</li>
+ * </ul>
+ */
+public class TlsHandshakeBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(TlsHandshakeBenchmark.class);
+
+    // Number of messages over an established session, from which the baseline latency of server-to-server messages
+    // is taken
+    private static final int BASELINE_MESSAGES = 5;
+
+    private final List<String> modes = Arrays.stream(BenchmarkSettings.getString("benchmark.modes", isTls() ? "plain,tls" : "plain").split(","))
+            .map(String::trim)
+            .filter(mode -> !mode.isEmpty())
+            .toList();
+    private final int handshakes = BenchmarkSettings.getInt("benchmark.handshakes", 200);
+    private final int concurrency = BenchmarkSettings.getInt("benchmark.concurrency", 4);
+    private final int pairCount = BenchmarkSettings.getInt("benchmark.pairs", 4);
+    private final int messages = BenchmarkSettings.getInt("benchmark.messages", 2000);
+    private final int window = BenchmarkSettings.getInt("benchmark.window", 50);
+    private final int s2sHandshakes = BenchmarkSettings.getInt("benchmark.s2sHandshakes", 3);
+    private final Duration timeout = BenchmarkSettings.getDuration("benchmark.timeout", Duration.ofSeconds(60));
+
+    private final FederationNode local = FederationNode.of(1);
+    private final FederationNode remote = FederationNode.of(2);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void tlsHandshake() throws Exception {
+        for (String mode : modes) {
+            if (!mode.equals("plain") && !mode.equals("tls")) {
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+            if (mode.equals("tls") && !isTls()) {
+                throw new IllegalStateException("TLS is not enabled in the environment (set OPENFIRE_TLS=true)");
+            }
+        }
+        logger.info("Starting TLS benchmark with client modes {} (server-to-server TLS: {})...", modes, isTls());
+
+        final Map<String, Object> c2sResults = new LinkedHashMap<>();
+        final Map<String, Object> throughputResults = new LinkedHashMap<>();
+        for (String mode : modes) {
+            setStep("c2s-" + mode);
+            c2sResults.put(mode, measureClientHandshakes(mode.equals("tls")));
+            setStep("throughput-" + mode);
+            throughputResults.put(mode, measureThroughput(mode.equals("tls")));
+        }
+        final Map<String, Object> s2sResults = s2sHandshakes > 0 ? measureServerHandshakes() : null;
+
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+        configuration.put("s2sTls", isTls());
+        configuration.put("handshakes", handshakes);
+        configuration.put("concurrency", concurrency);
+        configuration.put("pairs", pairCount);
+        configuration.put("messages", messages);
+        configuration.put("window", window);
+        configuration.put("s2sHandshakes", s2sHandshakes);
+
+        new BenchmarkReport("tls-handshake")
+                .put("configuration", configuration)
+                .put("c2sHandshakes", c2sResults)
+                .put("throughput", throughputResults)
+                .put("s2sHandshakes", s2sResults)
+                .write();
+
+        for (String mode : modes) {
+            final Map<?, ?> c2s = (Map<?, ?>) c2sResults.get(mode);
+            Assertions.assertEquals(0L, c2s.get("failures"), "All " + mode + " client-to-server handshakes should succeed");
+            final Map<?, ?> throughput = (Map<?, ?>) throughputResults.get(mode);
+            Assertions.assertEquals(throughput.get("sent"), throughput.get("received"), "All " + mode + " messages should be received");
+        }
+    }
+
+    /**
+     * Opens and closes connections to the first server, and measures the latency and CPU cost of every handshake.
+     */
+    private Map<String, Object> measureClientHandshakes(boolean tls) throws Exception {
+        logger.info("Measuring {} {} client-to-server handshakes, {} at a time...", handshakes, tls ? "TLS" : "plain", concurrency);
+        final LatencyHistogram connectLatency = new LatencyHistogram();
+        final LatencyHistogram loginLatency = new LatencyHistogram();
+        final LatencyHistogram totalLatency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong unexpectedSecurity = new AtomicLong();
+        final AtomicInteger next = new AtomicInteger();
+
+        final Duration serverCpuBefore = getCpuTime(local);
+        final long clientCpuBefore = getProcessCpuNanos();
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            final List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < concurrency; w++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < handshakes; i = next.getAndIncrement()) {
+                        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(XMPP1_DOMAIN, i % 2 == 0 ? USER_1 : USER_2, tls)
+                                .setResource("tls-benchmark-" + i)
+                                .setConnectTimeout((int) timeout.toMillis())
+                                .build());
+                        connection.setReplyTimeout(timeout.toMillis());
+                        try {
+                            final long connectStart = System.nanoTime();
+                            connection.connect();
+                            final long loginStart = System.nanoTime();
+                            connection.login();
+                            final long end = System.nanoTime();
+                            connectLatency.recordNanos(loginStart - connectStart);
+                            loginLatency.recordNanos(end - loginStart);
+                            totalLatency.recordNanos(end - connectStart);
+                            if (connection.isSecureConnection() != tls) {
+                                unexpectedSecurity.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            logger.debug("Handshake {} failed", i, e);
+                            failures.incrementAndGet();
+                        } finally {
+                            if (connection.isConnected()) {
+                                connection.disconnect();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final Duration serverCpu = getCpuTime(local).minus(serverCpuBefore);
+        final long clientCpu = getProcessCpuNanos() - clientCpuBefore;
+
+        final long completed = totalLatency.getCount();
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("completed", completed);
+        result.put("failures", failures.get());
+        result.put("unexpectedSecurity", unexpectedSecurity.get());
+        result.put("handshakesPerSecond", completed / (elapsed / 1_000_000_000.0));
+        result.put("connectLatency", connectLatency.summary());
+        result.put("loginLatency", loginLatency.summary());
+        result.put("totalLatency", totalLatency.summary());
+        result.put("serverCpuPerHandshakeMs", completed == 0 ? null : serverCpu.toNanos() / 1_000_000.0 / completed);
+        result.put("clientCpuPerHandshakeMs", completed == 0 || clientCpu < 0 ? null : clientCpu / 1_000_000.0 / completed);
+        logger.info("{} client-to-server handshakes: {}", tls ? "TLS" : "Plain", result);
+        return result;
+    }
+
+    /**
+     * Sends messages from the first server to the second server as fast as the window allows, over client connections
+     * with or without TLS.
+     */
+    private Map<String, Object> measureThroughput(boolean tls) throws Exception {
+        logger.info("Measuring {} throughput: {} pairs sending {} messages each...", tls ? "TLS" : "plain", pairCount, messages);
+        final int run = runs.incrementAndGet();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong primed = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final List<AbstractXMPPConnection> connections = new ArrayList<>();
+        final List<Semaphore> windows = new ArrayList<>();
+        final List<EntityFullJid> receivers = new ArrayList<>();
+        try {
+            for (int i = 0; i < pairCount; i++) {
+                final String resource = "tls-throughput-" + run + "-" + i;
+                final AbstractXMPPConnection sender = connect(XMPP1_DOMAIN, i % 2 == 0 ? USER_1 : USER_2, resource, tls);
+                final AbstractXMPPConnection receiver = connect(XMPP2_DOMAIN, i % 2 == 0 ? USER_3 : USER_4, resource, tls);
+                connections.add(sender);
+                connections.add(receiver);
+                final Semaphore permits = new Semaphore(window);
+                windows.add(permits);
+                receivers.add(receiver.getUser());
+                receiver.addSyncStanzaListener(
+                        stanza -> {
+                            final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                            if (stamp.run() != run) {
+                                return;
+                            }
+                            if (stamp.sequence() < 0) {
+                                primed.incrementAndGet();
+                                return;
+                            }
+                            latency.recordNanos(stamp.elapsedNanos());
+                            received.incrementAndGet();
+                            permits.release();
+                        },
+                        stanza -> stanza instanceof Message && BenchmarkStamp.from(stanza) != null
+                );
+            }
+
+            // Establish the routes before measuring: messages with sequence -1 are not counted.
+            for (int i = 0; i < pairCount; i++) {
+                send(connections.get(i * 2), receivers.get(i), run, i, -1);
+            }
+            if (!awaitReceived(primed, pairCount, System.nanoTime() + timeout.toNanos())) {
+                throw new IllegalStateException("Timed out establishing routes: received " + primed.get() + " of " + pairCount + " messages");
+            }
+
+            final Duration localCpuBefore = getCpuTime(local);
+            final Duration remoteCpuBefore = getCpuTime(remote);
+            final long clientCpuBefore = getProcessCpuNanos();
+            final long start = System.nanoTime();
+            final ExecutorService executor = Executors.newFixedThreadPool(pairCount);
+            try {
+                final List<Future<?>> senders = new ArrayList<>();
+                for (int i = 0; i < pairCount; i++) {
+                    final int pair = i;
+                    senders.add(executor.submit(() -> {
+                        for (int seq = 0; seq < messages; seq++) {
+                            windows.get(pair).acquire();
+                            send(connections.get(pair * 2), receivers.get(pair), run, pair, seq);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> sender : senders) {
+                    sender.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            final long sent = (long) pairCount * messages;
+            awaitReceived(received, sent, System.nanoTime() + timeout.toNanos());
+            final long elapsed = System.nanoTime() - start;
+            final Duration localCpu = getCpuTime(local).minus(localCpuBefore);
+            final Duration remoteCpu = getCpuTime(remote).minus(remoteCpuBefore);
+            final long clientCpu = getProcessCpuNanos() - clientCpuBefore;
+
+            final long count = received.get();
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sent", sent);
+            result.put("received", count);
+            result.put("messagesPerSecond", count / (elapsed / 1_000_000_000.0));
+            result.put("latency", latency.summary());
+            result.put("senderServerCpuPerMessageMs", count == 0 ? null : localCpu.toNanos() / 1_000_000.0 / count);
+            result.put("receiverServerCpuPerMessageMs", count == 0 ? null : remoteCpu.toNanos() / 1_000_000.0 / count);
+            result.put("clientCpuPerMessageMs", count == 0 || clientCpu < 0 ? null : clientCpu / 1_000_000.0 / count);
+            logger.info("{} throughput: {}", tls ? "TLS" : "Plain", result);
+            return result;
+        } finally {
+            for (AbstractXMPPConnection connection : connections) {
+                if (connection.isConnected()) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the first server to establish new server-to-server sessions to the second server, and measures how much
+     * longer the first message over a new session takes than messages over an established session.
+     */
+    private Map<String, Object> measureServerHandshakes() throws Exception {
+        logger.info("Measuring {} server-to-server handshakes (TLS: {})...", s2sHandshakes, isTls());
+        final LatencyHistogram firstMessage = new LatencyHistogram();
+        final LatencyHistogram establishedMessage = new LatencyHistogram();
+        final List<Map<String, Object>> iterations = new ArrayList<>();
+        final AbstractXMPPConnection sender = connect(XMPP1_DOMAIN, USER_1, "tls-s2s", isTls());
+        try {
+            for (int i = 1; i <= s2sHandshakes; i++) {
+                setStep("s2s-" + i);
+                killNode(remote);
+                final Duration peerHealthy = startNode(remote);
+                final int run = runs.incrementAndGet();
+                final Map<String, Object> iteration = new LinkedHashMap<>();
+                iteration.put("peerTimeToHealthyMs", peerHealthy.toMillis());
+
+                final AbstractXMPPConnection receiver = connect(XMPP2_DOMAIN, USER_3, "tls-s2s", isTls());
+                try {
+                    final Map<Long, Long> latencies = new ConcurrentHashMap<>();
+                    receiver.addSyncStanzaListener(
+                            stanza -> {
+                                final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                                if (stamp.run() == run) {
+                                    latencies.put(stamp.sequence(), stamp.elapsedNanos());
+                                    synchronized (latencies) {
+                                        latencies.notifyAll();
+                                    }
+                                }
+                            },
+                            stanza -> stanza instanceof Message && BenchmarkStamp.from(stanza) != null
+                    );
+
+                    // The first message causes the session to be established.
+                    final Instant established = Instant.now();
+                    final Duration localCpuBefore = getCpuTime(local);
+                    send(sender, receiver.getUser(), run, 0, 0);
+                    if (!awaitLatency(latencies, 0)) {
+                        iteration.put("failure", "First message was not received within " + timeout.toSeconds() + "s");
+                        iterations.add(iteration);
+                        continue;
+                    }
+                    final Duration localCpu = getCpuTime(local).minus(localCpuBefore);
+                    final long first = latencies.get(0L);
+                    firstMessage.recordNanos(first);
+
+                    final LatencyHistogram baseline = new LatencyHistogram();
+                    for (long seq = 1; seq <= BASELINE_MESSAGES; seq++) {
+                        send(sender, receiver.getUser(), run, 0, seq);
+                        if (awaitLatency(latencies, seq)) {
+                            baseline.recordNanos(latencies.get(seq));
+                            establishedMessage.recordNanos(latencies.get(seq));
+                        }
+                    }
+
+                    iteration.put("firstMessageMs", first / 1_000_000.0);
+                    iteration.put("establishedMessageMs", baseline.getValueAtPercentile(50) / 1000.0);
+                    iteration.put("handshakeMs", (first - baseline.getValueAtPercentile(50) * 1000) / 1_000_000.0);
+                    iteration.put("senderServerCpuMs", localCpu.toNanos() / 1_000_000.0);
+                    final S2sEventIndex index = getS2sEvents();
+                    if (index != null) {
+                        final Duration logged = index.getEstablishmentTimes(established).get(XMPP1_DOMAIN + " -> " + XMPP2_DOMAIN);
+                        iteration.put("serverEstablishmentMs", logged == null ? null : logged.toMillis());
+                    }
+                    iterations.add(iteration);
+                    logger.info("Server-to-server handshake {}: {}", i, iteration);
+                } finally {
+                    receiver.disconnect();
+                }
+            }
+        } finally {
+            sender.disconnect();
+        }
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tls", isTls());
+        result.put("firstMessageLatency", firstMessage.summary());
+        result.put("establishedMessageLatency", establishedMessage.summary());
+        result.put("iterations", iterations);
+        return result;
+    }
+
+    private boolean awaitLatency(Map<Long, Long> latencies, long sequence) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (latencies) {
+            while (!latencies.containsKey(sequence)) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                latencies.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+        }
+        return true;
+    }
+
+    private static boolean awaitReceived(AtomicLong received, long expected, long deadline) throws InterruptedException {
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static void send(AbstractXMPPConnection sender, EntityFullJid receiver, int run, int stream, long sequence) throws Exception {
+        final Message message = sender.getStanzaFactory()
+                .buildMessageStanza()
+                .to(receiver)
+                .ofType(Message.Type.chat)
+                .setBody("TLS benchmark message " + sequence)
+                .addExtension(BenchmarkStamp.now(run, stream, sequence).toExtensionElement())
+                .build();
+        sender.sendStanza(message);
+    }
+
+    private AbstractXMPPConnection connect(String domain, String user, String resource, boolean tls) throws Exception {
+        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(domain, user, tls)
+                .setResource(resource)
+                .setConnectTimeout((int) timeout.toMillis())
+                .build());
+        connection.connect();
+        connection.login();
+        return connection;
+    }
+
+    /**
+     * Returns the CPU time used by the test process, or -1 if the JVM does not provide it.
+     */
+    private static long getProcessCpuNanos() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean bean
+                ? bean.getProcessCpuTime()
+                : -1;
+    }
+}
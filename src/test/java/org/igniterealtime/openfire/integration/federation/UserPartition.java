@@ -0,0 +1,196 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A slice of the synthetic population (see {@link SyntheticPopulation}) that is leased exclusively by one worker, so
+ * that tests that run concurrently, in the same JVM or in different JVMs, do not interfere with each other's users.
+ *
+ * The synthetic users of every server are divided into partitions of a fixed number of consecutive users. Partition
+ * {@code n} consists of the users with indexes {@code n * size} up to {@code (n + 1) * size} on every server. A
+ * partition is leased by locking a file that represents it, which excludes other JVMs, and by registering it within
+ * the JVM, which excludes other threads. The lease is released when the partition is closed, or when the JVM exits.
+ *
+ * Tests that use the pre-configured users (such as {@link FederatedTestEnvironment#USER_1}) can be run against a
+ * partition unchanged: {@link #map(String, String)} maps every pre-configured user of a server to the user at the same
+ * position of the partition on that server.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code population.usersPerPartition} - number of users per server in every partition, or 0 to disable
+ *     partitioning (default: 0). Partitioning also requires a synthetic population of at least this many users per
+ *     server ({@code population.users}).</li>
+ *     <li>{@code population.partitionTimeout} - maximum time to wait for a partition to become available, in seconds
+ *     (default: 600)</li>
+ * </ul>
+ */
+public final class UserPartition implements ExtensionContext.Store.CloseableResource, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UserPartition.class);
+
+    // Directory of the files that are locked to lease partitions, shared by all JVMs of a test run
+    private static final Path LOCK_DIRECTORY = Path.of("target/federation/partitions");
+
+    // Interval at which leasing is retried when all partitions are leased
+    private static final long RETRY_INTERVAL_MS = 100;
+
+    // Partitions that are leased by this JVM
+    private static final Set<Integer> leased = new HashSet<>();
+
+    private final SyntheticPopulation population;
+    private final int index;
+    private final int size;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private UserPartition(SyntheticPopulation population, int index, int size, FileChannel channel, FileLock lock) {
+        this.population = population;
+        this.index = index;
+        this.size = size;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Returns the number of users per server in every partition.
+     *
+     * @return the partition size, or 0 if partitioning is disabled
+     */
+    public static int getConfiguredSize() {
+        final int size = BenchmarkSettings.getInt("population.usersPerPartition", 0);
+        return size > 0 && SyntheticPopulation.configured().getUsersPerServer() >= size ? size : 0;
+    }
+
+    /**
+     * Leases a partition that is not leased by any other worker, waiting for one to become available if needed.
+     *
+     * @return the leased partition, or {@code null} if partitioning is disabled (see {@link #getConfiguredSize()})
+     * @throws IOException          if the lock files cannot be created
+     * @throws InterruptedException if the thread is interrupted while waiting for a partition
+     */
+    public static UserPartition lease() throws IOException, InterruptedException {
+        final int size = getConfiguredSize();
+        if (size == 0) {
+            return null;
+        }
+        final SyntheticPopulation population = SyntheticPopulation.configured();
+        final int count = population.getUsersPerServer() / size;
+        final Duration timeout = BenchmarkSettings.getDuration("population.partitionTimeout", Duration.ofMinutes(10));
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        Files.createDirectories(LOCK_DIRECTORY);
+        while (true) {
+            for (int index = 0; index < count; index++) {
+                final UserPartition partition = tryLease(population, index, size);
+                if (partition != null) {
+                    logger.debug("Leased user partition {}", index);
+                    return partition;
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("No user partition became available within " + timeout.toSeconds() + "s; all "
+                        + count + " partitions of " + size + " users are leased (increase population.users)");
+            }
+            Thread.sleep(RETRY_INTERVAL_MS);
+        }
+    }
+
+    private static UserPartition tryLease(SyntheticPopulation population, int index, int size) throws IOException {
+        synchronized (leased) {
+            if (leased.contains(index)) {
+                return null;
+            }
+            final FileChannel channel = FileChannel.open(LOCK_DIRECTORY.resolve(index + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return null;
+            }
+            leased.add(index);
+            return new UserPartition(population, index, size, channel, lock);
+        }
+    }
+
+    /**
+     * Returns the number of this partition.
+     *
+     * @return the partition number, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of users per server in this partition.
+     *
+     * @return the partition size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns a user of this partition.
+     *
+     * @param domain the domain of the user
+     * @param user   the index of the user within this partition, between 0 (inclusive) and {@link #getSize()}
+     *               (exclusive)
+     * @return the user
+     */
+    public SyntheticPopulation.SyntheticUser getUser(String domain, int user) {
+        if (user < 0 || user >= size) {
+            throw new IllegalArgumentException("User " + user + " is not part of a partition of " + size + " users");
+        }
+        return population.getUser(domain, index * size + user);
+    }
+
+    /**
+     * Maps a pre-configured user of a server to the user at the same position of this partition on that server.
+     *
+     * @param domain the domain of the user
+     * @param user   the username of a pre-configured user of the server, such as {@link FederatedTestEnvironment#USER_1}
+     * @return the user of this partition that takes the place of the pre-configured user
+     * @throws IllegalArgumentException if the user is not a pre-configured user of the server
+     */
+    public SyntheticPopulation.SyntheticUser map(String domain, String user) {
+        final FederationNode node = FederatedTestEnvironment.getNodes().stream()
+                .filter(n -> n.domain().equals(domain))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown domain: " + domain));
+        final int position = node.users().indexOf(user);
+        if (position < 0) {
+            throw new IllegalArgumentException(user + " is not a pre-configured user of " + domain);
+        }
+        return getUser(domain, position);
+    }
+
+    /**
+     * Releases the lease of this partition.
+     */
+    @Override
+    public void close() {
+        synchronized (leased) {
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                leased.remove(index);
+            }
+        }
+        logger.debug("Released user partition {}", index);
+    }
+}
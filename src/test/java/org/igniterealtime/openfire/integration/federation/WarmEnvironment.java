@@ -0,0 +1,277 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import org.igniterealtime.openfire.integration.docker.DockerCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Supports keeping the federated environment running between test runs ("keep warm" mode).
+ *
+ * When the environment is started cold, a fingerprint of everything that determines its configuration is recorded,
+ * and a snapshot is taken of every Openfire database. A subsequent run that computes the same fingerprint reattaches
+ * to the running containers. Instead of recreating the environment, it restores the database snapshots, which returns
+ * the servers to the state they were in directly after the cold start.
+ *
+ * The fingerprint covers the Openfire image (both its name and the ID of the image it currently refers to, so that a
+ * rebuilt {@code latest} image is detected), the SQL overlays, and the compose files and scripts that define the
+ * environment.
+ */
+class WarmEnvironment {
+    private static final Logger logger = LoggerFactory.getLogger(WarmEnvironment.class);
+
+    // Location of the fingerprint of the environment that is currently kept warm
+    private static final Path FINGERPRINT_FILE = Path.of(".openfire-warm", "fingerprint");
+
+    // Suffix of the name of the database that holds the snapshot of an Openfire database
+    private static final String SNAPSHOT_SUFFIX = "_warm_snapshot";
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DockerClient docker;
+    private final String project;
+    private final Path composeDirectory;
+
+    /**
+     * Creates a manager for a warm environment.
+     *
+     * @param docker           the client used to communicate with the Docker daemon
+     * @param project          the Docker Compose project name of the environment
+     * @param composeDirectory the directory that holds the compose files, scripts and SQL overlays of the environment
+     */
+    WarmEnvironment(DockerClient docker, String project, Path composeDirectory) {
+        this.docker = docker;
+        this.project = project;
+        this.composeDirectory = composeDirectory;
+    }
+
+    /**
+     * Computes the fingerprint of the configuration of the environment, as it would be started now.
+     *
+     * @param image the Openfire Docker image, including its tag
+     * @return a hex-encoded SHA-256 fingerprint
+     * @throws IOException if the configuration files cannot be read
+     */
+    String fingerprint(String image) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(image.getBytes(StandardCharsets.UTF_8));
+        try {
+            digest.update(String.valueOf(docker.inspectImageCmd(image).exec().getId()).getBytes(StandardCharsets.UTF_8));
+        } catch (DockerException e) {
+            logger.debug("Unable to resolve the ID of image {}; fingerprinting by name only", image, e);
+        }
+
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(composeDirectory)) {
+            stream.filter(Files::isRegularFile)
+                    .filter(WarmEnvironment::isConfiguration)
+                    .sorted()
+                    .forEach(files::add);
+        }
+        for (Path file : files) {
+            digest.update(composeDirectory.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean isConfiguration(Path file) {
+        final String name = file.getFileName().toString();
+        return name.endsWith(".yml") || name.endsWith(".yaml") || name.endsWith(".sh")
+                || name.endsWith(".sql") || name.endsWith(".env");
+    }
+
+    /**
+     * Checks whether a previously started environment can be reused: the recorded fingerprint must match, and all
+     * containers of the environment must exist and be running.
+     *
+     * @param fingerprint the fingerprint of the configuration that is to be started
+     * @param requiredServices the names of the services that must be running
+     * @return {@code true} if the running environment can be reattached to
+     * @throws IOException if an error occurs communicating with the Docker daemon
+     */
+    boolean canReattach(String fingerprint, List<String> requiredServices) throws IOException {
+        if (!Files.exists(FINGERPRINT_FILE)) {
+            logger.info("No warm environment has been recorded");
+            return false;
+        }
+        final String recorded = Files.readString(FINGERPRINT_FILE).trim();
+        if (!recorded.equals(fingerprint)) {
+            logger.info("Configuration of the warm environment has changed (fingerprint {} differs from {})", recorded, fingerprint);
+            return false;
+        }
+
+        final List<Container> containers = DockerCommands.listContainers(docker, project);
+        final List<String> running = new ArrayList<>();
+        for (Container container : containers) {
+            if (!"running".equals(container.getState())) {
+                logger.info("Warm environment container {} is not running", Arrays.toString(container.getNames()));
+                return false;
+            }
+            running.add(String.valueOf(DockerCommands.service(container)));
+        }
+        if (!running.containsAll(requiredServices)) {
+            logger.info("Warm environment is not running (found services: {})", running);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the fingerprint of the environment that is now running, so that later runs can reattach to it.
+     *
+     * @param fingerprint the fingerprint of the running environment
+     * @throws IOException if the fingerprint cannot be written
+     */
+    void recordFingerprint(String fingerprint) throws IOException {
+        Files.createDirectories(FINGERPRINT_FILE.getParent());
+        Files.writeString(FINGERPRINT_FILE, fingerprint);
+    }
+
+    /**
+     * Removes the recorded fingerprint, which prevents any later run from reattaching to the environment.
+     *
+     * @throws IOException if the fingerprint cannot be removed
+     */
+    void forget() throws IOException {
+        Files.deleteIfExists(FINGERPRINT_FILE);
+    }
+
+    /**
+     * Takes a snapshot of every Openfire database, to be restored by {@link #restoreSnapshots()}. The Openfire
+     * servers are stopped while the snapshot is taken, and restarted afterwards; callers should wait for them to
+     * become healthy again.
+     *
+     * @throws IOException if an error occurs communicating with the Docker daemon, or a snapshot cannot be taken
+     */
+    void takeSnapshots() throws IOException {
+        logger.info("Taking snapshots of Openfire databases...");
+        withOpenfireStopped(database -> {
+            psql(database, "DROP DATABASE IF EXISTS \"" + database.name() + SNAPSHOT_SUFFIX + "\"");
+            psql(database, "CREATE DATABASE \"" + database.name() + SNAPSHOT_SUFFIX + "\" TEMPLATE \"" + database.name() + "\"");
+        });
+    }
+
+    /**
+     * Restores every Openfire database from the snapshot taken by {@link #takeSnapshots()}. The Openfire servers are
+     * stopped while the databases are restored (which also clears any server state that is held in memory), and
+     * restarted afterwards; callers should wait for them to become healthy again.
+     *
+     * @throws IOException if an error occurs communicating with the Docker daemon, or a snapshot cannot be restored
+     */
+    void restoreSnapshots() throws IOException {
+        logger.info("Restoring Openfire databases from snapshots...");
+        withOpenfireStopped(database -> {
+            psql(database, "DROP DATABASE IF EXISTS \"" + database.name() + "\"");
+            psql(database, "CREATE DATABASE \"" + database.name() + "\" TEMPLATE \"" + database.name() + SNAPSHOT_SUFFIX + "\"");
+        });
+    }
+
+    /**
+     * A PostgreSQL database that is used by an Openfire server.
+     *
+     * @param container the name of the container that runs PostgreSQL
+     * @param user      the PostgreSQL superuser
+     * @param name      the name of the database
+     */
+    record Database(String container, String user, String name) {
+    }
+
+    private interface DatabaseAction {
+        void apply(Database database) throws IOException;
+    }
+
+    private void withOpenfireStopped(DatabaseAction action) throws IOException {
+        final List<String> openfireContainers = new ArrayList<>();
+        final List<Database> databases = new ArrayList<>();
+        for (Container summary : DockerCommands.listContainers(docker, project)) {
+            final InspectContainerResponse container = docker.inspectContainerCmd(summary.getId()).exec();
+            final String name = container.getName().replaceFirst("^/", "");
+            final String service = String.valueOf(container.getConfig().getLabels().get("com.docker.compose.service"));
+            final Database database = toDatabase(name, container.getConfig().getEnv());
+            if (database != null) {
+                databases.add(database);
+            } else if (service.startsWith("xmpp")) {
+                openfireContainers.add(name);
+            }
+        }
+
+        for (String container : openfireContainers) {
+            logger.info("Stopping {}...", container);
+            DockerCommands.stop(docker, container, STOP_TIMEOUT);
+        }
+        try {
+            for (Database database : databases) {
+                action.apply(database);
+            }
+        } finally {
+            for (String container : openfireContainers) {
+                logger.info("Starting {}...", container);
+                DockerCommands.start(docker, container);
+            }
+        }
+    }
+
+    /**
+     * Identifies a PostgreSQL container by the environment variables that are defined by the official PostgreSQL
+     * image, and derives the superuser and database name in the same way that image does.
+     */
+    static Database toDatabase(String container, String[] env) {
+        if (env == null) {
+            return null;
+        }
+        String user = null;
+        String database = null;
+        boolean postgres = false;
+        for (String value : env) {
+            if (value.startsWith("PG_VERSION=") || value.startsWith("POSTGRES_")) {
+                postgres = true;
+            }
+            if (value.startsWith("POSTGRES_USER=")) {
+                user = value.substring("POSTGRES_USER=".length());
+            } else if (value.startsWith("POSTGRES_DB=")) {
+                database = value.substring("POSTGRES_DB=".length());
+            }
+        }
+        if (!postgres) {
+            return null;
+        }
+        if (user == null || user.isEmpty()) {
+            user = "postgres";
+        }
+        if (database == null || database.isEmpty()) {
+            database = user;
+        }
+        return new Database(container, user, database);
+    }
+
+    private void psql(Database database, String statement) throws IOException {
+        final DockerCommands.ExecResult result = DockerCommands.exec(docker, database.container(),
+                "psql", "-v", "ON_ERROR_STOP=1", "-U", database.user(), "-d", "template1", "-c", statement);
+        if (result.exitCode() != 0) {
+            throw new IOException("Failed to execute '" + statement + "' in " + database.container() + ": " + result.stderr().trim());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkReport;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkSettings;
+import org.igniterealtime.openfire.integration.workload.Scenario;
+import org.igniterealtime.openfire.integration.workload.WorkloadEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * Runs a declarative, open-loop workload scenario (see {@link Scenario}) against the federated environment.
+ *
+ * Operations are started on the schedule of the scenario, regardless of how long earlier operations take, and their
+ * latency is measured from the moment they were scheduled to start, which corrects for coordinated omission (see
+ * {@link WorkloadEngine}). The available operations are described by {@link XmppWorkload}. Scenarios are bundled in
+ * the {@code workloads} directory of the test resources, or can be provided as a file.
+ *
+ * Settings (system properties, or the equivalent upper-case environment variables):
+ * <ul>
+ *     <li>{@code benchmark.scenario} - name of a bundled scenario, or path of a scenario file (default: mixed)</li>
+ *     <li>{@code benchmark.rateScale} - factor by which all rates of the scenario are multiplied (default: 1)</li>
+ *     <li>{@code benchmark.maxInFlight} - maximum number of outstanding operations, beyond which operations are
+ *     rejected (default: 10000)</li>
+ * </ul>
+ */
+public class WorkloadBenchmark extends BaseFederationIT {
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadBenchmark.class);
+
+    private final String scenarioName = BenchmarkSettings.getString("benchmark.scenario", "mixed");
+    private final double rateScale = BenchmarkSettings.getDouble("benchmark.rateScale", 1);
+    private final int maxInFlight = BenchmarkSettings.getInt("benchmark.maxInFlight", 10_000);
+
+    @Test
+    void workload() throws Exception {
+        final Scenario scenario = Scenario.load(scenarioName).scaleRates(rateScale);
+        logger.info("Starting workload scenario {}{}", scenario.name(), scenario.description() == null ? "" : ": " + scenario.description());
+
+        final Map<String, Object> results;
+        try (XmppWorkload workload = new XmppWorkload(scenario)) {
+            setStep("setup");
+            workload.setUp();
+            results = new WorkloadEngine(scenario, workload.getOperations(), workload.getClientCount(), workload.getTargetCount())
+                    .setMaxInFlight(maxInFlight)
+                    .setPhaseListener(BaseFederationIT::setStep)
+                    .run();
+        }
+
+        final Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("openfireImage", getOpenfireImage() + ":" + getOpenfireTag());
+        configuration.put("scenario", scenario.toMap());
+        configuration.put("rateScale", rateScale);
+        configuration.put("maxInFlight", maxInFlight);
+        configuration.put("linkProfile", getCurrentLinkProfile().toMap());
+
+        new BenchmarkReport("workload-" + scenario.name())
+                .put("configuration", configuration)
+                .put("phases", results.get("phases"))
+                .put("total", results.get("total"))
+                .write();
+
+        final Map<?, ?> total = (Map<?, ?>) results.get("total");
+        final long completed = ((Map<?, ?>) total.get("operations")).values().stream()
+                .mapToLong(operation -> (Long) ((Map<?, ?>) operation).get("completed"))
+                .sum();
+        Assertions.assertTrue(completed > 0, "At least one operation should have completed");
+    }
+}
@@ -0,0 +1,243 @@
+package org.igniterealtime.openfire.integration.federation;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkExecutors;
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkStamp;
+import org.igniterealtime.openfire.integration.workload.Operation;
+import org.igniterealtime.openfire.integration.workload.Scenario;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smackx.muc.MultiUserChat;
+import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.ping.PingManager;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.igniterealtime.openfire.integration.federation.FederatedTestEnvironment.*;
+
+/**
+ * The clients, targets and operations of a {@link Scenario}, executed against the federated environment.
+ *
+ * Every client and target is a connection of a user of the scenario (see {@link SyntheticPopulation#getLoadUser}), with
+ * its own resource. The following operations are available:
+ * <ul>
+ *     <li>{@code message} - the client sends a chat message to the target, which completes when the target receives
+ *     it</li>
+ *     <li>{@code presence} - the client sends directed presence to the target, which completes when the target receives
+ *     it</li>
+ *     <li>{@code iq} - the client pings the server of the target (XEP-0199), which completes when the result is
+ *     received</li>
+ *     <li>{@code mucJoin} - the client joins one of the chat rooms on the server of the target, which completes when
+ *     the join is confirmed; the client leaves the room again afterwards</li>
+ * </ul>
+ * The chat rooms are created when the workload is set up, on every server that has targets.
+ */
+class XmppWorkload implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(XmppWorkload.class);
+
+    private final Scenario scenario;
+    private final long run = System.currentTimeMillis();
+    private final List<AbstractXMPPConnection> clients = new ArrayList<>();
+    private final List<AbstractXMPPConnection> targets = new ArrayList<>();
+    private final Map<String, List<EntityBareJid>> rooms = new LinkedHashMap<>();
+    private final Map<Long, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    XmppWorkload(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Connects all clients and targets, and creates the chat rooms.
+     *
+     * @throws Exception if a connection cannot be established, or a room cannot be created
+     */
+    void setUp() throws Exception {
+        clients.addAll(connect(scenario.clients(), "client"));
+        targets.addAll(connect(scenario.targets(), "target"));
+        for (AbstractXMPPConnection target : targets) {
+            target.addSyncStanzaListener(
+                    stanza -> {
+                        final BenchmarkStamp stamp = BenchmarkStamp.from(stanza);
+                        final CompletableFuture<Void> future = stamp.run() == run ? pending.get(stamp.sequence()) : null;
+                        if (future != null) {
+                            future.complete(null);
+                        }
+                    },
+                    stanza -> (stanza instanceof Message || stanza instanceof Presence) && BenchmarkStamp.from(stanza) != null
+            );
+        }
+
+        if (scenario.mix().containsKey("mucJoin")) {
+            for (AbstractXMPPConnection target : targets) {
+                final String domain = target.getXMPPServiceDomain().toString();
+                if (rooms.containsKey(domain)) {
+                    continue;
+                }
+                final List<EntityBareJid> domainRooms = new ArrayList<>();
+                for (int i = 0; i < scenario.rooms(); i++) {
+                    final EntityBareJid room = JidCreate.entityBareFrom("workload-" + run + "-" + i + "@conference." + domain);
+                    MultiUserChatManager.getInstanceFor(target).getMultiUserChat(room).create(Resourcepart.from("owner")).makeInstant();
+                    domainRooms.add(room);
+                }
+                rooms.put(domain, domainRooms);
+            }
+            logger.info("Created {} chat rooms on {}", scenario.rooms(), rooms.keySet());
+        }
+    }
+
+    private List<AbstractXMPPConnection> connect(List<Scenario.UserRange> ranges, String role) throws Exception {
+        final SyntheticPopulation population = SyntheticPopulation.configured();
+        final List<FederationNode> nodes = getNodes();
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("workload-connect");
+        try {
+            final List<Future<AbstractXMPPConnection>> futures = new ArrayList<>();
+            for (Scenario.UserRange range : ranges) {
+                if (range.server() > nodes.size()) {
+                    throw new IllegalArgumentException("Scenario " + scenario.name() + " uses server " + range.server() + ", but the environment has " + nodes.size() + " servers");
+                }
+                final String domain = nodes.get(range.server() - 1).domain();
+                for (int i = range.from(); i < range.from() + range.count(); i++) {
+                    final SyntheticPopulation.SyntheticUser user = population.getLoadUser(domain, i);
+                    final String resource = "workload-" + role + "-" + i;
+                    futures.add(executor.submit(() -> {
+                        final AbstractXMPPConnection connection = new XMPPTCPConnection(connectionConfigurationBuilder(user)
+                                .setResource(resource)
+                                .build());
+                        connection.setReplyTimeout(scenario.timeout().toMillis());
+                        connection.connect();
+                        connection.login();
+                        return connection;
+                    }));
+                }
+            }
+            final List<AbstractXMPPConnection> connections = new ArrayList<>();
+            for (Future<AbstractXMPPConnection> future : futures) {
+                connections.add(future.get());
+            }
+            logger.info("Connected {} {}s", connections.size(), role);
+            return connections;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    int getClientCount() {
+        return clients.size();
+    }
+
+    int getTargetCount() {
+        return targets.size();
+    }
+
+    /**
+     * Returns the implementations of all operations, keyed by operation name.
+     *
+     * @return the operations
+     */
+    Map<String, Operation> getOperations() {
+        return Map.of(
+                "message", this::message,
+                "presence", this::presence,
+                "iq", this::iq,
+                "mucJoin", this::mucJoin
+        );
+    }
+
+    private void message(Operation.Invocation invocation) throws Exception {
+        final AbstractXMPPConnection client = clients.get(invocation.client());
+        final EntityFullJid target = targets.get(invocation.target()).getUser();
+        awaitDelivery(invocation, () -> client.sendStanza(client.getStanzaFactory()
+                .buildMessageStanza()
+                .to(target)
+                .ofType(Message.Type.chat)
+                .setBody("Workload message " + invocation.sequence())
+                .addExtension(BenchmarkStamp.now(run, invocation.client(), invocation.sequence()).toExtensionElement())
+                .build()));
+    }
+
+    private void presence(Operation.Invocation invocation) throws Exception {
+        final AbstractXMPPConnection client = clients.get(invocation.client());
+        final EntityFullJid target = targets.get(invocation.target()).getUser();
+        awaitDelivery(invocation, () -> client.sendStanza(client.getStanzaFactory()
+                .buildPresenceStanza()
+                .to(target)
+                .ofType(Presence.Type.available)
+                .setStatus("Workload presence " + invocation.sequence())
+                .addExtension(BenchmarkStamp.now(run, invocation.client(), invocation.sequence()).toExtensionElement())
+                .build()));
+    }
+
+    private void awaitDelivery(Operation.Invocation invocation, StanzaSender sender) throws Exception {
+        final CompletableFuture<Void> delivered = new CompletableFuture<>();
+        pending.put(invocation.sequence(), delivered);
+        try {
+            sender.send();
+            delivered.get(scenario.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            pending.remove(invocation.sequence());
+        }
+    }
+
+    private void iq(Operation.Invocation invocation) throws Exception {
+        final DomainBareJid server = targets.get(invocation.target()).getXMPPServiceDomain();
+        try {
+            if (!PingManager.getInstanceFor(clients.get(invocation.client())).ping(server, scenario.timeout().toMillis())) {
+                throw new IllegalStateException("Ping of " + server + " returned an error");
+            }
+        } catch (SmackException.NoResponseException e) {
+            throw new TimeoutException("No response to ping of " + server);
+        }
+    }
+
+    private void mucJoin(Operation.Invocation invocation) throws Exception {
+        final List<EntityBareJid> domainRooms = rooms.get(targets.get(invocation.target()).getXMPPServiceDomain().toString());
+        final EntityBareJid room = domainRooms.get((int) (invocation.sequence() % domainRooms.size()));
+        final MultiUserChat muc = MultiUserChatManager.getInstanceFor(clients.get(invocation.client())).getMultiUserChat(room);
+        // A client can only be in a room once: concurrent joins of the same room by the same client are serialized.
+        synchronized (muc) {
+            try {
+                muc.join(muc.getEnterConfigurationBuilder(Resourcepart.from("client-" + invocation.client()))
+                        .requestNoHistory()
+                        .timeoutAfter(scenario.timeout().toMillis())
+                        .build());
+            } catch (SmackException.NoResponseException e) {
+                throw new TimeoutException("No response to join of " + room);
+            }
+            invocation.complete();
+            muc.leave();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (AbstractXMPPConnection connection : clients) {
+            connection.disconnect();
+        }
+        for (AbstractXMPPConnection connection : targets) {
+            connection.disconnect();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StanzaSender {
+        void send() throws Exception;
+    }
+}
@@ -0,0 +1,30 @@
+package org.igniterealtime.openfire.integration.util;
+
+/**
+ * Minimal CSV support, used for writing time series (such as container resource usage and server-to-server events)
+ * that are meant to be loaded into a spreadsheet or plotting tool.
+ *
+ * Values are written as described in RFC 4180: a value that contains a separator, a quote or a line break is enclosed
+ * in quotes, with its quotes doubled.
+ */
+public final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * Escapes a value for use as a field of a CSV record.
+     *
+     * @param value the value, or {@code null}
+     * @return the escaped value, or an empty string if the value is {@code null}
+     */
+    public static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
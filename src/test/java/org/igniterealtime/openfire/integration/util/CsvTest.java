@@ -0,0 +1,30 @@
+package org.igniterealtime.openfire.integration.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Csv}.
+ */
+public class CsvTest {
+
+    @Test
+    void plainValuesAreNotQuoted() {
+        Assertions.assertEquals("xmpp1", Csv.escape("xmpp1"));
+        Assertions.assertEquals("wave 1; step 2", Csv.escape("wave 1; step 2"));
+        Assertions.assertEquals("", Csv.escape(""));
+    }
+
+    @Test
+    void nullIsEmpty() {
+        Assertions.assertEquals("", Csv.escape(null));
+    }
+
+    @Test
+    void valuesWithSeparatorsQuotesOrLineBreaksAreQuoted() {
+        Assertions.assertEquals("\"a,b\"", Csv.escape("a,b"));
+        Assertions.assertEquals("\"say \"\"hi\"\"\"", Csv.escape("say \"hi\""));
+        Assertions.assertEquals("\"first\nsecond\"", Csv.escape("first\nsecond"));
+        Assertions.assertEquals("\"first\r\nsecond\"", Csv.escape("first\r\nsecond"));
+    }
+}
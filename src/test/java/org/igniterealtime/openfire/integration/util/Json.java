@@ -0,0 +1,315 @@
+package org.igniterealtime.openfire.integration.util;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON serialisation and parsing, used for writing test and benchmark reports and for reading the
+ * configuration of the Docker Compose environment.
+ *
+ * When writing, maps are rendered as objects, collections and arrays as arrays. Strings, numbers, booleans and
+ * {@code null} are rendered as their JSON equivalents. Any other value is rendered using its {@code toString()}
+ * representation as a JSON string.
+ *
+ * When parsing, objects are returned as {@link Map} (preserving the order of members), arrays as {@link List},
+ * integral numbers as {@link Long}, other numbers as {@link Double}, and strings, booleans and {@code null} as their
+ * Java equivalents.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Serialises a value to a pretty-printed JSON string.
+     *
+     * @param value the value to serialise
+     * @return the JSON representation of the value
+     */
+    public static String write(Object value) {
+        final StringBuilder sb = new StringBuilder();
+        write(sb, value, 0);
+        return sb.append('\n').toString();
+    }
+
+    private static void write(StringBuilder sb, Object value, int indent) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Map<?, ?> map) {
+            if (map.isEmpty()) {
+                sb.append("{}");
+                return;
+            }
+            sb.append("{\n");
+            int i = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                indent(sb, indent + 1);
+                quote(sb, String.valueOf(entry.getKey()));
+                sb.append(": ");
+                write(sb, entry.getValue(), indent + 1);
+                sb.append(++i < map.size() ? ",\n" : "\n");
+            }
+            indent(sb, indent);
+            sb.append('}');
+        } else if (value instanceof Collection<?> collection) {
+            if (collection.isEmpty()) {
+                sb.append("[]");
+                return;
+            }
+            sb.append("[\n");
+            int i = 0;
+            for (Object element : collection) {
+                indent(sb, indent + 1);
+                write(sb, element, indent + 1);
+                sb.append(++i < collection.size() ? ",\n" : "\n");
+            }
+            indent(sb, indent);
+            sb.append(']');
+        } else if (value instanceof Object[] array) {
+            write(sb, Arrays.asList(array), indent);
+        } else if (value instanceof Double d && (d.isNaN() || d.isInfinite())) {
+            sb.append("null");
+        } else if (value instanceof Float f && (f.isNaN() || f.isInfinite())) {
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            quote(sb, value.toString());
+        }
+    }
+
+    private static void indent(StringBuilder sb, int indent) {
+        sb.append("  ".repeat(indent));
+    }
+
+    private static void quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Parses a JSON document.
+     *
+     * @param json the JSON document to parse
+     * @return the parsed value
+     * @throws IllegalArgumentException if the document is not valid JSON
+     */
+    public static Object parse(String json) {
+        final Parser parser = new Parser(json);
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw parser.error("Unexpected trailing content");
+        }
+        return value;
+    }
+
+    /**
+     * Navigates a parsed JSON document, following a path of object member names.
+     *
+     * @param value the parsed JSON document
+     * @param path  the names of the object members to descend into
+     * @return the value at the end of the path, or {@code null} if any element of the path does not exist
+     */
+    public static Object get(Object value, String... path) {
+        Object current = value;
+        for (String name : path) {
+            if (!(current instanceof Map<?, ?> map)) {
+                return null;
+            }
+            current = map.get(name);
+        }
+        return current;
+    }
+
+    private static final class Parser {
+        private final String json;
+        private int pos;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (pos >= json.length()) {
+                throw error("Unexpected end of input");
+            }
+            final char c = json.charAt(pos);
+            return switch (c) {
+                case '{' -> readObject();
+                case '[' -> readArray();
+                case '"' -> readString();
+                case 't' -> readLiteral("true", Boolean.TRUE);
+                case 'f' -> readLiteral("false", Boolean.FALSE);
+                case 'n' -> readLiteral("null", null);
+                default -> readNumber();
+            };
+        }
+
+        private Map<String, Object> readObject() {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected object member name");
+                }
+                final String name = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw error("Expected ':'");
+                }
+                pos++;
+                result.put(name, readValue());
+                skipWhitespace();
+                final char c = peek();
+                pos++;
+                if (c == '}') {
+                    return result;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            final List<Object> result = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                result.add(readValue());
+                skipWhitespace();
+                final char c = peek();
+                pos++;
+                if (c == ']') {
+                    return result;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private String readString() {
+            final StringBuilder sb = new StringBuilder();
+            pos++;
+            while (true) {
+                if (pos >= json.length()) {
+                    throw error("Unterminated string");
+                }
+                final char c = json.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) {
+                    throw error("Unterminated string");
+                }
+                final char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > json.length() || !json.substring(pos, pos + 4).matches("[0-9a-fA-F]{4}")) {
+                            throw error("Invalid unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(escaped);
+                }
+            }
+        }
+
+        private Number readNumber() {
+            final int start = pos;
+            boolean integral = true;
+            while (pos < json.length()) {
+                final char c = json.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    integral = false;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                pos++;
+            }
+            final String number = json.substring(start, pos);
+            if (number.isEmpty()) {
+                throw error("Unexpected character");
+            }
+            try {
+                return integral ? (Number) Long.valueOf(number) : (Number) Double.valueOf(number);
+            } catch (NumberFormatException e) {
+                // Integers beyond the range of a long
+                try {
+                    return Double.valueOf(number);
+                } catch (NumberFormatException invalid) {
+                    throw error("Invalid number '" + number + "'");
+                }
+            }
+        }
+
+        private Object readLiteral(String literal, Object value) {
+            if (!json.startsWith(literal, pos)) {
+                throw error("Expected '" + literal + "'");
+            }
+            pos += literal.length();
+            return value;
+        }
+
+        private char peek() {
+            if (pos >= json.length()) {
+                throw error("Unexpected end of input");
+            }
+            return json.charAt(pos);
+        }
+
+        void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " of JSON document");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.igniterealtime.openfire.integration.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link Json}.
+ */
+public class JsonTest {
+
+    @Test
+    void roundTripPreservesStructureAndOrder() {
+        final Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("z", 1L);
+        nested.put("a", List.of());
+        final Map<String, Object> document = new LinkedHashMap<>();
+        document.put("string", "value");
+        document.put("long", Long.MAX_VALUE);
+        document.put("negative", -42L);
+        document.put("double", 1.5e-3);
+        document.put("true", true);
+        document.put("false", false);
+        document.put("null", null);
+        document.put("list", Arrays.asList(1L, "two", null, Map.of()));
+        document.put("nested", nested);
+
+        final Object parsed = Json.parse(Json.write(document));
+
+        Assertions.assertEquals(document, parsed);
+        Assertions.assertEquals(new ArrayList<>(document.keySet()), new ArrayList<>(((Map<?, ?>) parsed).keySet()));
+        Assertions.assertEquals(List.of("z", "a"), new ArrayList<>(((Map<?, ?>) Json.get(parsed, "nested")).keySet()));
+    }
+
+    @Test
+    void stringsAreEscaped() {
+        final String value = "quote \" backslash \\ newline \n return \r tab \t control \u0001 unicode é";
+
+        final String json = Json.write(value);
+
+        Assertions.assertEquals("\"quote \\\" backslash \\\\ newline \\n return \\r tab \\t control \\u0001 unicode é\"\n", json);
+        Assertions.assertEquals(value, Json.parse(json));
+    }
+
+    @Test
+    void escapesAreDecoded() {
+        Assertions.assertEquals("a/b\bc\fd\u00e9", Json.parse("\"a\\/b\\bc\\fd\\u00E9\""));
+    }
+
+    @Test
+    void nonFiniteNumbersAreWrittenAsNull() {
+        Assertions.assertEquals("[\n  null,\n  null,\n  null\n]\n",
+                Json.write(List.of(Double.NaN, Double.POSITIVE_INFINITY, Float.NaN)));
+    }
+
+    @Test
+    void arraysAndOtherValuesAreWritten() {
+        Assertions.assertEquals(List.of("a", 1L), Json.parse(Json.write(new Object[]{"a", 1})));
+        Assertions.assertEquals("PT1S", Json.parse(Json.write(java.time.Duration.ofSeconds(1))));
+    }
+
+    @Test
+    void numbersAreParsedAsLongOrDouble() {
+        Assertions.assertEquals(12L, Json.parse("12"));
+        Assertions.assertEquals(-0.5, Json.parse("-0.5"));
+        Assertions.assertEquals(1e21, Json.parse("1E21"));
+        Assertions.assertEquals(1e20, Json.parse("100000000000000000000"), "Integers beyond the range of a long are parsed as doubles");
+    }
+
+    @Test
+    void getNavigatesMembers() {
+        final Object document = Json.parse("{\"a\": {\"b\": [1, 2]}, \"c\": 3}");
+
+        Assertions.assertEquals(List.of(1L, 2L), Json.get(document, "a", "b"));
+        Assertions.assertNull(Json.get(document, "a", "x"));
+        Assertions.assertNull(Json.get(document, "c", "d"));
+        Assertions.assertSame(document, Json.get(document));
+    }
+
+    @Test
+    void malformedDocumentsAreRejected() {
+        for (String json : List.of("", "   ", "{", "[1, 2", "{\"a\" 1}", "{\"a\": 1,}", "{a: 1}", "[1 2]", "\"unterminated",
+                "\"escape at end\\", "\"\\u12\"", "\"\\uZZZZ\"", "tru", "nul", "1-2", "-", "{} extra", "@")) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse(json), "Accepted malformed JSON: " + json);
+        }
+    }
+}
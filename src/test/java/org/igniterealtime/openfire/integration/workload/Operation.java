@@ -0,0 +1,77 @@
+package org.igniterealtime.openfire.integration.workload;
+
+/**
+ * An operation that the {@link WorkloadEngine} performs, such as sending a message and waiting for its delivery.
+ *
+ * Operations are executed concurrently, each in its own thread, and block until they have completed. An operation that
+ * does its own cleanup after the part that is to be measured (such as leaving a chat room after joining it) marks the
+ * moment of completion using {@link Invocation#complete()}. Otherwise, it completes when it returns.
+ */
+@FunctionalInterface
+public interface Operation {
+
+    /**
+     * Executes the operation.
+     *
+     * @param invocation the client and target of this execution of the operation
+     * @throws java.util.concurrent.TimeoutException if no response was received within the timeout of the scenario
+     * @throws Exception if the operation failed
+     */
+    void execute(Invocation invocation) throws Exception;
+
+    /**
+     * A single execution of an operation.
+     */
+    final class Invocation {
+        private final long sequence;
+        private final int client;
+        private final int target;
+        private volatile long completedNanos;
+
+        Invocation(long sequence, int client, int target) {
+            this.sequence = sequence;
+            this.client = client;
+            this.target = target;
+        }
+
+        /**
+         * Returns the sequence number of this invocation, which is unique within a run.
+         *
+         * @return the sequence number
+         */
+        public long sequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns the index of the client that performs the operation, in the order of the clients of the scenario.
+         *
+         * @return the index of the client
+         */
+        public int client() {
+            return client;
+        }
+
+        /**
+         * Returns the index of the target of the operation, in the order of the targets of the scenario.
+         *
+         * @return the index of the target
+         */
+        public int target() {
+            return target;
+        }
+
+        /**
+         * Marks the operation as completed. Anything the operation does after this is not included in its latency.
+         */
+        public void complete() {
+            if (completedNanos == 0) {
+                completedNanos = System.nanoTime();
+            }
+        }
+
+        long getCompletedNanos() {
+            return completedNanos;
+        }
+    }
+}
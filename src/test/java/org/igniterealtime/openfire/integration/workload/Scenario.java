@@ -0,0 +1,247 @@
+package org.igniterealtime.openfire.integration.workload;
+
+import org.igniterealtime.openfire.integration.util.Json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A declarative definition of a workload: which operations are performed, in which proportions, by and on which users,
+ * and at which rates.
+ *
+ * Scenarios are defined in JSON files, for example:
+ * <pre>{@code
+ * {
+ *   "name": "mixed",
+ *   "seed": 1,
+ *   "timeout": 30,
+ *   "clients": [{"server": 1, "from": 0, "count": 20}],
+ *   "targets": [{"server": 2, "from": 0, "count": 20}],
+ *   "rooms": 4,
+ *   "mix": {"message": 70, "presence": 20, "iq": 8, "mucJoin": 2},
+ *   "phases": [
+ *     {"name": "warmup", "duration": 10, "rate": 50, "measure": false},
+ *     {"name": "steady", "duration": 60, "rate": 200},
+ *     {"name": "ramp", "duration": 60, "rate": 200, "rateTo": 1000}
+ *   ]
+ * }
+ * }</pre>
+ *
+ * Durations and timeouts are in seconds, and rates in operations per second. A phase with a {@code rateTo} ramps its
+ * rate linearly, from {@code rate} at its start to {@code rateTo} at its end. Phases that are not measured (such as a
+ * warm-up) are executed, but are not included in the totals of a run. The weights of the mix are relative; operations
+ * are chosen randomly in proportion to them, as are the client and target of every operation, from a random sequence
+ * that is determined by the seed. Users are identified by the index of their server, and by their index on that server
+ * (see {@code SyntheticPopulation#getLoadUser}).
+ *
+ * @param name        the name of the scenario, which names its report
+ * @param description a description of the scenario, or {@code null}
+ * @param seed        the seed of the random choices of operations, clients and targets
+ * @param timeout     the time after which an operation that has not completed is considered to have timed out
+ * @param clients     the users that perform operations
+ * @param targets     the users on which operations are performed
+ * @param rooms       the number of chat rooms on every server that has targets
+ * @param mix         the relative weights of the operations, keyed by operation name
+ * @param phases      the phases of the scenario, in order
+ */
+public record Scenario(String name, String description, long seed, Duration timeout, List<UserRange> clients,
+                       List<UserRange> targets, int rooms, Map<String, Double> mix, List<Phase> phases) {
+
+    /**
+     * A range of users on a server.
+     *
+     * @param server the index of the server, starting at 1
+     * @param from   the index of the first user on the server
+     * @param count  the number of users
+     */
+    public record UserRange(int server, int from, int count) {
+    }
+
+    /**
+     * A period during which operations are performed at a (possibly changing) rate.
+     *
+     * @param name     the name of the phase
+     * @param duration the duration of the phase
+     * @param rate     the rate at the start of the phase, in operations per second
+     * @param rateTo   the rate at the end of the phase, in operations per second
+     * @param measured whether the phase is included in the totals of a run
+     */
+    public record Phase(String name, Duration duration, double rate, double rateTo, boolean measured) {
+
+        /**
+         * Returns the rate at a point in the phase.
+         *
+         * @param elapsedNanos the time since the start of the phase
+         * @return the rate, in operations per second
+         */
+        public double rateAt(long elapsedNanos) {
+            final double progress = Math.min(1, Math.max(0, (double) elapsedNanos / duration.toNanos()));
+            return rate + (rateTo - rate) * progress;
+        }
+    }
+
+    /**
+     * Loads a scenario, either from a file, or from the {@code workloads} directory of the test resources.
+     *
+     * @param nameOrPath the path of a scenario file, or the name of a bundled scenario (without {@code .json})
+     * @return the scenario
+     * @throws IOException if the scenario cannot be read
+     * @throws IllegalArgumentException if the scenario is not valid
+     */
+    public static Scenario load(String nameOrPath) throws IOException {
+        final Path file = Path.of(nameOrPath);
+        if (Files.isRegularFile(file)) {
+            return parse(Files.readString(file, StandardCharsets.UTF_8));
+        }
+        try (InputStream in = Scenario.class.getResourceAsStream("/workloads/" + nameOrPath + ".json")) {
+            if (in == null) {
+                throw new IllegalArgumentException("No scenario file or bundled scenario named " + nameOrPath);
+            }
+            return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Parses a scenario definition.
+     *
+     * @param json the definition
+     * @return the scenario
+     * @throws IllegalArgumentException if the definition is not valid
+     */
+    public static Scenario parse(String json) {
+        final Object root = Json.parse(json);
+        final String name = string(root, "name", null);
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Scenario has no name");
+        }
+
+        final Map<String, Double> mix = new LinkedHashMap<>();
+        if (Json.get(root, "mix") instanceof Map<?, ?> weights) {
+            weights.forEach((operation, weight) -> {
+                if (!(weight instanceof Number number) || number.doubleValue() < 0) {
+                    throw new IllegalArgumentException("Invalid weight of operation " + operation + " in scenario " + name);
+                }
+                if (number.doubleValue() > 0) {
+                    mix.put((String) operation, number.doubleValue());
+                }
+            });
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no operations in its mix");
+        }
+
+        final List<Phase> phases = new ArrayList<>();
+        if (Json.get(root, "phases") instanceof List<?> list) {
+            for (Object phase : list) {
+                final double rate = number(phase, "rate", 0);
+                final Duration duration = seconds(phase, "duration", 0);
+                final double rateTo = number(phase, "rateTo", rate);
+                if (rate <= 0 || rateTo <= 0 || duration.isZero()) {
+                    throw new IllegalArgumentException("Every phase of scenario " + name + " needs a positive rate, rateTo and duration");
+                }
+                phases.add(new Phase(string(phase, "name", "phase-" + (phases.size() + 1)), duration, rate,
+                        rateTo, !Boolean.FALSE.equals(Json.get(phase, "measure"))));
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no phases");
+        }
+
+        return new Scenario(name, string(root, "description", null), (long) number(root, "seed", 1),
+                seconds(root, "timeout", 30), ranges(root, "clients", name), ranges(root, "targets", name),
+                (int) number(root, "rooms", 4), mix, phases);
+    }
+
+    /**
+     * Returns a copy of this scenario, with the rates of all phases multiplied by a factor.
+     *
+     * @param factor the factor by which to multiply the rates
+     * @return the scaled scenario
+     */
+    public Scenario scaleRates(double factor) {
+        return new Scenario(name, description, seed, timeout, clients, targets, rooms, mix, phases.stream()
+                .map(phase -> new Phase(phase.name(), phase.duration(), phase.rate() * factor, phase.rateTo() * factor, phase.measured()))
+                .toList());
+    }
+
+    /**
+     * Returns the total duration of all phases.
+     *
+     * @return the duration of the scenario
+     */
+    public Duration getDuration() {
+        return phases.stream().map(Phase::duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * Returns the definition of this scenario, for inclusion in benchmark reports.
+     *
+     * @return the definition, with durations in seconds
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("name", name);
+        values.put("seed", seed);
+        values.put("timeoutSeconds", timeout.toMillis() / 1000.0);
+        values.put("clients", clients.stream().map(Scenario::toMap).toList());
+        values.put("targets", targets.stream().map(Scenario::toMap).toList());
+        values.put("rooms", rooms);
+        values.put("mix", mix);
+        values.put("phases", phases.stream().map(phase -> {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", phase.name());
+            map.put("durationSeconds", phase.duration().toMillis() / 1000.0);
+            map.put("rate", phase.rate());
+            map.put("rateTo", phase.rateTo());
+            map.put("measured", phase.measured());
+            return map;
+        }).toList());
+        return values;
+    }
+
+    private static Map<String, Object> toMap(UserRange range) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("server", range.server());
+        map.put("from", range.from());
+        map.put("count", range.count());
+        return map;
+    }
+
+    private static List<UserRange> ranges(Object root, String key, String name) {
+        final List<UserRange> ranges = new ArrayList<>();
+        if (Json.get(root, key) instanceof List<?> list) {
+            for (Object range : list) {
+                final int server = (int) number(range, "server", 0);
+                final int count = (int) number(range, "count", 0);
+                if (server < 1 || count < 1) {
+                    throw new IllegalArgumentException("Every range of " + key + " of scenario " + name + " needs a server and a positive count");
+                }
+                ranges.add(new UserRange(server, (int) number(range, "from", 0), count));
+            }
+        }
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no " + key);
+        }
+        return ranges;
+    }
+
+    private static String string(Object value, String key, String defaultValue) {
+        return Json.get(value, key) instanceof String string ? string : defaultValue;
+    }
+
+    private static double number(Object value, String key, double defaultValue) {
+        return Json.get(value, key) instanceof Number number ? number.doubleValue() : defaultValue;
+    }
+
+    private static Duration seconds(Object value, String key, double defaultValue) {
+        return Duration.ofMillis(Math.round(number(value, key, defaultValue) * 1000));
+    }
+}
@@ -0,0 +1,292 @@
+package org.igniterealtime.openfire.integration.workload;
+
+import org.igniterealtime.openfire.integration.benchmark.BenchmarkExecutors;
+import org.igniterealtime.openfire.integration.benchmark.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Executes a {@link Scenario} as an open-loop workload: operations are started on a fixed schedule that follows the
+ * rates of the scenario, regardless of how long earlier operations take to complete.
+ *
+ * A closed-loop load generator waits for a response before it sends the next request. When the system under test
+ * stalls, such a generator stalls with it, and sends fewer requests, so that the requests that would have experienced
+ * the stall are never sent, and never measured ("coordinated omission"). This engine instead computes the intended
+ * start time of every operation from the schedule up front, runs every operation in its own thread, and measures
+ * latency from the intended start time. Queueing delays, whether in the servers or in the engine itself when it cannot
+ * keep up, are included in the results. Operations that time out are recorded with the time at which they timed out,
+ * and operations that fail are recorded as if they had timed out, so that they raise the percentiles instead of
+ * disappearing from them, or lowering them by failing fast.
+ *
+ * For every phase and operation, two latencies are recorded into mergeable histograms:
+ * <ul>
+ *     <li>{@code responseTime} - from the intended start of the operation until it completed. This is the latency that
+ *     corrects for coordinated omission, and the one that users experience.</li>
+ *     <li>{@code serviceTime} - from the actual start of the operation until it completed. The difference between both
+ *     shows how far the engine was behind its schedule.</li>
+ * </ul>
+ * How far behind schedule operations were dispatched is recorded per phase as {@code dispatchLag}. When more operations
+ * are outstanding than the configured maximum, operations are not started, but counted as rejected, to protect the
+ * test process. Rejected operations are recorded in {@code responseTime} as if they had timed out, as the engine could
+ * not keep up with them. The totals of a run combine all measured phases.
+ */
+public class WorkloadEngine {
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadEngine.class);
+
+    private final Scenario scenario;
+    private final Map<String, Operation> operations;
+    private final int clientCount;
+    private final int targetCount;
+    private int maxInFlight = 10_000;
+    private Consumer<String> phaseListener = phase -> {};
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Creates an engine.
+     *
+     * @param scenario    the scenario to execute
+     * @param operations  the implementations of the operations of the mix of the scenario, keyed by operation name
+     * @param clientCount the number of clients
+     * @param targetCount the number of targets
+     * @throws IllegalArgumentException if the scenario uses an operation that is not implemented
+     */
+    public WorkloadEngine(Scenario scenario, Map<String, Operation> operations, int clientCount, int targetCount) {
+        for (String operation : scenario.mix().keySet()) {
+            if (!operations.containsKey(operation)) {
+                throw new IllegalArgumentException("Unknown operation " + operation + " in scenario " + scenario.name() + " (known: " + operations.keySet() + ")");
+            }
+        }
+        this.scenario = scenario;
+        this.operations = operations;
+        this.clientCount = clientCount;
+        this.targetCount = targetCount;
+    }
+
+    /**
+     * Sets the maximum number of operations that are outstanding at any time (default: 10,000).
+     *
+     * @param maxInFlight the maximum number of outstanding operations
+     * @return this engine
+     */
+    public WorkloadEngine setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Sets a listener that is notified of the name of every phase when it starts, for example to tag resource usage
+     * samples with it.
+     *
+     * @param phaseListener the listener
+     * @return this engine
+     */
+    public WorkloadEngine setPhaseListener(Consumer<String> phaseListener) {
+        this.phaseListener = phaseListener;
+        return this;
+    }
+
+    /**
+     * Executes all phases of the scenario, and waits for outstanding operations to complete or time out.
+     *
+     * @return the results, per phase and in total, suitable for inclusion in a benchmark report
+     * @throws InterruptedException if the thread is interrupted while executing the scenario
+     */
+    public Map<String, Object> run() throws InterruptedException {
+        logger.info("Running scenario {} for {}s with mix {}...", scenario.name(), scenario.getDuration().toSeconds(), scenario.mix());
+        final Random random = new Random(scenario.seed());
+        final List<String> names = new ArrayList<>(scenario.mix().keySet());
+        final double[] cumulativeWeights = new double[names.size()];
+        double totalWeight = 0;
+        for (int i = 0; i < names.size(); i++) {
+            totalWeight += scenario.mix().get(names.get(i));
+            cumulativeWeights[i] = totalWeight;
+        }
+
+        final List<PhaseStats> results = new ArrayList<>();
+        final ExecutorService executor = BenchmarkExecutors.newThreadPerTaskExecutor("workload-" + scenario.name());
+        long sequence = 0;
+        try {
+            long phaseStart = System.nanoTime();
+            for (Scenario.Phase phase : scenario.phases()) {
+                final PhaseStats stats = new PhaseStats(phase, names);
+                results.add(stats);
+                phaseListener.accept(phase.name());
+                logger.info("Phase {}: {} to {} operations per second for {}s", phase.name(), phase.rate(), phase.rateTo(), phase.duration().toSeconds());
+
+                final long phaseEnd = phaseStart + phase.duration().toNanos();
+                long intended = phaseStart;
+                while (intended < phaseEnd) {
+                    final long delay = intended - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                        continue;
+                    }
+                    stats.dispatchLag.recordNanos(-delay);
+
+                    final double choice = random.nextDouble() * totalWeight;
+                    int index = 0;
+                    while (index < names.size() - 1 && choice >= cumulativeWeights[index]) {
+                        index++;
+                    }
+                    final OperationStats operationStats = stats.operations.get(names.get(index));
+                    final Operation operation = operations.get(names.get(index));
+                    final Operation.Invocation invocation = new Operation.Invocation(sequence++, random.nextInt(clientCount), random.nextInt(targetCount));
+                    operationStats.issued.incrementAndGet();
+                    if (inFlight.incrementAndGet() > maxInFlight) {
+                        inFlight.decrementAndGet();
+                        operationStats.rejected.incrementAndGet();
+                        operationStats.responseTime.recordNanos(-delay + scenario.timeout().toNanos());
+                    } else {
+                        final long intendedStart = intended;
+                        executor.execute(() -> invoke(operation, invocation, intendedStart, operationStats));
+                    }
+                    intended += Math.round(TimeUnit.SECONDS.toNanos(1) / phase.rateAt(intended - phaseStart));
+                }
+                phaseStart = phaseEnd;
+            }
+
+            final long drainDeadline = System.nanoTime() + scenario.timeout().toNanos() + TimeUnit.SECONDS.toNanos(5);
+            while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+                Thread.sleep(10);
+            }
+            if (inFlight.get() > 0) {
+                logger.warn("Scenario {}: {} operations were still outstanding after the timeout", scenario.name(), inFlight.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map<String, OperationStats> totals = new LinkedHashMap<>();
+        for (String name : names) {
+            totals.put(name, new OperationStats());
+        }
+        final LatencyHistogram totalResponseTime = new LatencyHistogram();
+        double measuredSeconds = 0;
+        for (PhaseStats stats : results) {
+            if (stats.phase.measured()) {
+                measuredSeconds += stats.phase.duration().toNanos() / 1e9;
+                stats.operations.forEach((name, operationStats) -> {
+                    totals.get(name).add(operationStats);
+                    totalResponseTime.add(operationStats.responseTime);
+                });
+            }
+        }
+
+        final Map<String, Object> total = new LinkedHashMap<>();
+        total.put("completedRate", measuredSeconds == 0 ? 0 : totals.values().stream().mapToLong(s -> s.completed.get()).sum() / measuredSeconds);
+        total.put("responseTime", totalResponseTime.summary());
+        final Map<String, Object> totalOperations = new LinkedHashMap<>();
+        totals.forEach((name, operationStats) -> totalOperations.put(name, operationStats.toMap()));
+        total.put("operations", totalOperations);
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("phases", results.stream().map(PhaseStats::toMap).toList());
+        result.put("total", total);
+        return result;
+    }
+
+    private void invoke(Operation operation, Operation.Invocation invocation, long intendedStart, OperationStats stats) {
+        final long start = System.nanoTime();
+        try {
+            operation.execute(invocation);
+            invocation.complete();
+            stats.completed.incrementAndGet();
+            stats.record(intendedStart, start, invocation.getCompletedNanos());
+        } catch (TimeoutException e) {
+            stats.timedOut.incrementAndGet();
+            stats.record(intendedStart, start, System.nanoTime());
+        } catch (Exception e) {
+            logger.debug("Operation {} failed", invocation.sequence(), e);
+            stats.failed.incrementAndGet();
+            // Recorded as if the operation had timed out, so that failing fast does not lower the percentiles.
+            stats.record(intendedStart, start, start + scenario.timeout().toNanos());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * The results of a phase.
+     */
+    private static final class PhaseStats {
+        final Scenario.Phase phase;
+        final Map<String, OperationStats> operations = new LinkedHashMap<>();
+        final LatencyHistogram dispatchLag = new LatencyHistogram();
+
+        PhaseStats(Scenario.Phase phase, List<String> names) {
+            this.phase = phase;
+            for (String name : names) {
+                operations.put(name, new OperationStats());
+            }
+        }
+
+        Map<String, Object> toMap() {
+            final double seconds = phase.duration().toNanos() / 1e9;
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("name", phase.name());
+            result.put("measured", phase.measured());
+            result.put("targetRate", (phase.rate() + phase.rateTo()) / 2);
+            result.put("issuedRate", operations.values().stream().mapToLong(s -> s.issued.get()).sum() / seconds);
+            result.put("completedRate", operations.values().stream().mapToLong(s -> s.completed.get()).sum() / seconds);
+            result.put("dispatchLag", dispatchLag.summary());
+            final Map<String, Object> perOperation = new LinkedHashMap<>();
+            operations.forEach((name, stats) -> perOperation.put(name, stats.toMap()));
+            result.put("operations", perOperation);
+            return result;
+        }
+    }
+
+    /**
+     * The results of an operation, in a phase or in total.
+     */
+    private static final class OperationStats {
+        final AtomicLong issued = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final LatencyHistogram responseTime = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+
+        void record(long intendedStart, long start, long end) {
+            responseTime.recordNanos(end - intendedStart);
+            serviceTime.recordNanos(end - start);
+        }
+
+        void add(OperationStats other) {
+            issued.addAndGet(other.issued.get());
+            rejected.addAndGet(other.rejected.get());
+            completed.addAndGet(other.completed.get());
+            failed.addAndGet(other.failed.get());
+            timedOut.addAndGet(other.timedOut.get());
+            responseTime.add(other.responseTime);
+            serviceTime.add(other.serviceTime);
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("issued", issued.get());
+            result.put("rejected", rejected.get());
+            result.put("completed", completed.get());
+            result.put("failed", failed.get());
+            result.put("timedOut", timedOut.get());
+            result.put("responseTime", responseTime.summary());
+            result.put("serviceTime", serviceTime.summary());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+-- Description: Debug logging enabled
+-- Most server-to-server events are logged at debug level only, and are needed to index these events
+INSERT INTO ofProperty (name, propValue)
+VALUES ('log.debug.enabled', 'true')
+    ON CONFLICT (name) DO UPDATE SET propValue = 'true';
\ No newline at end of file
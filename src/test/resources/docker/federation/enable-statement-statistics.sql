@@ -0,0 +1,5 @@
+-- Description: Statement statistics enabled
+-- Used to report the queries that the tests cause (OPENFIRE_STATEMENT_STATS=true). The library is loaded when the
+-- database server restarts after initialization.
+ALTER SYSTEM SET shared_preload_libraries = 'pg_stat_statements';
+CREATE EXTENSION IF NOT EXISTS pg_stat_statements;
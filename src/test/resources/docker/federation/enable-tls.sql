@@ -0,0 +1,8 @@
+-- Description: TLS required for S2S connections, optional for C2S connections
+-- Used when the tests generate certificates that the servers trust (OPENFIRE_TLS=true)
+INSERT INTO ofProperty (name, propValue)
+VALUES ('xmpp.server.tls.policy', 'required')
+    ON CONFLICT (name) DO UPDATE SET propValue = 'required';
+INSERT INTO ofProperty (name, propValue)
+VALUES ('xmpp.client.tls.policy', 'optional')
+    ON CONFLICT (name) DO UPDATE SET propValue = 'optional';